@@ -4,6 +4,7 @@ import org.jetbrains.changelog.markdownToHTML
 import org.jetbrains.intellij.platform.gradle.TestFrameworkType
 import org.jetbrains.intellij.platform.gradle.tasks.RunIdeTask
 import java.io.FileInputStream
+import java.text.SimpleDateFormat
 import java.util.*
 
 val localPropertiesFile = file("local.properties")
@@ -56,6 +57,17 @@ changelog {
     repositoryUrl.set(properties("pluginRepositoryUrl"))
 }
 
+// JMH benchmarks of the completion hot paths, run with ./gradlew jmh [-PjmhIncludes=<regex>]
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+}
+
+configurations {
+    named(jmh.compileClasspathConfigurationName) { extendsFrom(testCompileClasspath.get()) }
+    named(jmh.runtimeClasspathConfigurationName) { extendsFrom(testRuntimeClasspath.get()) }
+}
+
 dependencies {
     intellijPlatform {
         intellijIdeaCommunity(properties("platformVersion"))
@@ -81,6 +93,7 @@ dependencies {
         exclude(group = "org.jsoup", module = "jsoup")
     }
     implementation("mysql:mysql-connector-java:8.0.33")
+    implementation(libs.h2)
     implementation(kotlin("stdlib"))
     implementation(kotlin("reflect"))
     implementation(libs.jsoup)
@@ -92,6 +105,8 @@ dependencies {
     implementation(libs.javalin)
     testImplementation("junit:junit:4.13.2")
     testImplementation(kotlin("test"))
+    "jmhImplementation"(libs.jmh.core)
+    "jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
 }
 
 tasks.register<Exec>("updateSubmodules") {
@@ -212,6 +227,38 @@ tasks {
         dependsOn("patchChangelog")
     }
 
+    register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs the JMH benchmarks and writes the results to build/reports/jmh/<commit>.json (override with -PjmhResultName)"
+        classpath = jmh.runtimeClasspath
+        mainClass = "org.openjdk.jmh.Main"
+        // Results are named after the commit so that runs of different commits can be compared.
+        // -PjmhResultName overrides the name; without git metadata a timestamp is used instead
+        val resultName = providers.gradleProperty("jmhResultName").orElse(providers.provider {
+            val commit = try {
+                providers.exec {
+                    commandLine("git", "rev-parse", "--short", "HEAD")
+                    isIgnoreExitValue = true
+                }.standardOutput.asText.get().trim()
+            } catch (e: Exception) {
+                ""
+            }
+            commit.ifEmpty { SimpleDateFormat("yyyyMMdd-HHmmss").format(Date()) }
+        })
+        val resultsFile = layout.buildDirectory.file(resultName.map { "reports/jmh/$it.json" })
+        argumentProviders.add(CommandLineArgumentProvider {
+            listOf(
+                providers.gradleProperty("jmhIncludes").getOrElse(".*"),
+                "-rf", "json",
+                "-rff", resultsFile.get().asFile.absolutePath
+            )
+        })
+        outputs.upToDateWhen { false }
+        doFirst {
+            resultsFile.get().asFile.parentFile.mkdirs()
+        }
+    }
+
     test {
         exclude("**/testsupport/*")
         testLogging {
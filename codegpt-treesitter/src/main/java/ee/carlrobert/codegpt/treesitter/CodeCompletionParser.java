@@ -1,14 +1,25 @@
 package ee.carlrobert.codegpt.treesitter;
 
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import org.treesitter.TSInputEdit;
 import org.treesitter.TSLanguage;
+import org.treesitter.TSNode;
 import org.treesitter.TSParser;
 import org.treesitter.TSPoint;
 import org.treesitter.TSTree;
 
 public class CodeCompletionParser {
 
+  private static final int NO_ERROR = Integer.MAX_VALUE;
+  // Smaller files are always parsed as a whole
+  private static final int MIN_WINDOWED_LENGTH = 8_192;
+  // How far a window may reach before and after the caret
+  private static final int MAX_WINDOW_LENGTH = 16_384;
+  private static final int MAX_WINDOW_ATTEMPTS = 3;
+
   private final TSParser parser;
 
   public CodeCompletionParser(TSLanguage language) {
@@ -16,82 +27,396 @@ public class CodeCompletionParser {
     parser.setLanguage(language);
   }
 
+  /**
+   * Returns the longest part of {@code output} that parses without errors when placed between
+   * {@code prefix} and {@code suffix}, or {@code output} itself if no such part exists.
+   *
+   * <p>In large files only the declaration enclosing the caret is parsed, see
+   * {@link #findWindow}. The whole file is parsed if no window is found or no part of the output
+   * fits into it.
+   */
   public String parse(String prefix, String suffix, String output) {
-    var result = new StringBuilder(output);
-    String input = prefix + result + suffix;
-    TSTree currentTree = parser.parseString(null, input);
+    return parse(prefix, suffix, output, null);
+  }
 
-    while (!result.isEmpty()) {
-      if (containsError(currentTree)) {
-        int deletionIndex = prefix.length() + result.length() - 1;
-        Position pos = getPosition(input, deletionIndex);
+  /**
+   * Like {@link #parse(String, String, String)}, but starts from {@code tree}, a syntax tree of
+   * {@code prefix + suffix} such as the one kept by {@link SyntaxTreeCache}. The output is then
+   * parsed as an incremental edit of the whole file, so no window is needed. The tree is edited
+   * in place and must not be used by the caller afterwards.
+   */
+  String parse(String prefix, String suffix, String output, TSTree tree) {
+    if (output.isEmpty()) {
+      return output;
+    }
 
-        int startByte = pos.byteOffset;
-        int oldEndByte = startByte + getByteLength(result.substring(result.length() - 1));
+    if (tree != null) {
+      var result = parseBetween(prefix, suffix, output, tree);
+      return result != null ? result : output;
+    }
 
-        TSPoint startPoint = pos.point;
-        TSPoint oldEndPoint = computeOldEndPoint(startPoint, result.charAt(result.length() - 1));
+    if (prefix.length() + suffix.length() > MIN_WINDOWED_LENGTH) {
+      var window = findWindow(prefix, suffix);
+      if (window != null) {
+        var result = parseBetween(
+            prefix.substring(window.start()), suffix.substring(0, window.end()), output, null);
+        if (result != null) {
+          return result;
+        }
+      }
+    }
 
-        currentTree.edit(
-            new TSInputEdit(startByte, oldEndByte, startByte, startPoint, oldEndPoint, startPoint));
+    var result = parseBetween(prefix, suffix, output, null);
+    return result != null ? result : output;
+  }
 
-        result.deleteCharAt(result.length() - 1);
+  /**
+   * Parses {@code text} from scratch, or incrementally if {@code oldTree} has been edited to match
+   * it.
+   */
+  TSTree parseTree(TSTree oldTree, String text) {
+    return parser.parseString(oldTree, text);
+  }
 
-        input = prefix + result + suffix;
+  /**
+   * Returns the longest valid part of {@code output}, or {@code null} if no part is valid.
+   *
+   * <p>The output is only cut at token boundaries. A binary search over line ends finds the last
+   * line up to which the completion still reads as valid code, i.e. all errors start at or after
+   * the cut; token boundaries are then tried downwards from the end of the following line until
+   * the completion also fits the suffix. Lines rather than tokens are bisected because a cut inside
+   * a string or comment reports an error before the cut even when a longer cut is fine. Each probe
+   * reparses incrementally from the previous tree.
+   */
+  private String parseBetween(String prefix, String suffix, String output, TSTree tree) {
+    var session = new ParseSession(prefix, suffix, output, tree);
+    if (session.isValid(output.length())) {
+      return output;
+    }
 
-        currentTree = parser.parseString(currentTree, input);
+    var lineEnds = lineEnds(output);
+    int viableLine = -1;
+    int low = 0;
+    int high = lineEnds.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (session.isViable(lineEnds[mid])) {
+        viableLine = mid;
+        low = mid + 1;
       } else {
-        return result.toString();
+        high = mid - 1;
+      }
+    }
+
+    var cuts = cutPoints(output);
+    int upper = lineEnds[Math.min(viableLine + 1, lineEnds.length - 1)];
+    int start = Arrays.binarySearch(cuts, upper);
+    for (int i = start >= 0 ? start : -start - 2; i >= 0; i--) {
+      if (session.isValid(cuts[i])) {
+        return output.substring(0, cuts[i]);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the outermost declaration around the caret that fits into {@link #MAX_WINDOW_LENGTH}.
+   * A declaration starts at a line before the caret that is indented less than the lines between
+   * it and the caret, and ends before the next line indented no more than it, or after that line
+   * if it only closes brackets. Inner declarations are tried when a window does not parse cleanly
+   * up to the caret line, e.g. a method that is only valid inside its class.
+   */
+  Window findWindow(String prefix, String suffix) {
+    int caretLineStart = prefix.lastIndexOf('\n') + 1;
+    // The caret line is cut at the caret, so its whitespace counts even if nothing follows it
+    int level = leadingWhitespace(prefix, caretLineStart);
+    var starts = new ArrayList<Integer>();
+    var indents = new ArrayList<Integer>();
+    int lineStart = caretLineStart;
+    while (level > 0 && lineStart > 0 && prefix.length() - lineStart < MAX_WINDOW_LENGTH) {
+      lineStart = prefix.lastIndexOf('\n', lineStart - 2) + 1;
+      int indent = indentation(prefix, lineStart);
+      if (indent >= 0 && indent < level && !isClosingBracket(prefix.charAt(lineStart + indent))) {
+        starts.add(lineStart);
+        indents.add(indent);
+        level = indent;
+      }
+    }
+
+    int attempts = 0;
+    for (int i = starts.size() - 1; i >= 0 && attempts < MAX_WINDOW_ATTEMPTS; i--) {
+      int start = starts.get(i);
+      int end = findWindowEnd(suffix, indents.get(i));
+      if (end < 0) {
+        continue;
       }
+      attempts++;
+      if (isCleanBefore(prefix.substring(start) + suffix.substring(0, end),
+          utf8Length(prefix, start, caretLineStart))) {
+        return new Window(start, end);
+      }
+    }
+    return null;
+  }
+
+  private static int findWindowEnd(String suffix, int indent) {
+    int lineStart = suffix.indexOf('\n') + 1;
+    while (lineStart > 0 && lineStart < suffix.length() && lineStart <= MAX_WINDOW_LENGTH) {
+      int lineEnd = suffix.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = suffix.length();
+      }
+      int lineIndent = indentation(suffix, lineStart);
+      if (lineIndent >= 0 && lineIndent <= indent) {
+        if (!isClosingBracket(suffix.charAt(lineStart + lineIndent))) {
+          return lineStart;
+        }
+        // Lines such as "} else {" continue the declaration
+        if (suffix.substring(lineStart + lineIndent, lineEnd).strip().chars()
+            .allMatch(c -> isClosingBracket((char) c) || c == ';' || c == ',')) {
+          return lineEnd;
+        }
+      }
+      lineStart = lineEnd + 1;
     }
+    return suffix.length() <= MAX_WINDOW_LENGTH ? suffix.length() : -1;
+  }
 
-    return output;
+  private boolean isCleanBefore(String text, int byteOffset) {
+    return firstErrorByte(parser.parseString(null, text).getRootNode()) >= byteOffset;
   }
 
-  private boolean containsError(TSTree tree) {
-    var treeString = tree.getRootNode().toString();
-    return treeString.contains("ERROR")
-        || treeString.contains("MISSING \"}\"")
-        || treeString.contains("MISSING \")\"");
+  /**
+   * Number of leading spaces and tabs of the line starting at {@code lineStart}, or -1 if the line
+   * is blank.
+   */
+  private static int indentation(String text, int lineStart) {
+    int indent = leadingWhitespace(text, lineStart);
+    int i = lineStart + indent;
+    return i == text.length() || text.charAt(i) == '\n' || text.charAt(i) == '\r' ? -1 : indent;
   }
 
-  private Position getPosition(String input, int index) {
-    int row = 0;
-    int col = 0;
-    int byteOffset = 0;
-    for (int i = 0; i < index; i++) {
-      char c = input.charAt(i);
-      int charByteLength = getByteLength(String.valueOf(c));
-      byteOffset += charByteLength;
+  private static int leadingWhitespace(String text, int lineStart) {
+    int i = lineStart;
+    while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+      i++;
+    }
+    return i - lineStart;
+  }
 
-      if (c == '\n') {
-        row++;
-        col = 0;
-      } else {
-        col++;
+  private static boolean isClosingBracket(char c) {
+    return c == '}' || c == ')' || c == ']';
+  }
+
+  /**
+   * Offsets in {@code output}, in ascending order, at which a line ends, including the end of the
+   * output. Every line end is also a token boundary.
+   */
+  static int[] lineEnds(String output) {
+    var lineEnds = new int[output.length() + 1];
+    int count = 0;
+    for (int i = 0; i < output.length(); i++) {
+      if (output.charAt(i) == '\n' && i > 0) {
+        lineEnds[count++] = i;
       }
     }
-    return new Position(new TSPoint(row, col), byteOffset);
+    lineEnds[count++] = output.length();
+    return Arrays.copyOf(lineEnds, count);
   }
 
-  private int getByteLength(String str) {
-    return str.getBytes(StandardCharsets.UTF_8).length;
+  /**
+   * Offsets in {@code output}, in ascending order, at which a token ends. Each punctuation
+   * character and each line break is a token of its own.
+   */
+  static int[] cutPoints(String output) {
+    var cuts = new int[output.length()];
+    int count = 0;
+    for (int i = 1; i < output.length(); i++) {
+      char previous = output.charAt(i - 1);
+      if (Character.isHighSurrogate(previous)) {
+        continue;
+      }
+      var previousClass = charClass(previous);
+      if (previousClass == CharClass.PUNCTUATION || previousClass != charClass(output.charAt(i))) {
+        cuts[count++] = i;
+      }
+    }
+    cuts[count++] = output.length();
+    return Arrays.copyOf(cuts, count);
   }
 
-  private TSPoint computeOldEndPoint(TSPoint startPoint, char deletedChar) {
-    int row = startPoint.getRow();
-    int col = startPoint.getColumn();
+  private static CharClass charClass(char c) {
+    if (c == '\n') {
+      return CharClass.PUNCTUATION;
+    }
+    if (Character.isWhitespace(c)) {
+      return CharClass.WHITESPACE;
+    }
+    if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || Character.isSurrogate(c)) {
+      return CharClass.WORD;
+    }
+    return CharClass.PUNCTUATION;
+  }
 
-    if (deletedChar == '\n') {
-      row++;
-      col = 0;
-    } else {
-      col++;
+  /**
+   * Start byte of the first error in document order, or {@link #NO_ERROR}. Only subtrees that
+   * contain an error are visited. Like before, missing closing brackets count as errors while
+   * other missing tokens, such as a semicolon, do not.
+   */
+  private static int firstErrorByte(TSNode node) {
+    if (!node.hasError()) {
+      return NO_ERROR;
     }
-    return new TSPoint(row, col);
+    var type = node.getType();
+    if ("ERROR".equals(type) || (node.isMissing() && ("}".equals(type) || ")".equals(type)))) {
+      return node.getStartByte();
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      int errorByte = firstErrorByte(node.getChild(i));
+      if (errorByte != NO_ERROR) {
+        return errorByte;
+      }
+    }
+    return NO_ERROR;
   }
 
-  private record Position(TSPoint point, int byteOffset) {
+  static int utf8Length(CharSequence text, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      length += utf8Length(text, i);
+    }
+    return length;
+  }
 
+  private static int utf8Length(CharSequence text, int index) {
+    char c = text.charAt(index);
+    if (c < 0x80) {
+      return 1;
+    }
+    if (c < 0x800) {
+      return 2;
+    }
+    if (Character.isHighSurrogate(c)
+        && index + 1 < text.length()
+        && Character.isLowSurrogate(text.charAt(index + 1))) {
+      return 4;
+    }
+    if (Character.isLowSurrogate(c)
+        && index > 0
+        && Character.isHighSurrogate(text.charAt(index - 1))) {
+      return 0;
+    }
+    return 3;
+  }
+
+  private enum CharClass {
+    WHITESPACE, WORD, PUNCTUATION
+  }
+
+  /**
+   * Part of a file that is parsed instead of the whole file: the prefix from {@code start} and the
+   * suffix up to {@code end}.
+   */
+  record Window(int start, int end) {
+  }
+
+  /**
+   * Parses {@code prefix + output[0, cut) + suffix} for different cuts. Byte offsets and points
+   * of every cut come from tables built once, and each parse edits and reuses the previous tree,
+   * starting from a tree of the text without output if one is given.
+   */
+  private final class ParseSession {
+
+    private final String prefix;
+    private final String suffix;
+    private final String output;
+    private final int prefixBytes;
+    private final int prefixRows;
+    private final int prefixColumn;
+    // For each offset in output: UTF-8 bytes before it, line breaks before it and the byte offset
+    // of the line it is on (-1 while still on the prefix's last line)
+    private final int[] bytes;
+    private final int[] rows;
+    private final int[] lineStarts;
+    private final Map<Integer, Integer> errorBytes = new HashMap<>();
+    private TSTree tree;
+    private int treeCut;
+
+    ParseSession(String prefix, String suffix, String output, TSTree tree) {
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.output = output;
+      this.tree = tree;
+
+      int byteCount = 0;
+      int rowCount = 0;
+      int lineStart = 0;
+      for (int i = 0; i < prefix.length(); i++) {
+        byteCount += utf8Length(prefix, i);
+        if (prefix.charAt(i) == '\n') {
+          rowCount++;
+          lineStart = byteCount;
+        }
+      }
+      prefixBytes = byteCount;
+      prefixRows = rowCount;
+      prefixColumn = byteCount - lineStart;
+
+      bytes = new int[output.length() + 1];
+      rows = new int[output.length() + 1];
+      lineStarts = new int[output.length() + 1];
+      lineStarts[0] = -1;
+      for (int i = 0; i < output.length(); i++) {
+        bytes[i + 1] = bytes[i] + utf8Length(output, i);
+        if (output.charAt(i) == '\n') {
+          rows[i + 1] = rows[i] + 1;
+          lineStarts[i + 1] = bytes[i + 1];
+        } else {
+          rows[i + 1] = rows[i];
+          lineStarts[i + 1] = lineStarts[i];
+        }
+      }
+    }
+
+    boolean isValid(int cut) {
+      return errorByte(cut) == NO_ERROR;
+    }
+
+    boolean isViable(int cut) {
+      return errorByte(cut) >= byteOffset(cut);
+    }
+
+    private int errorByte(int cut) {
+      var cached = errorBytes.get(cut);
+      if (cached != null) {
+        return cached;
+      }
+      int errorByte = firstErrorByte(parseAt(cut).getRootNode());
+      errorBytes.put(cut, errorByte);
+      return errorByte;
+    }
+
+    private TSTree parseAt(int cut) {
+      if (tree != null) {
+        int start = Math.min(treeCut, cut);
+        tree.edit(new TSInputEdit(
+            byteOffset(start), byteOffset(treeCut), byteOffset(cut),
+            point(start), point(treeCut), point(cut)));
+      }
+      tree = parser.parseString(tree, prefix + output.substring(0, cut) + suffix);
+      treeCut = cut;
+      return tree;
+    }
+
+    private int byteOffset(int cut) {
+      return prefixBytes + bytes[cut];
+    }
+
+    private TSPoint point(int cut) {
+      if (lineStarts[cut] < 0) {
+        return new TSPoint(prefixRows, prefixColumn + bytes[cut]);
+      }
+      return new TSPoint(prefixRows + rows[cut], bytes[cut] - lineStarts[cut]);
+    }
   }
 }
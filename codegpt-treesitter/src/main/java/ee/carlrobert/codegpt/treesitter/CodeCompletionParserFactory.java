@@ -1,6 +1,11 @@
 package ee.carlrobert.codegpt.treesitter;
 
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import org.treesitter.TSLanguage;
+import org.treesitter.TSTree;
 import org.treesitter.TreeSitterCSharp;
 import org.treesitter.TreeSitterCpp;
 import org.treesitter.TreeSitterCss;
@@ -34,52 +39,214 @@ import org.treesitter.TreeSitterSwift;
 import org.treesitter.TreeSitterTypescript;
 import org.treesitter.TreeSitterYaml;
 
+/**
+ * Hands out {@link CodeCompletionParser}s from per-language pools.
+ *
+ * <p>Each parser owns a native {@code TSParser} and is not thread-safe, so a parser is only used by
+ * one thread at a time and returned to its language's pool afterwards. Languages and parsers are
+ * created once per language instead of on every completion, and {@link #dispose()} drops them all
+ * so their native memory can be released when the plugin is unloaded.
+ */
 public class CodeCompletionParserFactory {
 
-  public static CodeCompletionParser getParserForFileExtension(String extension) {
-    var language = getLanguageForExtension(extension);
-    if (language == null) {
+  private static final int MAX_IDLE_PARSERS =
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  private static final Map<String, ParserPool> POOLS = new ConcurrentHashMap<>();
+  private static volatile boolean disposed;
+
+  private CodeCompletionParserFactory() {
+  }
+
+  /**
+   * Runs {@link CodeCompletionParser#parse} with a pooled parser for the given file extension, or
+   * returns {@code output} unchanged if the extension is not supported.
+   */
+  public static String parse(String extension, String prefix, String suffix, String output) {
+    return parseWithTree(extension, prefix, suffix, output, null);
+  }
+
+  /**
+   * Like {@link #parse(String, String, String, String)}, starting from {@code tree}, a syntax
+   * tree of {@code prefix + suffix}, if it is not {@code null}.
+   */
+  static String parseWithTree(
+      String extension, String prefix, String suffix, String output, TSTree tree) {
+    var pool = getPool(extension);
+    if (pool == null) {
+      return output;
+    }
+
+    var parser = pool.borrow();
+    try {
+      return parser.parse(prefix, suffix, output, tree);
+    } finally {
+      pool.release(parser);
+    }
+  }
+
+  static TSTree parseTree(String extension, TSTree oldTree, String text) {
+    var pool = getPool(extension);
+    if (pool == null) {
       return null;
     }
 
-    return new CodeCompletionParser(language);
+    var parser = pool.borrow();
+    try {
+      return parser.parseTree(oldTree, text);
+    } finally {
+      pool.release(parser);
+    }
+  }
+
+  public static boolean isSupported(String extension) {
+    return getLanguageName(extension) != null;
+  }
+
+  /**
+   * Drops all pooled parsers and languages. Parsers in use are discarded when they are released,
+   * and later calls create parsers that are not pooled.
+   */
+  public static void dispose() {
+    disposed = true;
+    POOLS.values().forEach(ParserPool::clear);
+    POOLS.clear();
+  }
+
+  private static ParserPool getPool(String extension) {
+    var languageName = getLanguageName(extension);
+    if (languageName == null) {
+      return null;
+    }
+    if (disposed) {
+      return new ParserPool(languageName);
+    }
+    return POOLS.computeIfAbsent(languageName, ParserPool::new);
   }
 
-  private static TSLanguage getLanguageForExtension(String extension) {
+  static String getLanguageName(String extension) {
+    if (extension == null) {
+      return null;
+    }
     return switch (extension) {
+      case "java" -> "java";
+      case "php" -> "php";
+      case "py" -> "python";
+      case "ts", "tsx" -> "typescript";
+      case "js", "jsx" -> "javascript";
+      case "c", "h", "cpp", "cxx", "cc", "c++", "hpp", "hxx", "hh", "h++" -> "cpp";
+      case "cs" -> "csharp";
+      case "css" -> "css";
+      case "dart" -> "dart";
+      case "dockerfile" -> "dockerfile";
+      case "elixir", "ex", "exs" -> "elixir";
+      case "erl", "hrl" -> "erlang";
+      case "f90", "f95", "f03", "f08" -> "fortran";
+      case "gitattributes" -> "gitattributes";
+      case "go" -> "go";
+      case "graphql", "gql" -> "graphql";
+      case "html", "htm" -> "html";
+      case "json" -> "json";
+      case "kotlin", "kt", "kts" -> "kotlin";
+      case "latex", "tex" -> "latex";
+      case "lua" -> "lua";
+      case "m68k" -> "m68k";
+      case "markdown", "md" -> "markdown";
+      case "objc", "m", "mm" -> "objc";
+      case "perl", "pl", "pm" -> "perl";
+      case "ruby", "rb" -> "ruby";
+      case "rust", "rs" -> "rust";
+      case "scala", "sc" -> "scala";
+      case "scss" -> "scss";
+      case "svelte" -> "svelte";
+      case "swift" -> "swift";
+      case "yml", "yaml" -> "yaml";
+      default -> null;
+    };
+  }
+
+  private static TSLanguage createLanguage(String languageName) {
+    return switch (languageName) {
       case "java" -> new TreeSitterJava();
       case "php" -> new TreeSitterPhp();
-      case "py" -> new TreeSitterPython();
-      case "ts", "tsx" -> new TreeSitterTypescript();
-      case "js", "jsx" -> new TreeSitterJavascript();
-      case "c", "h", "cpp", "cxx", "cc", "c++", "hpp", "hxx", "hh", "h++" -> new TreeSitterCpp();
-      case "cs" -> new TreeSitterCSharp();
+      case "python" -> new TreeSitterPython();
+      case "typescript" -> new TreeSitterTypescript();
+      case "javascript" -> new TreeSitterJavascript();
+      case "cpp" -> new TreeSitterCpp();
+      case "csharp" -> new TreeSitterCSharp();
       case "css" -> new TreeSitterCss();
       case "dart" -> new TreeSitterDart();
       case "dockerfile" -> new TreeSitterDockerfile();
-      case "elixir", "ex", "exs" -> new TreeSitterElixir();
-      case "erl", "hrl" -> new TreeSitterErlang();
-      case "f90", "f95", "f03", "f08" -> new TreeSitterFortran();
+      case "elixir" -> new TreeSitterElixir();
+      case "erlang" -> new TreeSitterErlang();
+      case "fortran" -> new TreeSitterFortran();
       case "gitattributes" -> new TreeSitterGitattributes();
       case "go" -> new TreeSitterGo();
-      case "graphql", "gql" -> new TreeSitterGraphql();
-      case "html", "htm" -> new TreeSitterHtml();
+      case "graphql" -> new TreeSitterGraphql();
+      case "html" -> new TreeSitterHtml();
       case "json" -> new TreeSitterJson();
-      case "kotlin", "kt", "kts" -> new TreeSitterKotlin();
-      case "latex", "tex" -> new TreeSitterLatex();
+      case "kotlin" -> new TreeSitterKotlin();
+      case "latex" -> new TreeSitterLatex();
       case "lua" -> new TreeSitterLua();
       case "m68k" -> new TreeSitterM68k();
-      case "markdown", "md" -> new TreeSitterMarkdown();
-      case "objc", "m", "mm" -> new TreeSitterObjc();
-      case "perl", "pl", "pm" -> new TreeSitterPerl();
-      case "ruby", "rb" -> new TreeSitterRuby();
-      case "rust", "rs" -> new TreeSitterRust();
-      case "scala", "sc" -> new TreeSitterScala();
+      case "markdown" -> new TreeSitterMarkdown();
+      case "objc" -> new TreeSitterObjc();
+      case "perl" -> new TreeSitterPerl();
+      case "ruby" -> new TreeSitterRuby();
+      case "rust" -> new TreeSitterRust();
+      case "scala" -> new TreeSitterScala();
       case "scss" -> new TreeSitterScss();
       case "svelte" -> new TreeSitterSvelte();
       case "swift" -> new TreeSitterSwift();
-      case "yml", "yaml" -> new TreeSitterYaml();
-      default -> null;
+      case "yaml" -> new TreeSitterYaml();
+      default -> throw new IllegalArgumentException("Unknown language: " + languageName);
     };
   }
+
+  private static final class ParserPool {
+
+    private final String languageName;
+    private final BlockingQueue<CodeCompletionParser> idle =
+        new ArrayBlockingQueue<>(MAX_IDLE_PARSERS);
+    private volatile TSLanguage language;
+    private volatile boolean cleared;
+
+    ParserPool(String languageName) {
+      this.languageName = languageName;
+    }
+
+    CodeCompletionParser borrow() {
+      var parser = idle.poll();
+      return parser != null ? parser : new CodeCompletionParser(getLanguage());
+    }
+
+    void release(CodeCompletionParser parser) {
+      // A full pool or a disposed factory lets the parser be collected with its native memory
+      if (!cleared && !disposed) {
+        idle.offer(parser);
+      }
+    }
+
+    void clear() {
+      cleared = true;
+      idle.clear();
+      language = null;
+    }
+
+    private TSLanguage getLanguage() {
+      var result = language;
+      if (result == null) {
+        synchronized (this) {
+          result = language;
+          if (result == null) {
+            result = createLanguage(languageName);
+            if (!cleared) {
+              language = result;
+            }
+          }
+        }
+      }
+      return result;
+    }
+  }
 }
@@ -0,0 +1,233 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.treesitter.TSInputEdit;
+import org.treesitter.TSPoint;
+import org.treesitter.TSTree;
+
+/**
+ * Keeps a tree-sitter syntax tree for each document that has been requested once.
+ *
+ * <p>Document changes are applied to the tree with {@link TSTree#edit}, which only shifts
+ * positions, and the next request reparses with the edited tree, so only the changed parts are
+ * parsed again. Trees are held weakly by document and dropped on disposal.
+ */
+@Service
+public final class SyntaxTreeCache implements Disposable {
+
+  private final Map<Document, TreeState> states = ContainerUtil.createConcurrentWeakMap();
+
+  public SyntaxTreeCache() {
+    EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+      @Override
+      public void documentChanged(@NotNull DocumentEvent event) {
+        var state = states.get(event.getDocument());
+        if (state != null) {
+          state.edit(event);
+        }
+      }
+    }, this);
+  }
+
+  public static SyntaxTreeCache getInstance() {
+    return ApplicationManager.getApplication().getService(SyntaxTreeCache.class);
+  }
+
+  /**
+   * Returns a copy of the syntax tree of {@code document}, which the caller owns, or {@code null}
+   * if the extension is not supported or the document changed since {@code text} was read from
+   * it at {@code modificationStamp}.
+   */
+  public TSTree getTree(
+      Document document, String extension, String text, long modificationStamp) {
+    var languageName = CodeCompletionParserFactory.getLanguageName(extension);
+    if (languageName == null) {
+      return null;
+    }
+
+    var snapshot = ReadAction.compute(() -> {
+      if (document.getModificationStamp() != modificationStamp
+          || document.getTextLength() != text.length()) {
+        return null;
+      }
+      var state = states.compute(document, (key, existing) ->
+          existing == null || !existing.languageName.equals(languageName)
+              ? new TreeState(languageName, document.getImmutableCharSequence())
+              : existing);
+      return state.snapshot();
+    });
+    if (snapshot == null) {
+      return null;
+    }
+    if (snapshot.current()) {
+      return snapshot.tree();
+    }
+
+    // Parse outside the read action so that typing is not blocked
+    var tree = CodeCompletionParserFactory.parseTree(extension, snapshot.tree(), text);
+    if (tree == null) {
+      return null;
+    }
+    return snapshot.state().update(tree, snapshot.version());
+  }
+
+  /**
+   * Runs {@link CodeCompletionParserFactory#parse} starting from the syntax tree of
+   * {@code document} if it has not changed since {@code prefix} and {@code suffix} were read from
+   * it at {@code modificationStamp}.
+   */
+  public String parse(
+      Document document,
+      long modificationStamp,
+      String extension,
+      String prefix,
+      String suffix,
+      String output) {
+    var tree = getTree(document, extension, prefix + suffix, modificationStamp);
+    return CodeCompletionParserFactory.parseWithTree(extension, prefix, suffix, output, tree);
+  }
+
+  @Override
+  public void dispose() {
+    states.clear();
+  }
+
+  private record Snapshot(TreeState state, TSTree tree, long version, boolean current) {
+  }
+
+  private static final class TreeState {
+
+    private final String languageName;
+    private TSTree tree;
+    private long version;
+    private long parsedVersion = -1;
+    // Per line, the UTF-8 bytes beyond one per char, so byte offsets follow without rescanning
+    private int[] lineExtraBytes;
+    private int nonAsciiLines;
+
+    TreeState(String languageName, CharSequence text) {
+      this.languageName = languageName;
+      this.lineExtraBytes = new int[StringUtil.countNewLines(text) + 1];
+      fillLines(text, 0, 0, lineExtraBytes.length - 1);
+    }
+
+    synchronized Snapshot snapshot() {
+      var copy = tree == null ? null : tree.copy();
+      return new Snapshot(this, copy, version, parsedVersion == version);
+    }
+
+    /**
+     * Keeps {@code parsed} if no change happened since its text was read, and returns a copy of
+     * it for the caller either way.
+     */
+    synchronized TSTree update(TSTree parsed, long parsedAt) {
+      if (parsedAt != version) {
+        return parsed;
+      }
+      tree = parsed;
+      parsedVersion = version;
+      return parsed.copy();
+    }
+
+    synchronized void edit(DocumentEvent event) {
+      version++;
+      var document = event.getDocument();
+      var text = document.getImmutableCharSequence();
+      int offset = event.getOffset();
+      // The text before the change is unchanged, so its positions are the same as before
+      int row = document.getLineNumber(offset);
+      int lineStart = document.getLineStartOffset(row);
+      int column = CodeCompletionParser.utf8Length(text, lineStart, offset);
+      int startByte = lineStart + extraBytesBefore(row) + column;
+      var oldFragment = event.getOldFragment();
+      var newFragment = event.getNewFragment();
+      replaceLines(
+          text,
+          row,
+          lineStart,
+          StringUtil.countNewLines(oldFragment),
+          StringUtil.countNewLines(newFragment));
+      if (tree == null) {
+        return;
+      }
+
+      tree.edit(new TSInputEdit(
+          startByte,
+          startByte + CodeCompletionParser.utf8Length(oldFragment, 0, oldFragment.length()),
+          startByte + CodeCompletionParser.utf8Length(newFragment, 0, newFragment.length()),
+          new TSPoint(row, column),
+          endPoint(row, column, oldFragment),
+          endPoint(row, column, newFragment)));
+    }
+
+    private static TSPoint endPoint(int row, int column, CharSequence fragment) {
+      int lastLineBreak = StringUtil.lastIndexOf(fragment, '\n', 0, fragment.length());
+      if (lastLineBreak < 0) {
+        return new TSPoint(
+            row, column + CodeCompletionParser.utf8Length(fragment, 0, fragment.length()));
+      }
+      return new TSPoint(
+          row + StringUtil.countNewLines(fragment),
+          CodeCompletionParser.utf8Length(fragment, lastLineBreak + 1, fragment.length()));
+    }
+
+    private int extraBytesBefore(int row) {
+      if (nonAsciiLines == 0) {
+        return 0;
+      }
+      int extraBytes = 0;
+      for (int i = 0; i < row; i++) {
+        extraBytes += lineExtraBytes[i];
+      }
+      return extraBytes;
+    }
+
+    /**
+     * Replaces the lines {@code row..row + removedLines} before a change with the lines
+     * {@code row..row + addedLines} of {@code text} after it.
+     */
+    private void replaceLines(
+        CharSequence text, int row, int lineStart, int removedLines, int addedLines) {
+      for (int i = row; i <= row + removedLines; i++) {
+        if (lineExtraBytes[i] != 0) {
+          nonAsciiLines--;
+        }
+      }
+      if (removedLines != addedLines) {
+        var resized = new int[lineExtraBytes.length - removedLines + addedLines];
+        int tail = row + removedLines + 1;
+        System.arraycopy(lineExtraBytes, 0, resized, 0, row);
+        System.arraycopy(
+            lineExtraBytes, tail, resized, row + addedLines + 1, lineExtraBytes.length - tail);
+        lineExtraBytes = resized;
+      }
+      fillLines(text, row, lineStart, row + addedLines);
+    }
+
+    private void fillLines(CharSequence text, int fromRow, int lineStart, int toRow) {
+      int start = lineStart;
+      for (int i = fromRow; i <= toRow; i++) {
+        int end = StringUtil.indexOf(text, '\n', start, text.length());
+        if (end < 0) {
+          end = text.length();
+        }
+        lineExtraBytes[i] = CodeCompletionParser.utf8Length(text, start, end) - (end - start);
+        if (lineExtraBytes[i] != 0) {
+          nonAsciiLines++;
+        }
+        start = end + 1;
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ package ee.carlrobert.codegpt.treesitter;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import org.junit.Test;
+import org.treesitter.TreeSitterJava;
 
 public class CodeCompletionParserTest {
 
@@ -21,9 +22,7 @@ public class CodeCompletionParserTest {
         }
         public int getRandomNumber(int k) {""";
 
-    var parsedResponse = CodeCompletionParserFactory
-        .getParserForFileExtension("java")
-        .parse(prefix, suffix, output);
+    var parsedResponse = CodeCompletionParserFactory.parse("java", prefix, suffix, output);
 
     assertThat(parsedResponse).isEqualTo("10;");
   }
@@ -40,9 +39,7 @@ public class CodeCompletionParserTest {
         }""";
     var output = "prevNumber);";
 
-    var parsedResponse = CodeCompletionParserFactory
-        .getParserForFileExtension("java")
-        .parse(prefix, suffix, output);
+    var parsedResponse = CodeCompletionParserFactory.parse("java", prefix, suffix, output);
 
     assertThat(parsedResponse).isEqualTo("prevNumber");
   }
@@ -59,10 +56,64 @@ public class CodeCompletionParserTest {
         }""";
     var output = "int prevNumber) }";
 
-    var result = CodeCompletionParserFactory
-        .getParserForFileExtension("java")
-        .parse(prefix, suffix, output);
+    var result = CodeCompletionParserFactory.parse("java", prefix, suffix, output);
 
     assertThat(result).isEqualTo("int prevNumber");
   }
+
+  @Test
+  public void shouldCutMultiLineCompletionWithNonAsciiText() {
+    var prefix = """
+        class Main {
+          String greeting = \s""";
+    var suffix = """
+
+        }""";
+    var output = """
+        "héllo wörld 😀";
+          int count = 1;}""";
+
+    var result = CodeCompletionParserFactory.parse("java", prefix, suffix, output);
+
+    assertThat(result).isEqualTo("""
+        "héllo wörld 😀";
+          int count = 1;""");
+  }
+
+  @Test
+  public void shouldOnlyCutAtTokenBoundaries() {
+    assertThat(CodeCompletionParser.cutPoints("int prevNumber) }"))
+        .containsExactly(3, 4, 14, 15, 16, 17);
+    assertThat(CodeCompletionParser.cutPoints("a\n  b"))
+        .containsExactly(1, 2, 4, 5);
+    assertThat(CodeCompletionParser.lineEnds("a;\n  b\n"))
+        .containsExactly(2, 6, 7);
+  }
+
+  @Test
+  public void shouldParseOnlyEnclosingDeclarationInLargeFiles() {
+    var methods = new StringBuilder();
+    for (int i = 0; i < 400; i++) {
+      methods.append("  public int getNumber").append(i).append("() {\n")
+          .append("    return ").append(i).append(";\n")
+          .append("  }\n\n");
+    }
+    var prefix = "class Main {\n" + methods + """
+          public int getRandomNumber() {
+            if (true) {
+              return\s""";
+    var suffix = "\n    }\n    return 0;\n  }\n\n" + methods + "}";
+    var output = """
+        10;}
+        }
+        public int getRandomNumber(int k) {""";
+
+    var parser = new CodeCompletionParser(new TreeSitterJava());
+    var window = parser.findWindow(prefix, suffix);
+
+    assertThat(window).isNotNull();
+    assertThat(window.start()).isGreaterThan(prefix.lastIndexOf("getNumber399"));
+    assertThat(window.end()).isLessThan(suffix.indexOf("getNumber0"));
+    assertThat(parser.parse(prefix, suffix, output)).isEqualTo("10;");
+  }
 }
@@ -0,0 +1,111 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.treesitter.TSNode;
+import org.treesitter.TSTree;
+
+public class SyntaxTreeCacheTest extends BasePlatformTestCase {
+
+  public void testTreeFollowsDocumentChanges() {
+    myFixture.configureByText("Main.java", "class Main {\n  int a = 1;\n}\n");
+    var document = myFixture.getEditor().getDocument();
+    var cache = SyntaxTreeCache.getInstance();
+    assertThat(getTree(cache, document)).isNotNull();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.insertString(document.getText().lastIndexOf('}'), "  String s = \"héllo 😀\";\n");
+      int a = document.getText().indexOf('a');
+      document.replaceString(a, a + 1, "count");
+    });
+
+    assertTreeMatchesFreshParse(cache, document);
+  }
+
+  public void testTreeFollowsChangesAfterNonAsciiLinesAreRemoved() {
+    myFixture.configureByText(
+        "Main.java", "class Main {\n  // héllo 😀\n  int a = 1;\n  // wörld\n  int b = 2;\n}\n");
+    var document = myFixture.getEditor().getDocument();
+    var cache = SyntaxTreeCache.getInstance();
+    assertThat(getTree(cache, document)).isNotNull();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      int comment = document.getText().indexOf("  // héllo");
+      document.deleteString(comment, document.getText().indexOf("  int a"));
+      document.insertString(document.getText().indexOf("  // wörld"), "  int c = 3;\n\n");
+      comment = document.getText().indexOf("  // wörld");
+      document.deleteString(comment, document.getText().indexOf("  int b"));
+      int b = document.getText().indexOf('b');
+      document.replaceString(b, b + 1, "total");
+    });
+
+    assertTreeMatchesFreshParse(cache, document);
+  }
+
+  public void testNoTreeForOutdatedText() {
+    myFixture.configureByText("Main.java", "class Main {}\n");
+    var document = myFixture.getEditor().getDocument();
+    var cache = SyntaxTreeCache.getInstance();
+    var text = document.getText();
+    long modificationStamp = document.getModificationStamp();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () ->
+        document.replaceString(6, 10, "Abcd"));
+
+    assertThat(cache.getTree(document, "java", text, modificationStamp)).isNull();
+    assertThat(getTree(cache, document)).isNotNull();
+    assertThat(cache.getTree(document, "txt", document.getText(),
+        document.getModificationStamp())).isNull();
+  }
+
+  public void testParseStartsFromDocumentTree() {
+    var prefix = """
+        class Main {
+          public int getRandomNumber() {
+            return\s""";
+    var suffix = """
+
+          }
+        }""";
+    myFixture.configureByText("Main.java", prefix + suffix);
+    var document = myFixture.getEditor().getDocument();
+
+    var result = SyntaxTreeCache.getInstance().parse(
+        document,
+        document.getModificationStamp(),
+        "java",
+        prefix,
+        suffix,
+        "10;}\n}\npublic int getRandomNumber(int k) {");
+
+    assertThat(result).isEqualTo("10;");
+  }
+
+  private void assertTreeMatchesFreshParse(SyntaxTreeCache cache, Document document) {
+    var tree = getTree(cache, document);
+    var freshCache = new SyntaxTreeCache();
+    Disposer.register(getTestRootDisposable(), freshCache);
+    var freshTree = getTree(freshCache, document);
+
+    assertThat(tree.getRootNode().hasError()).isFalse();
+    assertThat(dump(tree.getRootNode())).isEqualTo(dump(freshTree.getRootNode()));
+  }
+
+  private static TSTree getTree(SyntaxTreeCache cache, Document document) {
+    return cache.getTree(document, "java", document.getText(), document.getModificationStamp());
+  }
+
+  private static String dump(TSNode node) {
+    var children = IntStream.range(0, node.getChildCount())
+        .mapToObj(i -> dump(node.getChild(i)))
+        .collect(Collectors.joining(" "));
+    return "(" + node.getType() + " " + node.getStartByte() + "-" + node.getEndByte() + " "
+        + children + ")";
+  }
+}
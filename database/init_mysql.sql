@@ -231,6 +231,54 @@ CREATE TABLE IF NOT EXISTS language_stats (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- 创建分钟级预聚合表（写入明细时增量累加，摘要查询直接读取）
+CREATE TABLE IF NOT EXISTS metrics_rollup_minute (
+    bucket_start BIGINT NOT NULL,
+    action_type VARCHAR(100) NOT NULL DEFAULT '',
+    model_name VARCHAR(100) NOT NULL DEFAULT '',
+    programming_language VARCHAR(100) NOT NULL DEFAULT '',
+    event_count BIGINT NOT NULL DEFAULT 0,
+    success_count BIGINT NOT NULL DEFAULT 0,
+    lines_generated BIGINT NOT NULL DEFAULT 0,
+    lines_accepted BIGINT NOT NULL DEFAULT 0,
+    response_time_sum BIGINT NOT NULL DEFAULT 0,
+    response_time_max BIGINT NOT NULL DEFAULT 0,
+    token_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, action_type, model_name, programming_language)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 创建小时级预聚合表（写入明细时增量累加，摘要查询直接读取）
+CREATE TABLE IF NOT EXISTS metrics_rollup_hour (
+    bucket_start BIGINT NOT NULL,
+    action_type VARCHAR(100) NOT NULL DEFAULT '',
+    model_name VARCHAR(100) NOT NULL DEFAULT '',
+    programming_language VARCHAR(100) NOT NULL DEFAULT '',
+    event_count BIGINT NOT NULL DEFAULT 0,
+    success_count BIGINT NOT NULL DEFAULT 0,
+    lines_generated BIGINT NOT NULL DEFAULT 0,
+    lines_accepted BIGINT NOT NULL DEFAULT 0,
+    response_time_sum BIGINT NOT NULL DEFAULT 0,
+    response_time_max BIGINT NOT NULL DEFAULT 0,
+    token_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, action_type, model_name, programming_language)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 创建天级预聚合表（写入明细时增量累加，摘要查询直接读取）
+CREATE TABLE IF NOT EXISTS metrics_rollup_day (
+    bucket_start BIGINT NOT NULL,
+    action_type VARCHAR(100) NOT NULL DEFAULT '',
+    model_name VARCHAR(100) NOT NULL DEFAULT '',
+    programming_language VARCHAR(100) NOT NULL DEFAULT '',
+    event_count BIGINT NOT NULL DEFAULT 0,
+    success_count BIGINT NOT NULL DEFAULT 0,
+    lines_generated BIGINT NOT NULL DEFAULT 0,
+    lines_accepted BIGINT NOT NULL DEFAULT 0,
+    response_time_sum BIGINT NOT NULL DEFAULT 0,
+    response_time_max BIGINT NOT NULL DEFAULT 0,
+    token_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (bucket_start, action_type, model_name, programming_language)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- 为新增表创建索引
 -- 每日趋势表索引
 CREATE INDEX idx_daily_trends_date ON daily_trends(date);
@@ -257,6 +305,21 @@ INSERT INTO productivity_metrics (
     'java', NOW()
 ) ON DUPLICATE KEY UPDATE updated_at = NOW();
 
+-- 从明细表回填聚合表（插件启动时聚合表为空也会自动回填）
+INSERT INTO metrics_rollup_day (
+    bucket_start, action_type, model_name, programming_language,
+    event_count, success_count, lines_generated, lines_accepted,
+    response_time_sum, response_time_max, token_count
+)
+SELECT
+    UNIX_TIMESTAMP(DATE(FROM_UNIXTIME(start_time / 1000))) * 1000,
+    IFNULL(action_type, ''), IFNULL(model_name, ''), IFNULL(programming_language, ''),
+    COUNT(*), SUM(IF(successful, 1, 0)), SUM(IFNULL(lines_generated, 0)), SUM(IFNULL(lines_accepted, 0)),
+    SUM(IFNULL(response_time, 0)), MAX(IFNULL(response_time, 0)), SUM(IFNULL(total_token_count, 0))
+FROM productivity_metrics
+GROUP BY 1, 2, 3, 4
+ON DUPLICATE KEY UPDATE event_count = event_count;
+
 -- 显示创建的表
 SHOW TABLES;
 
@@ -267,6 +330,9 @@ DESCRIBE user_sessions;
 DESCRIBE daily_trends;
 DESCRIBE model_usage_stats;
 DESCRIBE language_stats;
+DESCRIBE metrics_rollup_minute;
+DESCRIBE metrics_rollup_hour;
+DESCRIBE metrics_rollup_day;
 
 -- 显示用户权限
 SHOW GRANTS FOR 'proxyai_user'@'localhost';
@@ -297,7 +363,7 @@ SHOW INDEX FROM language_stats;
 -- 
 -- 4. 检查表结构
 --    运行: SHOW TABLES;
---    应该显示: 6个表
+--    应该显示: 9个表
 -- 
 -- 5. 常见问题解决
 --    - 如果用户创建失败: 检查MySQL版本和权限
@@ -307,6 +373,8 @@ SHOW INDEX FROM language_stats;
 -- 6. 性能优化建议
 --    - 定期清理旧数据: DELETE FROM productivity_metrics WHERE created_at < DATE_SUB(NOW(), INTERVAL 90 DAY);
 --    - 定期分析表: ANALYZE TABLE productivity_metrics;
+--    - 分钟级聚合只保留2天、小时级保留90天，插件启动时自动清理
+--    - 摘要查询读取 metrics_rollup_day，无需扫描 productivity_metrics 全表
 --    - 监控表大小: SELECT table_name, ROUND(((data_length + index_length) / 1024 / 1024), 2) AS 'Size (MB)' FROM information_schema.tables WHERE table_schema = 'proxyai_metrics';
 -- 
 -- 脚本执行完成！
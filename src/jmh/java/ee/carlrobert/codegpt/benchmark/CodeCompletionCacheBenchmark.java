@@ -0,0 +1,73 @@
+package ee.carlrobert.codegpt.benchmark;
+
+import ee.carlrobert.codegpt.codecompletions.CodeCompletionCacheService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Completion cache lookups, which hash a window around the caret on every keystroke.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeCompletionCacheBenchmark {
+
+  @Param({"1", "16"})
+  public int copies;
+
+  private CodeCompletionCacheService cache;
+  private String text;
+  private int offset;
+  private String completion;
+  private String typedText;
+
+  @Setup
+  public void setUp() {
+    var completionCase = Corpus.CompletionCase.load("LruCache.java", copies);
+    text = completionCase.prefix() + completionCase.suffix();
+    offset = completionCase.prefix().length();
+    completion = completionCase.completion();
+    // The document after the user typed the first word of the cached completion
+    int typed = completion.indexOf(' ');
+    typedText = completionCase.prefix() + completion.substring(0, typed) + completionCase.suffix();
+
+    cache = new CodeCompletionCacheService();
+    cache.setCache(text, offset, completion);
+  }
+
+  @Benchmark
+  public void store() {
+    cache.setCache(text, offset, completion);
+  }
+
+  @Benchmark
+  public String hit() {
+    // Storing again resets the per-position hit limit
+    cache.setCache(text, offset, completion);
+    return cache.getCache(text, offset);
+  }
+
+  @Benchmark
+  public String typedAheadHit() {
+    cache.setCache(text, offset, completion);
+    return cache.getCache(typedText, offset + completion.indexOf(' '));
+  }
+
+  @Benchmark
+  public String miss() {
+    return cache.getCache(text, offset - 1);
+  }
+}
@@ -0,0 +1,74 @@
+package ee.carlrobert.codegpt.benchmark;
+
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import ee.carlrobert.codegpt.codecompletions.CodeCompletionFormatter;
+import ee.carlrobert.codegpt.codecompletions.CompletionSplitter;
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParserFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Post-processing that runs on every inline completion: tree-sitter truncation, formatting against
+ * the caret line and splitting off the next word.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionPostProcessingBenchmark {
+
+  @Param({"LruCache.java", "inventory.py", "router.ts", "worker.go"})
+  public String file;
+
+  // Copies of the file that make up the document, 16 copies being a few thousand lines
+  @Param({"1", "16"})
+  public int copies;
+
+  private Corpus.CompletionCase completionCase;
+  private DocumentImpl document;
+
+  @Setup
+  public void setUp() {
+    completionCase = Corpus.CompletionCase.load(file, copies);
+    document = new DocumentImpl(completionCase.prefix() + completionCase.suffix());
+  }
+
+  @TearDown
+  public void tearDown() {
+    CodeCompletionParserFactory.dispose();
+  }
+
+  @Benchmark
+  public String parse() {
+    return CodeCompletionParserFactory.parse(
+        completionCase.extension(),
+        completionCase.prefix(),
+        completionCase.suffix(),
+        completionCase.completion());
+  }
+
+  @Benchmark
+  public String format() {
+    return new CodeCompletionFormatter(
+        document, completionCase.prefix().length(), completionCase.extension())
+        .format(completionCase.completion());
+  }
+
+  @Benchmark
+  public String split() {
+    return CompletionSplitter.Companion.split(completionCase.completion());
+  }
+}
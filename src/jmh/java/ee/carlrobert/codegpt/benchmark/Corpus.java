@@ -0,0 +1,52 @@
+package ee.carlrobert.codegpt.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Loads the benchmark corpora from the test resources under {@code /benchmarks}.
+ */
+final class Corpus {
+
+  static final String CARET = "<caret>";
+
+  private Corpus() {
+  }
+
+  static String read(String path) {
+    try (var input = Corpus.class.getResourceAsStream("/benchmarks/" + path)) {
+      if (input == null) {
+        throw new IllegalArgumentException("Corpus not found: " + path);
+      }
+      return new String(input.readAllBytes(), UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Source file from {@code completion/} split at its caret marker, together with the completion
+   * returned for it. Larger files are built by surrounding the file with {@code copies - 1}
+   * copies of itself, half before and half after it.
+   */
+  record CompletionCase(String extension, String prefix, String suffix, String completion) {
+
+    static CompletionCase load(String fileName, int copies) {
+      var text = read("completion/" + fileName);
+      int caret = text.indexOf(CARET);
+      if (caret < 0) {
+        throw new IllegalArgumentException("No " + CARET + " marker in " + fileName);
+      }
+      var file = text.replace(CARET, "");
+      var before = (file + "\n").repeat((copies - 1) / 2);
+      var after = ("\n" + file).repeat(copies - 1 - (copies - 1) / 2);
+      return new CompletionCase(
+          fileName.substring(fileName.lastIndexOf('.') + 1),
+          before + text.substring(0, caret),
+          text.substring(caret + CARET.length()) + after,
+          read("completion/" + fileName + ".completion").stripTrailing());
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package ee.carlrobert.codegpt.benchmark;
+
+import ee.carlrobert.codegpt.EncodingManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Token counting and the prefix/suffix truncation used to build infill requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingManagerBenchmark {
+
+  @Param({"1", "16"})
+  public int copies;
+
+  @Param({"128", "1024"})
+  public int maxTokens;
+
+  private EncodingManager encodingManager;
+  private String prefix;
+  private String suffix;
+  private String response;
+
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    // The service is normally created by the platform
+    var constructor = EncodingManager.class.getDeclaredConstructor();
+    constructor.setAccessible(true);
+    encodingManager = constructor.newInstance();
+
+    var completionCase = Corpus.CompletionCase.load("LruCache.java", copies);
+    prefix = completionCase.prefix();
+    suffix = completionCase.suffix();
+    response = Corpus.read("chat/response.md").repeat(copies);
+  }
+
+  @Benchmark
+  public int countTokens() {
+    return encodingManager.countTokens(response);
+  }
+
+  @Benchmark
+  public String truncatePrefix() {
+    return encodingManager.truncateText(prefix, 0, prefix.length(), maxTokens, false);
+  }
+
+  @Benchmark
+  public String truncateSuffix() {
+    return encodingManager.truncateText(suffix, 0, suffix.length(), maxTokens, true);
+  }
+
+  @Benchmark
+  public String truncateWholeText() {
+    return encodingManager.truncateText(prefix, maxTokens, false);
+  }
+}
@@ -0,0 +1,57 @@
+package ee.carlrobert.codegpt.benchmark;
+
+import ee.carlrobert.codegpt.toolwindow.chat.parser.Segment;
+import ee.carlrobert.codegpt.toolwindow.chat.parser.SseMessageParser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a streamed chat response with thinking, search/replace and code blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseMessageParserBenchmark {
+
+  // Characters per streamed message, 0 streaming the whole response as one message
+  @Param({"8", "64", "0"})
+  public int chunkSize;
+
+  private List<String> chunks;
+
+  @Setup
+  public void setUp() {
+    var response = Corpus.read("chat/response.md");
+    chunks = new ArrayList<>();
+    int size = chunkSize == 0 ? response.length() : chunkSize;
+    for (int i = 0; i < response.length(); i += size) {
+      chunks.add(response.substring(i, Math.min(i + size, response.length())));
+    }
+  }
+
+  @Benchmark
+  public int parse() {
+    var parser = new SseMessageParser();
+    int segments = 0;
+    for (var chunk : chunks) {
+      List<Segment> parsed = parser.parse(chunk);
+      segments += parsed.size();
+    }
+    return segments;
+  }
+}
@@ -14,7 +14,6 @@ import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionDe
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionMessage;
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionStandardMessage;
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIMessageTextContent;
-import java.util.List;
 import java.util.stream.Stream;
 
 @Service
@@ -22,6 +21,8 @@ public final class EncodingManager {
 
   private static final String SPECIAL_START = "<|";
   private static final String SPECIAL_END = "|>";
+  // Initial guess of the characters per token when truncating a range; the window grows as needed
+  private static final int CHARS_PER_TOKEN_ESTIMATE = 4;
 
   private static final Logger LOG = Logger.getInstance(EncodingManager.class);
 
@@ -83,18 +84,121 @@ public final class EncodingManager {
    * @return The truncated text.
    */
   public String truncateText(String text, int maxTokens, boolean fromStart) {
-    var textWithSpecialEncodingsRemoved = text.replace(SPECIAL_START, "").replace(SPECIAL_END, "");
-    var tokens = encoding.encode(textWithSpecialEncodingsRemoved);
-    int tokensToRetrieve = Math.min(maxTokens, tokens.size());
-    int startIndex = fromStart ? 0 : tokens.size() - tokensToRetrieve;
-    var truncatedList =
-        tokens.boxed().subList(startIndex, startIndex + tokensToRetrieve);
-    return encoding.decode(convertToIntArrayList(truncatedList));
+    var tokens = encoding.encode(removeSpecialEncodings(text));
+    return decode(tokens, maxTokens, fromStart);
+  }
+
+  /**
+   * Truncates {@code text[start, end)} to the given number of tokens without encoding the whole
+   * range. The character window next to the kept end starts at a few characters per token and
+   * doubles until it yields enough tokens, so the cost depends on the token budget rather than on
+   * the length of the range.
+   *
+   * <p>The window is cut at the start of a non-blank line when there is one, where the tokens on
+   * both sides are the same as when encoding the whole range, so the result matches
+   * {@link #truncateText(String, int, boolean)}. Otherwise, e.g. for a single long line, the cut
+   * never splits a surrogate pair or a special marker, and the token at the cut is discarded.
+   *
+   * @param text      The text to truncate, e.g. a document's immutable char sequence.
+   * @param start     The start offset of the range, inclusive.
+   * @param end       The end offset of the range, exclusive.
+   * @param maxTokens The maximum number of tokens to keep.
+   * @param fromStart Whether to keep the start or the end of the range.
+   * @return The truncated text.
+   */
+  public String truncateText(
+      CharSequence text, int start, int end, int maxTokens, boolean fromStart) {
+    long windowSize = (long) Math.max(1, maxTokens) * CHARS_PER_TOKEN_ESTIMATE;
+    while (true) {
+      int windowStart = fromStart ? start : (int) Math.max(start, end - windowSize);
+      int windowEnd = fromStart ? (int) Math.min(end, start + windowSize) : end;
+      boolean lineCut = true;
+      if (fromStart && windowEnd < end) {
+        int cut = windowEnd;
+        while (cut > start && !isLineStart(text, cut, end)) {
+          cut--;
+        }
+        if (cut > start) {
+          windowEnd = cut;
+        } else {
+          lineCut = false;
+          windowEnd = extendCut(text, windowEnd, end, true);
+        }
+      } else if (!fromStart && windowStart > start) {
+        int cut = windowStart;
+        while (cut < end && !isLineStart(text, cut, end)) {
+          cut++;
+        }
+        if (cut < end) {
+          windowStart = cut;
+        } else {
+          lineCut = false;
+          windowStart = extendCut(text, windowStart, start, false);
+        }
+      }
+
+      boolean wholeRange = windowStart == start && windowEnd == end;
+      var window = text.subSequence(windowStart, windowEnd).toString();
+      var tokens = encoding.encode(removeSpecialEncodings(window));
+      if (wholeRange || tokens.size() > (lineCut ? maxTokens - 1 : maxTokens)) {
+        return decode(tokens, maxTokens, fromStart);
+      }
+      windowSize *= 2;
+    }
+  }
+
+  /**
+   * Whether {@code offset} starts a line with a non-whitespace character before the next line
+   * break. The cl100k pre-tokenizer never merges such a line with the line break before it.
+   */
+  private static boolean isLineStart(CharSequence text, int offset, int end) {
+    char previous = text.charAt(offset - 1);
+    if (previous != '\n' && previous != '\r') {
+      return false;
+    }
+    for (int i = offset; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        return false;
+      }
+      if (!Character.isWhitespace(c)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves a cut that falls inside a surrogate pair or a special marker towards {@code limit}, so
+   * the window holds the whole pair or marker and strips it like the whole text would.
+   */
+  private static int extendCut(CharSequence text, int cut, int limit, boolean forward) {
+    int step = forward ? 1 : -1;
+    while (cut != limit && splitsPair(text, cut)) {
+      cut += step;
+    }
+    return cut;
   }
 
-  private IntArrayList convertToIntArrayList(List<Integer> tokens) {
-    var result = new IntArrayList(tokens.size());
-    tokens.forEach(result::add);
-    return result;
+  private static boolean splitsPair(CharSequence text, int offset) {
+    char before = text.charAt(offset - 1);
+    char after = text.charAt(offset);
+    return Character.isHighSurrogate(before) && Character.isLowSurrogate(after)
+        || before == SPECIAL_START.charAt(0) && after == SPECIAL_START.charAt(1)
+        || before == SPECIAL_END.charAt(0) && after == SPECIAL_END.charAt(1);
+  }
+
+  private static String removeSpecialEncodings(String text) {
+    return text.replace(SPECIAL_START, "").replace(SPECIAL_END, "");
+  }
+
+  private String decode(IntArrayList tokens, int maxTokens, boolean fromStart) {
+    int tokensToRetrieve = Math.min(maxTokens, tokens.size());
+    int startIndex = fromStart ? 0 : tokens.size() - tokensToRetrieve;
+    var truncated = new IntArrayList(tokensToRetrieve);
+    for (int i = startIndex; i < startIndex + tokensToRetrieve; i++) {
+      truncated.add(tokens.get(i));
+    }
+    return encoding.decode(truncated);
   }
 }
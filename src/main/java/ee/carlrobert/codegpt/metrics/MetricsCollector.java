@@ -1,29 +1,56 @@
 package ee.carlrobert.codegpt.metrics;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import ee.carlrobert.codegpt.metrics.export.MetricsExporter;
 import ee.carlrobert.codegpt.metrics.integration.CodeCompletionMetricsIntegration;
 import ee.carlrobert.codegpt.metrics.integration.ChatMetricsIntegration;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+import ee.carlrobert.codegpt.metrics.storage.MetricsRingBuffer;
+import ee.carlrobert.codegpt.metrics.storage.MetricsWriteBehindQueue;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 核心指标收集服务，负责收集、处理和存储效能度量指标
+ * 项目关闭时，仍驻留在内存中的已完成指标会交给持久化队列
  */
 @Service
-public final class MetricsCollector {
+public final class MetricsCollector implements Disposable {
     private static final Logger LOG = Logger.getInstance(MetricsCollector.class);
+    // 内存中最多保留的已完成指标数，更早的数据被覆盖时转入持久化队列
+    static final int COMPLETED_METRICS_CAPACITY = 4_096;
     private final ConcurrentMap<String, ProductivityMetrics> activeMetrics = new ConcurrentHashMap<>();
-    private final List<ProductivityMetrics> completedMetrics = new ArrayList<>();
+    private final MetricsRingBuffer<ProductivityMetrics> completedMetrics =
+        new MetricsRingBuffer<>(COMPLETED_METRICS_CAPACITY, MetricsCollector::spillToStorage);
+    // 已移出列式副本的指标的累加统计量，与列式副本合起来覆盖整个会话
+    private final ProductivityAccumulator accumulator = new ProductivityAccumulator();
+    // 已完成指标的列式副本，供内存分析和报告分区使用；容量与环形缓冲区对齐（按整块丢弃，最多多保留一块），
+    // 丢弃的块折叠进累加器。评分等完成后才写入的字段通过 updateUserRating 同步
+    private final MetricsColumnStore completedColumns =
+        MetricsColumnStore.forRows(COMPLETED_METRICS_CAPACITY, this::archive);
+    // 上次清空时列式副本的总行数，行号小于它的指标已不在统计范围内
+    private long clearedColumnRow;
+    // 指标完成监听器，供实时推送等增量消费方使用
+    private final List<Consumer<ProductivityMetrics>> completionListeners = new CopyOnWriteArrayList<>();
+    // 清空监听器，增量维护统计量的消费方借此同步清空
+    private final List<Runnable> clearListeners = new CopyOnWriteArrayList<>();
+    // 已完成指标的版本号，每次新增或清空时递增
+    private final AtomicLong version = new AtomicLong();
     private final String sessionId;
     private final Project project;
-    private boolean metricsEnabled = true;
+    private volatile boolean metricsEnabled = true;
 
     public MetricsCollector(Project project) {
         this.project = project;
@@ -66,7 +93,7 @@ public final class MetricsCollector {
                 metrics.markFailed(errorMessage);
             }
             
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             activeMetrics.values().remove(metrics);
             
             // 异步保存指标数据
@@ -88,17 +115,156 @@ public final class MetricsCollector {
         return metricsEnabled;
     }
 
+    /**
+     * 返回已完成指标的副本；只需遍历时请使用 {@link #getCompletedMetricsSnapshot()}
+     */
     public List<ProductivityMetrics> getCompletedMetrics() {
-        return new ArrayList<>(completedMetrics);
+        List<ProductivityMetrics> copy = new ArrayList<>(completedMetrics.size());
+        completedMetrics.snapshot().forEach(copy::add);
+        return copy;
+    }
+
+    /**
+     * 已完成指标的快照视图，遍历时不复制数据
+     */
+    public MetricsRingBuffer.Snapshot<ProductivityMetrics> getCompletedMetricsSnapshot() {
+        return completedMetrics.snapshot();
+    }
+
+    /**
+     * 已完成指标的列式视图，用于统计分析
+     */
+    public MetricsColumnStore.Columns getCompletedMetricsColumns() {
+        return completedColumns.columns();
+    }
+
+    /**
+     * 生成报告所需的一致快照：已移出列式副本的累加统计量，加上列式副本的只读视图，两者不重叠
+     */
+    public ProductivityReportGenerator.Source getReportSource() {
+        // 与丢弃回调的加锁顺序一致：先列式副本，后累加器
+        synchronized (completedColumns) {
+            MetricsColumnStore.Columns columns = completedColumns.columns();
+            synchronized (accumulator) {
+                return new ProductivityReportGenerator.Source(accumulator.copy(), columns);
+            }
+        }
+    }
+
+    /**
+     * 注册指标完成监听器，parentDisposable 释放时自动移除。
+     * 回调在完成指标的线程上同步执行，应只做轻量的累加或入队
+     */
+    public void addCompletionListener(Consumer<ProductivityMetrics> listener, Disposable parentDisposable) {
+        completionListeners.add(listener);
+        Disposer.register(parentDisposable, () -> completionListeners.remove(listener));
+    }
+
+    /**
+     * 注册已完成指标被清空时的监听器，parentDisposable 释放时自动移除
+     */
+    public void addClearListener(Runnable listener, Disposable parentDisposable) {
+        clearListeners.add(listener);
+        Disposer.register(parentDisposable, () -> clearListeners.remove(listener));
+    }
+
+    /**
+     * 已完成指标的版本号，版本不变说明内存中的指标数据没有变化
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     public void clearCompletedMetrics() {
         completedMetrics.clear();
+        synchronized (completedColumns) {
+            completedColumns.clear();
+            synchronized (accumulator) {
+                accumulator.reset();
+                clearedColumnRow = completedColumns.getTotalAppended();
+            }
+        }
+        version.incrementAndGet();
+        for (Runnable listener : clearListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                LOG.warn("Metrics clear listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * 更新已完成指标的用户评分，并把评分变化同步到列式副本；该行已移出列式副本时改为更新累加器
+     */
+    public void updateUserRating(ProductivityMetrics metrics, int rating) {
+        int oldRating = metrics.getUserRating();
+        metrics.setUserRating(rating);
+        long row = metrics.getColumnRow();
+        if (row < 0) {
+            return;
+        }
+        if (!completedColumns.updateUserRating(row, metrics.getUserRating())) {
+            // 丢弃回调在列式副本的锁内执行，更新失败时该行已按旧评分折叠进累加器
+            synchronized (accumulator) {
+                if (row < clearedColumnRow) {
+                    return;
+                }
+                accumulator.updateUserRating(metrics, oldRating, metrics.getUserRating());
+            }
+        }
+        version.incrementAndGet();
     }
 
     public String getSessionId() {
         return sessionId;
     }
+
+    private void addCompleted(ProductivityMetrics metrics) {
+        // 先写入列式副本，再放入环形缓冲区：评分更新只能经由环形缓冲区找到指标，此时行号已就绪
+        metrics.setColumnRow(completedColumns.append(metrics));
+        completedMetrics.add(metrics);
+        version.incrementAndGet();
+        for (Consumer<ProductivityMetrics> listener : completionListeners) {
+            try {
+                listener.accept(metrics);
+            } catch (Exception e) {
+                LOG.warn("Metrics completion listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * 停止收集，并把环形缓冲区中尚未被挤出（因而尚未落库）的指标交给写入队列；
+     * 写入队列是应用级服务，晚于项目服务释放，会在IDE退出前刷写完毕
+     */
+    @Override
+    public void dispose() {
+        metricsEnabled = false;
+        MetricsRingBuffer.Snapshot<ProductivityMetrics> resident = completedMetrics.snapshot();
+        // 逻辑清空后，这些数据之后被覆盖时不会再次触发落库
+        completedMetrics.clear();
+        int count = 0;
+        for (ProductivityMetrics metrics : resident) {
+            spillToStorage(metrics);
+            count++;
+        }
+        LOG.info("Metrics collector disposed, queued " + count + " resident metrics for storage");
+    }
+
+    private void archive(MetricsColumnStore.Columns dropped) {
+        synchronized (accumulator) {
+            for (int row = 0; row < dropped.size(); row++) {
+                accumulator.add(dropped, row);
+            }
+        }
+    }
+
+    private static void spillToStorage(ProductivityMetrics metrics) {
+        if (ApplicationManager.getApplication() != null) {
+            MetricsWriteBehindQueue.getInstance().enqueue(metrics);
+        }
+    }
     
     /**
      * 存储活跃指标（用于兼容性）
@@ -126,7 +292,7 @@ public final class MetricsCollector {
             metrics.addAdditionalData("isAIAssisted", isAIAssisted);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.debug("Recorded typing activity: " + fileName + ", lines: " + linesTyped);
         } catch (Exception e) {
             LOG.warn("Failed to record typing activity", e);
@@ -146,7 +312,7 @@ public final class MetricsCollector {
             metrics.recordCodeCompletion(language, completionText.length(), accepted ? completionText.length() : 0, processingTime);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.info("AI补全使用记录: " + language + ", 接受: " + accepted + ", 响应时间: " + processingTime + "ms");
         } catch (Exception e) {
             LOG.warn("Failed to record AI completion usage", e);
@@ -185,7 +351,7 @@ public final class MetricsCollector {
             metrics.addAdditionalData("taskType", taskType);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.debug("Recorded AI chat code generation: " + taskType);
         } catch (Exception e) {
             LOG.warn("Failed to record AI chat code generation", e);
@@ -209,7 +375,7 @@ public final class MetricsCollector {
             metrics.addAdditionalData("issueType", issueType);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.debug("Recorded debugging session: " + issueType);
         } catch (Exception e) {
             LOG.warn("Failed to record debugging session", e);
@@ -233,7 +399,7 @@ public final class MetricsCollector {
             metrics.addAdditionalData("improvementType", improvementType);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.debug("Recorded code quality improvement: " + metricType);
         } catch (Exception e) {
             LOG.warn("Failed to record code quality improvement", e);
@@ -255,7 +421,7 @@ public final class MetricsCollector {
             metrics.addAdditionalData("learningTime", learningTime);
             metrics.complete();
             metrics.markSuccessful();
-            completedMetrics.add(metrics);
+            addCompleted(metrics);
             LOG.debug("Recorded learning activity: " + topic);
         } catch (Exception e) {
             LOG.warn("Failed to record learning activity", e);
@@ -1,20 +1,55 @@
 package ee.carlrobert.codegpt.metrics;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import ee.carlrobert.codegpt.metrics.config.MetricsDatabaseConfig;
+import ee.carlrobert.codegpt.metrics.storage.MetricsConnectionPool;
+import ee.carlrobert.codegpt.metrics.storage.MetricsRollupStore;
+import ee.carlrobert.codegpt.metrics.storage.MetricsWriteBehindQueue;
 
+import javax.sql.DataSource;
 import java.sql.*;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 指标数据库管理器
- * 负责将指标数据存储到MySQL数据库
+ * 负责将指标数据存储到数据库（默认内嵌H2文件库，可切换为MySQL）
  */
 public class MetricsDatabaseManager {
     private static final Logger LOG = Logger.getInstance(MetricsDatabaseManager.class);
     private static volatile MetricsDatabaseManager instance;
     private static final Object lock = new Object();
+    private static final long MAINTENANCE_INTERVAL_HOURS = 24;
+    private static final int PURGE_BATCH_SIZE = 5_000;
+    
+    private static final String INSERT_METRICS_SQL = """
+        INSERT INTO productivity_metrics (
+            id, action_id, action_type, model_name, session_id, user_id,
+            start_time, end_time, response_time, processing_time,
+            input_token_count, output_token_count, total_token_count, token_cost,
+            lines_generated, lines_accepted, lines_rejected, acceptance_rate,
+            successful, error_message, retry_count, quality_score,
+            programming_language, project_type, file_extension, context_size,
+            user_experience, user_rating, feedback,
+            memory_usage, cpu_usage, network_latency,
+            session_duration, response_length, code_length, code_density,
+            concepts_learned, learning_efficiency,
+            additional_data, created_at, updated_at
+        ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private MetricsConnectionPool connectionPool;
+    private ScheduledFuture<?> maintenanceTask;
+    // 数据库内容的版本号，每次写入、清理或维护后递增，用于 HTTP 条件请求
+    private final AtomicLong dataVersion = new AtomicLong();
     
     private MetricsDatabaseManager() {}
     
@@ -31,144 +66,222 @@ public class MetricsDatabaseManager {
     
     /**
      * 保存指标数据到数据库
+     * 数据先进入异步写入队列，由后台线程批量写入，不阻塞调用线程
      */
     public void saveMetrics(ProductivityMetrics metrics) {
         if (metrics == null) {
             return;
         }
-        
+
         try {
-            // 获取数据库配置
-            MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
-            if (!dbConfig.isValid()) {
-                LOG.warn("数据库配置无效，无法保存指标数据");
-                return;
-            }
-            
-            // 连接数据库
-            try (Connection conn = DriverManager.getConnection(
-                    dbConfig.getDbUrl(), 
-                    dbConfig.getDbUser(), 
-                    dbConfig.getDbPassword())) {
-                
-                // 准备SQL语句
-                String sql = """
-                    INSERT INTO productivity_metrics (
-                        id, action_id, action_type, model_name, session_id, user_id,
-                        start_time, end_time, response_time, processing_time,
-                        input_token_count, output_token_count, total_token_count, token_cost,
-                        lines_generated, lines_accepted, lines_rejected, acceptance_rate,
-                        successful, error_message, retry_count, quality_score,
-                        programming_language, project_type, file_extension, context_size,
-                        user_experience, user_rating, feedback,
-                        memory_usage, cpu_usage, network_latency,
-                        session_duration, response_length, code_length, code_density,
-                        concepts_learned, learning_efficiency,
-                        additional_data, created_at, updated_at
-                    ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                    """;
-                
-                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    int paramIndex = 1;
-                    
-                    // 基础信息
-                    pstmt.setString(paramIndex++, metrics.getId());
-                    pstmt.setString(paramIndex++, metrics.getActionId());
-                    pstmt.setString(paramIndex++, metrics.getActionType());
-                    pstmt.setString(paramIndex++, metrics.getModelName());
-                    pstmt.setString(paramIndex++, metrics.getSessionId());
-                    pstmt.setString(paramIndex++, metrics.getUserId());
-                    
-                    // 时间指标
-                    pstmt.setLong(paramIndex++, metrics.getStartTime());
-                    pstmt.setLong(paramIndex++, metrics.getEndTime());
-                    pstmt.setLong(paramIndex++, metrics.getResponseTime());
-                    pstmt.setLong(paramIndex++, metrics.getProcessingTime());
-                    
-                    // AI交互指标
-                    pstmt.setInt(paramIndex++, metrics.getInputTokenCount());
-                    pstmt.setInt(paramIndex++, metrics.getOutputTokenCount());
-                    pstmt.setInt(paramIndex++, metrics.getTotalTokenCount());
-                    pstmt.setDouble(paramIndex++, metrics.getTokenCost());
-                    
-                    // 代码质量指标
-                    pstmt.setInt(paramIndex++, metrics.getLinesGenerated());
-                    pstmt.setInt(paramIndex++, metrics.getLinesAccepted());
-                    pstmt.setInt(paramIndex++, metrics.getLinesRejected());
-                    pstmt.setDouble(paramIndex++, metrics.getAcceptanceRate());
-                    
-                    // 效能指标
-                    pstmt.setBoolean(paramIndex++, metrics.isSuccessful());
-                    pstmt.setString(paramIndex++, metrics.getErrorMessage());
-                    pstmt.setInt(paramIndex++, metrics.getRetryCount());
-                    pstmt.setString(paramIndex++, metrics.getQualityScore());
-                    
-                    // 上下文信息
-                    pstmt.setString(paramIndex++, metrics.getProgrammingLanguage());
-                    pstmt.setString(paramIndex++, metrics.getProjectType());
-                    pstmt.setString(paramIndex++, metrics.getFileExtension());
-                    pstmt.setString(paramIndex++, metrics.getContextSize());
-                    
-                    // 用户行为指标
-                    pstmt.setString(paramIndex++, metrics.getUserExperience());
-                    pstmt.setInt(paramIndex++, metrics.getUserRating());
-                    pstmt.setString(paramIndex++, metrics.getFeedback());
-                    
-                    // 系统性能指标
-                    pstmt.setLong(paramIndex++, metrics.getMemoryUsage());
-                    pstmt.setDouble(paramIndex++, metrics.getCpuUsage());
-                    pstmt.setString(paramIndex++, metrics.getNetworkLatency());
-                    
-                    // 新增指标字段
-                    pstmt.setLong(paramIndex++, metrics.getSessionDuration());
-                    pstmt.setInt(paramIndex++, metrics.getResponseLength());
-                    pstmt.setInt(paramIndex++, metrics.getCodeLength());
-                    pstmt.setDouble(paramIndex++, metrics.getCodeDensity());
-                    pstmt.setInt(paramIndex++, metrics.getConceptsLearned());
-                    pstmt.setDouble(paramIndex++, metrics.getLearningEfficiency());
-                    
-                    // 扩展数据
-                    pstmt.setString(paramIndex++, metrics.getAdditionalDataAsJson());
-                    
-                    // 时间戳
-                    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-                    pstmt.setTimestamp(paramIndex++, now);
-                    pstmt.setTimestamp(paramIndex++, now);
-                    
-                    // 执行插入
-                    int rowsAffected = pstmt.executeUpdate();
-                    if (rowsAffected > 0) {
-                        LOG.info("指标数据成功保存到数据库: " + metrics.getActionId());
-                    } else {
-                        LOG.warn("指标数据保存失败，没有行被影响: " + metrics.getActionId());
-                    }
-                }
+            MetricsWriteBehindQueue writeQueue = ApplicationManager.getApplication() != null
+                ? MetricsWriteBehindQueue.getInstance()
+                : null;
+            if (writeQueue != null) {
+                writeQueue.enqueue(metrics);
+            } else {
+                saveMetricsBatch(List.of(metrics));
             }
-            
         } catch (Exception e) {
             LOG.error("保存指标数据到数据库失败: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * 以 JDBC batch 方式批量写入指标数据，并在同一事务中累加到分钟/小时/天聚合表
+     */
+    public void saveMetricsBatch(List<ProductivityMetrics> batch) throws SQLException {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        DataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            throw new SQLException("数据库配置无效，无法保存指标数据");
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_METRICS_SQL)) {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                for (ProductivityMetrics metrics : batch) {
+                    bindMetrics(pstmt, metrics, now);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                MetricsRollupStore.apply(conn, batch);
+                conn.commit();
+                dataVersion.incrementAndGet();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            LOG.debug("批量保存指标数据成功，条数: " + batch.size());
+        }
+    }
+
+    private void bindMetrics(PreparedStatement pstmt, ProductivityMetrics metrics, Timestamp now)
+            throws SQLException {
+        int paramIndex = 1;
+
+        // 基础信息
+        pstmt.setString(paramIndex++, metrics.getId());
+        pstmt.setString(paramIndex++, metrics.getActionId());
+        pstmt.setString(paramIndex++, metrics.getActionType());
+        pstmt.setString(paramIndex++, metrics.getModelName());
+        pstmt.setString(paramIndex++, metrics.getSessionId());
+        pstmt.setString(paramIndex++, metrics.getUserId());
+
+        // 时间指标
+        pstmt.setLong(paramIndex++, metrics.getStartTime());
+        pstmt.setLong(paramIndex++, metrics.getEndTime());
+        pstmt.setLong(paramIndex++, metrics.getResponseTime());
+        pstmt.setLong(paramIndex++, metrics.getProcessingTime());
+
+        // AI交互指标
+        pstmt.setInt(paramIndex++, metrics.getInputTokenCount());
+        pstmt.setInt(paramIndex++, metrics.getOutputTokenCount());
+        pstmt.setInt(paramIndex++, metrics.getTotalTokenCount());
+        pstmt.setDouble(paramIndex++, metrics.getTokenCost());
+
+        // 代码质量指标
+        pstmt.setInt(paramIndex++, metrics.getLinesGenerated());
+        pstmt.setInt(paramIndex++, metrics.getLinesAccepted());
+        pstmt.setInt(paramIndex++, metrics.getLinesRejected());
+        pstmt.setDouble(paramIndex++, metrics.getAcceptanceRate());
+
+        // 效能指标
+        pstmt.setBoolean(paramIndex++, metrics.isSuccessful());
+        pstmt.setString(paramIndex++, metrics.getErrorMessage());
+        pstmt.setInt(paramIndex++, metrics.getRetryCount());
+        pstmt.setString(paramIndex++, metrics.getQualityScore());
+
+        // 上下文信息
+        pstmt.setString(paramIndex++, metrics.getProgrammingLanguage());
+        pstmt.setString(paramIndex++, metrics.getProjectType());
+        pstmt.setString(paramIndex++, metrics.getFileExtension());
+        pstmt.setString(paramIndex++, metrics.getContextSize());
+
+        // 用户行为指标
+        pstmt.setString(paramIndex++, metrics.getUserExperience());
+        pstmt.setInt(paramIndex++, metrics.getUserRating());
+        pstmt.setString(paramIndex++, metrics.getFeedback());
+
+        // 系统性能指标
+        pstmt.setLong(paramIndex++, metrics.getMemoryUsage());
+        pstmt.setDouble(paramIndex++, metrics.getCpuUsage());
+        pstmt.setString(paramIndex++, metrics.getNetworkLatency());
+
+        // 新增指标字段
+        pstmt.setLong(paramIndex++, metrics.getSessionDuration());
+        pstmt.setInt(paramIndex++, metrics.getResponseLength());
+        pstmt.setInt(paramIndex++, metrics.getCodeLength());
+        pstmt.setDouble(paramIndex++, metrics.getCodeDensity());
+        pstmt.setInt(paramIndex++, metrics.getConceptsLearned());
+        pstmt.setDouble(paramIndex++, metrics.getLearningEfficiency());
+
+        // 扩展数据
+        pstmt.setString(paramIndex++, metrics.getAdditionalDataAsJson());
+
+        // 时间戳
+        pstmt.setTimestamp(paramIndex++, now);
+        pstmt.setTimestamp(paramIndex, now);
+    }
+
+    /**
+     * 获取与当前配置匹配的连接池，配置变更后重建
+     * 所有读写操作共用该连接池，避免每次查询都重新建立TCP连接和认证
+     */
+    public DataSource getDataSource() {
+        return getConnectionPool();
+    }
+
+    private MetricsConnectionPool getConnectionPool() {
+        MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
+        if (dbConfig == null || !dbConfig.isValid()) {
+            return null;
+        }
+
+        synchronized (lock) {
+            if (connectionPool == null || !connectionPool.matches(dbConfig)) {
+                MetricsConnectionPool previous = connectionPool;
+                connectionPool = MetricsConnectionPool.fromConfig(dbConfig);
+                if (previous != null) {
+                    previous.close(0);
+                }
+            }
+            return connectionPool;
+        }
+    }
+
+    /**
+     * 获取连接池运行状态（活跃/空闲连接数、等待时间、语句缓存命中等）
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        MetricsConnectionPool pool;
+        synchronized (lock) {
+            pool = connectionPool;
+        }
+        if (pool == null) {
+            stats.put("initialized", false);
+            return stats;
+        }
+
+        stats.put("initialized", true);
+        stats.put("maxPoolSize", pool.getMaxPoolSize());
+        stats.put("active", pool.getActiveCount());
+        stats.put("idle", pool.getIdleCount());
+        stats.put("created", pool.getCreatedCount());
+        stats.put("borrowed", pool.getBorrowCount());
+        stats.put("timeouts", pool.getTimeoutCount());
+        stats.put("evicted", pool.getEvictedCount());
+        stats.put("averageWaitMs", pool.getAverageWaitMillis());
+        stats.put("maxWaitMs", pool.getMaxWaitMillis());
+        stats.put("statementCacheHits", pool.getStatementCacheHits());
+        stats.put("statementCacheMisses", pool.getStatementCacheMisses());
+        return stats;
+    }
+
+    /**
+     * 关闭连接池，在IDE退出时由写入队列调用
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            if (maintenanceTask != null) {
+                maintenanceTask.cancel(false);
+                maintenanceTask = null;
+            }
+            if (connectionPool != null) {
+                connectionPool.close(5_000);
+                connectionPool = null;
+            }
+        }
+    }
     
     /**
      * 清除所有指标数据
      */
     public void clearAllMetrics() {
         try {
-            MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
-            if (!dbConfig.isValid()) {
+            DataSource dataSource = getDataSource();
+            if (dataSource == null) {
                 LOG.warn("数据库配置无效，无法清除指标数据");
                 return;
             }
             
-            try (Connection conn = DriverManager.getConnection(
-                    dbConfig.getDbUrl(), 
-                    dbConfig.getDbUser(), 
-                    dbConfig.getDbPassword())) {
-                
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                // 聚合表与明细一起清空，否则摘要仍会返回已清除的数据，且表非空时不会重新回填
                 try (Statement stmt = conn.createStatement()) {
                     int rowsAffected = stmt.executeUpdate("DELETE FROM productivity_metrics");
+                    MetricsRollupStore.clear(conn);
+                    conn.commit();
+                    dataVersion.incrementAndGet();
                     LOG.info("成功清除 " + rowsAffected + " 条指标数据");
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
                 }
             }
             
@@ -182,22 +295,16 @@ public class MetricsDatabaseManager {
      */
     public int getMetricsCount() {
         try {
-            MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
-            if (!dbConfig.isValid()) {
+            DataSource dataSource = getDataSource();
+            if (dataSource == null) {
                 return 0;
             }
             
-            try (Connection conn = DriverManager.getConnection(
-                    dbConfig.getDbUrl(), 
-                    dbConfig.getDbUser(), 
-                    dbConfig.getDbPassword())) {
-                
-                try (Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM productivity_metrics")) {
-                    
-                    if (rs.next()) {
-                        return rs.getInt(1);
-                    }
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM productivity_metrics");
+                 ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
                 }
             }
             
@@ -212,33 +319,28 @@ public class MetricsDatabaseManager {
      */
     public double getCodeCompletionAcceptanceRate() {
         try {
-            MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
-            if (!dbConfig.isValid()) {
+            DataSource dataSource = getDataSource();
+            if (dataSource == null) {
                 return 0.0;
             }
             
-            try (Connection conn = DriverManager.getConnection(
-                    dbConfig.getDbUrl(), 
-                    dbConfig.getDbUser(), 
-                    dbConfig.getDbPassword())) {
-                
-                String sql = """
-                    SELECT 
-                        CASE 
-                            WHEN SUM(lines_generated) > 0 
-                            THEN SUM(lines_accepted) * 100.0 / SUM(lines_generated)
-                            ELSE 0 
-                        END as acceptance_rate
-                    FROM productivity_metrics 
-                    WHERE action_type = 'CODE_COMPLETION'
-                    """;
-                
-                try (Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery(sql)) {
-                    
-                    if (rs.next()) {
-                        return rs.getDouble("acceptance_rate");
-                    }
+            // 读取天级聚合表，避免全表扫描明细数据
+            String sql = """
+                SELECT 
+                    CASE 
+                        WHEN SUM(lines_generated) > 0 
+                        THEN SUM(lines_accepted) * 100.0 / SUM(lines_generated)
+                        ELSE 0 
+                    END as acceptance_rate
+                FROM metrics_rollup_day 
+                WHERE action_type = 'CODE_COMPLETION'
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getDouble("acceptance_rate");
                 }
             }
             
@@ -253,22 +355,26 @@ public class MetricsDatabaseManager {
      */
     public double getAverageResponseTime() {
         try {
-            MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
-            if (!dbConfig.isValid()) {
+            DataSource dataSource = getDataSource();
+            if (dataSource == null) {
                 return 0.0;
             }
             
-            try (Connection conn = DriverManager.getConnection(
-                    dbConfig.getDbUrl(), 
-                    dbConfig.getDbUser(), 
-                    dbConfig.getDbPassword())) {
-                
-                try (Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT AVG(response_time) FROM productivity_metrics")) {
-                    
-                    if (rs.next()) {
-                        return rs.getDouble(1);
-                    }
+            String sql = """
+                SELECT 
+                    CASE 
+                        WHEN SUM(event_count) > 0 
+                        THEN SUM(response_time_sum) * 1.0 / SUM(event_count)
+                        ELSE 0 
+                    END as average_response_time
+                FROM metrics_rollup_day
+                """;
+            
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getDouble(1);
                 }
             }
             
@@ -277,4 +383,96 @@ public class MetricsDatabaseManager {
         }
         return 0.0;
     }
+    
+    /**
+     * 逐行读取天粒度聚合表（已落库的全部数据）
+     *
+     * @return 没有可用的数据库或读取失败时返回 false
+     */
+    public boolean readRollupDays(Consumer<MetricsRollupStore.DayRow> consumer) {
+        DataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            return false;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            MetricsRollupStore.readDays(conn, consumer);
+            return true;
+        } catch (Exception e) {
+            LOG.warn("读取指标聚合数据失败: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 数据维护任务：首次启用时从明细表回填聚合，并按保留期限清理过期的明细和细粒度聚合数据
+     */
+    public void runMaintenance(Connection conn) {
+        try {
+            MetricsRollupStore.backfillIfEmpty(conn);
+            MetricsRollupStore.compact(conn);
+            purgeExpiredMetrics(conn);
+        } catch (Exception e) {
+            LOG.warn("维护指标数据失败: " + e.getMessage());
+        } finally {
+            dataVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * 数据库内容的版本号，内容可能变化时递增
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * 每天执行一次数据维护，保证长期运行的IDE中明细表大小受保留期限约束
+     */
+    public void scheduleMaintenance() {
+        synchronized (lock) {
+            if (maintenanceTask != null) {
+                return;
+            }
+            maintenanceTask = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(() -> {
+                DataSource dataSource = getDataSource();
+                if (dataSource == null) {
+                    return;
+                }
+                try (Connection conn = dataSource.getConnection()) {
+                    runMaintenance(conn);
+                } catch (SQLException e) {
+                    LOG.warn("定时维护指标数据失败: " + e.getMessage());
+                }
+            }, MAINTENANCE_INTERVAL_HOURS, MAINTENANCE_INTERVAL_HOURS, TimeUnit.HOURS);
+        }
+    }
+
+    /**
+     * 按 start_time 批量删除超过保留期限的明细数据，每批单独提交以避免长事务
+     */
+    private void purgeExpiredMetrics(Connection conn) throws SQLException {
+        MetricsDatabaseConfig dbConfig = MetricsDatabaseConfig.getInstance();
+        int retentionDays = dbConfig != null ? dbConfig.getRetentionDays() : 0;
+        if (retentionDays <= 0) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - retentionDays * 24L * 60 * 60 * 1000;
+        String deleteSql = "DELETE FROM productivity_metrics WHERE start_time < ? LIMIT " + PURGE_BATCH_SIZE;
+        long total = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(deleteSql)) {
+            int removed;
+            do {
+                pstmt.setLong(1, cutoff);
+                removed = pstmt.executeUpdate();
+                if (!conn.getAutoCommit()) {
+                    conn.commit();
+                }
+                total += removed;
+            } while (removed == PURGE_BATCH_SIZE);
+        }
+        if (total > 0) {
+            LOG.info("已清理超过 " + retentionDays + " 天的指标明细数据，条数: " + total);
+        }
+    }
 }
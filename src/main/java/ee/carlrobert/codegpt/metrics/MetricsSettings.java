@@ -35,6 +35,7 @@ public class MetricsSettings implements PersistentStateComponent<MetricsSettings
         public double performanceAlertThreshold = 70.0;
         public boolean enablePrivacyMode = false;
         public boolean anonymizeUserData = false;
+        public boolean webServerDevLogging = false;
     }
     
     private State myState = new State();
@@ -198,6 +199,16 @@ public class MetricsSettings implements PersistentStateComponent<MetricsSettings
         LOG.info("用户数据匿名化已" + (enabled ? "启用" : "禁用"));
     }
     
+    // Web服务器配置
+    public boolean isWebServerDevLogging() {
+        return myState.webServerDevLogging;
+    }
+    
+    public void setWebServerDevLogging(boolean enabled) {
+        myState.webServerDevLogging = enabled;
+        LOG.info("Web服务器开发日志已" + (enabled ? "启用" : "禁用") + "，重启Web服务器后生效");
+    }
+    
     /**
      * 重置所有配置为默认值
      */
@@ -226,6 +237,7 @@ public class MetricsSettings implements PersistentStateComponent<MetricsSettings
         summary.append("告警阈值: ").append(getPerformanceAlertThreshold()).append("\n");
         summary.append("隐私模式: ").append(isEnablePrivacyMode() ? "启用" : "禁用").append("\n");
         summary.append("数据匿名: ").append(isAnonymizeUserData() ? "启用" : "禁用").append("\n");
+        summary.append("开发日志: ").append(isWebServerDevLogging() ? "启用" : "禁用").append("\n");
         
         return summary.toString();
     }
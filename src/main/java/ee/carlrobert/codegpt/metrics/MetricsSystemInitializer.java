@@ -5,6 +5,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
 import ee.carlrobert.codegpt.metrics.export.MetricsExporter;
 import ee.carlrobert.codegpt.metrics.config.MetricsDatabaseConfig;
+import ee.carlrobert.codegpt.metrics.storage.MetricsRollupStore;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.Connection;
@@ -45,14 +46,14 @@ public class MetricsSystemInitializer implements StartupActivity {
                 dbConfig.resetToDefaults();
             }
             
-            // 显式加载MySQL数据库驱动
-            LOG.info("正在加载MySQL数据库驱动...");
+            // 显式加载数据库驱动（默认内嵌H2，可切换为MySQL）
+            LOG.info("正在加载数据库驱动: " + dbConfig.getDbDriver());
             Class.forName(dbConfig.getDbDriver());
-            LOG.info("MySQL数据库驱动加载成功");
+            LOG.info("数据库驱动加载成功");
             
             // 验证驱动是否可用
             if (!isDriverAvailable()) {
-                throw new RuntimeException("MySQL数据库驱动不可用，请检查依赖配置");
+                throw new RuntimeException("数据库驱动不可用，请检查依赖配置");
             }
             
             LOG.info("正在连接数据库: " + dbConfig.getDbUrl());
@@ -126,7 +127,7 @@ public class MetricsSystemInitializer implements StartupActivity {
                     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
                     """;
                 
-                stmt.execute(createMainTableSQL);
+                stmt.execute(adaptDdl(createMainTableSQL, dbConfig.isEmbedded()));
                 LOG.info("主指标表创建成功");
                 
                 // 创建效能分析表 - 存储分析结果
@@ -247,8 +248,18 @@ public class MetricsSystemInitializer implements StartupActivity {
                 stmt.execute(createLanguageStatsTableSQL);
                 LOG.info("编程语言统计表创建成功");
                 
+                // 创建分钟/小时/天预聚合表 - 摘要查询读取聚合表，避免全表扫描
+                for (MetricsRollupStore.Granularity granularity : MetricsRollupStore.Granularity.values()) {
+                    stmt.execute(MetricsRollupStore.createTableSql(granularity));
+                }
+                LOG.info("指标聚合表创建成功");
+                
                 // 创建索引以提高查询性能
-                createIndexes(stmt);
+                createIndexes(stmt, dbConfig.isEmbedded());
+                
+                // 回填聚合数据并按保留期限清理过期数据，之后每天定时执行
+                MetricsDatabaseManager.getInstance().runMaintenance(conn);
+                MetricsDatabaseManager.getInstance().scheduleMaintenance();
                 
                 LOG.info("软件工程师效能度量数据库初始化完成");
                 
@@ -257,46 +268,58 @@ public class MetricsSystemInitializer implements StartupActivity {
                 throw new RuntimeException("数据库初始化失败: " + e.getMessage(), e);
             }
         } catch (ClassNotFoundException e) {
-            LOG.error("MySQL数据库驱动类未找到，请确保已添加MySQL依赖: " + e.getMessage(), e);
-            throw new RuntimeException("MySQL数据库驱动未找到，请检查项目依赖配置", e);
+            LOG.error("数据库驱动类未找到，请确保已添加H2/MySQL依赖: " + e.getMessage(), e);
+            throw new RuntimeException("数据库驱动未找到，请检查项目依赖配置", e);
         } catch (Exception e) {
             LOG.error("软件工程师效能度量数据库初始化失败: " + e.getMessage(), e);
             throw new RuntimeException("数据库初始化失败: " + e.getMessage(), e);
         }
     }
     
-    private void createIndexes(Statement stmt) throws Exception {
+    /**
+     * 内嵌H2不支持MySQL表选项，JSON列改用CLOB保存原始文本
+     */
+    static String adaptDdl(String sql, boolean embedded) {
+        if (!embedded) {
+            return sql;
+        }
+        return sql
+            .replace(" ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci", "")
+            .replace(" JSON,", " CLOB,");
+    }
+    
+    private void createIndexes(Statement stmt, boolean embedded) throws Exception {
         try {
             // 主指标表索引 - 使用兼容的语法
-            createIndexIfNotExists(stmt, "idx_metrics_action_type", "productivity_metrics(action_type)");
-            createIndexIfNotExists(stmt, "idx_metrics_start_time", "productivity_metrics(start_time)");
-            createIndexIfNotExists(stmt, "idx_metrics_session_id", "productivity_metrics(session_id)");
-            createIndexIfNotExists(stmt, "idx_metrics_user_id", "productivity_metrics(user_id)");
-            createIndexIfNotExists(stmt, "idx_metrics_model_name", "productivity_metrics(model_name)");
-            createIndexIfNotExists(stmt, "idx_metrics_programming_language", "productivity_metrics(programming_language)");
-            createIndexIfNotExists(stmt, "idx_metrics_successful", "productivity_metrics(successful)");
-            createIndexIfNotExists(stmt, "idx_metrics_created_at", "productivity_metrics(created_at)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_action_type", "productivity_metrics(action_type)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_start_time", "productivity_metrics(start_time)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_session_id", "productivity_metrics(session_id)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_user_id", "productivity_metrics(user_id)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_model_name", "productivity_metrics(model_name)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_programming_language", "productivity_metrics(programming_language)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_successful", "productivity_metrics(successful)");
+            createIndexIfNotExists(stmt, embedded, "idx_metrics_created_at", "productivity_metrics(created_at)");
             
             // 分析表索引
-            createIndexIfNotExists(stmt, "idx_analysis_time", "productivity_analysis(analysis_time)");
-            createIndexIfNotExists(stmt, "idx_analysis_overall_score", "productivity_analysis(overall_score)");
+            createIndexIfNotExists(stmt, embedded, "idx_analysis_time", "productivity_analysis(analysis_time)");
+            createIndexIfNotExists(stmt, embedded, "idx_analysis_overall_score", "productivity_analysis(overall_score)");
             
             // 每日趋势表索引
-            createIndexIfNotExists(stmt, "idx_daily_trends_date", "daily_trends(date)");
-            createIndexIfNotExists(stmt, "idx_daily_trends_efficiency_score", "daily_trends(efficiency_score)");
+            createIndexIfNotExists(stmt, embedded, "idx_daily_trends_date", "daily_trends(date)");
+            createIndexIfNotExists(stmt, embedded, "idx_daily_trends_efficiency_score", "daily_trends(efficiency_score)");
             
             // 用户会话表索引
-            createIndexIfNotExists(stmt, "idx_user_sessions_user_id", "user_sessions(user_id)");
-            createIndexIfNotExists(stmt, "idx_user_sessions_start_time", "user_sessions(start_time)");
-            createIndexIfNotExists(stmt, "idx_user_sessions_session_type", "user_sessions(session_type)");
+            createIndexIfNotExists(stmt, embedded, "idx_user_sessions_user_id", "user_sessions(user_id)");
+            createIndexIfNotExists(stmt, embedded, "idx_user_sessions_start_time", "user_sessions(start_time)");
+            createIndexIfNotExists(stmt, embedded, "idx_user_sessions_session_type", "user_sessions(session_type)");
             
             // 模型使用统计表索引
-            createIndexIfNotExists(stmt, "idx_model_usage_model_name", "model_usage_stats(model_name)");
-            createIndexIfNotExists(stmt, "idx_model_usage_last_used", "model_usage_stats(last_used)");
+            createIndexIfNotExists(stmt, embedded, "idx_model_usage_model_name", "model_usage_stats(model_name)");
+            createIndexIfNotExists(stmt, embedded, "idx_model_usage_last_used", "model_usage_stats(last_used)");
             
             // 编程语言统计表索引
-            createIndexIfNotExists(stmt, "idx_language_stats_language", "language_stats(programming_language)");
-            createIndexIfNotExists(stmt, "idx_language_stats_last_used", "language_stats(last_used)");
+            createIndexIfNotExists(stmt, embedded, "idx_language_stats_language", "language_stats(programming_language)");
+            createIndexIfNotExists(stmt, embedded, "idx_language_stats_last_used", "language_stats(last_used)");
             
             LOG.info("数据库索引创建完成");
         } catch (Exception e) {
@@ -307,8 +330,13 @@ public class MetricsSystemInitializer implements StartupActivity {
     /**
      * 兼容的索引创建方法，检查索引是否存在后再创建
      */
-    private void createIndexIfNotExists(Statement stmt, String indexName, String tableColumn) throws Exception {
+    private void createIndexIfNotExists(Statement stmt, boolean embedded, String indexName, String tableColumn) throws Exception {
         try {
+            if (embedded) {
+                // H2原生支持 IF NOT EXISTS
+                stmt.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableColumn);
+                return;
+            }
             // 检查索引是否已存在
             String checkIndexSQL = "SHOW INDEX FROM " + tableColumn.split("\\(")[0] + " WHERE Key_name = '" + indexName + "'";
             try (java.sql.ResultSet rs = stmt.executeQuery(checkIndexSQL)) {
@@ -328,7 +356,7 @@ public class MetricsSystemInitializer implements StartupActivity {
     }
     
     /**
-     * 检查MySQL数据库驱动是否可用
+     * 检查数据库驱动是否可用
      */
     private boolean isDriverAvailable() {
         try {
@@ -338,7 +366,7 @@ public class MetricsSystemInitializer implements StartupActivity {
             java.sql.Driver driver = DriverManager.getDriver(dbConfig.getDbUrl());
             return driver != null;
         } catch (Exception e) {
-            LOG.warn("无法验证MySQL驱动可用性: " + e.getMessage());
+            LOG.warn("无法验证数据库驱动可用性: " + e.getMessage());
             return false;
         }
     }
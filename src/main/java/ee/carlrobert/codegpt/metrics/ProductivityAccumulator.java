@@ -0,0 +1,273 @@
+package ee.carlrobert.codegpt.metrics;
+
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 效能分析的可合并累加器
+ * 只保存生成报告所需的充分统计量（计数、求和、最值、按天分桶），单次遍历或随指标到达增量更新；
+ * 不同项目、不同日期的累加器可以直接合并。非线程安全，由调用方负责同步
+ */
+public final class ProductivityAccumulator {
+
+    private long count;
+    private long successCount;
+    private long retryCountSum;
+    private double tokenCountSum;
+    private double tokenCostSum;
+
+    // 以下统计只计入大于0的取值，与原先 filter(x -> x > 0) 的口径一致
+    private final Summary responseTime = new Summary();
+    private final Summary processingTime = new Summary();
+    private final Summary tokenCount = new Summary();
+    private final Summary linesGenerated = new Summary();
+    private final Summary acceptanceRate = new Summary();
+    private final Summary userRating = new Summary();
+    private final Summary memoryUsage = new Summary();
+    private final Summary cpuUsage = new Summary();
+
+    // 按本地日期（epochDay）分桶，用于趋势和学习曲线
+    private final NavigableMap<Long, DayBucket> days = new TreeMap<>();
+
+    public static ProductivityAccumulator of(Iterable<ProductivityMetrics> metrics) {
+        ProductivityAccumulator accumulator = new ProductivityAccumulator();
+        for (ProductivityMetrics item : metrics) {
+            accumulator.add(item);
+        }
+        return accumulator;
+    }
+
+    public static ProductivityAccumulator of(MetricsColumnStore.Columns columns) {
+        ProductivityAccumulator accumulator = new ProductivityAccumulator();
+        for (int row = 0; row < columns.size(); row++) {
+            accumulator.add(columns, row);
+        }
+        return accumulator;
+    }
+
+    /**
+     * 累加列式数据中的一行，不物化 POJO
+     */
+    public void add(MetricsColumnStore.Columns columns, int row) {
+        add(
+            columns.startTime(row),
+            columns.successful(row),
+            columns.responseTime(row),
+            columns.processingTime(row),
+            columns.totalTokenCount(row),
+            columns.tokenCost(row),
+            columns.linesGenerated(row),
+            columns.acceptanceRate(row),
+            columns.retryCount(row),
+            columns.userRating(row),
+            columns.memoryUsage(row),
+            columns.cpuUsage(row));
+    }
+
+    public void add(ProductivityMetrics metrics) {
+        add(
+            metrics.getStartTime(),
+            metrics.isSuccessful(),
+            metrics.getResponseTime(),
+            metrics.getProcessingTime(),
+            metrics.getTotalTokenCount(),
+            metrics.getTokenCost(),
+            metrics.getLinesGenerated(),
+            metrics.getAcceptanceRate(),
+            metrics.getRetryCount(),
+            metrics.getUserRating(),
+            metrics.getMemoryUsage(),
+            metrics.getCpuUsage());
+    }
+
+    private void add(long startTime, boolean successful, long responseTimeMs, long processingTimeMs,
+                     int totalTokens, double tokenCost, int lines, double acceptance, int retries,
+                     int rating, long memory, double cpu) {
+        count++;
+        if (successful) {
+            successCount++;
+        }
+        retryCountSum += retries;
+        tokenCountSum += totalTokens;
+        tokenCostSum += tokenCost;
+
+        responseTime.addPositive(responseTimeMs);
+        processingTime.addPositive(processingTimeMs);
+        tokenCount.addPositive(totalTokens);
+        linesGenerated.addPositive(lines);
+        acceptanceRate.addPositive(acceptance);
+        userRating.addPositive(rating);
+        memoryUsage.addPositive(memory);
+        cpuUsage.addPositive(cpu);
+
+        DayBucket day = days.computeIfAbsent(epochDay(startTime), k -> new DayBucket());
+        day.count++;
+        if (successful) {
+            day.successCount++;
+        }
+        day.efficiencyScoreSum += ProductivityMetrics.efficiencyScore(acceptance, responseTimeMs, rating);
+    }
+
+    /**
+     * 指标完成后评分才被设置或修改时，把评分的变化量应用到已累加的统计量上
+     * 旧评分的最值无法撤回，评分统计的最小/最大值只会扩展
+     */
+    public void updateUserRating(ProductivityMetrics metrics, int oldRating, int newRating) {
+        if (oldRating == newRating) {
+            return;
+        }
+        userRating.removePositive(oldRating);
+        userRating.addPositive(newRating);
+        DayBucket day = days.get(epochDay(metrics.getStartTime()));
+        if (day != null) {
+            day.efficiencyScoreSum +=
+                ProductivityMetrics.efficiencyScore(metrics.getAcceptanceRate(), metrics.getResponseTime(), newRating)
+                    - ProductivityMetrics.efficiencyScore(metrics.getAcceptanceRate(), metrics.getResponseTime(), oldRating);
+        }
+    }
+
+    /**
+     * 将另一个累加器的结果合并进来
+     */
+    public void merge(ProductivityAccumulator other) {
+        count += other.count;
+        successCount += other.successCount;
+        retryCountSum += other.retryCountSum;
+        tokenCountSum += other.tokenCountSum;
+        tokenCostSum += other.tokenCostSum;
+        responseTime.merge(other.responseTime);
+        processingTime.merge(other.processingTime);
+        tokenCount.merge(other.tokenCount);
+        linesGenerated.merge(other.linesGenerated);
+        acceptanceRate.merge(other.acceptanceRate);
+        userRating.merge(other.userRating);
+        memoryUsage.merge(other.memoryUsage);
+        cpuUsage.merge(other.cpuUsage);
+        for (Map.Entry<Long, DayBucket> entry : other.days.entrySet()) {
+            days.computeIfAbsent(entry.getKey(), k -> new DayBucket()).merge(entry.getValue());
+        }
+    }
+
+    public ProductivityAccumulator copy() {
+        ProductivityAccumulator copy = new ProductivityAccumulator();
+        copy.merge(this);
+        return copy;
+    }
+
+    public void reset() {
+        count = 0;
+        successCount = 0;
+        retryCountSum = 0;
+        tokenCountSum = 0;
+        tokenCostSum = 0;
+        responseTime.reset();
+        processingTime.reset();
+        tokenCount.reset();
+        linesGenerated.reset();
+        acceptanceRate.reset();
+        userRating.reset();
+        memoryUsage.reset();
+        cpuUsage.reset();
+        days.clear();
+    }
+
+    public long getCount() { return count; }
+    public long getSuccessCount() { return successCount; }
+    public double getSuccessRate() { return count > 0 ? (double) successCount / count : 0.0; }
+    public double getAverageRetryCount() { return count > 0 ? (double) retryCountSum / count : 0.0; }
+    public double getTokenCountSum() { return tokenCountSum; }
+    public double getTokenCostSum() { return tokenCostSum; }
+    public Summary getResponseTime() { return responseTime; }
+    public Summary getProcessingTime() { return processingTime; }
+    public Summary getTokenCount() { return tokenCount; }
+    public Summary getLinesGenerated() { return linesGenerated; }
+    public Summary getAcceptanceRate() { return acceptanceRate; }
+    public Summary getUserRating() { return userRating; }
+    public Summary getMemoryUsage() { return memoryUsage; }
+    public Summary getCpuUsage() { return cpuUsage; }
+
+    /**
+     * 按日期升序的每日分桶（键为 epochDay），只读
+     */
+    public NavigableMap<Long, DayBucket> getDays() {
+        return Collections.unmodifiableNavigableMap(days);
+    }
+
+    private static long epochDay(long epochMillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).toEpochDay();
+    }
+
+    /**
+     * 正值的计数/求和/最值
+     */
+    public static final class Summary {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void addPositive(double value) {
+            if (value <= 0) {
+                return;
+            }
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void removePositive(double value) {
+            if (value <= 0 || count == 0) {
+                return;
+            }
+            count--;
+            sum -= value;
+        }
+
+        void merge(Summary other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        void reset() {
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+
+        public long getCount() { return count; }
+        public double getSum() { return sum; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+        public double getAverage() { return count > 0 ? sum / count : 0.0; }
+    }
+
+    /**
+     * 单日的计数、成功数和效能评分之和
+     */
+    public static final class DayBucket {
+        private long count;
+        private long successCount;
+        private double efficiencyScoreSum;
+
+        void merge(DayBucket other) {
+            count += other.count;
+            successCount += other.successCount;
+            efficiencyScoreSum += other.efficiencyScoreSum;
+        }
+
+        public long getCount() { return count; }
+        public long getSuccessCount() { return successCount; }
+        public double getAverageEfficiencyScore() { return count > 0 ? efficiencyScoreSum / count : 0.0; }
+    }
+}
@@ -3,10 +3,10 @@ package ee.carlrobert.codegpt.metrics;
 import com.intellij.openapi.diagnostic.Logger;
 import ee.carlrobert.codegpt.metrics.SoftwareEngineerMetrics;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 效能指标分析器
@@ -15,12 +15,20 @@ import java.util.stream.Collectors;
 public class ProductivityAnalyzer {
     
     private static final Logger LOG = Logger.getInstance(ProductivityAnalyzer.class);
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     
-    private final List<ProductivityMetrics> metricsData;
+    private final ProductivityAccumulator accumulator;
     private final LocalDateTime analysisTime;
     
     public ProductivityAnalyzer(List<ProductivityMetrics> metricsData) {
-        this.metricsData = new ArrayList<>(metricsData);
+        this(ProductivityAccumulator.of(metricsData));
+    }
+    
+    /**
+     * 基于已累加（或合并）好的统计量生成报告，耗时与明细条数无关
+     */
+    public ProductivityAnalyzer(ProductivityAccumulator accumulator) {
+        this.accumulator = accumulator;
         this.analysisTime = LocalDateTime.now();
     }
     
@@ -31,7 +39,7 @@ public class ProductivityAnalyzer {
         try {
             ProductivityReport report = new ProductivityReport();
             report.setAnalysisTime(analysisTime);
-            report.setTotalMetrics(metricsData.size());
+            report.setTotalMetrics((int) accumulator.getCount());
             
             // 基础统计
             report.setBasicStats(calculateBasicStats());
@@ -66,57 +74,41 @@ public class ProductivityAnalyzer {
         }
     }
     
+    private boolean isEmpty() {
+        return accumulator.getCount() == 0;
+    }
+    
     /**
      * 计算基础统计数据
      */
     private BasicStats calculateBasicStats() {
         BasicStats stats = new BasicStats();
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return stats;
         }
         
         // 成功率统计
-        long successfulCount = metricsData.stream()
-                .mapToLong(m -> m.isSuccessful() ? 1 : 0)
-                .sum();
-        stats.setSuccessRate((double) successfulCount / metricsData.size());
+        stats.setSuccessRate(accumulator.getSuccessRate());
         
         // 响应时间统计
-        DoubleSummaryStatistics responseTimeStats = metricsData.stream()
-                .mapToDouble(m -> m.getResponseTime())
-                .filter(t -> t > 0)
-                .summaryStatistics();
-        
+        ProductivityAccumulator.Summary responseTimeStats = accumulator.getResponseTime();
         stats.setAverageResponseTime(responseTimeStats.getAverage());
         stats.setMinResponseTime(responseTimeStats.getMin());
         stats.setMaxResponseTime(responseTimeStats.getMax());
         
         // Token使用统计
-        DoubleSummaryStatistics tokenStats = metricsData.stream()
-                .mapToDouble(m -> m.getTotalTokenCount())
-                .filter(t -> t > 0)
-                .summaryStatistics();
-        
+        ProductivityAccumulator.Summary tokenStats = accumulator.getTokenCount();
         stats.setAverageTokenUsage(tokenStats.getAverage());
         stats.setTotalTokenUsage(tokenStats.getSum());
         
         // 代码生成统计
-        DoubleSummaryStatistics linesStats = metricsData.stream()
-                .mapToDouble(m -> m.getLinesGenerated())
-                .filter(t -> t > 0)
-                .summaryStatistics();
-        
+        ProductivityAccumulator.Summary linesStats = accumulator.getLinesGenerated();
         stats.setAverageLinesGenerated(linesStats.getAverage());
         stats.setTotalLinesGenerated(linesStats.getSum());
         
         // 接受率统计
-        double totalAcceptanceRate = metricsData.stream()
-                .mapToDouble(m -> m.getAcceptanceRate())
-                .filter(r -> r > 0)
-                .average()
-                .orElse(0.0);
-        stats.setAverageAcceptanceRate(totalAcceptanceRate);
+        stats.setAverageAcceptanceRate(accumulator.getAcceptanceRate().getAverage());
         
         return stats;
     }
@@ -127,28 +119,14 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeCodeGeneration() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.CODE_GENERATION_EFFICIENCY);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算代码生成相关指标
-        double avgLinesGenerated = metricsData.stream()
-                .mapToDouble(m -> m.getLinesGenerated())
-                .filter(l -> l > 0)
-                .average()
-                .orElse(0.0);
-        
-        double avgAcceptanceRate = metricsData.stream()
-                .mapToDouble(m -> m.getAcceptanceRate())
-                .filter(r -> r > 0)
-                .average()
-                .orElse(0.0);
-        
-        double avgGenerationTime = metricsData.stream()
-                .mapToDouble(m -> m.getProcessingTime())
-                .filter(t -> t > 0)
-                .average()
-                .orElse(0.0);
+        double avgLinesGenerated = accumulator.getLinesGenerated().getAverage();
+        double avgAcceptanceRate = accumulator.getAcceptanceRate().getAverage();
+        double avgGenerationTime = accumulator.getProcessingTime().getAverage();
         
         analysis.setMetricValue("lines_generated", avgLinesGenerated);
         analysis.setMetricValue("acceptance_rate", avgAcceptanceRate);
@@ -167,21 +145,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeCodeQuality() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.CODE_QUALITY);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 基于成功率和接受率评估代码质量
-        double successRate = metricsData.stream()
-                .mapToDouble(m -> m.isSuccessful() ? 1.0 : 0.0)
-                .average()
-                .orElse(0.0);
-        
-        double acceptanceRate = metricsData.stream()
-                .mapToDouble(m -> m.getAcceptanceRate())
-                .filter(r -> r > 0)
-                .average()
-                .orElse(0.0);
+        double successRate = accumulator.getSuccessRate();
+        double acceptanceRate = accumulator.getAcceptanceRate().getAverage();
         
         analysis.setMetricValue("syntax_correctness", successRate);
         analysis.setMetricValue("semantic_accuracy", acceptanceRate);
@@ -199,22 +169,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeDevelopmentSpeed() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.DEVELOPMENT_SPEED);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算开发速度相关指标
-        double avgResponseTime = metricsData.stream()
-                .mapToDouble(m -> m.getResponseTime())
-                .filter(t -> t > 0)
-                .average()
-                .orElse(0.0);
-        
-        double avgProcessingTime = metricsData.stream()
-                .mapToDouble(m -> m.getProcessingTime())
-                .filter(t -> t > 0)
-                .average()
-                .orElse(0.0);
+        double avgResponseTime = accumulator.getResponseTime().getAverage();
+        double avgProcessingTime = accumulator.getProcessingTime().getAverage();
         
         analysis.setMetricValue("time_to_first_result", avgResponseTime);
         analysis.setMetricValue("total_development_time", avgProcessingTime);
@@ -232,20 +193,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeProblemSolving() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.PROBLEM_SOLVING_EFFICIENCY);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算问题解决相关指标
-        double successRate = metricsData.stream()
-                .mapToDouble(m -> m.isSuccessful() ? 1.0 : 0.0)
-                .average()
-                .orElse(0.0);
-        
-        double avgRetryCount = metricsData.stream()
-                .mapToDouble(m -> m.getRetryCount())
-                .average()
-                .orElse(0.0);
+        double successRate = accumulator.getSuccessRate();
+        double avgRetryCount = accumulator.getAverageRetryCount();
         
         analysis.setMetricValue("solution_accuracy", successRate);
         analysis.setMetricValue("debugging_efficiency", 1.0 / (1.0 + avgRetryCount));
@@ -258,33 +212,30 @@ public class ProductivityAnalyzer {
     
     /**
      * 分析学习曲线
+     * 按日期顺序把记录分为前后两半，比较成功率；跨越中点的那一天按条数比例拆分
      */
     private MetricAnalysis analyzeLearningCurve() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.LEARNING_CURVE);
         
-        if (metricsData.size() < 2) {
+        long total = accumulator.getCount();
+        if (total < 2) {
             return analysis;
         }
         
-        // 按时间排序，分析学习趋势
-        List<ProductivityMetrics> sortedMetrics = metricsData.stream()
-                .sorted(Comparator.comparing(m -> m.getCreatedAt()))
-                .collect(Collectors.toList());
-        
-        // 计算前后期效能对比
-        int midPoint = sortedMetrics.size() / 2;
-        List<ProductivityMetrics> earlyMetrics = sortedMetrics.subList(0, midPoint);
-        List<ProductivityMetrics> lateMetrics = sortedMetrics.subList(midPoint, sortedMetrics.size());
-        
-        double earlySuccessRate = earlyMetrics.stream()
-                .mapToDouble(m -> m.isSuccessful() ? 1.0 : 0.0)
-                .average()
-                .orElse(0.0);
+        long midPoint = total / 2;
+        long seen = 0;
+        double earlySuccess = 0.0;
+        double lateSuccess = 0.0;
+        for (ProductivityAccumulator.DayBucket day : accumulator.getDays().values()) {
+            long earlyPart = Math.max(0, Math.min(day.getCount(), midPoint - seen));
+            double earlyFraction = (double) earlyPart / day.getCount();
+            earlySuccess += day.getSuccessCount() * earlyFraction;
+            lateSuccess += day.getSuccessCount() * (1.0 - earlyFraction);
+            seen += day.getCount();
+        }
         
-        double lateSuccessRate = lateMetrics.stream()
-                .mapToDouble(m -> m.isSuccessful() ? 1.0 : 0.0)
-                .average()
-                .orElse(0.0);
+        double earlySuccessRate = earlySuccess / midPoint;
+        double lateSuccessRate = lateSuccess / (total - midPoint);
         
         double improvement = lateSuccessRate - earlySuccessRate;
         analysis.setMetricValue("skill_improvement", improvement);
@@ -316,11 +267,7 @@ public class ProductivityAnalyzer {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.INNOVATION_EFFICIENCY);
         
         // 创新效能需要更复杂的分析，这里基于接受率做基础评估
-        double avgAcceptanceRate = metricsData.stream()
-                .mapToDouble(m -> m.getAcceptanceRate())
-                .filter(r -> r > 0)
-                .average()
-                .orElse(0.0);
+        double avgAcceptanceRate = accumulator.getAcceptanceRate().getAverage();
         
         double score = avgAcceptanceRate * 80; // 基于接受率评估创新性
         analysis.setScore(score);
@@ -334,18 +281,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeCostEffectiveness() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.COST_EFFECTIVENESS);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算成本效益相关指标
-        double totalTokenUsage = metricsData.stream()
-                .mapToDouble(m -> m.getTotalTokenCount())
-                .sum();
-        
-        double avgTokenCost = metricsData.stream()
-                .mapToDouble(m -> m.getTokenCost())
-                .sum();
+        double totalTokenUsage = accumulator.getTokenCountSum();
+        double avgTokenCost = accumulator.getTokenCostSum();
         
         analysis.setMetricValue("token_usage", totalTokenUsage);
         analysis.setMetricValue("api_cost", avgTokenCost);
@@ -363,22 +305,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeUserExperience() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.USER_EXPERIENCE);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算用户体验相关指标
-        double avgUserRating = metricsData.stream()
-                .mapToDouble(m -> m.getUserRating())
-                .filter(r -> r > 0)
-                .average()
-                .orElse(0.0);
-        
-        double avgResponseTime = metricsData.stream()
-                .mapToDouble(m -> m.getResponseTime())
-                .filter(t -> t > 0)
-                .average()
-                .orElse(0.0);
+        double avgUserRating = accumulator.getUserRating().getAverage();
+        double avgResponseTime = accumulator.getResponseTime().getAverage();
         
         analysis.setMetricValue("satisfaction_rating", avgUserRating);
         analysis.setMetricValue("response_time", avgResponseTime);
@@ -395,22 +328,13 @@ public class ProductivityAnalyzer {
     private MetricAnalysis analyzeSystemPerformance() {
         MetricAnalysis analysis = new MetricAnalysis(SoftwareEngineerMetrics.SYSTEM_PERFORMANCE);
         
-        if (metricsData.isEmpty()) {
+        if (isEmpty()) {
             return analysis;
         }
         
         // 计算系统性能相关指标
-        double avgMemoryUsage = metricsData.stream()
-                .mapToDouble(m -> m.getMemoryUsage())
-                .filter(m -> m > 0)
-                .average()
-                .orElse(0.0);
-        
-        double avgCpuUsage = metricsData.stream()
-                .mapToDouble(m -> m.getCpuUsage())
-                .filter(c -> c > 0)
-                .average()
-                .orElse(0.0);
+        double avgMemoryUsage = accumulator.getMemoryUsage().getAverage();
+        double avgCpuUsage = accumulator.getCpuUsage().getAverage();
         
         analysis.setMetricValue("memory_usage", avgMemoryUsage);
         analysis.setMetricValue("cpu_utilization", avgCpuUsage);
@@ -460,34 +384,19 @@ public class ProductivityAnalyzer {
     private TrendAnalysis analyzeTrends() {
         TrendAnalysis trendAnalysis = new TrendAnalysis();
         
-        if (metricsData.size() < 2) {
+        if (accumulator.getCount() < 2) {
             return trendAnalysis;
         }
         
-        // 按时间分组分析趋势
-        Map<String, List<ProductivityMetrics>> dailyMetrics = metricsData.stream()
-                .collect(Collectors.groupingBy(m -> 
-                    m.getCreatedAt().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"))));
-        
-        // 计算每日效能趋势
-        List<DailyTrend> dailyTrends = dailyMetrics.entrySet().stream()
-                .map(entry -> {
-                    DailyTrend trend = new DailyTrend();
-                    trend.setDate(entry.getKey());
-                    
-                    List<ProductivityMetrics> dayMetrics = entry.getValue();
-                    double dailyScore = dayMetrics.stream()
-                            .mapToDouble(m -> m.getEfficiencyScore())
-                            .average()
-                            .orElse(0.0);
-                    
-                    trend.setEfficiencyScore(dailyScore);
-                    trend.setMetricsCount(dayMetrics.size());
-                    
-                    return trend;
-                })
-                .sorted(Comparator.comparing(DailyTrend::getDate))
-                .collect(Collectors.toList());
+        // 每日分桶已按日期升序排列，直接生成每日效能趋势
+        List<DailyTrend> dailyTrends = new ArrayList<>(accumulator.getDays().size());
+        for (Map.Entry<Long, ProductivityAccumulator.DayBucket> entry : accumulator.getDays().entrySet()) {
+            DailyTrend trend = new DailyTrend();
+            trend.setDate(LocalDate.ofEpochDay(entry.getKey()).format(DATE_FORMATTER));
+            trend.setEfficiencyScore(entry.getValue().getAverageEfficiencyScore());
+            trend.setMetricsCount((int) entry.getValue().getCount());
+            dailyTrends.add(trend);
+        }
         
         trendAnalysis.setDailyTrends(dailyTrends);
         
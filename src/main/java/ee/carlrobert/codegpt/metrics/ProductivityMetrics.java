@@ -1,7 +1,10 @@
 package ee.carlrobert.codegpt.metrics;
 
+import ee.carlrobert.codegpt.metrics.storage.MetricsDictionary;
+
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,13 +12,17 @@ import java.util.UUID;
 
 /**
  * 核心指标数据模型，用于存储与大模型交互的软件工程师效能度量指标
+ * 内部以紧凑形式保存：低基数字符串维度为字典编码，时间戳为 epoch 毫秒，ID 和扩展数据按需创建；
+ * 对外的 getter/setter 是这种紧凑形式之上的视图
  */
 public class ProductivityMetrics {
+    private static final DateTimeFormatter CREATED_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     // 基础标识信息
     private String id;
     private String actionId;
-    private String actionType;
-    private String modelName;
+    private int actionTypeCode;
+    private int modelNameCode;
     private String sessionId;
     private String userId;
     
@@ -44,7 +51,7 @@ public class ProductivityMetrics {
     private String qualityScore;
     
     // 上下文信息
-    private String programmingLanguage;
+    private int programmingLanguageCode;
     private String projectType;
     private String fileExtension;
     private String contextSize;
@@ -70,20 +77,21 @@ public class ProductivityMetrics {
     // 扩展数据
     private Map<String, Object> additionalData;
     
-    // 时间戳
-    private LocalDateTime createdAt;
-    private LocalDateTime updatedAt;
+    // 时间戳（epoch 毫秒）
+    private long createdAtMillis;
+    private long updatedAtMillis;
+
+    // 在收集器列式副本中的全局行号，未加入时为 -1；仅供收集器同步可变字段，不参与序列化
+    private transient long columnRow = -1;
 
     // 静态实例（单例模式）
     private static volatile ProductivityMetrics instance;
     private static final Object lock = new Object();
 
     public ProductivityMetrics() {
-        this.id = UUID.randomUUID().toString();
-        this.startTime = Instant.now().toEpochMilli();
-        this.createdAt = LocalDateTime.now();
-        this.updatedAt = LocalDateTime.now();
-        this.additionalData = new HashMap<>();
+        this.startTime = System.currentTimeMillis();
+        this.createdAtMillis = startTime;
+        this.updatedAtMillis = startTime;
         this.retryCount = 0;
         this.userRating = 0;
     }
@@ -91,7 +99,7 @@ public class ProductivityMetrics {
     public ProductivityMetrics(String actionId, String actionType) {
         this();
         this.actionId = actionId;
-        this.actionType = actionType;
+        this.actionTypeCode = MetricsDictionary.ACTION_TYPES.encode(actionType);
     }
 
     /**
@@ -121,9 +129,9 @@ public class ProductivityMetrics {
      * 完成指标收集
      */
     public void complete() {
-        this.endTime = Instant.now().toEpochMilli();
+        this.endTime = System.currentTimeMillis();
         this.responseTime = this.endTime - this.startTime;
-        this.updatedAt = LocalDateTime.now();
+        this.updatedAtMillis = endTime;
         
         // 计算接受率
         if (linesGenerated > 0) {
@@ -139,7 +147,7 @@ public class ProductivityMetrics {
      */
     public void markSuccessful() {
         this.successful = true;
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
@@ -148,19 +156,19 @@ public class ProductivityMetrics {
     public void markFailed(String errorMessage) {
         this.successful = false;
         this.errorMessage = errorMessage;
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
      * 记录代码补全指标
      */
     public void recordCodeCompletion(String language, int linesGenerated, int linesAccepted, long processingTime) {
-        this.programmingLanguage = language;
+        setProgrammingLanguage(language);
         this.linesGenerated = linesGenerated;
         this.linesAccepted = linesAccepted;
         this.linesRejected = linesGenerated - linesAccepted;
         this.processingTime = processingTime;
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
@@ -172,7 +180,7 @@ public class ProductivityMetrics {
         this.linesRejected = linesGenerated - linesAccepted;
         this.processingTime = processingTime;
         this.sessionId = sessionId;
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
@@ -180,7 +188,7 @@ public class ProductivityMetrics {
      */
     public void incrementRetryCount() {
         this.retryCount++;
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
@@ -188,15 +196,15 @@ public class ProductivityMetrics {
      */
     public void setUserRating(int rating) {
         this.userRating = Math.max(1, Math.min(5, rating)); // 限制在1-5之间
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
 
     /**
      * 添加扩展数据
      */
     public void addAdditionalData(String key, Object value) {
-        this.additionalData.put(key, value);
-        this.updatedAt = LocalDateTime.now();
+        getAdditionalData().put(key, value);
+        touch();
     }
     
     /**
@@ -204,7 +212,7 @@ public class ProductivityMetrics {
      */
     public void setCreatedAt(java.sql.Timestamp timestamp) {
         if (timestamp != null) {
-            this.createdAt = timestamp.toLocalDateTime();
+            this.createdAtMillis = timestamp.getTime();
         }
     }
     
@@ -218,7 +226,7 @@ public class ProductivityMetrics {
         this.addAdditionalData("linesOfCode", linesOfCode);
         this.addAdditionalData("timeSaved", traditionalTime - aiAssistedTime);
         this.addAdditionalData("efficiencyGain", ((double) (traditionalTime - aiAssistedTime) / traditionalTime) * 100);
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -230,7 +238,7 @@ public class ProductivityMetrics {
         this.addAdditionalData("debugTimeWithAI", debugTimeWithAI);
         this.addAdditionalData("timeSaved", debugTimeWithoutAI - debugTimeWithAI);
         this.addAdditionalData("efficiencyGain", ((double) (debugTimeWithoutAI - debugTimeWithAI) / debugTimeWithoutAI) * 100);
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -242,7 +250,7 @@ public class ProductivityMetrics {
         this.addAdditionalData("afterValue", after);
         this.addAdditionalData("improvement", after - before);
         this.addAdditionalData("improvementType", improvementType);
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -252,7 +260,7 @@ public class ProductivityMetrics {
         this.addAdditionalData("topic", topic);
         this.addAdditionalData("questionsAsked", questionsAsked);
         this.addAdditionalData("learningTime", learningTime);
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -263,7 +271,7 @@ public class ProductivityMetrics {
         this.addAdditionalData("questionsAsked", questionsAsked);
         this.addAdditionalData("conceptsLearned", conceptsLearned);
         this.addAdditionalData("learningTime", learningTime);
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -272,7 +280,7 @@ public class ProductivityMetrics {
     public void clearAllData() {
         // 这里应该清除所有指标数据
         // 暂时只是记录日志
-        this.updatedAt = LocalDateTime.now();
+        touch();
     }
     
     /**
@@ -395,10 +403,11 @@ public class ProductivityMetrics {
         }
         
         // 设置基本计数
-        if (this.actionType != null) {
-            if (this.actionType.contains("completion")) {
+        String actionType = getActionType();
+        if (actionType != null) {
+            if (actionType.contains("completion")) {
                 stats.codeCompletionsCount = 1;
-            } else if (this.actionType.contains("chat")) {
+            } else if (actionType.contains("chat")) {
                 stats.chatSessionsCount = 1;
             }
         }
@@ -494,7 +503,7 @@ public class ProductivityMetrics {
      * 获取格式化的创建时间
      */
     public String getFormattedCreatedTime() {
-        return createdAt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        return getCreatedAt().format(CREATED_TIME_FORMATTER);
     }
 
     /**
@@ -515,6 +524,13 @@ public class ProductivityMetrics {
      * 获取效能评分
      */
     public double getEfficiencyScore() {
+        return efficiencyScore(acceptanceRate, responseTime, userRating);
+    }
+
+    /**
+     * 基于接受率、响应时间和用户评分计算效能评分，供列式数据和累加器复用
+     */
+    static double efficiencyScore(double acceptanceRate, long responseTime, int userRating) {
         double score = 0.0;
         
         // 基于接受率
@@ -538,17 +554,24 @@ public class ProductivityMetrics {
     }
 
     // Getters and Setters
-    public String getId() { return id; }
+    public String getId() {
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+        }
+        return id;
+    }
     public void setId(String id) { this.id = id; }
 
     public String getActionId() { return actionId; }
     public void setActionId(String actionId) { this.actionId = actionId; }
 
-    public String getActionType() { return actionType; }
-    public void setActionType(String actionType) { this.actionType = actionType; }
+    public String getActionType() { return MetricsDictionary.ACTION_TYPES.decode(actionTypeCode); }
+    public void setActionType(String actionType) { this.actionTypeCode = MetricsDictionary.ACTION_TYPES.encode(actionType); }
+    public int getActionTypeCode() { return actionTypeCode; }
 
-    public String getModelName() { return modelName; }
-    public void setModelName(String modelName) { this.modelName = modelName; }
+    public String getModelName() { return MetricsDictionary.MODEL_NAMES.decode(modelNameCode); }
+    public void setModelName(String modelName) { this.modelNameCode = MetricsDictionary.MODEL_NAMES.encode(modelName); }
+    public int getModelNameCode() { return modelNameCode; }
 
     public String getSessionId() { return sessionId; }
     public void setSessionId(String sessionId) { this.sessionId = sessionId; }
@@ -604,8 +627,9 @@ public class ProductivityMetrics {
     public String getQualityScore() { return qualityScore; }
     public void setQualityScore(String qualityScore) { this.qualityScore = qualityScore; }
 
-    public String getProgrammingLanguage() { return programmingLanguage; }
-    public void setProgrammingLanguage(String programmingLanguage) { this.programmingLanguage = programmingLanguage; }
+    public String getProgrammingLanguage() { return MetricsDictionary.LANGUAGES.decode(programmingLanguageCode); }
+    public void setProgrammingLanguage(String programmingLanguage) { this.programmingLanguageCode = MetricsDictionary.LANGUAGES.encode(programmingLanguage); }
+    public int getProgrammingLanguageCode() { return programmingLanguageCode; }
 
     public String getProjectType() { return projectType; }
     public void setProjectType(String projectType) { this.projectType = projectType; }
@@ -652,21 +676,43 @@ public class ProductivityMetrics {
     public double getLearningEfficiency() { return learningEfficiency; }
     public void setLearningEfficiency(double learningEfficiency) { this.learningEfficiency = learningEfficiency; }
 
-    public Map<String, Object> getAdditionalData() { return additionalData; }
+    public Map<String, Object> getAdditionalData() {
+        if (additionalData == null) {
+            additionalData = new HashMap<>();
+        }
+        return additionalData;
+    }
     public void setAdditionalData(Map<String, Object> additionalData) { this.additionalData = additionalData; }
 
-    public LocalDateTime getCreatedAt() { return createdAt; }
-    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getCreatedAt() { return toLocalDateTime(createdAtMillis); }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAtMillis = toEpochMillis(createdAt); }
+    public long getCreatedAtMillis() { return createdAtMillis; }
+
+    public LocalDateTime getUpdatedAt() { return toLocalDateTime(updatedAtMillis); }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAtMillis = toEpochMillis(updatedAt); }
+    public long getUpdatedAtMillis() { return updatedAtMillis; }
 
-    public LocalDateTime getUpdatedAt() { return updatedAt; }
-    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    long getColumnRow() { return columnRow; }
+    void setColumnRow(long columnRow) { this.columnRow = columnRow; }
+
+    private void touch() {
+        this.updatedAtMillis = System.currentTimeMillis();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime == null ? 0 : dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 
     @Override
     public String toString() {
         return String.format("ProductivityMetrics{actionId='%s', actionType='%s', modelName='%s', " +
                 "responseTime=%dms, linesGenerated=%d, linesAccepted=%d, acceptanceRate=%.2f, " +
                 "successful=%s, efficiencyScore=%.1f}",
-                actionId, actionType, modelName, responseTime, linesGenerated, linesAccepted, 
+                actionId, getActionType(), getModelName(), responseTime, linesGenerated, linesAccepted, 
                 acceptanceRate, successful, getEfficiencyScore());
     }
     
@@ -719,8 +765,8 @@ public class ProductivityMetrics {
      * 更新指标数据
      */
     private void updateMetrics() {
-        this.updatedAt = LocalDateTime.now();
-        this.endTime = Instant.now().toEpochMilli();
+        this.endTime = System.currentTimeMillis();
+        this.updatedAtMillis = endTime;
         if (this.startTime > 0) {
             this.responseTime = this.endTime - this.startTime;
         }
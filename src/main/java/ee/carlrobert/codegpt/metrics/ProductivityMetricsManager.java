@@ -3,14 +3,19 @@ package ee.carlrobert.codegpt.metrics;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import ee.carlrobert.codegpt.metrics.storage.MetricsRingBuffer;
+import org.jetbrains.annotations.NotNull;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -25,10 +30,12 @@ public final class ProductivityMetricsManager implements MetricsService {
     private final Project project;
     private final MetricsCollector metricsCollector;
     private final AIUsageTracker aiUsageTracker;
-    private final ScheduledExecutorService scheduler;
+    // 自动分析任务运行在IDE共享的调度线程上，不再为每个项目单独创建线程池
+    private ScheduledFuture<?> autoAnalysisTask;
+    private volatile boolean disposed;
     
-    private ProductivityReport lastReport;
-    private LocalDateTime lastAnalysisTime;
+    private volatile ProductivityReport lastReport;
+    private volatile LocalDateTime lastAnalysisTime;
     private boolean autoAnalysisEnabled = true;
     private int autoAnalysisIntervalMinutes = 60; // 默认1小时自动分析一次
     
@@ -36,7 +43,6 @@ public final class ProductivityMetricsManager implements MetricsService {
         this.project = project;
         this.metricsCollector = MetricsCollector.getInstance(project);
         this.aiUsageTracker = AIUsageTracker.getInstance();
-        this.scheduler = Executors.newScheduledThreadPool(1);
         
         // 启动自动分析任务
         startAutoAnalysis();
@@ -182,10 +188,9 @@ public final class ProductivityMetricsManager implements MetricsService {
     public void recordUserRating(String actionId, int rating, String feedback) {
         try {
             // 查找对应的度量记录并更新
-            List<ProductivityMetrics> completedMetrics = metricsCollector.getCompletedMetrics();
-            for (ProductivityMetrics metrics : completedMetrics) {
+            for (ProductivityMetrics metrics : metricsCollector.getCompletedMetricsSnapshot()) {
                 if (actionId.equals(metrics.getActionId())) {
-                    metrics.setUserRating(rating);
+                    metricsCollector.updateUserRating(metrics, rating);
                     metrics.setFeedback(feedback);
                     metrics.setUserExperience("rated");
                     break;
@@ -201,33 +206,48 @@ public final class ProductivityMetricsManager implements MetricsService {
     
     /**
      * 生成效能分析报告
+     * 在可取消的后台任务中运行，进度显示在IDE状态栏：列式副本按行区间分区，在共享的受限线程池上并行累加后
+     * 与已移出列式副本的统计量合并。任务被取消时返回的 future 也被取消
      */
     public CompletableFuture<ProductivityReport> generateProductivityReport() {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                List<ProductivityMetrics> metricsData = metricsCollector.getCompletedMetrics();
-                
-                if (metricsData.isEmpty()) {
+        CompletableFuture<ProductivityReport> future = new CompletableFuture<>();
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "生成效能分析报告", true) {
+            private ProductivityReport report;
+
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                ProductivityAccumulator accumulator = ProductivityReportGenerator.accumulate(
+                    List.of(metricsCollector.getReportSource()), indicator);
+                if (accumulator.getCount() == 0) {
                     LOG.info("没有可用的效能度量数据，无法生成报告");
-                    return createEmptyReport();
+                    report = createEmptyReport();
+                    return;
                 }
-                
-                // 创建分析器并生成报告
-                ProductivityAnalyzer analyzer = new ProductivityAnalyzer(metricsData);
-                ProductivityReport report = analyzer.generateComprehensiveReport();
-                
+                report = new ProductivityAnalyzer(accumulator).generateComprehensiveReport();
+            }
+
+            @Override
+            public void onSuccess() {
                 // 保存报告
-                this.lastReport = report;
-                this.lastAnalysisTime = LocalDateTime.now();
-                
+                lastReport = report;
+                lastAnalysisTime = LocalDateTime.now();
                 LOG.info("效能分析报告生成完成，综合评分: " + report.getOverallScore());
-                return report;
-                
-            } catch (Exception e) {
-                LOG.error("生成效能分析报告失败", e);
-                return createErrorReport(e.getMessage());
+                future.complete(report);
+            }
+
+            @Override
+            public void onCancel() {
+                LOG.info("效能分析报告生成已取消");
+                future.cancel(false);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                LOG.error("生成效能分析报告失败", error);
+                future.complete(createErrorReport(error.getMessage()));
             }
         });
+        return future;
     }
     
     /**
@@ -342,7 +362,7 @@ public final class ProductivityMetricsManager implements MetricsService {
      */
     private String exportToCsv() {
         try {
-            List<ProductivityMetrics> metrics = metricsCollector.getCompletedMetrics();
+            MetricsRingBuffer.Snapshot<ProductivityMetrics> metrics = metricsCollector.getCompletedMetricsSnapshot();
             if (metrics.isEmpty()) {
                 return "没有可用的效能数据";
             }
@@ -428,7 +448,7 @@ public final class ProductivityMetricsManager implements MetricsService {
     public boolean isServiceAvailable() {
         try {
             return metricsCollector != null && aiUsageTracker != null && 
-                   !scheduler.isShutdown() && project != null && !project.isDisposed();
+                   !disposed && project != null && !project.isDisposed();
         } catch (Exception e) {
             LOG.debug("检查服务可用性失败", e);
             return false;
@@ -440,12 +460,8 @@ public final class ProductivityMetricsManager implements MetricsService {
      */
     public void shutdown() {
         try {
-            if (scheduler != null && !scheduler.isShutdown()) {
-                scheduler.shutdown();
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            }
+            disposed = true;
+            cancelAutoAnalysis();
             LOG.info("效能度量管理器已关闭");
         } catch (Exception e) {
             LOG.error("关闭效能度量管理器失败", e);
@@ -454,9 +470,10 @@ public final class ProductivityMetricsManager implements MetricsService {
     
     // 私有辅助方法
     
-    private void startAutoAnalysis() {
-        if (autoAnalysisEnabled) {
-            scheduler.scheduleAtFixedRate(() -> {
+    private synchronized void startAutoAnalysis() {
+        if (autoAnalysisEnabled && !disposed) {
+            cancelAutoAnalysis();
+            autoAnalysisTask = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(() -> {
                 try {
                     LOG.debug("执行自动效能分析...");
                     generateProductivityReport().thenAccept(report -> {
@@ -473,10 +490,17 @@ public final class ProductivityMetricsManager implements MetricsService {
         }
     }
     
-    private void stopAutoAnalysis() {
-        scheduler.shutdown();
+    private synchronized void stopAutoAnalysis() {
+        cancelAutoAnalysis();
         LOG.info("自动效能分析已停止");
     }
+
+    private synchronized void cancelAutoAnalysis() {
+        if (autoAnalysisTask != null) {
+            autoAnalysisTask.cancel(false);
+            autoAnalysisTask = null;
+        }
+    }
     
     /**
      * 设置系统性能指标
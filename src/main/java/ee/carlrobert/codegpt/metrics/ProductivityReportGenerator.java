@@ -0,0 +1,164 @@
+package ee.carlrobert.codegpt.metrics;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行效能报告生成
+ * 按 项目 × 行区间 划分分区（列式数据按完成顺序追加，每个行区间对应一段连续时间），
+ * 在所有项目共享、并行度受限的 ForkJoinPool 上分别累加，再与已移出列式副本的累加统计量合并为一份报告
+ */
+public final class ProductivityReportGenerator {
+
+    private static final Logger LOG = Logger.getInstance(ProductivityReportGenerator.class);
+
+    // 最多占用一半CPU核心（上限4），避免与IDE抢占资源
+    static final int MAX_PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    // 叶子任务处理的最大行数，与列式存储的块大小一致
+    static final int PARTITION_ROWS = 1_024;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(MAX_PARALLELISM, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("ProxyAI-Metrics-Report-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    private ProductivityReportGenerator() {
+    }
+
+    /**
+     * 一个项目的报告数据：已移出列式副本的累加统计量，以及仍在列式副本中的明细，两者不重叠
+     */
+    public record Source(ProductivityAccumulator archived, MetricsColumnStore.Columns columns) {
+    }
+
+    /**
+     * 基于若干项目的数据生成合并报告
+     *
+     * @param indicator 进度指示器，可为 null；取消时抛出 ProcessCanceledException
+     */
+    public static ProductivityReport generate(List<Source> sources, ProgressIndicator indicator) {
+        ProductivityAccumulator accumulator = accumulate(sources, indicator);
+        return new ProductivityAnalyzer(accumulator).generateComprehensiveReport();
+    }
+
+    /**
+     * 并行累加各项目列式副本中的明细，再合并各项目已移出的累加统计量
+     */
+    static ProductivityAccumulator accumulate(List<Source> sources, ProgressIndicator indicator) {
+        long totalRows = 0;
+        for (Source source : sources) {
+            totalRows += source.columns().size();
+        }
+
+        Progress progress = new Progress(indicator, totalRows);
+        if (indicator != null) {
+            indicator.setIndeterminate(false);
+            indicator.setText("正在并行生成效能分析报告...");
+            indicator.setText2(sources.size() + " 个项目，" + totalRows + " 条记录");
+        }
+
+        List<AccumulateTask> tasks = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            MetricsColumnStore.Columns columns = source.columns();
+            tasks.add(new AccumulateTask(columns, 0, columns.size(), progress));
+        }
+
+        long start = System.currentTimeMillis();
+        ProductivityAccumulator result = POOL.invoke(new MergeTask(tasks));
+        for (Source source : sources) {
+            result.merge(source.archived());
+        }
+        LOG.debug("并行累加完成，分区数据 " + totalRows + " 条，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        return result;
+    }
+
+    /**
+     * 跨分区共享的进度与取消检查
+     */
+    private static final class Progress {
+        private final ProgressIndicator indicator;
+        private final long totalRows;
+        private final AtomicLong processedRows = new AtomicLong();
+
+        Progress(ProgressIndicator indicator, long totalRows) {
+            this.indicator = indicator;
+            this.totalRows = totalRows;
+        }
+
+        void checkCanceled() {
+            if (indicator != null) {
+                indicator.checkCanceled();
+            }
+        }
+
+        void advance(int rows) {
+            long processed = processedRows.addAndGet(rows);
+            if (indicator != null && totalRows > 0) {
+                indicator.setFraction((double) processed / totalRows);
+            }
+        }
+    }
+
+    private static final class MergeTask extends RecursiveTask<ProductivityAccumulator> {
+        private final List<AccumulateTask> tasks;
+
+        MergeTask(List<AccumulateTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected ProductivityAccumulator compute() {
+            invokeAll(tasks);
+            ProductivityAccumulator merged = new ProductivityAccumulator();
+            for (AccumulateTask task : tasks) {
+                merged.merge(task.join());
+            }
+            return merged;
+        }
+    }
+
+    private static final class AccumulateTask extends RecursiveTask<ProductivityAccumulator> {
+        private final MetricsColumnStore.Columns columns;
+        private final int fromRow;
+        private final int toRow;
+        private final Progress progress;
+
+        AccumulateTask(MetricsColumnStore.Columns columns, int fromRow, int toRow, Progress progress) {
+            this.columns = columns;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.progress = progress;
+        }
+
+        @Override
+        protected ProductivityAccumulator compute() {
+            progress.checkCanceled();
+            if (toRow - fromRow <= PARTITION_ROWS) {
+                ProductivityAccumulator accumulator = new ProductivityAccumulator();
+                for (int row = fromRow; row < toRow; row++) {
+                    accumulator.add(columns, row);
+                }
+                progress.advance(toRow - fromRow);
+                return accumulator;
+            }
+
+            int mid = fromRow + (toRow - fromRow) / 2;
+            AccumulateTask left = new AccumulateTask(columns, fromRow, mid, progress);
+            AccumulateTask right = new AccumulateTask(columns, mid, toRow, progress);
+            left.fork();
+            ProductivityAccumulator result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+}
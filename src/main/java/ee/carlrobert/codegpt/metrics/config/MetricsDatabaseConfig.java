@@ -1,5 +1,6 @@
 package ee.carlrobert.codegpt.metrics.config;
 
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
@@ -7,9 +8,12 @@ import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.file.Path;
+import java.util.Objects;
+
 /**
  * 指标系统数据库配置
- * 管理MySQL数据库连接参数
+ * 默认使用嵌入式H2文件库（无需外部服务），也可切换为MySQL
  */
 @State(
     name = "ProxyAI.MetricsDatabaseConfig",
@@ -19,7 +23,27 @@ public class MetricsDatabaseConfig implements PersistentStateComponent<MetricsDa
     
     private static final Logger LOG = Logger.getInstance(MetricsDatabaseConfig.class);
     
+    /**
+     * 指标存储模式
+     */
+    public enum StoreMode {
+        /** 嵌入式H2文件库，存放在IDE系统目录下 */
+        EMBEDDED,
+        /** 外部MySQL数据库 */
+        MYSQL
+    }
+    
+    public static final String H2_DRIVER = "org.h2.Driver";
+    private static final String H2_USER = "sa";
+    // MySQL兼容模式让两种后端共用同一套SQL；DB_CLOSE_ON_EXIT=FALSE 保证IDE退出时写入队列仍可刷写
+    private static final String H2_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE"
+        + ";NON_KEYWORDS=DATE,VALUE;CACHE_SIZE=16384;WRITE_DELAY=1000;LOCK_TIMEOUT=10000";
+    
     public static class State {
+        // null 表示未保存过存储模式（旧版本配置），加载时据此迁移，未迁移时按 EMBEDDED 处理
+        public String storeMode;
+        public String embeddedPath = "";
+        public int retentionDays = 90;
         public String dbUrl = "jdbc:mysql://localhost:3306/proxyai_metrics?useSSL=false&serverTimezone=UTC&characterEncoding=UTF-8&allowPublicKeyRetrieval=true&useUnicode=true";
         public String dbUser = "root";
         public String dbPassword = "root";
@@ -44,20 +68,76 @@ public class MetricsDatabaseConfig implements PersistentStateComponent<MetricsDa
     
     @Override
     public void loadState(@NotNull State state) {
+        if (state.storeMode == null) {
+            state.storeMode = migrateStoreMode(state).name();
+        }
         myState = state;
-        LOG.info("指标数据库配置已加载");
+        LOG.info("指标数据库配置已加载，存储模式: " + state.storeMode);
+    }
+    
+    /**
+     * 旧版本只支持MySQL且不保存存储模式；连接参数改过默认值说明用户在使用自己的MySQL，保持不变
+     */
+    private static StoreMode migrateStoreMode(State state) {
+        State defaults = new State();
+        boolean customized = !Objects.equals(state.dbUrl, defaults.dbUrl)
+            || !Objects.equals(state.dbUser, defaults.dbUser)
+            || !Objects.equals(state.dbPassword, defaults.dbPassword);
+        return customized ? StoreMode.MYSQL : StoreMode.EMBEDDED;
     }
     
     // Getters
-    public String getDbUrl() { return myState.dbUrl; }
-    public String getDbUser() { return myState.dbUser; }
-    public String getDbPassword() { return myState.dbPassword; }
-    public String getDbDriver() { return myState.dbDriver; }
+    public String getDbUrl() { return isEmbedded() ? getEmbeddedUrl() : myState.dbUrl; }
+    public String getDbUser() { return isEmbedded() ? H2_USER : myState.dbUser; }
+    public String getDbPassword() { return isEmbedded() ? "" : myState.dbPassword; }
+    public String getDbDriver() { return isEmbedded() ? H2_DRIVER : myState.dbDriver; }
+    public int getRetentionDays() { return myState.retentionDays; }
+    
+    public StoreMode getStoreMode() {
+        if (myState.storeMode == null) {
+            return StoreMode.EMBEDDED;
+        }
+        try {
+            return StoreMode.valueOf(myState.storeMode);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return StoreMode.EMBEDDED;
+        }
+    }
+    
+    public boolean isEmbedded() {
+        return getStoreMode() == StoreMode.EMBEDDED;
+    }
+    
+    /**
+     * 嵌入式H2库的JDBC URL，未配置路径时放在IDE系统目录下
+     */
+    public String getEmbeddedUrl() {
+        String basePath = myState.embeddedPath;
+        if (basePath == null || basePath.isBlank()) {
+            basePath = Path.of(PathManager.getSystemPath(), "proxyai-metrics", "metrics").toString();
+        }
+        return "jdbc:h2:file:" + basePath + H2_OPTIONS;
+    }
     public int getConnectionTimeout() { return myState.connectionTimeout; }
     public int getMaxPoolSize() { return myState.maxPoolSize; }
     public boolean isAutoCreateTables() { return myState.autoCreateTables; }
     
     // Setters
+    public void setStoreMode(StoreMode storeMode) {
+        myState.storeMode = storeMode.name();
+        LOG.info("指标存储模式已更新: " + storeMode);
+    }
+    
+    public void setEmbeddedPath(String embeddedPath) {
+        myState.embeddedPath = embeddedPath;
+        LOG.info("嵌入式数据库路径已更新: " + embeddedPath);
+    }
+    
+    public void setRetentionDays(int retentionDays) {
+        myState.retentionDays = retentionDays;
+        LOG.info("指标数据保留天数已更新: " + retentionDays);
+    }
+    
     public void setDbUrl(String dbUrl) { 
         myState.dbUrl = dbUrl; 
         LOG.info("数据库URL已更新: " + dbUrl);
@@ -97,6 +177,9 @@ public class MetricsDatabaseConfig implements PersistentStateComponent<MetricsDa
      * 获取完整的数据库连接URL
      */
     public String getFullDbUrl() {
+        if (isEmbedded()) {
+            return getEmbeddedUrl();
+        }
         return myState.dbUrl + "&connectTimeout=" + myState.connectionTimeout;
     }
     
@@ -104,6 +187,9 @@ public class MetricsDatabaseConfig implements PersistentStateComponent<MetricsDa
      * 验证配置是否有效
      */
     public boolean isValid() {
+        if (isEmbedded()) {
+            return true;
+        }
         return myState.dbUrl != null && !myState.dbUrl.isEmpty() &&
                myState.dbUser != null && !myState.dbUser.isEmpty() &&
                myState.dbPassword != null && !myState.dbPassword.isEmpty() &&
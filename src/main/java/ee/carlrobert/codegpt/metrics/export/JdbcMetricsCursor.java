@@ -0,0 +1,214 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+import javax.sql.DataSource;
+
+/**
+ * Cursor over the productivity_metrics table.
+ * Uses a forward-only, read-only result set so the driver streams rows instead of loading the whole range;
+ * columns are read by position in the order of {@link #SELECT_SQL}.
+ */
+public final class JdbcMetricsCursor implements MetricsCursor {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int ID_COLUMN = 18;
+
+    static final String SELECT_SQL = """
+        SELECT start_time, action_type, model_name, programming_language,
+               response_time, processing_time, input_token_count, output_token_count, total_token_count,
+               token_cost, lines_generated, lines_accepted, lines_rejected, acceptance_rate,
+               successful, retry_count, user_rating, id
+        FROM productivity_metrics
+        WHERE start_time >= ? AND start_time < ?
+        """;
+    // id breaks ties between equal start times so paginated reads can resume at a stable position
+    static final String ORDER_BY_SQL = " ORDER BY start_time, id";
+    static final String LIMIT_SQL = " LIMIT ?";
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final Set<String> excludedIds;
+
+    private long startTime;
+    private String actionType;
+    private String modelName;
+    private String programmingLanguage;
+    private long responseTime;
+    private long processingTime;
+    private int inputTokenCount;
+    private int outputTokenCount;
+    private int totalTokenCount;
+    private double tokenCost;
+    private int linesGenerated;
+    private int linesAccepted;
+    private int linesRejected;
+    private double acceptanceRate;
+    private boolean successful;
+    private int retryCount;
+    private int userRating;
+
+    /**
+     * @param embedded true for the embedded H2 store; MySQL only streams with a fetch size of Integer.MIN_VALUE
+     */
+    public JdbcMetricsCursor(DataSource dataSource, long fromMillis, long toMillis, boolean embedded)
+            throws IOException {
+        this(dataSource, MetricsQuery.between(fromMillis, toMillis), embedded);
+    }
+
+    /**
+     * The string filters of the query are pushed down into the WHERE clause
+     */
+    public JdbcMetricsCursor(DataSource dataSource, MetricsQuery query, boolean embedded) throws IOException {
+        this(dataSource, query, embedded, 0);
+    }
+
+    /**
+     * @param maxRows upper bound on the rows read, pushed down as a LIMIT so that a page does not scan
+     *                (or, on MySQL, drain on close) the rest of the table; 0 for no limit
+     */
+    public JdbcMetricsCursor(DataSource dataSource, MetricsQuery query, boolean embedded, long maxRows)
+            throws IOException {
+        this(dataSource, query, embedded, maxRows, Set.of());
+    }
+
+    /**
+     * @param excludedIds ids of rows to skip, e.g. records that are also merged in from memory;
+     *                    the skipped rows still count towards {@code maxRows}
+     */
+    public JdbcMetricsCursor(DataSource dataSource, MetricsQuery query, boolean embedded, long maxRows,
+                             Set<String> excludedIds) throws IOException {
+        this.excludedIds = excludedIds;
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        if (query.getActionType() != null) {
+            sql.append(" AND action_type = ?");
+        }
+        if (query.getModelName() != null) {
+            sql.append(" AND model_name = ?");
+        }
+        if (query.getProgrammingLanguage() != null) {
+            sql.append(" AND programming_language = ?");
+        }
+        sql.append(ORDER_BY_SQL);
+        if (maxRows > 0) {
+            sql.append(LIMIT_SQL);
+        }
+
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setReadOnly(true);
+            stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(embedded ? FETCH_SIZE : Integer.MIN_VALUE);
+            int paramIndex = 1;
+            stmt.setLong(paramIndex++, query.getFromMillis());
+            stmt.setLong(paramIndex++, query.getToMillis());
+            if (query.getActionType() != null) {
+                stmt.setString(paramIndex++, query.getActionType());
+            }
+            if (query.getModelName() != null) {
+                stmt.setString(paramIndex++, query.getModelName());
+            }
+            if (query.getProgrammingLanguage() != null) {
+                stmt.setString(paramIndex++, query.getProgrammingLanguage());
+            }
+            if (maxRows > 0) {
+                stmt.setLong(paramIndex, maxRows);
+            }
+            this.resultSet = stmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(stmt, conn);
+            throw new IOException("Failed to open metrics cursor: " + e.getMessage(), e);
+        }
+        this.connection = conn;
+        this.statement = stmt;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        try {
+            do {
+                if (!resultSet.next()) {
+                    return false;
+                }
+            } while (!excludedIds.isEmpty() && excludedIds.contains(resultSet.getString(ID_COLUMN)));
+            int column = 1;
+            startTime = resultSet.getLong(column++);
+            actionType = resultSet.getString(column++);
+            modelName = resultSet.getString(column++);
+            programmingLanguage = resultSet.getString(column++);
+            responseTime = resultSet.getLong(column++);
+            processingTime = resultSet.getLong(column++);
+            inputTokenCount = resultSet.getInt(column++);
+            outputTokenCount = resultSet.getInt(column++);
+            totalTokenCount = resultSet.getInt(column++);
+            tokenCost = resultSet.getDouble(column++);
+            linesGenerated = resultSet.getInt(column++);
+            linesAccepted = resultSet.getInt(column++);
+            linesRejected = resultSet.getInt(column++);
+            acceptanceRate = resultSet.getDouble(column++);
+            successful = resultSet.getBoolean(column++);
+            retryCount = resultSet.getInt(column++);
+            userRating = resultSet.getInt(column);
+            return true;
+        } catch (SQLException e) {
+            throw new IOException("Failed to read metrics row: " + e.getMessage(), e);
+        }
+    }
+
+    @Override public long startTime() { return startTime; }
+    @Override public String actionType() { return actionType; }
+    @Override public String modelName() { return modelName; }
+    @Override public String programmingLanguage() { return programmingLanguage; }
+    @Override public long responseTime() { return responseTime; }
+    @Override public long processingTime() { return processingTime; }
+    @Override public int inputTokenCount() { return inputTokenCount; }
+    @Override public int outputTokenCount() { return outputTokenCount; }
+    @Override public int totalTokenCount() { return totalTokenCount; }
+    @Override public double tokenCost() { return tokenCost; }
+    @Override public int linesGenerated() { return linesGenerated; }
+    @Override public int linesAccepted() { return linesAccepted; }
+    @Override public int linesRejected() { return linesRejected; }
+    @Override public double acceptanceRate() { return acceptanceRate; }
+    @Override public boolean successful() { return successful; }
+    @Override public int retryCount() { return retryCount; }
+    @Override public int userRating() { return userRating; }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            throw new IOException("Failed to close metrics cursor: " + e.getMessage(), e);
+        } finally {
+            closeQuietly(statement, connection);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt, Connection conn) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException ignored) {
+        }
+        if (conn == null) {
+            return;
+        }
+        try {
+            // The connection goes back to a pool and may be borrowed for writes next
+            conn.setReadOnly(false);
+        } catch (SQLException ignored) {
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary columnar export format shared by {@link MetricsColumnarWriter} and {@link MetricsColumnarReader}.
+ *
+ * <pre>
+ * file      := MAGIC version:u8 fieldCount:varint (key:utf kind:u8)* rowGroup* 0:varint totalRows:varint
+ * rowGroup  := rowCount:varint minStartTime:i64 maxStartTime:i64 rawLength:varint deflatedLength:varint deflated
+ * column    := TIMESTAMP  min:zigzag max:zigzag (delta from previous:zigzag)*
+ *            | INTEGER    min:zigzag max:zigzag (value - min:varint)*
+ *            | DECIMAL    min:f64 max:f64 value:f64*
+ *            | BOOLEAN    trueCount:varint bitset
+ *            | TEXT       dictSize:varint value:utf* (code:varint)*     code 0 is null
+ * </pre>
+ *
+ * Each row group is deflated on its own, so readers can skip groups outside a time range
+ * using the start time bounds without inflating them.
+ */
+public final class MetricsColumnarFormat {
+
+    static final byte[] MAGIC = {'P', 'X', 'M', 'C'};
+    static final int VERSION = 1;
+    static final int ROW_GROUP_SIZE = 8_192;
+    public static final String FILE_EXTENSION = ".pxmc";
+
+    private MetricsColumnarFormat() {
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeZigZag(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readZigZag(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
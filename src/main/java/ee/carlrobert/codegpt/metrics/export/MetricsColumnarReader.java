@@ -0,0 +1,308 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static ee.carlrobert.codegpt.metrics.export.MetricsColumnarFormat.readVarLong;
+import static ee.carlrobert.codegpt.metrics.export.MetricsColumnarFormat.readZigZag;
+
+/**
+ * Reads files written by {@link MetricsColumnarWriter} as a {@link MetricsCursor}.
+ * Only one row group is decoded at a time; groups whose start time bounds fall outside
+ * [fromMillis, toMillis) are skipped without being inflated. Columns unknown to this version are ignored,
+ * columns missing from the file read as 0 / null.
+ */
+public final class MetricsColumnarReader implements MetricsCursor {
+
+    private final DataInputStream in;
+    private final long fromMillis;
+    private final long toMillis;
+    private final Inflater inflater = new Inflater();
+
+    // Schema of the file: kind per file column, and the file column of each known field (-1 if absent)
+    private final MetricsExportField.Kind[] kinds;
+    private final int[] columnOfField = new int[MetricsExportField.ALL.size()];
+
+    // Current row group by file column
+    private final long[][] longs;
+    private final double[][] doubles;
+    private final int[][] codes;
+    private final String[][] dictionaries;
+    private final double[] minValues;
+    private final double[] maxValues;
+
+    private byte[] compressed = new byte[0];
+    private byte[] inflated = new byte[0];
+    private int groupRows;
+    private int row = -1;
+    private long rowGroups;
+    private long skippedRowGroups;
+    private boolean finished;
+
+    public MetricsColumnarReader(InputStream input) throws IOException {
+        this(input, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public MetricsColumnarReader(InputStream input, long fromMillis, long toMillis) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(input, 64 * 1024));
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+
+        byte[] magic = new byte[MetricsColumnarFormat.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MetricsColumnarFormat.MAGIC)) {
+            throw new IOException("Not a columnar metrics file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != MetricsColumnarFormat.VERSION) {
+            throw new IOException("Unsupported columnar metrics version: " + version);
+        }
+
+        int columnCount = (int) readVarLong(in);
+        kinds = new MetricsExportField.Kind[columnCount];
+        Arrays.fill(columnOfField, -1);
+        MetricsExportField.Kind[] allKinds = MetricsExportField.Kind.values();
+        for (int column = 0; column < columnCount; column++) {
+            String key = in.readUTF();
+            int kind = in.readUnsignedByte();
+            if (kind >= allKinds.length) {
+                throw new IOException("Unknown column kind " + kind + " for column " + key);
+            }
+            kinds[column] = allKinds[kind];
+            for (MetricsExportField field : MetricsExportField.ALL) {
+                if (field.getKey().equals(key) && field.getKind() == kinds[column]) {
+                    columnOfField[field.ordinal()] = column;
+                }
+            }
+        }
+
+        longs = new long[columnCount][];
+        doubles = new double[columnCount][];
+        codes = new int[columnCount][];
+        dictionaries = new String[columnCount][];
+        minValues = new double[columnCount];
+        maxValues = new double[columnCount];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            while (++row < groupRows) {
+                long startTime = startTime();
+                if (startTime >= fromMillis && startTime < toMillis) {
+                    return true;
+                }
+            }
+            if (!readRowGroup()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Number of row groups decoded so far
+     */
+    public long getRowGroups() {
+        return rowGroups;
+    }
+
+    /**
+     * Number of row groups skipped by the time range without being decoded
+     */
+    public long getSkippedRowGroups() {
+        return skippedRowGroups;
+    }
+
+    /**
+     * Minimum of a numeric field within the current row group
+     */
+    public double getMin(MetricsExportField field) {
+        int column = columnOfField[field.ordinal()];
+        return column < 0 ? 0 : minValues[column];
+    }
+
+    /**
+     * Maximum of a numeric field within the current row group
+     */
+    public double getMax(MetricsExportField field) {
+        int column = columnOfField[field.ordinal()];
+        return column < 0 ? 0 : maxValues[column];
+    }
+
+    private boolean readRowGroup() throws IOException {
+        while (!finished) {
+            int rows = (int) readVarLong(in);
+            if (rows == 0) {
+                finished = true;
+                return false;
+            }
+            long minStartTime = in.readLong();
+            long maxStartTime = in.readLong();
+            int rawLength = (int) readVarLong(in);
+            int compressedLength = (int) readVarLong(in);
+
+            if (maxStartTime < fromMillis || minStartTime >= toMillis) {
+                in.skipNBytes(compressedLength);
+                skippedRowGroups++;
+                continue;
+            }
+
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            if (inflated.length < rawLength) {
+                inflated = new byte[rawLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+            inflate(compressedLength, rawLength);
+            decode(new DataInputStream(new ByteArrayInputStream(inflated, 0, rawLength)), rows);
+
+            groupRows = rows;
+            row = -1;
+            rowGroups++;
+            return true;
+        }
+        return false;
+    }
+
+    private void inflate(int compressedLength, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int offset = 0;
+            while (offset < rawLength) {
+                int length = inflater.inflate(inflated, offset, rawLength - offset);
+                if (length == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                offset += length;
+            }
+            if (offset != rawLength) {
+                throw new IOException("Truncated row group");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted row group: " + e.getMessage(), e);
+        }
+    }
+
+    private void decode(DataInputStream data, int rows) throws IOException {
+        for (int column = 0; column < kinds.length; column++) {
+            switch (kinds[column]) {
+                case TIMESTAMP -> {
+                    long[] values = longsFor(column, rows);
+                    long min = readZigZag(data);
+                    long max = readZigZag(data);
+                    long previous = min;
+                    for (int i = 0; i < rows; i++) {
+                        previous += readZigZag(data);
+                        values[i] = previous;
+                    }
+                    setStats(column, min, max);
+                }
+                case INTEGER -> {
+                    long[] values = longsFor(column, rows);
+                    long min = readZigZag(data);
+                    long max = readZigZag(data);
+                    for (int i = 0; i < rows; i++) {
+                        values[i] = min + readVarLong(data);
+                    }
+                    setStats(column, min, max);
+                }
+                case DECIMAL -> {
+                    if (doubles[column] == null || doubles[column].length < rows) {
+                        doubles[column] = new double[rows];
+                    }
+                    double min = data.readDouble();
+                    double max = data.readDouble();
+                    for (int i = 0; i < rows; i++) {
+                        doubles[column][i] = data.readDouble();
+                    }
+                    setStats(column, min, max);
+                }
+                case BOOLEAN -> {
+                    long[] values = longsFor(column, rows);
+                    long trueCount = readVarLong(data);
+                    for (int i = 0; i < rows; i += 8) {
+                        int bits = data.readUnsignedByte();
+                        for (int bit = 0; bit < 8 && i + bit < rows; bit++) {
+                            values[i + bit] = (bits >>> bit) & 1;
+                        }
+                    }
+                    setStats(column, trueCount < rows ? 0 : 1, trueCount > 0 ? 1 : 0);
+                }
+                case TEXT -> {
+                    int size = (int) readVarLong(data);
+                    String[] dictionary = new String[size + 1];
+                    for (int i = 1; i <= size; i++) {
+                        dictionary[i] = data.readUTF();
+                    }
+                    dictionaries[column] = dictionary;
+                    if (codes[column] == null || codes[column].length < rows) {
+                        codes[column] = new int[rows];
+                    }
+                    for (int i = 0; i < rows; i++) {
+                        codes[column][i] = (int) readVarLong(data);
+                    }
+                    setStats(column, 0, size);
+                }
+            }
+        }
+    }
+
+    private long[] longsFor(int column, int rows) {
+        if (longs[column] == null || longs[column].length < rows) {
+            longs[column] = new long[rows];
+        }
+        return longs[column];
+    }
+
+    private void setStats(int column, double min, double max) {
+        minValues[column] = min;
+        maxValues[column] = max;
+    }
+
+    private long longValue(MetricsExportField field) {
+        int column = columnOfField[field.ordinal()];
+        return column < 0 ? 0 : longs[column][row];
+    }
+
+    private double doubleValue(MetricsExportField field) {
+        int column = columnOfField[field.ordinal()];
+        return column < 0 ? 0 : doubles[column][row];
+    }
+
+    private String textValue(MetricsExportField field) {
+        int column = columnOfField[field.ordinal()];
+        return column < 0 ? null : dictionaries[column][codes[column][row]];
+    }
+
+    @Override public long startTime() { return longValue(MetricsExportField.START_TIME); }
+    @Override public String actionType() { return textValue(MetricsExportField.ACTION_TYPE); }
+    @Override public String modelName() { return textValue(MetricsExportField.MODEL_NAME); }
+    @Override public String programmingLanguage() { return textValue(MetricsExportField.PROGRAMMING_LANGUAGE); }
+    @Override public long responseTime() { return longValue(MetricsExportField.RESPONSE_TIME); }
+    @Override public long processingTime() { return longValue(MetricsExportField.PROCESSING_TIME); }
+    @Override public int inputTokenCount() { return (int) longValue(MetricsExportField.INPUT_TOKENS); }
+    @Override public int outputTokenCount() { return (int) longValue(MetricsExportField.OUTPUT_TOKENS); }
+    @Override public int totalTokenCount() { return (int) longValue(MetricsExportField.TOTAL_TOKENS); }
+    @Override public double tokenCost() { return doubleValue(MetricsExportField.TOKEN_COST); }
+    @Override public int linesGenerated() { return (int) longValue(MetricsExportField.LINES_GENERATED); }
+    @Override public int linesAccepted() { return (int) longValue(MetricsExportField.LINES_ACCEPTED); }
+    @Override public int linesRejected() { return (int) longValue(MetricsExportField.LINES_REJECTED); }
+    @Override public double acceptanceRate() { return doubleValue(MetricsExportField.ACCEPTANCE_RATE); }
+    @Override public boolean successful() { return longValue(MetricsExportField.SUCCESSFUL) != 0; }
+    @Override public int retryCount() { return (int) longValue(MetricsExportField.RETRY_COUNT); }
+    @Override public int userRating() { return (int) longValue(MetricsExportField.USER_RATING); }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
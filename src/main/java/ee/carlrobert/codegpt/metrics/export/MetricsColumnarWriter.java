@@ -0,0 +1,287 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+
+import static ee.carlrobert.codegpt.metrics.export.MetricsColumnarFormat.ROW_GROUP_SIZE;
+import static ee.carlrobert.codegpt.metrics.export.MetricsColumnarFormat.writeVarLong;
+import static ee.carlrobert.codegpt.metrics.export.MetricsColumnarFormat.writeZigZag;
+
+/**
+ * Writes metrics in the {@link MetricsColumnarFormat} layout.
+ * Rows are buffered into primitive column arrays one row group at a time, so memory is bounded
+ * by {@link MetricsColumnarFormat#ROW_GROUP_SIZE} regardless of the export size.
+ */
+public final class MetricsColumnarWriter implements Closeable {
+
+    private static final List<MetricsExportField> FIELDS = MetricsExportField.ALL;
+
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater();
+    private final ByteArrayOutputStream rawBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream raw = new DataOutputStream(rawBuffer);
+    private final byte[] deflateChunk = new byte[16 * 1024];
+    private final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+
+    // Current row group by field ordinal; only the array matching the field kind is allocated
+    private final long[][] longs = new long[FIELDS.size()][];
+    private final double[][] doubles = new double[FIELDS.size()][];
+    private final int[][] codes = new int[FIELDS.size()][];
+    private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+    private final List<List<String>> dictionaryValues = new ArrayList<>();
+    private final RowSink sink = new RowSink();
+
+    private int rows;
+    private long totalRows;
+    private long minStartTime = Long.MAX_VALUE;
+    private long maxStartTime = Long.MIN_VALUE;
+    private boolean closed;
+
+    public MetricsColumnarWriter(OutputStream output) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(output, 64 * 1024));
+        for (MetricsExportField field : FIELDS) {
+            switch (field.getKind()) {
+                case TIMESTAMP, INTEGER, BOOLEAN -> longs[field.ordinal()] = new long[ROW_GROUP_SIZE];
+                case DECIMAL -> doubles[field.ordinal()] = new double[ROW_GROUP_SIZE];
+                case TEXT -> codes[field.ordinal()] = new int[ROW_GROUP_SIZE];
+            }
+            dictionaries.add(field.getKind() == MetricsExportField.Kind.TEXT ? new HashMap<>() : null);
+            dictionaryValues.add(field.getKind() == MetricsExportField.Kind.TEXT ? new ArrayList<>() : null);
+        }
+        writeHeader();
+    }
+
+    /**
+     * Write every row of the cursor accepted by the action type filter
+     *
+     * @return number of written rows
+     */
+    public long writeAll(MetricsCursor cursor, Predicate<String> actionTypeFilter) throws IOException {
+        long written = 0;
+        while (cursor.next()) {
+            if (actionTypeFilter.test(cursor.actionType())) {
+                append(cursor);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Append the cursor's current row
+     */
+    public void append(MetricsCursor cursor) throws IOException {
+        for (MetricsExportField field : FIELDS) {
+            sink.column = field.ordinal();
+            field.write(cursor, sink);
+        }
+        rows++;
+        totalRows++;
+        if (rows == ROW_GROUP_SIZE) {
+            flushRowGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushRowGroup();
+            writeVarLong(out, 0);
+            writeVarLong(out, totalRows);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(MetricsColumnarFormat.MAGIC);
+        out.writeByte(MetricsColumnarFormat.VERSION);
+        writeVarLong(out, FIELDS.size());
+        for (MetricsExportField field : FIELDS) {
+            out.writeUTF(field.getKey());
+            out.writeByte(field.getKind().ordinal());
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+
+        rawBuffer.reset();
+        for (MetricsExportField field : FIELDS) {
+            int column = field.ordinal();
+            switch (field.getKind()) {
+                case TIMESTAMP -> writeTimestamps(longs[column]);
+                case INTEGER -> writeIntegers(longs[column]);
+                case DECIMAL -> writeDecimals(doubles[column]);
+                case BOOLEAN -> writeBooleans(longs[column]);
+                case TEXT -> writeText(column);
+            }
+        }
+        raw.flush();
+
+        deflated.reset();
+        deflater.reset();
+        deflater.setInput(rawBuffer.toByteArray());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(deflateChunk);
+            deflated.write(deflateChunk, 0, length);
+        }
+
+        writeVarLong(out, rows);
+        out.writeLong(minStartTime);
+        out.writeLong(maxStartTime);
+        writeVarLong(out, rawBuffer.size());
+        writeVarLong(out, deflated.size());
+        deflated.writeTo(out);
+
+        rows = 0;
+        minStartTime = Long.MAX_VALUE;
+        maxStartTime = Long.MIN_VALUE;
+        for (int i = 0; i < FIELDS.size(); i++) {
+            if (dictionaries.get(i) != null) {
+                dictionaries.get(i).clear();
+                dictionaryValues.get(i).clear();
+            }
+        }
+    }
+
+    private void writeTimestamps(long[] values) throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < rows; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        writeZigZag(raw, min);
+        writeZigZag(raw, max);
+        long previous = min;
+        for (int i = 0; i < rows; i++) {
+            writeZigZag(raw, values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    private void writeIntegers(long[] values) throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < rows; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        writeZigZag(raw, min);
+        writeZigZag(raw, max);
+        for (int i = 0; i < rows; i++) {
+            writeVarLong(raw, values[i] - min);
+        }
+    }
+
+    private void writeDecimals(double[] values) throws IOException {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        raw.writeDouble(min);
+        raw.writeDouble(max);
+        for (int i = 0; i < rows; i++) {
+            raw.writeDouble(values[i]);
+        }
+    }
+
+    private void writeBooleans(long[] values) throws IOException {
+        int trueCount = 0;
+        for (int i = 0; i < rows; i++) {
+            trueCount += (int) values[i];
+        }
+        writeVarLong(raw, trueCount);
+        for (int i = 0; i < rows; i += 8) {
+            int bits = 0;
+            for (int bit = 0; bit < 8 && i + bit < rows; bit++) {
+                bits |= (int) values[i + bit] << bit;
+            }
+            raw.writeByte(bits);
+        }
+    }
+
+    private void writeText(int column) throws IOException {
+        List<String> values = dictionaryValues.get(column);
+        writeVarLong(raw, values.size());
+        for (String value : values) {
+            raw.writeUTF(value);
+        }
+        int[] columnCodes = codes[column];
+        for (int i = 0; i < rows; i++) {
+            writeVarLong(raw, columnCodes[i]);
+        }
+    }
+
+    /**
+     * Stores the current row's values into the column arrays
+     */
+    private final class RowSink implements MetricsExportField.Sink {
+        private int column;
+
+        @Override
+        public void text(String value) {
+            int code = 0;
+            if (value != null) {
+                Map<String, Integer> dictionary = dictionaries.get(column);
+                Integer existing = dictionary.get(value);
+                if (existing == null) {
+                    List<String> values = dictionaryValues.get(column);
+                    values.add(value);
+                    existing = values.size();
+                    dictionary.put(value, existing);
+                }
+                code = existing;
+            }
+            codes[column][rows] = code;
+        }
+
+        @Override
+        public void number(long value) {
+            longs[column][rows] = value;
+        }
+
+        @Override
+        public void number(double value) {
+            doubles[column][rows] = value;
+        }
+
+        @Override
+        public void bool(boolean value) {
+            longs[column][rows] = value ? 1 : 0;
+        }
+
+        @Override
+        public void timestamp(long epochMillis) {
+            longs[column][rows] = epochMillis;
+            minStartTime = Math.min(minStartTime, epochMillis);
+            maxStartTime = Math.max(maxStartTime, epochMillis);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.sql.DataSource;
+
+/**
+ * Forward-only cursor over stored metrics records.
+ * Only the current row is held in memory, so exports stay flat regardless of the number of records.
+ */
+public interface MetricsCursor extends AutoCloseable {
+
+    /**
+     * Move to the next record
+     *
+     * @return false when no records are left
+     */
+    boolean next() throws IOException;
+
+    long startTime();
+
+    String actionType();
+
+    String modelName();
+
+    String programmingLanguage();
+
+    long responseTime();
+
+    long processingTime();
+
+    int inputTokenCount();
+
+    int outputTokenCount();
+
+    int totalTokenCount();
+
+    double tokenCost();
+
+    int linesGenerated();
+
+    int linesAccepted();
+
+    int linesRejected();
+
+    double acceptanceRate();
+
+    boolean successful();
+
+    int retryCount();
+
+    int userRating();
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Cursor over the in-memory column store, limited to records started in [fromMillis, toMillis)
+     */
+    static MetricsCursor ofColumns(MetricsColumnStore.Columns columns, long fromMillis, long toMillis) {
+        return new ColumnsCursor(columns, MetricsQuery.between(fromMillis, toMillis), columns.getFirstRow());
+    }
+
+    /**
+     * Cursor over the in-memory column store matching the query, starting at the given global row number
+     */
+    static ColumnsCursor ofColumns(MetricsColumnStore.Columns columns, MetricsQuery query, long fromRowNumber) {
+        return new ColumnsCursor(columns, query, fromRowNumber);
+    }
+
+    /**
+     * Merges two cursors that are each ordered by start time; on equal start times rows of {@code first} come first.
+     * Closing the merged cursor closes both.
+     */
+    static MetricsCursor merge(MetricsCursor first, MetricsCursor second) {
+        return new MergedCursor(first, second);
+    }
+
+    /**
+     * Merges the database rows matching the query with records still resident in memory, both ordered by start
+     * time; on equal start times database rows come first. Records that are already persisted as well are only
+     * read from memory, where late updates such as user ratings are applied.
+     *
+     * @param maxRows upper bound on the database rows needed, 0 for no limit
+     */
+    static MetricsCursor withResident(DataSource dataSource, MetricsQuery query, boolean embedded, long maxRows,
+                                      Iterable<ProductivityMetrics> resident) throws IOException {
+        List<ProductivityMetrics> byStartTime = new ArrayList<>();
+        Set<String> residentIds = new HashSet<>();
+        for (ProductivityMetrics metrics : resident) {
+            byStartTime.add(metrics);
+            residentIds.add(metrics.getId());
+        }
+        byStartTime.sort(Comparator.comparingLong(ProductivityMetrics::getStartTime));
+        MetricsColumnStore.Columns columns = MetricsColumnStore.of(byStartTime).columns();
+        // Skipped duplicates still count towards the database LIMIT
+        long limit = maxRows > 0 ? maxRows + residentIds.size() : 0;
+        return merge(
+            new JdbcMetricsCursor(dataSource, query, embedded, limit, residentIds),
+            ofColumns(columns, query, columns.getFirstRow()));
+    }
+
+    final class MergedCursor implements MetricsCursor {
+        private final MetricsCursor first;
+        private final MetricsCursor second;
+        private boolean firstHasRow;
+        private boolean secondHasRow;
+        private boolean started;
+        private MetricsCursor current;
+
+        private MergedCursor(MetricsCursor first, MetricsCursor second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (!started) {
+                firstHasRow = first.next();
+                secondHasRow = second.next();
+                started = true;
+            } else if (current == first) {
+                firstHasRow = first.next();
+            } else if (current == second) {
+                secondHasRow = second.next();
+            }
+
+            if (!firstHasRow && !secondHasRow) {
+                current = null;
+                return false;
+            }
+            current = !secondHasRow || (firstHasRow && first.startTime() <= second.startTime()) ? first : second;
+            return true;
+        }
+
+        @Override public long startTime() { return current.startTime(); }
+        @Override public String actionType() { return current.actionType(); }
+        @Override public String modelName() { return current.modelName(); }
+        @Override public String programmingLanguage() { return current.programmingLanguage(); }
+        @Override public long responseTime() { return current.responseTime(); }
+        @Override public long processingTime() { return current.processingTime(); }
+        @Override public int inputTokenCount() { return current.inputTokenCount(); }
+        @Override public int outputTokenCount() { return current.outputTokenCount(); }
+        @Override public int totalTokenCount() { return current.totalTokenCount(); }
+        @Override public double tokenCost() { return current.tokenCost(); }
+        @Override public int linesGenerated() { return current.linesGenerated(); }
+        @Override public int linesAccepted() { return current.linesAccepted(); }
+        @Override public int linesRejected() { return current.linesRejected(); }
+        @Override public double acceptanceRate() { return current.acceptanceRate(); }
+        @Override public boolean successful() { return current.successful(); }
+        @Override public int retryCount() { return current.retryCount(); }
+        @Override public int userRating() { return current.userRating(); }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+    }
+
+    final class ColumnsCursor implements MetricsCursor {
+        private final MetricsColumnStore.Columns columns;
+        private final MetricsQuery query;
+        private final int actionTypeCode;
+        private final int modelNameCode;
+        private final int languageCode;
+        private int row;
+
+        private ColumnsCursor(MetricsColumnStore.Columns columns, MetricsQuery query, long fromRowNumber) {
+            this.columns = columns;
+            this.query = query;
+            int[] codes = query.resolveCodes();
+            this.actionTypeCode = codes[0];
+            this.modelNameCode = codes[1];
+            this.languageCode = codes[2];
+            this.row = (int) Math.min(columns.size(), Math.max(0, fromRowNumber - columns.getFirstRow())) - 1;
+        }
+
+        @Override
+        public boolean next() {
+            while (++row < columns.size()) {
+                if (query.matchesTime(columns.startTime(row))
+                    && matches(actionTypeCode, columns.actionTypeCode(row))
+                    && matches(modelNameCode, columns.modelNameCode(row))
+                    && matches(languageCode, columns.languageCode(row))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Global row number of the current row; stays valid after older chunks are dropped
+         */
+        public long rowNumber() {
+            return columns.getFirstRow() + row;
+        }
+
+        private static boolean matches(int expected, int actual) {
+            return expected == Integer.MIN_VALUE || expected == actual;
+        }
+
+        @Override public long startTime() { return columns.startTime(row); }
+        @Override public String actionType() { return columns.actionType(row); }
+        @Override public String modelName() { return columns.modelName(row); }
+        @Override public String programmingLanguage() { return columns.programmingLanguage(row); }
+        @Override public long responseTime() { return columns.responseTime(row); }
+        @Override public long processingTime() { return columns.processingTime(row); }
+        @Override public int inputTokenCount() { return columns.inputTokenCount(row); }
+        @Override public int outputTokenCount() { return columns.outputTokenCount(row); }
+        @Override public int totalTokenCount() { return columns.totalTokenCount(row); }
+        @Override public double tokenCost() { return columns.tokenCost(row); }
+        @Override public int linesGenerated() { return columns.linesGenerated(row); }
+        @Override public int linesAccepted() { return columns.linesAccepted(row); }
+        @Override public int linesRejected() { return columns.linesRejected(row); }
+        @Override public double acceptanceRate() { return columns.acceptanceRate(row); }
+        @Override public boolean successful() { return columns.successful(row); }
+        @Override public int retryCount() { return columns.retryCount(row); }
+        @Override public int userRating() { return columns.userRating(row); }
+
+        @Override
+        public void close() {
+        }
+    }
+}
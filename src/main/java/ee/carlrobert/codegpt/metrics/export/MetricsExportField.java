@@ -0,0 +1,182 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Exported metrics columns with precompiled accessors.
+ * Each field reads its value straight from the cursor and hands it to a format-specific sink,
+ * so no reflection or boxing happens per row.
+ */
+public enum MetricsExportField {
+
+    START_TIME("startTime", "Time", Kind.TIMESTAMP) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.timestamp(cursor.startTime());
+        }
+    },
+    ACTION_TYPE("actionType", "Action Type", Kind.TEXT) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.text(cursor.actionType());
+        }
+    },
+    MODEL_NAME("modelName", "Model", Kind.TEXT) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.text(cursor.modelName());
+        }
+    },
+    PROGRAMMING_LANGUAGE("programmingLanguage", "Language", Kind.TEXT) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.text(cursor.programmingLanguage());
+        }
+    },
+    RESPONSE_TIME("responseTime", "Response Time (ms)", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.responseTime());
+        }
+    },
+    PROCESSING_TIME("processingTime", "Processing Time (ms)", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.processingTime());
+        }
+    },
+    INPUT_TOKENS("inputTokenCount", "Input Tokens", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.inputTokenCount());
+        }
+    },
+    OUTPUT_TOKENS("outputTokenCount", "Output Tokens", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.outputTokenCount());
+        }
+    },
+    TOTAL_TOKENS("totalTokenCount", "Total Tokens", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.totalTokenCount());
+        }
+    },
+    TOKEN_COST("tokenCost", "Token Cost", Kind.DECIMAL) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.tokenCost());
+        }
+    },
+    LINES_GENERATED("linesGenerated", "Generated Lines", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.linesGenerated());
+        }
+    },
+    LINES_ACCEPTED("linesAccepted", "Accepted Lines", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.linesAccepted());
+        }
+    },
+    LINES_REJECTED("linesRejected", "Rejected Lines", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.linesRejected());
+        }
+    },
+    ACCEPTANCE_RATE("acceptanceRate", "Acceptance Rate", Kind.DECIMAL) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.acceptanceRate());
+        }
+    },
+    SUCCESSFUL("successful", "Successful", Kind.BOOLEAN) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.bool(cursor.successful());
+        }
+    },
+    RETRY_COUNT("retryCount", "Retries", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.retryCount());
+        }
+    },
+    USER_RATING("userRating", "User Rating", Kind.INTEGER) {
+        @Override
+        public void write(MetricsCursor cursor, Sink sink) throws IOException {
+            sink.number(cursor.userRating());
+        }
+    };
+
+    public static final List<MetricsExportField> ALL = List.of(values());
+
+    private final String key;
+    private final String label;
+    private final Kind kind;
+
+    MetricsExportField(String key, String label, Kind kind) {
+        this.key = key;
+        this.label = label;
+        this.kind = kind;
+    }
+
+    /**
+     * Field with the given key, or null if there is none
+     */
+    public static MetricsExportField fromKey(String key) {
+        for (MetricsExportField field : ALL) {
+            if (field.key.equals(key)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Hand the cursor's current value of this field to the sink
+     */
+    public abstract void write(MetricsCursor cursor, Sink sink) throws IOException;
+
+    /**
+     * Value type of a field; determines which {@link Sink} method it calls
+     */
+    public enum Kind {
+        TIMESTAMP,
+        TEXT,
+        INTEGER,
+        DECIMAL,
+        BOOLEAN
+    }
+
+    /**
+     * Format-specific value writer
+     */
+    public interface Sink {
+        void text(String value) throws IOException;
+
+        void number(long value) throws IOException;
+
+        void number(double value) throws IOException;
+
+        void bool(boolean value) throws IOException;
+
+        void timestamp(long epochMillis) throws IOException;
+    }
+}
@@ -0,0 +1,61 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import ee.carlrobert.codegpt.metrics.storage.MetricsDictionary;
+
+/**
+ * Server-side filter for metrics cursors: start time range [fromMillis, toMillis) plus optional
+ * exact matches on action type, model and language. A null value means "any".
+ */
+public final class MetricsQuery {
+
+    public static final MetricsQuery ALL = new MetricsQuery(Long.MIN_VALUE, Long.MAX_VALUE, null, null, null);
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final String actionType;
+    private final String modelName;
+    private final String programmingLanguage;
+
+    public MetricsQuery(long fromMillis, long toMillis, String actionType, String modelName,
+                        String programmingLanguage) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.actionType = actionType;
+        this.modelName = modelName;
+        this.programmingLanguage = programmingLanguage;
+    }
+
+    public static MetricsQuery between(long fromMillis, long toMillis) {
+        return new MetricsQuery(fromMillis, toMillis, null, null, null);
+    }
+
+    public long getFromMillis() { return fromMillis; }
+    public long getToMillis() { return toMillis; }
+    public String getActionType() { return actionType; }
+    public String getModelName() { return modelName; }
+    public String getProgrammingLanguage() { return programmingLanguage; }
+
+    /**
+     * Same filter with a later lower bound, used to resume from a pagination cursor
+     */
+    public MetricsQuery startingAt(long fromMillis) {
+        return new MetricsQuery(Math.max(this.fromMillis, fromMillis), toMillis, actionType, modelName,
+            programmingLanguage);
+    }
+
+    public boolean matchesTime(long startTime) {
+        return startTime >= fromMillis && startTime < toMillis;
+    }
+
+    /**
+     * Dictionary codes of the string filters, resolved once so rows are matched with int comparisons.
+     * A value never seen by the dictionary cannot match any row and resolves to -1.
+     */
+    int[] resolveCodes() {
+        return new int[] {
+            actionType == null ? Integer.MIN_VALUE : MetricsDictionary.ACTION_TYPES.lookup(actionType),
+            modelName == null ? Integer.MIN_VALUE : MetricsDictionary.MODEL_NAMES.lookup(modelName),
+            programmingLanguage == null ? Integer.MIN_VALUE : MetricsDictionary.LANGUAGES.lookup(programmingLanguage)
+        };
+    }
+}
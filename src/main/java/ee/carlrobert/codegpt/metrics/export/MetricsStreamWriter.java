@@ -0,0 +1,481 @@
+package ee.carlrobert.codegpt.metrics.export;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Streaming CSV / JSON / HTML writers for metrics exports.
+ * Rows are pulled from a {@link MetricsCursor} and written one at a time; only the summary
+ * (per-day and per-language totals) is kept in memory, so heap use does not grow with the export size.
+ */
+public final class MetricsStreamWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private MetricsStreamWriter() {
+    }
+
+    /**
+     * Open a buffered UTF-8 writer for the export file
+     */
+    public static Writer open(Path path) throws IOException {
+        return new BufferedWriter(
+            new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * @return number of exported rows
+     */
+    public static long writeCsv(MetricsCursor cursor, Predicate<String> actionTypeFilter, Writer out)
+            throws IOException {
+        for (MetricsExportField field : MetricsExportField.ALL) {
+            if (field.ordinal() > 0) {
+                out.write(',');
+            }
+            out.write(field.getLabel());
+        }
+        out.write('\n');
+
+        CsvSink sink = new CsvSink(out);
+        long rows = 0;
+        while (cursor.next()) {
+            if (!actionTypeFilter.test(cursor.actionType())) {
+                continue;
+            }
+            for (MetricsExportField field : MetricsExportField.ALL) {
+                sink.separator = field.ordinal() > 0;
+                field.write(cursor, sink);
+            }
+            out.write('\n');
+            rows++;
+        }
+        out.flush();
+        return rows;
+    }
+
+    /**
+     * @return number of exported rows
+     */
+    public static long writeJson(MetricsCursor cursor, Predicate<String> actionTypeFilter, int days, Writer out)
+            throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setIndent("  ");
+        json.beginObject();
+
+        json.name("metadata").beginObject();
+        json.name("exportDate").value(new Date().toString());
+        json.name("days").value(days);
+        json.name("version").value("2.0");
+        json.endObject();
+
+        ExportSummary summary = new ExportSummary();
+        JsonSink sink = new JsonSink(json);
+        json.name("metrics").beginArray();
+        while (cursor.next()) {
+            if (!actionTypeFilter.test(cursor.actionType())) {
+                continue;
+            }
+            json.beginObject();
+            for (MetricsExportField field : MetricsExportField.ALL) {
+                json.name(field.getKey());
+                field.write(cursor, sink);
+            }
+            json.endObject();
+            summary.add(cursor);
+        }
+        json.endArray();
+
+        json.name("summary").beginObject();
+        json.name("totalMetrics").value(summary.count);
+        json.name("totalLinesGenerated").value(summary.linesGenerated);
+        json.name("totalLinesAccepted").value(summary.linesAccepted);
+        json.name("avgCodeAcceptanceRate").value(summary.getAverageAcceptanceRate());
+        json.name("avgResponseTime").value(summary.getAverageResponseTime());
+        json.name("successRate").value(summary.getSuccessRate());
+        json.endObject();
+
+        json.endObject();
+        json.flush();
+        return summary.count;
+    }
+
+    /**
+     * The detail table is streamed first; the summary and charts are written after it and moved
+     * to the top of the page with CSS flex ordering.
+     *
+     * @return number of exported rows
+     */
+    public static long writeHtml(MetricsCursor cursor, Predicate<String> actionTypeFilter, int days,
+                                 boolean includeCharts, Writer out) throws IOException {
+        writeHtmlHead(out, days);
+
+        out.write("  <div class=\"container\">\n");
+        out.write("    <div class=\"data-section\">\n");
+        out.write("      <h2>Metrics Details</h2>\n");
+        out.write("      <table>\n");
+        out.write("        <thead>\n          <tr>");
+        for (MetricsExportField field : MetricsExportField.ALL) {
+            out.write("<th>");
+            out.write(field.getLabel());
+            out.write("</th>");
+        }
+        out.write("</tr>\n        </thead>\n        <tbody>\n");
+
+        ExportSummary summary = new ExportSummary();
+        HtmlSink sink = new HtmlSink(out);
+        while (cursor.next()) {
+            if (!actionTypeFilter.test(cursor.actionType())) {
+                continue;
+            }
+            out.write("          <tr>");
+            for (MetricsExportField field : MetricsExportField.ALL) {
+                out.write("<td>");
+                field.write(cursor, sink);
+                out.write("</td>");
+            }
+            out.write("</tr>\n");
+            summary.add(cursor);
+        }
+        out.write("        </tbody>\n      </table>\n    </div>\n");
+
+        writeHtmlSummary(out, summary);
+        if (includeCharts && summary.count > 0) {
+            out.write("    <div class=\"chart-container top\">\n");
+            out.write("      <div class=\"chart\"><h3>Daily Code Generation</h3><canvas id=\"dailyStatsChart\"></canvas></div>\n");
+            out.write("      <div class=\"chart\"><h3>Programming Language Distribution</h3>"
+                + "<canvas id=\"languageDistributionChart\"></canvas></div>\n");
+            out.write("    </div>\n");
+        }
+
+        out.write("    <div class=\"footer\">\n");
+        out.write("      <p>Generated by ProxyAI Productivity Metrics Exporter</p>\n");
+        out.write("      <p>© " + LocalDate.now().getYear() + " ProxyAI</p>\n");
+        out.write("    </div>\n");
+        out.write("  </div>\n");
+
+        if (includeCharts && summary.count > 0) {
+            writeHtmlCharts(out, summary);
+        }
+        out.write("</body>\n</html>\n");
+        out.flush();
+        return summary.count;
+    }
+
+    private static void writeHtmlHead(Writer out, int days) throws IOException {
+        out.write("<!DOCTYPE html>\n");
+        out.write("<html lang=\"en\">\n");
+        out.write("<head>\n");
+        out.write("  <meta charset=\"UTF-8\">\n");
+        out.write("  <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+        out.write("  <title>ProxyAI Productivity Metrics Report</title>\n");
+        out.write("  <style>\n");
+        out.write("    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; margin: 0; padding: 0; color: #333; }\n");
+        out.write("    .container { max-width: 1200px; margin: 0 auto; padding: 20px; display: flex; flex-direction: column; }\n");
+        out.write("    .header { background-color: #2c3e50; color: white; padding: 20px; text-align: center; }\n");
+        out.write("    .summary { background-color: #f8f9fa; border-radius: 5px; padding: 20px; margin: 20px 0; box-shadow: 0 2px 5px rgba(0,0,0,0.1); }\n");
+        out.write("    .top { order: -1; }\n");
+        out.write("    .chart-container { display: flex; flex-wrap: wrap; justify-content: space-between; margin: 20px 0; }\n");
+        out.write("    .chart { width: 48%; background-color: white; border-radius: 5px; padding: 15px; margin-bottom: 20px; box-shadow: 0 2px 5px rgba(0,0,0,0.1); }\n");
+        out.write("    .data-section { background-color: white; border-radius: 5px; padding: 20px; margin: 20px 0; box-shadow: 0 2px 5px rgba(0,0,0,0.1); overflow-x: auto; }\n");
+        out.write("    table { width: 100%; border-collapse: collapse; margin: 15px 0; }\n");
+        out.write("    th, td { padding: 8px 10px; text-align: left; border-bottom: 1px solid #ddd; white-space: nowrap; }\n");
+        out.write("    th { background-color: #f2f2f2; }\n");
+        out.write("    tr:hover { background-color: #f5f5f5; }\n");
+        out.write("    .footer { text-align: center; margin-top: 30px; padding: 20px; color: #666; font-size: 0.9em; }\n");
+        out.write("    .stat-card { display: inline-block; width: 18%; background-color: white; border-radius: 5px; padding: 15px; margin: 10px; text-align: center; box-shadow: 0 2px 5px rgba(0,0,0,0.1); }\n");
+        out.write("    .stat-value { font-size: 24px; font-weight: bold; color: #2980b9; margin: 10px 0; }\n");
+        out.write("    .stat-label { font-size: 14px; color: #666; }\n");
+        out.write("    @media (max-width: 768px) { .chart { width: 100%; } .stat-card { width: 45%; } }\n");
+        out.write("  </style>\n");
+        out.write("  <script src=\"https://cdn.jsdelivr.net/npm/chart.js\"></script>\n");
+        out.write("</head>\n");
+        out.write("<body>\n");
+        out.write("  <div class=\"header\">\n");
+        out.write("    <h1>ProxyAI Productivity Metrics Report</h1>\n");
+        out.write("    <p>Generated on: " + new Date() + "</p>\n");
+        out.write("    <p>Data range: " + (days > 0 ? "Last " + days + " days" : "All data") + "</p>\n");
+        out.write("  </div>\n");
+    }
+
+    private static void writeHtmlSummary(Writer out, ExportSummary summary) throws IOException {
+        out.write("    <div class=\"summary top\">\n");
+        out.write("      <h2>Productivity Summary</h2>\n");
+        out.write("      <div style=\"display: flex; flex-wrap: wrap; justify-content: center;\">\n");
+        writeStatCard(out, "Records", String.valueOf(summary.count));
+        writeStatCard(out, "Generated Lines", String.valueOf(summary.linesGenerated));
+        writeStatCard(out, "Code Acceptance Rate", String.format("%.1f%%", summary.getAverageAcceptanceRate() * 100));
+        writeStatCard(out, "Avg Response Time", String.format("%.0f ms", summary.getAverageResponseTime()));
+        writeStatCard(out, "Success Rate", String.format("%.1f%%", summary.getSuccessRate() * 100));
+        out.write("      </div>\n");
+        out.write("    </div>\n");
+    }
+
+    private static void writeStatCard(Writer out, String label, String value) throws IOException {
+        out.write("        <div class=\"stat-card\">\n");
+        out.write("          <div class=\"stat-label\">" + label + "</div>\n");
+        out.write("          <div class=\"stat-value\">" + value + "</div>\n");
+        out.write("        </div>\n");
+    }
+
+    private static void writeHtmlCharts(Writer out, ExportSummary summary) throws IOException {
+        StringBuilder dates = new StringBuilder();
+        StringBuilder lines = new StringBuilder();
+        StringBuilder counts = new StringBuilder();
+        for (Map.Entry<String, long[]> day : summary.days.entrySet()) {
+            if (dates.length() > 0) {
+                dates.append(',');
+                lines.append(',');
+                counts.append(',');
+            }
+            dates.append('\'').append(day.getKey()).append('\'');
+            counts.append(day.getValue()[0]);
+            lines.append(day.getValue()[1]);
+        }
+
+        StringBuilder languages = new StringBuilder();
+        StringBuilder languageCounts = new StringBuilder();
+        for (Map.Entry<String, Long> language : summary.languages.entrySet()) {
+            if (languages.length() > 0) {
+                languages.append(',');
+                languageCounts.append(',');
+            }
+            languages.append('\'').append(escapeJs(language.getKey())).append('\'');
+            languageCounts.append(language.getValue());
+        }
+
+        out.write("  <script>\n");
+        out.write("    new Chart(document.getElementById('dailyStatsChart').getContext('2d'), {\n");
+        out.write("      type: 'bar',\n");
+        out.write("      data: {\n");
+        out.write("        labels: [" + dates + "],\n");
+        out.write("        datasets: [\n");
+        out.write("          { label: 'Lines Generated', data: [" + lines + "], backgroundColor: 'rgba(54, 162, 235, 0.5)' },\n");
+        out.write("          { label: 'Records', data: [" + counts + "], backgroundColor: 'rgba(255, 99, 132, 0.5)' }\n");
+        out.write("        ]\n");
+        out.write("      },\n");
+        out.write("      options: { responsive: true, scales: { y: { beginAtZero: true } } }\n");
+        out.write("    });\n");
+        out.write("    new Chart(document.getElementById('languageDistributionChart').getContext('2d'), {\n");
+        out.write("      type: 'pie',\n");
+        out.write("      data: {\n");
+        out.write("        labels: [" + languages + "],\n");
+        out.write("        datasets: [{ data: [" + languageCounts + "], borderWidth: 1 }]\n");
+        out.write("      },\n");
+        out.write("      options: { responsive: true, plugins: { legend: { position: 'right' } } }\n");
+        out.write("    });\n");
+        out.write("  </script>\n");
+    }
+
+    private static String formatTimestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+            .format(TIMESTAMP_FORMATTER);
+    }
+
+    private static String escapeJs(String value) {
+        return value.replace("\\", "\\\\").replace("'", "\\'").replace("<", "\\x3c");
+    }
+
+    /**
+     * Running totals, bounded by the number of distinct days and languages
+     */
+    private static final class ExportSummary {
+        private long count;
+        private long successCount;
+        private long linesGenerated;
+        private long linesAccepted;
+        private double acceptanceRateSum;
+        private long acceptanceRateCount;
+        private long responseTimeSum;
+        private long responseTimeCount;
+        // date -> {records, generated lines}
+        private final TreeMap<String, long[]> days = new TreeMap<>();
+        private final Map<String, Long> languages = new HashMap<>();
+
+        void add(MetricsCursor cursor) {
+            count++;
+            if (cursor.successful()) {
+                successCount++;
+            }
+            linesGenerated += cursor.linesGenerated();
+            linesAccepted += cursor.linesAccepted();
+            if (cursor.acceptanceRate() > 0) {
+                acceptanceRateSum += cursor.acceptanceRate();
+                acceptanceRateCount++;
+            }
+            if (cursor.responseTime() > 0) {
+                responseTimeSum += cursor.responseTime();
+                responseTimeCount++;
+            }
+
+            String date = LocalDate.ofInstant(Instant.ofEpochMilli(cursor.startTime()), ZoneId.systemDefault()).toString();
+            long[] day = days.computeIfAbsent(date, k -> new long[2]);
+            day[0]++;
+            day[1] += cursor.linesGenerated();
+
+            String language = cursor.programmingLanguage();
+            languages.merge(language != null ? language : "Unknown", 1L, Long::sum);
+        }
+
+        double getAverageAcceptanceRate() {
+            return acceptanceRateCount > 0 ? acceptanceRateSum / acceptanceRateCount : 0.0;
+        }
+
+        double getAverageResponseTime() {
+            return responseTimeCount > 0 ? (double) responseTimeSum / responseTimeCount : 0.0;
+        }
+
+        double getSuccessRate() {
+            return count > 0 ? (double) successCount / count : 0.0;
+        }
+    }
+
+    private static final class CsvSink implements MetricsExportField.Sink {
+        private final Writer out;
+        private boolean separator;
+
+        CsvSink(Writer out) {
+            this.out = out;
+        }
+
+        private void prefix() throws IOException {
+            if (separator) {
+                out.write(',');
+            }
+        }
+
+        @Override
+        public void text(String value) throws IOException {
+            prefix();
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        @Override
+        public void number(long value) throws IOException {
+            prefix();
+            out.write(Long.toString(value));
+        }
+
+        @Override
+        public void number(double value) throws IOException {
+            prefix();
+            out.write(Double.toString(value));
+        }
+
+        @Override
+        public void bool(boolean value) throws IOException {
+            prefix();
+            out.write(value ? "true" : "false");
+        }
+
+        @Override
+        public void timestamp(long epochMillis) throws IOException {
+            prefix();
+            out.write(formatTimestamp(epochMillis));
+        }
+    }
+
+    private static final class JsonSink implements MetricsExportField.Sink {
+        private final JsonWriter json;
+
+        JsonSink(JsonWriter json) {
+            this.json = json;
+        }
+
+        @Override
+        public void text(String value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void number(long value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void number(double value) throws IOException {
+            json.value(Double.isFinite(value) ? value : 0.0);
+        }
+
+        @Override
+        public void bool(boolean value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void timestamp(long epochMillis) throws IOException {
+            json.value(formatTimestamp(epochMillis));
+        }
+    }
+
+    private static final class HtmlSink implements MetricsExportField.Sink {
+        private final Writer out;
+
+        HtmlSink(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void text(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '<' -> out.write("&lt;");
+                    case '>' -> out.write("&gt;");
+                    case '&' -> out.write("&amp;");
+                    case '"' -> out.write("&quot;");
+                    default -> out.write(c);
+                }
+            }
+        }
+
+        @Override
+        public void number(long value) throws IOException {
+            out.write(Long.toString(value));
+        }
+
+        @Override
+        public void number(double value) throws IOException {
+            out.write(String.format("%.2f", value));
+        }
+
+        @Override
+        public void bool(boolean value) throws IOException {
+            out.write(value ? "Yes" : "No");
+        }
+
+        @Override
+        public void timestamp(long epochMillis) throws IOException {
+            out.write(formatTimestamp(epochMillis));
+        }
+    }
+}
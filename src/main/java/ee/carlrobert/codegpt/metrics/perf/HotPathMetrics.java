@@ -0,0 +1,53 @@
+package ee.carlrobert.codegpt.metrics.perf;
+
+import java.util.List;
+
+/**
+ * 插件自身热路径的延迟直方图和计数器，应用级共享，通过 /metrics 以 OpenMetrics 格式暴露
+ */
+public final class HotPathMetrics {
+
+    public static final LatencyHistogram COMPLETION_SUGGESTION = new LatencyHistogram(
+        "proxyai_completion_suggestion_seconds",
+        "End-to-end duration of an inline completion suggestion, from request to the final result");
+    public static final LatencyHistogram COMPLETION_FIRST_LINE = new LatencyHistogram(
+        "proxyai_completion_first_line_seconds",
+        "Time from sending a completion request to showing its first line");
+    public static final LatencyHistogram INFILL_REQUEST_BUILD = new LatencyHistogram(
+        "proxyai_infill_request_build_seconds",
+        "Time spent building an infill request");
+    public static final LatencyHistogram TREE_SITTER_PARSE = new LatencyHistogram(
+        "proxyai_treesitter_parse_seconds",
+        "Time spent post-processing a completion with tree-sitter");
+    public static final LatencyHistogram COMPLETION_DEBOUNCE = new LatencyHistogram(
+        "proxyai_completion_debounce_seconds",
+        "Debounce delay chosen before an inline completion request");
+
+    public static final PerfCounter COMPLETION_REQUESTS = new PerfCounter(
+        "proxyai_completion_requests",
+        "Inline completion requests by how they were served",
+        "source");
+    public static final PerfCounter COMPLETION_CANCELLED = new PerfCounter(
+        "proxyai_completion_cancelled",
+        "Completion requests cancelled before finishing");
+    public static final PerfCounter COMPLETION_WASTED_TOKENS = new PerfCounter(
+        "proxyai_completion_wasted_tokens",
+        "Tokens streamed for completion requests that were cancelled before being shown");
+    public static final PerfCounter COMPLETION_ERRORS = new PerfCounter(
+        "proxyai_completion_errors",
+        "Completion requests that failed");
+    public static final PerfCounter COMPLETION_SPECULATIONS = new PerfCounter(
+        "proxyai_completion_speculations",
+        "Speculative completion requests by outcome",
+        "outcome");
+
+    static final List<LatencyHistogram> HISTOGRAMS = List.of(
+        COMPLETION_SUGGESTION, COMPLETION_FIRST_LINE, INFILL_REQUEST_BUILD, TREE_SITTER_PARSE,
+        COMPLETION_DEBOUNCE);
+    static final List<PerfCounter> COUNTERS = List.of(
+        COMPLETION_REQUESTS, COMPLETION_CANCELLED, COMPLETION_WASTED_TOKENS, COMPLETION_ERRORS,
+        COMPLETION_SPECULATIONS);
+
+    private HotPathMetrics() {
+    }
+}
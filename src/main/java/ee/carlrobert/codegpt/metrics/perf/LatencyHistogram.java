@@ -0,0 +1,149 @@
+package ee.carlrobert.codegpt.metrics.perf;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR 风格的延迟直方图
+ * 以微秒为单位，按 2 的幂分段，每段再线性细分为 {@value #SUB_BUCKETS} 个桶，相对误差不超过 1/{@value #SUB_BUCKETS}；
+ * 内存固定，记录一次只需一次原子自增，可以放在热路径上。
+ * 可记录范围为 [0, 2^{@value #MAX_EXPONENT}) 微秒，超出部分计入最后一个桶
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 36;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * 记录从 startNanos（{@link System#nanoTime()}）到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * 当前计数的快照，各桶之间不保证原子一致，对于监控用途足够
+     */
+    public Snapshot snapshot() {
+        long[] values = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values[i] = counts.get(i);
+            total += values[i];
+        }
+        return new Snapshot(values, total, sumNanos.sum());
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int group = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return group * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 桶的下界（包含），单位微秒
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int group = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (group - 1);
+    }
+
+    /**
+     * 桶的上界（不包含），单位微秒
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1L;
+        }
+        return lowerBound(index) + (1L << (index / SUB_BUCKETS - 1));
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+
+        private Snapshot(long[] counts, long count, long sumNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSumSeconds() {
+            return sumNanos / 1e9;
+        }
+
+        /**
+         * 耗时小于 micros 微秒的记录数；micros 为 2 的幂时结果是精确的
+         */
+        public long countBelow(long micros) {
+            long result = 0;
+            for (int i = 0; i < counts.length && upperBound(i) <= micros; i++) {
+                result += counts[i];
+            }
+            return result;
+        }
+
+        /**
+         * 百分位数（0-100），返回所在桶的上界，单位毫秒；没有记录时返回 0
+         */
+        public double getPercentileMillis(double percentile) {
+            if (count == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i) / 1000.0;
+                }
+            }
+            return upperBound(counts.length - 1) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ee.carlrobert.codegpt.metrics.perf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 以 OpenMetrics 文本格式输出 {@link HotPathMetrics}
+ * 直方图的 le 边界取 2 的幂微秒（128µs 到约 33.5s），与内部分段边界对齐，因此各桶计数是精确的，
+ * 也便于在 Prometheus 中跨实例聚合
+ */
+public final class OpenMetricsWriter {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    // 不支持 OpenMetrics 的抓取端回退到 Prometheus 文本格式，两者对本输出的解析结果一致
+    public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int MIN_BUCKET_EXPONENT = 7;
+    private static final int MAX_BUCKET_EXPONENT = 25;
+    private static final String[] BUCKET_LABELS = new String[MAX_BUCKET_EXPONENT - MIN_BUCKET_EXPONENT + 1];
+
+    static {
+        for (int exponent = MIN_BUCKET_EXPONENT; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+            BUCKET_LABELS[exponent - MIN_BUCKET_EXPONENT] =
+                BigDecimal.valueOf(1L << exponent, 6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private OpenMetricsWriter() {
+    }
+
+    public static void write(Writer out) throws IOException {
+        write(out, HotPathMetrics.HISTOGRAMS, HotPathMetrics.COUNTERS);
+    }
+
+    static void write(Writer out, List<LatencyHistogram> histograms, List<PerfCounter> counters)
+            throws IOException {
+        for (LatencyHistogram histogram : histograms) {
+            writeHistogram(out, histogram);
+        }
+        for (PerfCounter counter : counters) {
+            writeCounter(out, counter);
+        }
+        out.write("# EOF\n");
+    }
+
+    private static void writeHistogram(Writer out, LatencyHistogram histogram) throws IOException {
+        String name = histogram.getName();
+        writeHeader(out, name, "histogram", histogram.getHelp());
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        for (int exponent = MIN_BUCKET_EXPONENT; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+            out.write(name);
+            out.write("_bucket{le=\"");
+            out.write(BUCKET_LABELS[exponent - MIN_BUCKET_EXPONENT]);
+            out.write("\"} ");
+            out.write(Long.toString(snapshot.countBelow(1L << exponent)));
+            out.write('\n');
+        }
+        out.write(name + "_bucket{le=\"+Inf\"} " + snapshot.getCount() + '\n');
+        out.write(name + "_count " + snapshot.getCount() + '\n');
+        out.write(name + "_sum " + snapshot.getSumSeconds() + '\n');
+    }
+
+    private static void writeCounter(Writer out, PerfCounter counter) throws IOException {
+        String name = counter.getName();
+        writeHeader(out, name, "counter", counter.getHelp());
+
+        if (counter.getLabelName() == null) {
+            out.write(name + "_total " + counter.get() + '\n');
+            return;
+        }
+        for (Map.Entry<String, Long> entry : counter.snapshot().entrySet()) {
+            out.write(name + "_total{" + counter.getLabelName() + "=\"" + escapeLabel(entry.getKey()) + "\"} "
+                + entry.getValue() + '\n');
+        }
+    }
+
+    private static void writeHeader(Writer out, String name, String type, String help) throws IOException {
+        out.write("# TYPE " + name + ' ' + type + '\n');
+        out.write("# HELP " + name + ' ' + escapeHelp(help) + '\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String value) {
+        return value.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,76 @@
+package ee.carlrobert.codegpt.metrics.perf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单调递增计数器，可带一个标签维度；标签取值应为有限集合
+ */
+public final class PerfCounter {
+
+    private static final String NO_LABEL = "";
+
+    private final String name;
+    private final String help;
+    private final String labelName;
+    private final ConcurrentMap<String, LongAdder> values = new ConcurrentHashMap<>();
+
+    public PerfCounter(String name, String help) {
+        this(name, help, null);
+    }
+
+    public PerfCounter(String name, String help, String labelName) {
+        this.name = name;
+        this.help = help;
+        this.labelName = labelName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public String getLabelName() {
+        return labelName;
+    }
+
+    public void increment() {
+        add(NO_LABEL, 1);
+    }
+
+    public void increment(String labelValue) {
+        add(labelValue, 1);
+    }
+
+    public void add(long amount) {
+        add(NO_LABEL, amount);
+    }
+
+    public void add(String labelValue, long amount) {
+        values.computeIfAbsent(labelValue, k -> new LongAdder()).add(amount);
+    }
+
+    public long get() {
+        return get(NO_LABEL);
+    }
+
+    public long get(String labelValue) {
+        LongAdder value = values.get(labelValue);
+        return value != null ? value.sum() : 0;
+    }
+
+    /**
+     * 各标签取值的当前计数，按标签排序
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> result = new TreeMap<>();
+        values.forEach((label, value) -> result.put(label, value.sum()));
+        return result;
+    }
+}
@@ -0,0 +1,281 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * 指标的列式内存存储，供内存分析使用
+ * 数据按固定大小的块（chunk）存放在基本类型数组中，字符串维度使用 {@link MetricsDictionary} 编码；
+ * 超过块数上限时整块丢弃最旧的数据（可交给丢弃回调，例如折叠进累加器）。追加和更新由本对象同步，读取视图不加锁
+ */
+public final class MetricsColumnStore {
+
+    static final int CHUNK_SIZE = 1_024;
+    static final int DEFAULT_MAX_CHUNKS = 64;
+
+    private final int maxChunks;
+    private final Consumer<Columns> dropHandler;
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    // 已丢弃块之前的全局行号偏移
+    private long firstRow;
+    private long rowCount;
+
+    public MetricsColumnStore() {
+        this(DEFAULT_MAX_CHUNKS);
+    }
+
+    public MetricsColumnStore(int maxChunks) {
+        this(maxChunks, null);
+    }
+
+    /**
+     * @param dropHandler 整块丢弃时以该块的只读视图回调，在追加线程上持有本对象的锁执行；可为 null
+     */
+    public MetricsColumnStore(int maxChunks, Consumer<Columns> dropHandler) {
+        this.maxChunks = Math.max(1, maxChunks);
+        this.dropHandler = dropHandler;
+    }
+
+    /**
+     * 至少保留最近 rows 行的存储：整块丢弃时会额外保留一块，因此实际最多保留 rows + CHUNK_SIZE 行
+     */
+    public static MetricsColumnStore forRows(int rows, Consumer<Columns> dropHandler) {
+        return new MetricsColumnStore((rows + CHUNK_SIZE - 1) / CHUNK_SIZE + 1, dropHandler);
+    }
+
+    public static MetricsColumnStore forRows(int rows) {
+        return forRows(rows, null);
+    }
+
+    public static MetricsColumnStore of(Iterable<ProductivityMetrics> metrics) {
+        MetricsColumnStore store = new MetricsColumnStore(Integer.MAX_VALUE);
+        for (ProductivityMetrics item : metrics) {
+            store.append(item);
+        }
+        return store;
+    }
+
+    /**
+     * 追加一行
+     *
+     * @return 该行的全局行号，可用于之后更新可变字段
+     */
+    public synchronized long append(ProductivityMetrics metrics) {
+        Chunk chunk = chunks.peekLast();
+        if (chunk == null || chunk.size == CHUNK_SIZE) {
+            if (chunks.size() == maxChunks) {
+                Chunk dropped = chunks.pollFirst();
+                if (dropHandler != null) {
+                    dropHandler.accept(new Columns(new Chunk[]{dropped}, dropped.size, firstRow));
+                }
+                firstRow += CHUNK_SIZE;
+            }
+            chunk = new Chunk();
+            chunks.addLast(chunk);
+        }
+        chunk.set(chunk.size, metrics);
+        chunk.size++;
+        return rowCount++;
+    }
+
+    /**
+     * 更新指定全局行号的用户评分；该行已被丢弃或清空时忽略
+     *
+     * @return 是否找到并更新了该行
+     */
+    public synchronized boolean updateUserRating(long row, int rating) {
+        if (row < firstRow || row >= rowCount) {
+            return false;
+        }
+        int index = (int) (row - firstRow);
+        Chunk chunk = null;
+        for (Chunk candidate : chunks) {
+            if (index < candidate.size) {
+                chunk = candidate;
+                break;
+            }
+            index -= candidate.size;
+        }
+        if (chunk == null) {
+            return false;
+        }
+        chunk.userRating[index] = rating;
+        return true;
+    }
+
+    /**
+     * 当前保留的行数
+     */
+    public synchronized int size() {
+        return (int) (rowCount - firstRow);
+    }
+
+    public synchronized long getTotalAppended() {
+        return rowCount;
+    }
+
+    public synchronized void clear() {
+        chunks.clear();
+        firstRow = rowCount;
+    }
+
+    /**
+     * 获取当前数据的只读视图；视图持有块引用，后续追加不影响已获取的视图
+     */
+    public synchronized Columns columns() {
+        Chunk[] snapshot = chunks.toArray(new Chunk[0]);
+        int total = 0;
+        for (Chunk chunk : snapshot) {
+            total += chunk.size;
+        }
+        return new Columns(snapshot, total, firstRow);
+    }
+
+    /**
+     * 列式只读视图，按行号读取各列的基本类型值
+     */
+    public static final class Columns {
+        private final Chunk[] chunks;
+        private final int size;
+        private final long firstRow;
+
+        private Columns(Chunk[] chunks, int size, long firstRow) {
+            this.chunks = chunks;
+            this.size = size;
+            this.firstRow = firstRow;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 第 0 行的全局行号（自存储创建以来的追加序号），用于跨视图的分页定位
+         */
+        public long getFirstRow() {
+            return firstRow;
+        }
+
+        public long startTime(int row) { return chunk(row).startTime[offset(row)]; }
+        public long endTime(int row) { return chunk(row).endTime[offset(row)]; }
+        public long responseTime(int row) { return chunk(row).responseTime[offset(row)]; }
+        public long processingTime(int row) { return chunk(row).processingTime[offset(row)]; }
+        public long memoryUsage(int row) { return chunk(row).memoryUsage[offset(row)]; }
+        public int actionTypeCode(int row) { return chunk(row).actionType[offset(row)]; }
+        public int modelNameCode(int row) { return chunk(row).modelName[offset(row)]; }
+        public int languageCode(int row) { return chunk(row).language[offset(row)]; }
+        public int inputTokenCount(int row) { return chunk(row).inputTokens[offset(row)]; }
+        public int outputTokenCount(int row) { return chunk(row).outputTokens[offset(row)]; }
+        public int totalTokenCount(int row) { return chunk(row).totalTokens[offset(row)]; }
+        public int linesGenerated(int row) { return chunk(row).linesGenerated[offset(row)]; }
+        public int linesAccepted(int row) { return chunk(row).linesAccepted[offset(row)]; }
+        public int linesRejected(int row) { return chunk(row).linesRejected[offset(row)]; }
+        public int retryCount(int row) { return chunk(row).retryCount[offset(row)]; }
+        public int userRating(int row) { return chunk(row).userRating[offset(row)]; }
+        public double tokenCost(int row) { return chunk(row).tokenCost[offset(row)]; }
+        public double acceptanceRate(int row) { return chunk(row).acceptanceRate[offset(row)]; }
+        public double cpuUsage(int row) { return chunk(row).cpuUsage[offset(row)]; }
+        public boolean successful(int row) { return chunk(row).successful[offset(row)]; }
+
+        public String actionType(int row) {
+            return MetricsDictionary.ACTION_TYPES.decode(actionTypeCode(row));
+        }
+
+        public String modelName(int row) {
+            return MetricsDictionary.MODEL_NAMES.decode(modelNameCode(row));
+        }
+
+        public String programmingLanguage(int row) {
+            return MetricsDictionary.LANGUAGES.decode(languageCode(row));
+        }
+
+        /**
+         * 按行物化为 POJO 视图，只包含列式存储中保存的字段
+         */
+        public ProductivityMetrics toMetrics(int row) {
+            Chunk chunk = chunk(row);
+            int i = offset(row);
+            ProductivityMetrics metrics = new ProductivityMetrics();
+            metrics.setActionType(MetricsDictionary.ACTION_TYPES.decode(chunk.actionType[i]));
+            metrics.setModelName(MetricsDictionary.MODEL_NAMES.decode(chunk.modelName[i]));
+            metrics.setProgrammingLanguage(MetricsDictionary.LANGUAGES.decode(chunk.language[i]));
+            metrics.setStartTime(chunk.startTime[i]);
+            metrics.setEndTime(chunk.endTime[i]);
+            metrics.setResponseTime(chunk.responseTime[i]);
+            metrics.setProcessingTime(chunk.processingTime[i]);
+            metrics.setMemoryUsage(chunk.memoryUsage[i]);
+            metrics.setInputTokenCount(chunk.inputTokens[i]);
+            metrics.setOutputTokenCount(chunk.outputTokens[i]);
+            metrics.setTotalTokenCount(chunk.totalTokens[i]);
+            metrics.setLinesGenerated(chunk.linesGenerated[i]);
+            metrics.setLinesAccepted(chunk.linesAccepted[i]);
+            metrics.setLinesRejected(chunk.linesRejected[i]);
+            metrics.setRetryCount(chunk.retryCount[i]);
+            if (chunk.userRating[i] > 0) {
+                metrics.setUserRating(chunk.userRating[i]);
+            }
+            metrics.setTokenCost(chunk.tokenCost[i]);
+            metrics.setAcceptanceRate(chunk.acceptanceRate[i]);
+            metrics.setCpuUsage(chunk.cpuUsage[i]);
+            metrics.setSuccessful(chunk.successful[i]);
+            return metrics;
+        }
+
+        private Chunk chunk(int row) {
+            return chunks[row / CHUNK_SIZE];
+        }
+
+        private int offset(int row) {
+            return row % CHUNK_SIZE;
+        }
+    }
+
+    private static final class Chunk {
+        final long[] startTime = new long[CHUNK_SIZE];
+        final long[] endTime = new long[CHUNK_SIZE];
+        final long[] responseTime = new long[CHUNK_SIZE];
+        final long[] processingTime = new long[CHUNK_SIZE];
+        final long[] memoryUsage = new long[CHUNK_SIZE];
+        final int[] actionType = new int[CHUNK_SIZE];
+        final int[] modelName = new int[CHUNK_SIZE];
+        final int[] language = new int[CHUNK_SIZE];
+        final int[] inputTokens = new int[CHUNK_SIZE];
+        final int[] outputTokens = new int[CHUNK_SIZE];
+        final int[] totalTokens = new int[CHUNK_SIZE];
+        final int[] linesGenerated = new int[CHUNK_SIZE];
+        final int[] linesAccepted = new int[CHUNK_SIZE];
+        final int[] linesRejected = new int[CHUNK_SIZE];
+        final int[] retryCount = new int[CHUNK_SIZE];
+        final int[] userRating = new int[CHUNK_SIZE];
+        final double[] tokenCost = new double[CHUNK_SIZE];
+        final double[] acceptanceRate = new double[CHUNK_SIZE];
+        final double[] cpuUsage = new double[CHUNK_SIZE];
+        final boolean[] successful = new boolean[CHUNK_SIZE];
+        int size;
+
+        void set(int i, ProductivityMetrics metrics) {
+            startTime[i] = metrics.getStartTime();
+            endTime[i] = metrics.getEndTime();
+            responseTime[i] = metrics.getResponseTime();
+            processingTime[i] = metrics.getProcessingTime();
+            memoryUsage[i] = metrics.getMemoryUsage();
+            actionType[i] = metrics.getActionTypeCode();
+            modelName[i] = metrics.getModelNameCode();
+            language[i] = metrics.getProgrammingLanguageCode();
+            inputTokens[i] = metrics.getInputTokenCount();
+            outputTokens[i] = metrics.getOutputTokenCount();
+            totalTokens[i] = metrics.getTotalTokenCount();
+            linesGenerated[i] = metrics.getLinesGenerated();
+            linesAccepted[i] = metrics.getLinesAccepted();
+            linesRejected[i] = metrics.getLinesRejected();
+            retryCount[i] = metrics.getRetryCount();
+            userRating[i] = metrics.getUserRating();
+            tokenCost[i] = metrics.getTokenCost();
+            acceptanceRate[i] = metrics.getAcceptanceRate();
+            cpuUsage[i] = metrics.getCpuUsage();
+            successful[i] = metrics.isSuccessful();
+        }
+    }
+}
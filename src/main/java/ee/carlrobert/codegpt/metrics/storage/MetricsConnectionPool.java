@@ -0,0 +1,521 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import com.intellij.openapi.diagnostic.Logger;
+import ee.carlrobert.codegpt.metrics.config.MetricsDatabaseConfig;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标数据库连接池
+ * 按 MetricsDatabaseConfig.maxPoolSize 限制连接数，按 connectionTimeout 限制等待时间，
+ * 复用空闲连接前会校验其有效性，并为每个物理连接缓存 PreparedStatement
+ */
+public class MetricsConnectionPool implements DataSource {
+    private static final Logger LOG = Logger.getInstance(MetricsConnectionPool.class);
+
+    // 空闲超过该时间的连接在借出前需要校验
+    private static final long VALIDATION_IDLE_MS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxPoolSize;
+    private final long connectionTimeoutMs;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private volatile boolean closed = false;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    public MetricsConnectionPool(String url, String user, String password,
+                                 int maxPoolSize, long connectionTimeoutMs) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxPoolSize = Math.max(1, maxPoolSize);
+        this.connectionTimeoutMs = Math.max(0, connectionTimeoutMs);
+        this.permits = new Semaphore(this.maxPoolSize, true);
+    }
+
+    public static MetricsConnectionPool fromConfig(MetricsDatabaseConfig config) {
+        return new MetricsConnectionPool(
+            config.getDbUrl(),
+            config.getDbUser(),
+            config.getDbPassword(),
+            config.getMaxPoolSize(),
+            config.getConnectionTimeout());
+    }
+
+    /**
+     * 借出一个连接，调用 close() 即归还连接池
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("指标数据库连接池已关闭");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTransientConnectionException(
+                    "等待数据库连接超时（" + connectionTimeoutMs + "ms），当前活跃连接: " + activeCount.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接时被中断", e);
+        }
+        recordWait(System.nanoTime() - waitStart);
+
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+                createdCount.incrementAndGet();
+            }
+            activeCount.incrementAndGet();
+            borrowCount.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("指标连接池只支持配置中的数据库账号");
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (pooled.isUsable()) {
+                return pooled;
+            }
+            evictedCount.incrementAndGet();
+            pooled.closePhysical();
+        }
+        return null;
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        activeCount.decrementAndGet();
+        try {
+            if (broken || closed || !pooled.reset()) {
+                pooled.closePhysical();
+            } else {
+                idleConnections.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    public boolean matches(MetricsDatabaseConfig config) {
+        return url.equals(config.getDbUrl())
+            && user.equals(config.getDbUser())
+            && password.equals(config.getDbPassword())
+            && maxPoolSize == Math.max(1, config.getMaxPoolSize())
+            && connectionTimeoutMs == Math.max(0, config.getConnectionTimeout());
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    /**
+     * 关闭连接池，等待借出的连接归还后释放所有空闲连接
+     */
+    public void close(long timeoutMillis) {
+        closed = true;
+        try {
+            if (permits.tryAcquire(maxPoolSize, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                permits.release(maxPoolSize);
+            } else {
+                LOG.warn("等待数据库连接归还超时，强制关闭连接池");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(connectionTimeoutMs);
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("无法转换为 " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static boolean isConnectionError(Throwable error) {
+        return error instanceof SQLException sqlException
+            && sqlException.getSQLState() != null
+            && sqlException.getSQLState().startsWith("08");
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 物理连接及其 PreparedStatement 缓存，同一时间只会被一个借用方使用
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final Map<String, PreparedStatement> statementCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+        private long lastReturnedAt = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                MetricsConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LeasedConnectionHandler(this));
+        }
+
+        boolean isUsable() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                return System.currentTimeMillis() - lastReturnedAt < VALIDATION_IDLE_MS
+                    || physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * 归还前恢复连接状态，失败时返回 false 表示应丢弃
+         */
+        boolean reset() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                // 只读连接被后续写入借出时，MySQL 会拒绝执行写语句
+                if (physical.isReadOnly()) {
+                    physical.setReadOnly(false);
+                }
+                lastReturnedAt = System.currentTimeMillis();
+                return true;
+            } catch (SQLException e) {
+                LOG.debug("重置数据库连接失败，关闭该连接: " + e.getMessage());
+                return false;
+            }
+        }
+
+        PreparedStatement prepareCached(String sql) throws SQLException {
+            PreparedStatement statement = statementCache.get(sql);
+            if (statement != null && !statement.isClosed()) {
+                statementCacheHits.incrementAndGet();
+                return statement;
+            }
+
+            statementCacheMisses.incrementAndGet();
+            statement = physical.prepareStatement(sql);
+            statementCache.put(sql, statement);
+            if (statementCache.size() > STATEMENT_CACHE_SIZE) {
+                Iterator<PreparedStatement> eldest = statementCache.values().iterator();
+                closeQuietly(eldest.next());
+                eldest.remove();
+            }
+            return statement;
+        }
+
+        void closePhysical() {
+            statementCache.values().forEach(PooledConnection::closeQuietly);
+            statementCache.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                LOG.debug("关闭数据库连接失败: " + e.getMessage());
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOG.debug("关闭缓存语句失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 借出连接的代理：close() 归还连接池，prepareStatement(String) 走语句缓存
+     * 归还时先逻辑关闭本次借出的缓存语句，之后再使用这些语句会抛出 SQLException
+     */
+    private final class LeasedConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<CachedStatementHandler> openStatements = new ArrayList<>();
+        private boolean returned = false;
+        private boolean broken = false;
+
+        LeasedConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        openStatements.forEach(CachedStatementHandler::closeLogically);
+                        openStatements.clear();
+                        returned = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || pooled.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "MetricsPooledConnection[" + pooled.physical + "]";
+                }
+                default -> {
+                }
+            }
+
+            if (returned) {
+                throw new SQLException("连接已归还连接池");
+            }
+
+            try {
+                if ("prepareStatement".equals(method.getName())
+                    && args != null && args.length == 1 && args[0] instanceof String sql) {
+                    return cachedStatementProxy(pooled.prepareCached(sql), (Connection) proxy);
+                }
+                return invokeTarget(pooled.physical, method, args);
+            } catch (Throwable error) {
+                if (isConnectionError(error)) {
+                    broken = true;
+                }
+                throw error;
+            }
+        }
+
+        private PreparedStatement cachedStatementProxy(PreparedStatement statement, Connection owner) {
+            var handler = new CachedStatementHandler(this, statement, owner);
+            openStatements.add(handler);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                MetricsConnectionPool.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                handler);
+        }
+    }
+
+    /**
+     * 缓存语句的代理：close() 只做逻辑关闭，关闭当前结果集并清理参数和批次供下次复用
+     * 逻辑关闭或连接归还后，代理上的任何调用都会抛出 SQLException，避免误用其他借用方的连接
+     */
+    private static final class CachedStatementHandler implements InvocationHandler {
+        private final LeasedConnectionHandler lease;
+        private final PreparedStatement statement;
+        private final Connection owner;
+        private ResultSet currentResultSet;
+        private boolean closed = false;
+
+        CachedStatementHandler(LeasedConnectionHandler lease, PreparedStatement statement, Connection owner) {
+            this.lease = lease;
+            this.statement = statement;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closeLogically();
+                        lease.openStatements.remove(this);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || lease.returned;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "MetricsCachedStatement[" + statement + "]";
+                }
+                default -> {
+                }
+            }
+
+            if (lease.returned) {
+                throw new SQLException("语句所属连接已归还连接池");
+            }
+            if (closed) {
+                throw new SQLException("语句已关闭");
+            }
+            if ("getConnection".equals(method.getName())) {
+                return owner;
+            }
+            try {
+                Object result = invokeTarget(statement, method, args);
+                if (result instanceof ResultSet resultSet) {
+                    currentResultSet = resultSet;
+                }
+                return result;
+            } catch (Throwable error) {
+                if (isConnectionError(error)) {
+                    lease.broken = true;
+                }
+                throw error;
+            }
+        }
+
+        void closeLogically() {
+            closed = true;
+            try {
+                if (currentResultSet != null) {
+                    currentResultSet.close();
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                LOG.debug("重置缓存语句失败: " + e.getMessage());
+            } finally {
+                currentResultSet = null;
+            }
+        }
+    }
+}
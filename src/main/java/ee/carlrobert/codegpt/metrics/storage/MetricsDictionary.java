@@ -0,0 +1,76 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 低基数字符串字典：把 action_type / model_name / programming_language 等取值编码为 int
+ * 同一取值在进程内只保存一份，编码 0 固定表示 null
+ */
+public final class MetricsDictionary {
+
+    public static final int NULL_CODE = 0;
+
+    public static final MetricsDictionary ACTION_TYPES = new MetricsDictionary();
+    public static final MetricsDictionary MODEL_NAMES = new MetricsDictionary();
+    public static final MetricsDictionary LANGUAGES = new MetricsDictionary();
+
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int nextCode = 1;
+
+    MetricsDictionary() {
+    }
+
+    /**
+     * 获取取值对应的编码，首次出现时分配新编码
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : register(value);
+    }
+
+    /**
+     * 查询已有取值的编码，不分配新编码；未出现过的取值返回 -1
+     */
+    public int lookup(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * 按编码取回取值，未知编码返回 null
+     */
+    public String decode(int code) {
+        String[] current = values;
+        return code > NULL_CODE && code < current.length ? current[code] : null;
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    private synchronized int register(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int code = nextCode++;
+        String[] current = values;
+        if (code >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[code] = value;
+        // 先发布取值数组再发布编码，保证拿到编码的线程一定能解码
+        values = current;
+        codes.put(value, code);
+        return code;
+    }
+}
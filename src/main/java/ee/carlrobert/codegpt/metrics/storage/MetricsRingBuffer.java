@@ -0,0 +1,182 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 固定容量的无锁环形缓冲区（多生产者，基于序号）
+ * 写入方通过原子递增的序号领取槽位，写满后覆盖最旧的数据并交给淘汰回调（例如落库）；
+ * 读取方通过快照迭代器按序号遍历，不复制底层数组
+ */
+public final class MetricsRingBuffer<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Slot<E>> slots;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final Consumer<? super E> evictionHandler;
+    // 小于该序号的数据视为已清空，不再对外可见，也不会触发淘汰回调
+    private volatile long clearedSequence;
+
+    /**
+     * @param capacity        容量，会向上取整为2的幂
+     * @param evictionHandler 数据被覆盖时的回调，可为 null
+     */
+    public MetricsRingBuffer(int capacity, Consumer<? super E> evictionHandler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = Integer.highestOneBit(capacity) == capacity
+            ? capacity
+            : Integer.highestOneBit(capacity) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.evictionHandler = evictionHandler;
+    }
+
+    /**
+     * 追加一条数据，满时覆盖最旧的数据；不加锁，可被多个线程同时调用
+     */
+    public void add(E element) {
+        Objects.requireNonNull(element, "element");
+        long sequence = cursor.getAndIncrement();
+        int index = (int) (sequence & mask);
+        Slot<E> slot = new Slot<>(sequence, element);
+        while (true) {
+            Slot<E> current = slots.get(index);
+            if (current != null && current.sequence > sequence) {
+                // 写入较慢，已被下一圈的写入者超越：本条数据直接视为被淘汰
+                evict(slot);
+                return;
+            }
+            if (slots.compareAndSet(index, current, slot)) {
+                if (current != null) {
+                    evict(current);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取当前数据的一致性快照视图；遍历时跳过已被覆盖的数据，不复制数组
+     */
+    public Snapshot<E> snapshot() {
+        long end = cursor.get();
+        long start = Math.max(Math.max(0, end - capacity), clearedSequence);
+        return new Snapshot<>(this, start, end);
+    }
+
+    /**
+     * 逻辑清空：之前写入的数据不再可见，被覆盖时也不会触发淘汰回调
+     */
+    public void clear() {
+        clearedSequence = cursor.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前可见数据条数的上限（正在写入的槽位也计算在内）
+     */
+    public int size() {
+        long end = cursor.get();
+        return (int) Math.min(capacity, Math.max(0, end - clearedSequence));
+    }
+
+    public long getWrittenCount() {
+        return cursor.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    private E read(long sequence) {
+        Slot<E> slot = slots.get((int) (sequence & mask));
+        return slot != null && slot.sequence == sequence ? slot.element : null;
+    }
+
+    private void evict(Slot<E> slot) {
+        if (slot.sequence < clearedSequence) {
+            return;
+        }
+        evictedCount.incrementAndGet();
+        if (evictionHandler != null) {
+            evictionHandler.accept(slot.element);
+        }
+    }
+
+    private record Slot<E>(long sequence, E element) {
+    }
+
+    /**
+     * 序号区间 [start, end) 上的只读视图，可重复遍历
+     * 遍历期间被覆盖的数据会被跳过，因此结果是弱一致的
+     */
+    public static final class Snapshot<E> implements Iterable<E> {
+        private final MetricsRingBuffer<E> buffer;
+        private final long start;
+        private final long end;
+
+        private Snapshot(MetricsRingBuffer<E> buffer, long start, long end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        /**
+         * 实际可读的数据条数，需要遍历一次
+         */
+        public int size() {
+            int size = 0;
+            for (Iterator<E> it = iterator(); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        public Stream<E> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<>() {
+                private long next = start;
+                private E pending;
+
+                @Override
+                public boolean hasNext() {
+                    while (pending == null && next < end) {
+                        pending = buffer.read(next++);
+                    }
+                    return pending != null;
+                }
+
+                @Override
+                public E next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    E result = pending;
+                    pending = null;
+                    return result;
+                }
+            };
+        }
+    }
+}
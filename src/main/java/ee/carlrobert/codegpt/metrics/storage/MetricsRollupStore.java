@@ -0,0 +1,298 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import com.intellij.openapi.diagnostic.Logger;
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 指标预聚合（rollup）表维护
+ * 写入明细时按 分钟/小时/天 增量累加到 metrics_rollup_* 表，摘要查询直接读取聚合表而不扫描明细表
+ */
+public final class MetricsRollupStore {
+    private static final Logger LOG = Logger.getInstance(MetricsRollupStore.class);
+
+    /**
+     * 聚合粒度及对应的表和保留期限（0 表示永久保留）
+     */
+    public enum Granularity {
+        MINUTE("metrics_rollup_minute", ChronoUnit.MINUTES, 2),
+        HOUR("metrics_rollup_hour", ChronoUnit.HOURS, 90),
+        DAY("metrics_rollup_day", ChronoUnit.DAYS, 0);
+
+        private final String tableName;
+        private final ChronoUnit unit;
+        private final int retentionDays;
+
+        Granularity(String tableName, ChronoUnit unit, int retentionDays) {
+            this.tableName = tableName;
+            this.unit = unit;
+            this.retentionDays = retentionDays;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        /**
+         * 将时间戳对齐到本地时区下所在聚合区间的起点
+         */
+        public long bucketStart(long epochMillis) {
+            return ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .truncatedTo(unit)
+                .toInstant()
+                .toEpochMilli();
+        }
+    }
+
+    private MetricsRollupStore() {
+    }
+
+    /**
+     * 聚合表建表语句，与 database/init_mysql.sql 保持一致
+     */
+    public static String createTableSql(Granularity granularity) {
+        return "CREATE TABLE IF NOT EXISTS " + granularity.getTableName() + " (\n"
+            + "    bucket_start BIGINT NOT NULL,\n"
+            + "    action_type VARCHAR(100) NOT NULL DEFAULT '',\n"
+            + "    model_name VARCHAR(100) NOT NULL DEFAULT '',\n"
+            + "    programming_language VARCHAR(100) NOT NULL DEFAULT '',\n"
+            + "    event_count BIGINT NOT NULL DEFAULT 0,\n"
+            + "    success_count BIGINT NOT NULL DEFAULT 0,\n"
+            + "    lines_generated BIGINT NOT NULL DEFAULT 0,\n"
+            + "    lines_accepted BIGINT NOT NULL DEFAULT 0,\n"
+            + "    response_time_sum BIGINT NOT NULL DEFAULT 0,\n"
+            + "    response_time_max BIGINT NOT NULL DEFAULT 0,\n"
+            + "    token_count BIGINT NOT NULL DEFAULT 0,\n"
+            + "    PRIMARY KEY (bucket_start, action_type, model_name, programming_language)\n"
+            + ")";
+    }
+
+    private static String upsertSql(Granularity granularity) {
+        return "INSERT INTO " + granularity.getTableName() + " (\n"
+            + "    bucket_start, action_type, model_name, programming_language,\n"
+            + "    event_count, success_count, lines_generated, lines_accepted,\n"
+            + "    response_time_sum, response_time_max, token_count\n"
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)\n"
+            + "ON DUPLICATE KEY UPDATE\n"
+            + "    event_count = event_count + VALUES(event_count),\n"
+            + "    success_count = success_count + VALUES(success_count),\n"
+            + "    lines_generated = lines_generated + VALUES(lines_generated),\n"
+            + "    lines_accepted = lines_accepted + VALUES(lines_accepted),\n"
+            + "    response_time_sum = response_time_sum + VALUES(response_time_sum),\n"
+            + "    response_time_max = GREATEST(response_time_max, VALUES(response_time_max)),\n"
+            + "    token_count = token_count + VALUES(token_count)";
+    }
+
+    /**
+     * 将一批明细累加到所有粒度的聚合表，调用方负责事务提交
+     */
+    public static void apply(Connection conn, List<ProductivityMetrics> batch) throws SQLException {
+        for (Granularity granularity : Granularity.values()) {
+            Map<Key, Bucket> buckets = aggregate(granularity, batch);
+            try (PreparedStatement pstmt = conn.prepareStatement(upsertSql(granularity))) {
+                for (Map.Entry<Key, Bucket> entry : buckets.entrySet()) {
+                    Key key = entry.getKey();
+                    Bucket bucket = entry.getValue();
+                    int paramIndex = 1;
+                    pstmt.setLong(paramIndex++, key.bucketStart());
+                    pstmt.setString(paramIndex++, key.actionType());
+                    pstmt.setString(paramIndex++, key.modelName());
+                    pstmt.setString(paramIndex++, key.language());
+                    pstmt.setLong(paramIndex++, bucket.eventCount);
+                    pstmt.setLong(paramIndex++, bucket.successCount);
+                    pstmt.setLong(paramIndex++, bucket.linesGenerated);
+                    pstmt.setLong(paramIndex++, bucket.linesAccepted);
+                    pstmt.setLong(paramIndex++, bucket.responseTimeSum);
+                    pstmt.setLong(paramIndex++, bucket.responseTimeMax);
+                    pstmt.setLong(paramIndex, bucket.tokenCount);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    static Map<Key, Bucket> aggregate(Granularity granularity, List<ProductivityMetrics> batch) {
+        Map<Key, Bucket> buckets = new HashMap<>();
+        for (ProductivityMetrics metrics : batch) {
+            Key key = new Key(
+                granularity.bucketStart(metrics.getStartTime()),
+                normalize(metrics.getActionType()),
+                normalize(metrics.getModelName()),
+                normalize(metrics.getProgrammingLanguage()));
+            buckets.computeIfAbsent(key, k -> new Bucket()).add(metrics);
+        }
+        return buckets;
+    }
+
+    /**
+     * 聚合表为空而明细表有数据时，从明细表重建聚合（首次升级或手工导入数据后）
+     */
+    public static void backfillIfEmpty(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(
+                "SELECT COUNT(*) FROM " + Granularity.DAY.getTableName())) {
+                if (rs.next() && rs.getLong(1) > 0) {
+                    return;
+                }
+            }
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement("""
+                SELECT action_type, model_name, programming_language, start_time,
+                       successful, lines_generated, lines_accepted, response_time, total_token_count
+                FROM productivity_metrics
+                """)) {
+            pstmt.setFetchSize(1_000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                List<ProductivityMetrics> chunk = new ArrayList<>(1_000);
+                long total = 0;
+                while (rs.next()) {
+                    ProductivityMetrics metrics = new ProductivityMetrics();
+                    metrics.setActionType(rs.getString(1));
+                    metrics.setModelName(rs.getString(2));
+                    metrics.setProgrammingLanguage(rs.getString(3));
+                    metrics.setStartTime(rs.getLong(4));
+                    metrics.setSuccessful(rs.getBoolean(5));
+                    metrics.setLinesGenerated(rs.getInt(6));
+                    metrics.setLinesAccepted(rs.getInt(7));
+                    metrics.setResponseTime(rs.getLong(8));
+                    metrics.setTotalTokenCount(rs.getInt(9));
+                    chunk.add(metrics);
+                    if (chunk.size() == 1_000) {
+                        apply(conn, chunk);
+                        total += chunk.size();
+                        chunk.clear();
+                    }
+                }
+                apply(conn, chunk);
+                total += chunk.size();
+                conn.commit();
+                if (total > 0) {
+                    LOG.info("已从明细表重建指标聚合数据，条数: " + total);
+                }
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 删除全部聚合数据，应与明细表的删除在同一事务中执行
+     */
+    public static void clear(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (Granularity granularity : Granularity.values()) {
+                stmt.executeUpdate("DELETE FROM " + granularity.getTableName());
+            }
+        }
+    }
+
+    /**
+     * 清理超过保留期限的细粒度聚合数据
+     */
+    public static void compact(Connection conn) throws SQLException {
+        for (Granularity granularity : Granularity.values()) {
+            if (granularity.getRetentionDays() <= 0) {
+                continue;
+            }
+            long cutoff = System.currentTimeMillis() - granularity.getRetentionDays() * 24L * 60 * 60 * 1000;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "DELETE FROM " + granularity.getTableName() + " WHERE bucket_start < ?")) {
+                pstmt.setLong(1, cutoff);
+                int removed = pstmt.executeUpdate();
+                if (removed > 0) {
+                    LOG.debug("已清理过期聚合数据: " + granularity.getTableName() + ", 行数: " + removed);
+                }
+            }
+        }
+    }
+
+    /**
+     * 逐行读取天粒度聚合表；空字符串维度还原为 null
+     */
+    public static void readDays(Connection conn, Consumer<DayRow> consumer) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT bucket_start, action_type, model_name, programming_language,"
+                    + " event_count, success_count, lines_generated, lines_accepted, response_time_sum"
+                    + " FROM " + Granularity.DAY.getTableName());
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(new DayRow(
+                    rs.getLong(1),
+                    denormalize(rs.getString(2)),
+                    denormalize(rs.getString(3)),
+                    denormalize(rs.getString(4)),
+                    rs.getLong(5),
+                    rs.getLong(6),
+                    rs.getLong(7),
+                    rs.getLong(8),
+                    rs.getLong(9)));
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String denormalize(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 天粒度聚合表中的一行
+     */
+    public record DayRow(long bucketStart, String actionType, String modelName, String language,
+                         long eventCount, long successCount, long linesGenerated, long linesAccepted,
+                         long responseTimeSum) {
+    }
+
+    record Key(long bucketStart, String actionType, String modelName, String language) {
+    }
+
+    static final class Bucket {
+        long eventCount;
+        long successCount;
+        long linesGenerated;
+        long linesAccepted;
+        long responseTimeSum;
+        long responseTimeMax;
+        long tokenCount;
+
+        void add(ProductivityMetrics metrics) {
+            eventCount++;
+            if (metrics.isSuccessful()) {
+                successCount++;
+            }
+            linesGenerated += metrics.getLinesGenerated();
+            linesAccepted += metrics.getLinesAccepted();
+            responseTimeSum += metrics.getResponseTime();
+            responseTimeMax = Math.max(responseTimeMax, metrics.getResponseTime());
+            tokenCount += metrics.getTotalTokenCount();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ee.carlrobert.codegpt.metrics.storage;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import ee.carlrobert.codegpt.metrics.MetricsDatabaseManager;
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标异步写入队列（write-behind）
+ * 调用方只负责入队，后台线程按批次通过 JDBC batch 写入数据库，IDE 关闭时会把剩余数据全部刷写
+ */
+@Service
+public final class MetricsWriteBehindQueue implements Disposable {
+    private static final Logger LOG = Logger.getInstance(MetricsWriteBehindQueue.class);
+
+    static final int DEFAULT_CAPACITY = 10_000;
+    static final int DEFAULT_BATCH_SIZE = 200;
+    // 空闲时的轮询间隔，决定关闭时后台线程的最长退出延迟
+    private static final long POLL_TIMEOUT_MS = 200;
+    private static final long DISPOSE_TIMEOUT_MS = 10_000;
+
+    /**
+     * 队列已满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 丢弃新到达的记录 */
+        DROP_NEWEST,
+        /** 丢弃队列中最旧的记录，为新记录腾出空间 */
+        DROP_OLDEST,
+        /** 在调用线程上直接同步写入，保证不丢数据 */
+        CALLER_RUNS
+    }
+
+    /**
+     * 批量写入实现，默认写入 MetricsDatabaseManager
+     */
+    @FunctionalInterface
+    interface BatchWriter {
+        void write(List<ProductivityMetrics> batch) throws Exception;
+    }
+
+    private final BlockingQueue<ProductivityMetrics> queue;
+    private final BatchWriter batchWriter;
+    private final int batchSize;
+    private final Thread flusher;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public MetricsWriteBehindQueue() {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+            batch -> MetricsDatabaseManager.getInstance().saveMetricsBatch(batch));
+    }
+
+    MetricsWriteBehindQueue(int capacity, int batchSize, BatchWriter batchWriter) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.batchWriter = batchWriter;
+        this.flusher = new Thread(this::runFlushLoop, "ProxyAI-Metrics-Writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static MetricsWriteBehindQueue getInstance() {
+        return ApplicationManager.getApplication().getService(MetricsWriteBehindQueue.class);
+    }
+
+    /**
+     * 将指标放入写入队列，不阻塞调用线程（CALLER_RUNS 策略除外）
+     */
+    public void enqueue(ProductivityMetrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+
+        if (!running) {
+            writeBatch(List.of(metrics));
+            return;
+        }
+
+        if (queue.offer(metrics)) {
+            enqueuedCount.incrementAndGet();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> droppedCount.incrementAndGet();
+            case DROP_OLDEST -> {
+                while (!queue.offer(metrics)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                enqueuedCount.incrementAndGet();
+            }
+            case CALLER_RUNS -> writeBatch(List.of(metrics));
+        }
+
+        long dropped = droppedCount.get();
+        if (dropped > 0 && dropped % 1_000 == 1) {
+            LOG.warn("指标写入队列已满，累计丢弃 " + dropped + " 条记录");
+        }
+    }
+
+    /**
+     * 同步刷写当前队列中的全部数据
+     */
+    public void flush() {
+        List<ProductivityMetrics> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private void runFlushLoop() {
+        List<ProductivityMetrics> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                // 有数据即写入，写入期间到达的数据会在下一批中合并（smart batching）
+                ProductivityMetrics first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                LOG.warn("指标后台写入线程异常: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void writeBatch(List<ProductivityMetrics> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            batchWriter.write(batch);
+            writtenCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            failedCount.addAndGet(batch.size());
+            LOG.warn("批量写入指标数据失败，条数: " + batch.size() + ", 原因: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // 不中断后台线程，避免打断正在进行的 JDBC 写入；线程会在下一次 poll 超时后退出
+        running = false;
+        try {
+            flusher.join(DISPOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+        LOG.info("指标写入队列已关闭，累计写入 " + writtenCount.get() + " 条，丢弃 "
+            + droppedCount.get() + " 条，失败 " + failedCount.get() + " 条");
+        MetricsDatabaseManager.getInstance().shutdown();
+    }
+}
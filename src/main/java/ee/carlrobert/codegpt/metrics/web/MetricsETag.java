@@ -0,0 +1,39 @@
+package ee.carlrobert.codegpt.metrics.web;
+
+/**
+ * /api/metrics* 的 ETag
+ * 由内存指标版本号、数据库版本号和当天日期组成，任一变化即视为内容变化；日期用于在跨天时刷新 dailyStats。
+ * 版本号在 IDE 重启后从 0 开始，因此再加上服务实例标识，避免与浏览器缓存中的旧 ETag 碰撞。
+ * 使用弱 ETag，压缩与未压缩的响应可以共用
+ */
+final class MetricsETag {
+
+    private MetricsETag() {
+    }
+
+    static String of(long instanceId, long collectorVersion, long databaseVersion, long epochDay) {
+        return "W/\"" + Long.toString(instanceId, 36) + '-' + collectorVersion + '-' + databaseVersion + '-'
+            + epochDay + '"';
+    }
+
+    /**
+     * If-None-Match 是否命中，按弱比较处理，支持逗号分隔的多个值和 *
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String opaque = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || opaqueTag(value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
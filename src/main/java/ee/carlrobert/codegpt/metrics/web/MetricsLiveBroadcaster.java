@@ -0,0 +1,222 @@
+package ee.carlrobert.codegpt.metrics.web;
+
+import com.google.gson.Gson;
+import com.intellij.openapi.diagnostic.Logger;
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+import io.javalin.http.sse.SseClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 SSE 向仪表盘推送指标增量
+ * 指标完成时只做 O(1) 的累加和入队；定时任务按固定节奏把这段时间内的新事件和最新摘要合并成一帧，
+ * 每帧只序列化一次再发给所有连接，打开的仪表盘再多也不会触发重复计算。
+ * <ul>
+ *   <li>snapshot：连接建立时发送，包含当前摘要</li>
+ *   <li>delta：{"seq":n,"events":[...],"dropped":k,"summary":{...}}，dropped 为超出单帧上限而未单独推送的事件数，
+ *   这些事件已计入 summary</li>
+ * </ul>
+ */
+final class MetricsLiveBroadcaster {
+    private static final Logger LOG = Logger.getInstance(MetricsLiveBroadcaster.class);
+
+    // 每秒最多推送 4 帧
+    static final long FRAME_INTERVAL_MS = 250;
+    static final int MAX_EVENTS_PER_FRAME = 200;
+    // 无数据时定期发送注释行，及时发现已断开的连接
+    private static final long KEEP_ALIVE_INTERVAL_MS = 15_000;
+
+    private final Gson gson;
+    private final int maxEventsPerFrame;
+    private final List<SseClient> clients = new CopyOnWriteArrayList<>();
+
+    // 以下字段由 this 保护
+    private MetricsLiveSummary summary = new MetricsLiveSummary();
+    private final List<LiveEvent> pending = new ArrayList<>();
+    private int dropped;
+    private long sequence;
+    private boolean dirty;
+    private ScheduledFuture<?> flushTask;
+    private long lastSentAt;
+
+    MetricsLiveBroadcaster(Gson gson) {
+        this(gson, MAX_EVENTS_PER_FRAME);
+    }
+
+    MetricsLiveBroadcaster(Gson gson, int maxEventsPerFrame) {
+        this.gson = gson;
+        this.maxEventsPerFrame = maxEventsPerFrame;
+    }
+
+    /**
+     * 用已有数据初始化摘要，之后只做增量更新
+     */
+    synchronized void seed(MetricsColumnStore.Columns columns) {
+        summary.reset();
+        summary.addAll(columns);
+        pending.clear();
+        dropped = 0;
+        dirty = true;
+    }
+
+    /**
+     * 以基准摘要（例如数据库聚合表中已落库的数据）加上尚未落库的指标重建摘要，之后只做增量更新
+     */
+    synchronized void seed(MetricsLiveSummary base, Iterable<ProductivityMetrics> resident) {
+        summary = base;
+        for (ProductivityMetrics metrics : resident) {
+            summary.add(metrics);
+        }
+        pending.clear();
+        dropped = 0;
+        dirty = true;
+    }
+
+    /**
+     * 指标完成回调，在完成指标的线程上执行
+     */
+    synchronized void onCompleted(ProductivityMetrics metrics) {
+        summary.add(metrics);
+        if (pending.size() < maxEventsPerFrame) {
+            pending.add(LiveEvent.of(metrics));
+        } else {
+            dropped++;
+        }
+        dirty = true;
+    }
+
+    /**
+     * 已完成指标被清空时重置摘要，下一帧把清空后的摘要推送给所有连接
+     */
+    synchronized void onCleared() {
+        summary.reset();
+        pending.clear();
+        dropped = 0;
+        dirty = true;
+    }
+
+    synchronized void start(ScheduledExecutorService scheduler) {
+        if (flushTask == null) {
+            flushTask = scheduler.scheduleWithFixedDelay(
+                this::flush, FRAME_INTERVAL_MS, FRAME_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stop() {
+        synchronized (this) {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+        }
+        for (SseClient client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * SSE 连接入口：保持连接并立即发送当前摘要
+     */
+    void connect(SseClient client) {
+        client.keepAlive();
+        client.onClose(() -> clients.remove(client));
+        clients.add(client);
+        client.sendEvent("snapshot", snapshot());
+    }
+
+    int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * 当前摘要的快照，开销与事件总数无关
+     */
+    synchronized Map<String, Object> summary() {
+        return summary.toMap();
+    }
+
+    /**
+     * 当前摘要，不消费待发送的事件
+     */
+    String snapshot() {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        synchronized (this) {
+            frame.put("seq", sequence);
+            frame.put("summary", summary.toMap());
+        }
+        return gson.toJson(frame);
+    }
+
+    /**
+     * 取走自上一帧以来的增量并序列化，没有变化时返回 null
+     */
+    String takeFrame() {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        synchronized (this) {
+            if (!dirty) {
+                return null;
+            }
+            frame.put("seq", ++sequence);
+            frame.put("events", new ArrayList<>(pending));
+            frame.put("dropped", dropped);
+            frame.put("summary", summary.toMap());
+            pending.clear();
+            dropped = 0;
+            dirty = false;
+        }
+        return gson.toJson(frame);
+    }
+
+    private void flush() {
+        try {
+            if (clients.isEmpty()) {
+                // 没有连接时不序列化，事件已计入摘要，新连接会先收到 snapshot
+                synchronized (this) {
+                    pending.clear();
+                    dropped = 0;
+                    dirty = false;
+                }
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            String frame = takeFrame();
+            if (frame != null) {
+                for (SseClient client : clients) {
+                    client.sendEvent("delta", frame);
+                }
+                lastSentAt = now;
+            } else if (now - lastSentAt >= KEEP_ALIVE_INTERVAL_MS) {
+                for (SseClient client : clients) {
+                    client.sendComment("keep-alive");
+                }
+                lastSentAt = now;
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            LOG.warn("推送实时指标失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 推送给前端的单条事件，字段名与 /api/metrics 明细一致
+     */
+    record LiveEvent(long startTime, String actionType, String modelName, String programmingLanguage,
+                     long responseTime, int linesGenerated, double acceptanceRate, boolean successful) {
+
+        static LiveEvent of(ProductivityMetrics metrics) {
+            return new LiveEvent(metrics.getStartTime(), metrics.getActionType(), metrics.getModelName(),
+                metrics.getProgrammingLanguage(), metrics.getResponseTime(), metrics.getLinesGenerated(),
+                metrics.getAcceptanceRate(), metrics.isSuccessful());
+        }
+    }
+}
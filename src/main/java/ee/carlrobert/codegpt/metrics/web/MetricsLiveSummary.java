@@ -0,0 +1,183 @@
+package ee.carlrobert.codegpt.metrics.web;
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+import ee.carlrobert.codegpt.metrics.storage.MetricsRollupStore;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 仪表盘摘要的累加统计量，随指标完成逐条更新，生成摘要时不再遍历明细。
+ * 总量为运行计数器，趋势按本地日期分桶，只保留最近 {@value #RETAINED_DAYS} 天；
+ * 生成摘要的开销为 O(天数)，与事件总数无关。
+ * 可以先用数据库天粒度聚合表的行作为基准，再逐条累加尚未落库的指标；
+ * 接受率按 已接受行数 / 生成行数 计算，与聚合表的口径一致。非线程安全，由调用方负责同步
+ */
+final class MetricsLiveSummary {
+
+    // dailyStats 输出的天数
+    static final int DAILY_STATS_DAYS = 7;
+    // 保留的日桶数量，更早的桶在新的一天到来时移除
+    static final int RETAINED_DAYS = 31;
+
+    private long totalRequests;
+    private long successfulRequests;
+    private long responseTimeSum;
+    private long linesGeneratedSum;
+    private long linesAcceptedSum;
+    private final Map<String, Long> actionTypeCounts = new HashMap<>();
+    private final Map<String, Long> languageCounts = new HashMap<>();
+    private final Map<String, Long> modelCounts = new HashMap<>();
+    // 按本地日期（epochDay）分桶
+    private final NavigableMap<Long, DayStats> days = new TreeMap<>();
+    private final ZoneId zone;
+
+    MetricsLiveSummary() {
+        this(ZoneId.systemDefault());
+    }
+
+    MetricsLiveSummary(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    void add(ProductivityMetrics metrics) {
+        add(metrics.getStartTime(), 1, metrics.isSuccessful() ? 1 : 0, metrics.getResponseTime(),
+            metrics.getLinesGenerated(), metrics.getLinesAccepted(), metrics.getActionType(),
+            metrics.getProgrammingLanguage(), metrics.getModelName());
+    }
+
+    /**
+     * 累加天粒度聚合表中的一行
+     */
+    void addRollup(MetricsRollupStore.DayRow row) {
+        add(row.bucketStart(), row.eventCount(), row.successCount(), row.responseTimeSum(),
+            row.linesGenerated(), row.linesAccepted(), row.actionType(), row.language(), row.modelName());
+    }
+
+    void addAll(MetricsColumnStore.Columns columns) {
+        for (int row = 0; row < columns.size(); row++) {
+            add(columns.startTime(row), 1, columns.successful(row) ? 1 : 0, columns.responseTime(row),
+                columns.linesGenerated(row), columns.linesAccepted(row), columns.actionType(row),
+                columns.programmingLanguage(row), columns.modelName(row));
+        }
+    }
+
+    private void add(long startTime, long requests, long successes, long responseTime,
+                     long linesGenerated, long linesAccepted, String actionType, String language, String modelName) {
+        totalRequests += requests;
+        successfulRequests += successes;
+        responseTimeSum += responseTime;
+        linesGeneratedSum += linesGenerated;
+        linesAcceptedSum += linesAccepted;
+        increment(actionTypeCounts, actionType, requests);
+        increment(languageCounts, language, requests);
+        increment(modelCounts, modelName, requests);
+
+        DayStats day = dayBucket(Instant.ofEpochMilli(startTime).atZone(zone).toLocalDate().toEpochDay());
+        if (day != null) {
+            day.requests += requests;
+            day.linesGenerated += linesGenerated;
+            day.responseTimeSum += responseTime;
+        }
+    }
+
+    /**
+     * 取得日桶；新的一天到来时移除超出保留范围的旧桶，早于保留范围的数据只计入总量
+     */
+    private DayStats dayBucket(long epochDay) {
+        DayStats day = days.get(epochDay);
+        if (day != null) {
+            return day;
+        }
+        long latest = days.isEmpty() ? epochDay : Math.max(days.lastKey(), epochDay);
+        long oldestRetained = latest - RETAINED_DAYS + 1;
+        if (epochDay < oldestRetained) {
+            return null;
+        }
+        days.headMap(oldestRetained).clear();
+        day = new DayStats();
+        days.put(epochDay, day);
+        return day;
+    }
+
+    void reset() {
+        totalRequests = 0;
+        successfulRequests = 0;
+        responseTimeSum = 0;
+        linesGeneratedSum = 0;
+        linesAcceptedSum = 0;
+        actionTypeCounts.clear();
+        languageCounts.clear();
+        modelCounts.clear();
+        days.clear();
+    }
+
+    long getTotalRequests() {
+        return totalRequests;
+    }
+
+    /**
+     * 当前统计量的快照，返回的 Map 不再引用内部状态，可在锁外序列化
+     */
+    Map<String, Object> toMap() {
+        return toMap(LocalDate.now(zone));
+    }
+
+    Map<String, Object> toMap(LocalDate today) {
+        double averageProcessingTime = totalRequests > 0 ? responseTimeSum / 1000.0 / totalRequests : 0.0;
+        double averageAcceptanceRate = linesGeneratedSum > 0 ? (double) linesAcceptedSum / linesGeneratedSum : 0.0;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("totalRequests", totalRequests);
+        summary.put("successfulRequests", successfulRequests);
+        summary.put("averageProcessingTime", averageProcessingTime);
+        summary.put("averageAcceptanceRate", averageAcceptanceRate);
+        summary.put("totalLinesGenerated", linesGeneratedSum);
+        summary.put("totalTimeSaved", responseTimeSum / 1000.0 / 3600.0); // 估算节省时间
+        summary.put("averageEfficiencyGain", averageAcceptanceRate);
+        summary.put("actionTypeCounts", new HashMap<>(actionTypeCounts));
+        summary.put("languageCounts", new HashMap<>(languageCounts));
+        summary.put("modelCounts", new HashMap<>(modelCounts));
+        summary.put("dailyStats", dailyStats(today));
+        return summary;
+    }
+
+    /**
+     * 最近 {@value #DAILY_STATS_DAYS} 天的趋势，没有数据的日期补 0
+     */
+    private List<Map<String, Object>> dailyStats(LocalDate today) {
+        List<Map<String, Object>> dailyStats = new ArrayList<>(DAILY_STATS_DAYS);
+        for (int i = DAILY_STATS_DAYS - 1; i >= 0; i--) {
+            LocalDate date = today.minusDays(i);
+            DayStats day = days.get(date.toEpochDay());
+            Map<String, Object> dayStat = new LinkedHashMap<>();
+            dayStat.put("date", date.toString());
+            dayStat.put("requests", day != null ? day.requests : 0L);
+            dayStat.put("linesGenerated", day != null ? day.linesGenerated : 0L);
+            dayStat.put("timeSaved", day != null ? day.responseTimeSum / 1000.0 / 3600.0 : 0.0);
+            dailyStats.add(dayStat);
+        }
+        return dailyStats;
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long count) {
+        if (key != null) {
+            counts.merge(key, count, Long::sum);
+        }
+    }
+
+    private static final class DayStats {
+        private long requests;
+        private long linesGenerated;
+        private long responseTimeSum;
+    }
+}
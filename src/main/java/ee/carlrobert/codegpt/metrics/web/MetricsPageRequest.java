@@ -0,0 +1,144 @@
+package ee.carlrobert.codegpt.metrics.web;
+
+import ee.carlrobert.codegpt.metrics.export.MetricsExportField;
+import ee.carlrobert.codegpt.metrics.export.MetricsQuery;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /api/metrics 的查询参数
+ * <ul>
+ *   <li>from / to：开始时间范围 [from, to)，毫秒时间戳或 yyyy-MM-dd（to 为日期时包含当天）</li>
+ *   <li>action_type / model / language：精确匹配过滤</li>
+ *   <li>fields：逗号分隔的返回字段，默认全部</li>
+ *   <li>limit：每页条数，默认 {@value #DEFAULT_LIMIT}，最大 {@value #MAX_LIMIT}</li>
+ *   <li>cursor：上一页返回的 nextCursor</li>
+ *   <li>format：json（默认）或 ndjson，也可通过 Accept: application/x-ndjson 指定</li>
+ * </ul>
+ */
+final class MetricsPageRequest {
+
+    static final int DEFAULT_LIMIT = 500;
+    static final int MAX_LIMIT = 10_000;
+    static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private final MetricsQuery query;
+    private final List<MetricsExportField> fields;
+    private final int limit;
+    private final PageToken token;
+    private final boolean ndjson;
+
+    private MetricsPageRequest(MetricsQuery query, List<MetricsExportField> fields, int limit, PageToken token,
+                               boolean ndjson) {
+        this.query = query;
+        this.fields = fields;
+        this.limit = limit;
+        this.token = token;
+        this.ndjson = ndjson;
+    }
+
+    /**
+     * @throws IllegalArgumentException 参数格式错误
+     */
+    static MetricsPageRequest parse(Map<String, List<String>> params, String accept) {
+        long from = parseTime(first(params, "from"), false, Long.MIN_VALUE);
+        long to = parseTime(first(params, "to"), true, Long.MAX_VALUE);
+        MetricsQuery query = new MetricsQuery(
+            from, to, first(params, "action_type"), first(params, "model"), first(params, "language"));
+
+        List<MetricsExportField> fields = MetricsExportField.ALL;
+        String fieldsParam = first(params, "fields");
+        if (fieldsParam != null) {
+            fields = new ArrayList<>();
+            for (String key : fieldsParam.split(",")) {
+                MetricsExportField field = MetricsExportField.fromKey(key.trim());
+                if (field == null) {
+                    throw new IllegalArgumentException("未知字段: " + key.trim());
+                }
+                fields.add(field);
+            }
+        }
+
+        int limit = DEFAULT_LIMIT;
+        String limitParam = first(params, "limit");
+        if (limitParam != null) {
+            limit = Integer.parseInt(limitParam);
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit 必须大于 0");
+            }
+            limit = Math.min(limit, MAX_LIMIT);
+        }
+
+        String cursorParam = first(params, "cursor");
+        PageToken token = cursorParam != null ? PageToken.decode(cursorParam) : null;
+
+        String format = first(params, "format");
+        boolean ndjson = format != null
+            ? "ndjson".equalsIgnoreCase(format)
+            : accept != null && accept.contains(NDJSON_CONTENT_TYPE);
+        return new MetricsPageRequest(query, fields, limit, token, ndjson);
+    }
+
+    MetricsQuery getQuery() { return query; }
+    List<MetricsExportField> getFields() { return fields; }
+    int getLimit() { return limit; }
+    PageToken getToken() { return token; }
+    boolean isNdjson() { return ndjson; }
+
+    private static String first(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        if (values == null || values.isEmpty() || values.get(0).isBlank()) {
+            return null;
+        }
+        return values.get(0).trim();
+    }
+
+    private static long parseTime(String value, boolean endOfRange, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.indexOf('-') > 0) {
+            LocalDate date = LocalDate.parse(value);
+            return (endOfRange ? date.plusDays(1) : date)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     * 分页游标：内存数据为全局行号（m&lt;row&gt;），数据库为 start_time 加同一时间戳下已返回的条数（d&lt;time&gt;.&lt;skip&gt;）
+     */
+    record PageToken(boolean database, long position, int skip) {
+
+        static PageToken memory(long rowNumber) {
+            return new PageToken(false, rowNumber, 0);
+        }
+
+        static PageToken database(long startTime, int skip) {
+            return new PageToken(true, startTime, skip);
+        }
+
+        String encode() {
+            return database ? "d" + position + "." + skip : "m" + position;
+        }
+
+        static PageToken decode(String value) {
+            try {
+                if (value.startsWith("m")) {
+                    return memory(Long.parseLong(value.substring(1)));
+                }
+                if (value.startsWith("d")) {
+                    int dot = value.indexOf('.');
+                    return database(Long.parseLong(value.substring(1, dot)), Integer.parseInt(value.substring(dot + 1)));
+                }
+            } catch (RuntimeException e) {
+                // 落到下面统一报错
+            }
+            throw new IllegalArgumentException("无效的分页游标: " + value);
+        }
+    }
+}
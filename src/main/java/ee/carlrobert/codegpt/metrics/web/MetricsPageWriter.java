@@ -0,0 +1,175 @@
+package ee.carlrobert.codegpt.metrics.web;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonWriter;
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics;
+import ee.carlrobert.codegpt.metrics.export.MetricsCursor;
+import ee.carlrobert.codegpt.metrics.export.MetricsExportField;
+import ee.carlrobert.codegpt.metrics.export.MetricsQuery;
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 按页流式输出 /api/metrics 的结果
+ * 数据从游标逐行读取并直接写入响应，服务端内存与页大小和数据总量无关。
+ * JSON 格式输出 {"items":[...],"count":n,"nextCursor":...}；
+ * NDJSON 格式每行一条记录，最后一行为 {"count":n,"nextCursor":...}
+ */
+final class MetricsPageWriter {
+
+    private final MetricsPageRequest request;
+    private final Writer out;
+    private final JsonWriter json;
+    private final ItemSink sink;
+    private int count;
+
+    MetricsPageWriter(MetricsPageRequest request, Writer out) {
+        this.request = request;
+        this.out = out;
+        this.json = new JsonWriter(out);
+        // NDJSON 在同一个 writer 上连续写多个顶层值
+        this.json.setStrictness(request.isNdjson() ? Strictness.LENIENT : Strictness.LEGACY_STRICT);
+        this.sink = new ItemSink(json);
+    }
+
+    /**
+     * 从内存列式存储分页读取
+     */
+    void writeFromColumns(MetricsColumnStore.Columns columns) throws IOException {
+        MetricsPageRequest.PageToken token = request.getToken();
+        long fromRow = token != null ? token.position() : columns.getFirstRow();
+        MetricsCursor.ColumnsCursor cursor = MetricsCursor.ofColumns(columns, request.getQuery(), fromRow);
+
+        begin();
+        String nextCursor = null;
+        while (cursor.next()) {
+            if (count == request.getLimit()) {
+                nextCursor = MetricsPageRequest.PageToken.memory(cursor.rowNumber()).encode();
+                break;
+            }
+            item(cursor);
+        }
+        end(nextCursor);
+    }
+
+    void writeFromDatabase(DataSource dataSource, boolean embedded) throws IOException {
+        writeFromDatabase(dataSource, embedded, List.of());
+    }
+
+    /**
+     * 从数据库分页读取，并按开始时间合并仍驻留在内存的指标（已落库的同一条记录只取内存中的版本）；
+     * 按 (start_time, id) 排序，开始时间相同时数据库中的记录在前。
+     * 游标记录最后的 start_time 以及该时间戳下已返回的条数
+     */
+    void writeFromDatabase(DataSource dataSource, boolean embedded, Iterable<ProductivityMetrics> resident)
+            throws IOException {
+        MetricsPageRequest.PageToken token = request.getToken();
+        MetricsQuery query = token != null ? request.getQuery().startingAt(token.position()) : request.getQuery();
+        int toSkip = token != null ? token.skip() : 0;
+        // 跳过的行、本页的行，再多读一行用于判断是否还有下一页
+        long maxRows = (long) toSkip + request.getLimit() + 1;
+
+        try (MetricsCursor cursor = MetricsCursor.withResident(dataSource, query, embedded, maxRows, resident)) {
+            long lastStartTime = token != null ? token.position() : Long.MIN_VALUE;
+            int sameStartTime = 0;
+
+            begin();
+            String nextCursor = null;
+            while (cursor.next()) {
+                if (toSkip > 0 && cursor.startTime() == lastStartTime) {
+                    toSkip--;
+                    sameStartTime++;
+                    continue;
+                }
+                toSkip = 0;
+                if (count == request.getLimit()) {
+                    nextCursor = MetricsPageRequest.PageToken.database(lastStartTime, sameStartTime).encode();
+                    break;
+                }
+                if (cursor.startTime() != lastStartTime) {
+                    lastStartTime = cursor.startTime();
+                    sameStartTime = 0;
+                }
+                sameStartTime++;
+                item(cursor);
+            }
+            end(nextCursor);
+        }
+    }
+
+    private void begin() throws IOException {
+        if (!request.isNdjson()) {
+            json.beginObject();
+            json.name("items").beginArray();
+        }
+    }
+
+    private void item(MetricsCursor cursor) throws IOException {
+        json.beginObject();
+        List<MetricsExportField> fields = request.getFields();
+        for (MetricsExportField field : fields) {
+            json.name(field.getKey());
+            field.write(cursor, sink);
+        }
+        json.endObject();
+        if (request.isNdjson()) {
+            out.write('\n');
+        }
+        count++;
+    }
+
+    private void end(String nextCursor) throws IOException {
+        if (request.isNdjson()) {
+            json.beginObject();
+        } else {
+            json.endArray();
+        }
+        json.name("count").value(count);
+        json.name("nextCursor").value(nextCursor);
+        json.endObject();
+        if (request.isNdjson()) {
+            out.write('\n');
+        }
+        json.flush();
+    }
+
+    /**
+     * 时间戳输出为毫秒数，便于前端直接构造 Date
+     */
+    private static final class ItemSink implements MetricsExportField.Sink {
+        private final JsonWriter json;
+
+        ItemSink(JsonWriter json) {
+            this.json = json;
+        }
+
+        @Override
+        public void text(String value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void number(long value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void number(double value) throws IOException {
+            json.value(Double.isFinite(value) ? value : 0.0);
+        }
+
+        @Override
+        public void bool(boolean value) throws IOException {
+            json.value(value);
+        }
+
+        @Override
+        public void timestamp(long epochMillis) throws IOException {
+            json.value(epochMillis);
+        }
+    }
+}
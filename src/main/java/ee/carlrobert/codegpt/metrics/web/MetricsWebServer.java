@@ -2,17 +2,37 @@ package ee.carlrobert.codegpt.metrics.web;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import ee.carlrobert.codegpt.CodeGPTPlugin;
+import ee.carlrobert.codegpt.metrics.MetricsCollector;
+import ee.carlrobert.codegpt.metrics.MetricsDatabaseManager;
+import ee.carlrobert.codegpt.metrics.MetricsSettings;
+import ee.carlrobert.codegpt.metrics.config.MetricsDatabaseConfig;
+import ee.carlrobert.codegpt.metrics.perf.OpenMetricsWriter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
 import io.javalin.http.staticfiles.Location;
+import io.javalin.json.JsonMapper;
+import org.jetbrains.annotations.NotNull;
 
-import java.util.HashMap;
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Map;
-import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 指标Web服务器，提供REST API和Web界面用于可视化展示指标数据
@@ -21,16 +41,31 @@ import java.util.ArrayList;
 public final class MetricsWebServer {
     private static final Logger LOG = Logger.getInstance(MetricsWebServer.class);
     private static final int DEFAULT_PORT = 8090;
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+    private static final int GZIP_LEVEL = 6;
+    // 静态资源按插件版本放在独立路径下，可以长期缓存，升级后路径随之变化
+    private static final String STATIC_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    // 检查数据库是否有新写入、需要重建摘要基准的间隔
+    private static final long RESEED_CHECK_INTERVAL_MS = 1_000;
     
     private final Gson gson;
     private final Project project;
+    private final MetricsLiveBroadcaster liveBroadcaster;
     private Javalin app;
+    private Disposable liveDisposable;
+    private final Object seedLock = new Object();
+    // 摘要基准对应的数据库数据版本，-1 表示需要重建
+    private volatile long seededDataVersion = -1;
     private int port = DEFAULT_PORT;
     private boolean running = false;
+    // 服务实例标识，参与 ETag 计算
+    private final long instanceId = System.currentTimeMillis();
     
     public MetricsWebServer(Project project) {
         this.project = project;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        // 紧凑输出：响应体积更小，也省去缩进格式化的开销
+        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this.liveBroadcaster = new MetricsLiveBroadcaster(gson);
     }
     
     public static MetricsWebServer getInstance(Project project) {
@@ -44,15 +79,23 @@ public final class MetricsWebServer {
         }
         
         try {
+            String staticPath = getStaticPath();
             app = Javalin.create(config -> {
                 // 配置静态文件服务
                 config.staticFiles.add(staticFiles -> {
                     staticFiles.directory = "/web";
                     staticFiles.location = Location.CLASSPATH;
-                    staticFiles.hostedPath = "/";
+                    staticFiles.hostedPath = staticPath;
+                    staticFiles.headers = Map.of(Header.CACHE_CONTROL, STATIC_CACHE_CONTROL);
+                    staticFiles.precompress = true; // 压缩结果缓存在内存中，不必每次请求重新压缩
                 });
+                config.compression.gzipOnly(GZIP_LEVEL);
                 config.showJavalinBanner = false;
-                config.plugins.enableDevLogging(); // 启用开发日志
+                config.jsonMapper(new GsonJsonMapper(gson));
+                MetricsSettings settings = MetricsSettings.getInstance();
+                if (settings != null && settings.isWebServerDevLogging()) {
+                    config.plugins.enableDevLogging(); // 启用开发日志
+                }
             });
             
             // 配置路由
@@ -60,13 +103,15 @@ public final class MetricsWebServer {
             
             // 启动服务器
             app.start(port);
+            startLivePush();
             running = true;
             LOG.info("指标Web服务器已启动，端口: " + port);
             LOG.info("访问地址: " + getWebUrl());
-            LOG.info("静态文件目录: /web");
+            LOG.info("静态文件目录: /web -> " + staticPath);
             
         } catch (Exception e) {
             LOG.error("启动指标Web服务器失败: " + e.getMessage(), e);
+            stopLivePush();
             running = false;
             app = null;
         }
@@ -78,6 +123,7 @@ public final class MetricsWebServer {
         }
         
         try {
+            stopLivePush();
             app.stop();
             running = false;
             LOG.info("指标Web服务器已停止");
@@ -104,177 +150,179 @@ public final class MetricsWebServer {
     
     private void configureRoutes() {
         // API路由
-        app.get("/api/metrics", this::getAllMetrics);
-        app.get("/api/metrics/summary", this::getMetricsSummary);
-        app.get("/api/metrics/actions", this::getActionTypes);
-        app.get("/api/metrics/models", this::getModelNames);
+        app.get("/api/metrics", conditional(this::getAllMetrics));
+        app.get("/api/metrics/summary", conditional(this::getMetricsSummary));
+        app.get("/api/metrics/actions", conditional(this::getActionTypes));
+        app.get("/api/metrics/models", conditional(this::getModelNames));
+        // 连接池状态与指标数据无关，每次都返回实时值
+        app.get("/api/metrics/pool", ctx -> {
+            ctx.header(Header.CACHE_CONTROL, "no-store");
+            getPoolStats(ctx);
+        });
+        app.sse("/api/metrics/stream", liveBroadcaster::connect);
+        // 插件热路径的延迟直方图，供 Prometheus 抓取
+        app.get("/metrics", this::getHotPathMetrics);
         
         // 主页
-        app.get("/", ctx -> ctx.redirect("/index.html"));
+        String indexPath = getStaticPath() + "/index.html";
+        app.get("/", ctx -> ctx.redirect(indexPath));
+        app.get("/index.html", ctx -> ctx.redirect(indexPath));
+    }
+    
+    /**
+     * 条件请求：指标数据没有变化时返回 304，不再执行查询和序列化
+     */
+    private Handler conditional(Handler handler) {
+        return ctx -> {
+            String etag = currentETag();
+            ctx.header(Header.CACHE_CONTROL, "no-cache");
+            ctx.header(Header.ETAG, etag);
+            if (MetricsETag.matches(ctx.header(Header.IF_NONE_MATCH), etag)) {
+                ctx.status(304);
+                return;
+            }
+            handler.handle(ctx);
+        };
     }
     
+    private String currentETag() {
+        return MetricsETag.of(
+            instanceId,
+            MetricsCollector.getInstance(project).getVersion(),
+            MetricsDatabaseManager.getInstance().getDataVersion(),
+            LocalDate.now().toEpochDay());
+    }
+    
+    /**
+     * 静态资源路径，包含插件版本
+     */
+    private String getStaticPath() {
+        String version;
+        try {
+            version = CodeGPTPlugin.getVersion();
+        } catch (RuntimeException e) {
+            version = Long.toString(instanceId, 36);
+        }
+        return "/static/" + version.replaceAll("[^A-Za-z0-9._-]", "-");
+    }
+    
+    /**
+     * 订阅指标完成事件并启动推送任务；先注册监听再用已有数据初始化摘要
+     */
+    private void startLivePush() {
+        MetricsCollector collector = MetricsCollector.getInstance(project);
+        liveDisposable = Disposer.newDisposable("MetricsWebServer.livePush");
+        collector.addCompletionListener(liveBroadcaster::onCompleted, liveDisposable);
+        collector.addClearListener(() -> {
+            seededDataVersion = -1;
+            AppExecutorUtil.getAppExecutorService().execute(this::reseedIfStale);
+        }, liveDisposable);
+        seedLiveSummary();
+        ScheduledExecutorService scheduler = AppExecutorUtil.getAppScheduledExecutorService();
+        ScheduledFuture<?> reseedTask = scheduler.scheduleWithFixedDelay(
+            this::reseedIfStale, RESEED_CHECK_INTERVAL_MS, RESEED_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Disposer.register(liveDisposable, () -> reseedTask.cancel(false));
+        liveBroadcaster.start(scheduler);
+    }
+
+    /**
+     * 摘要只有一个来源：数据库天粒度聚合表（已落库的数据，包括不经过收集器直接写入的指标）
+     * 加上仍驻留在内存环形缓冲区、尚未落库的指标，之后随指标完成增量更新；
+     * /api/metrics/summary 和实时推送都使用这份摘要。没有数据库时以内存列式存储为准
+     */
+    private void seedLiveSummary() {
+        synchronized (seedLock) {
+            MetricsCollector collector = MetricsCollector.getInstance(project);
+            MetricsDatabaseManager databaseManager = MetricsDatabaseManager.getInstance();
+            long dataVersion = databaseManager.getDataVersion();
+            MetricsLiveSummary base = new MetricsLiveSummary();
+            if (databaseManager.readRollupDays(base::addRollup)) {
+                liveBroadcaster.seed(base, collector.getCompletedMetricsSnapshot());
+            } else {
+                liveBroadcaster.seed(collector.getCompletedMetricsColumns());
+            }
+            seededDataVersion = dataVersion;
+        }
+    }
+
+    /**
+     * 数据库有新写入（环形缓冲区挤出的指标落库，或其他途径直接写入）时重建摘要基准
+     */
+    private void reseedIfStale() {
+        try {
+            if (MetricsDatabaseManager.getInstance().getDataVersion() != seededDataVersion) {
+                seedLiveSummary();
+            }
+        } catch (Exception e) {
+            // 异常不能抛出，否则定时任务会被取消
+            LOG.warn("重建指标摘要失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void stopLivePush() {
+        liveBroadcaster.stop();
+        if (liveDisposable != null) {
+            Disposer.dispose(liveDisposable);
+            liveDisposable = null;
+        }
+    }
+
+    /**
+     * 分页、可过滤的指标明细，参数见 {@link MetricsPageRequest}
+     * 结果直接流式写入响应，不在内存中组装完整列表
+     */
     private void getAllMetrics(Context ctx) {
+        MetricsPageRequest request;
         try {
-            // 从 MetricsCollector 获取真实的指标数据
-            List<Map<String, Object>> metricsList = new ArrayList<>();
-            
-            try {
-                // 优先从数据库读取数据，如果失败则从内存读取
-                ee.carlrobert.codegpt.metrics.MetricsDatabaseManager dbManager = 
-                    ee.carlrobert.codegpt.metrics.MetricsDatabaseManager.getInstance();
-                
-                // 尝试从数据库获取数据
-                List<ee.carlrobert.codegpt.metrics.ProductivityMetrics> completedMetrics = 
-                    loadMetricsFromDatabase(dbManager);
-                
-                // 如果数据库没有数据，则从内存获取
-                if (completedMetrics.isEmpty()) {
-                    ee.carlrobert.codegpt.metrics.MetricsCollector collector = 
-                        ee.carlrobert.codegpt.metrics.MetricsCollector.getInstance(project);
-                    completedMetrics = collector.getCompletedMetrics();
-                    LOG.info("从内存获取指标数据，数量: " + completedMetrics.size());
+            request = MetricsPageRequest.parse(ctx.queryParamMap(), ctx.header("Accept"));
+        } catch (RuntimeException e) {
+            ctx.status(400).json(Map.of("error", String.valueOf(e.getMessage())));
+            return;
+        }
+
+        try {
+            DataSource dataSource = useDatabase(request)
+                ? MetricsDatabaseManager.getInstance().getDataSource()
+                : null;
+
+            ctx.contentType(request.isNdjson()
+                ? MetricsPageRequest.NDJSON_CONTENT_TYPE + "; charset=utf-8"
+                : "application/json; charset=utf-8");
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8), RESPONSE_BUFFER_SIZE)) {
+                MetricsPageWriter pageWriter = new MetricsPageWriter(request, writer);
+                if (dataSource != null) {
+                    // 最近完成的指标在内存环形缓冲区中，被挤出后才写入数据库，需要合并后返回
+                    pageWriter.writeFromDatabase(
+                        dataSource,
+                        MetricsDatabaseConfig.getInstance().isEmbedded(),
+                        MetricsCollector.getInstance(project).getCompletedMetricsSnapshot());
                 } else {
-                    LOG.info("从数据库获取指标数据，数量: " + completedMetrics.size());
-                }
-                
-                for (ee.carlrobert.codegpt.metrics.ProductivityMetrics metrics : completedMetrics) {
-                    Map<String, Object> metric = new HashMap<>();
-                    metric.put("id", metrics.getId());
-                    metric.put("actionId", metrics.getActionId());
-                    metric.put("actionType", metrics.getActionType());
-                    metric.put("modelName", metrics.getModelName());
-                    metric.put("linesGenerated", metrics.getLinesGenerated());
-                    metric.put("linesAccepted", metrics.getLinesAccepted());
-                    metric.put("acceptanceRate", metrics.getAcceptanceRate());
-                    metric.put("responseTime", metrics.getResponseTime());
-                    metric.put("timestamp", metrics.getStartTime());
-                    metric.put("successful", metrics.isSuccessful());
-                    metric.put("sessionId", metrics.getSessionId());
-                    metric.put("programmingLanguage", metrics.getProgrammingLanguage());
-                    metric.put("projectType", metrics.getProjectType());
-                    metric.put("userRating", metrics.getUserRating());
-                    metric.put("errorMessage", metrics.getErrorMessage());
-                    metric.put("additionalData", metrics.getAdditionalData());
-                    
-                    metricsList.add(metric);
+                    pageWriter.writeFromColumns(
+                        MetricsCollector.getInstance(project).getCompletedMetricsColumns());
                 }
-                
-                LOG.info("返回真实指标数据，数量: " + metricsList.size());
-            } catch (Exception e) {
-                LOG.warn("获取真实指标数据失败，返回空列表: " + e.getMessage());
             }
-            
-            ctx.json(metricsList);
         } catch (Exception e) {
             LOG.error("获取指标数据失败", e);
-            ctx.status(500).json(Map.of("error", e.getMessage()));
+            ctx.status(500).json(Map.of("error", String.valueOf(e.getMessage())));
         }
     }
+
+    /**
+     * 分页游标决定数据源；首页在数据库可用时读数据库，否则读内存
+     */
+    private boolean useDatabase(MetricsPageRequest request) {
+        if (request.getToken() != null) {
+            return request.getToken().database();
+        }
+        return MetricsDatabaseManager.getInstance().getDataSource() != null;
+    }
     
     private void getMetricsSummary(Context ctx) {
         try {
-            Map<String, Object> summary = new HashMap<>();
-            
-            try {
-                ee.carlrobert.codegpt.metrics.MetricsCollector collector = 
-                    ee.carlrobert.codegpt.metrics.MetricsCollector.getInstance(project);
-                List<ee.carlrobert.codegpt.metrics.ProductivityMetrics> completedMetrics = 
-                    collector.getCompletedMetrics();
-                
-                // 基础统计
-                int totalRequests = completedMetrics.size();
-                int successfulRequests = (int) completedMetrics.stream().mapToInt(m -> m.isSuccessful() ? 1 : 0).sum();
-                double averageProcessingTime = completedMetrics.stream().mapToLong(m -> m.getResponseTime()).average().orElse(0.0) / 1000.0;
-                double averageAcceptanceRate = completedMetrics.stream().mapToDouble(m -> m.getAcceptanceRate()).average().orElse(0.0);
-                int totalLinesGenerated = completedMetrics.stream().mapToInt(m -> m.getLinesGenerated()).sum();
-                
-                summary.put("totalRequests", totalRequests);
-                summary.put("successfulRequests", successfulRequests);
-                summary.put("averageProcessingTime", averageProcessingTime);
-                summary.put("averageAcceptanceRate", averageAcceptanceRate);
-                summary.put("totalLinesGenerated", totalLinesGenerated);
-                summary.put("totalTimeSaved", averageProcessingTime * totalRequests / 3600.0); // 估算节省时间
-                summary.put("averageEfficiencyGain", averageAcceptanceRate);
-                
-                // 动作类型统计
-                Map<String, Integer> actionTypeCounts = new HashMap<>();
-                for (ee.carlrobert.codegpt.metrics.ProductivityMetrics metrics : completedMetrics) {
-                    String actionType = metrics.getActionType();
-                    if (actionType != null) {
-                        actionTypeCounts.put(actionType, actionTypeCounts.getOrDefault(actionType, 0) + 1);
-                    }
-                }
-                summary.put("actionTypeCounts", actionTypeCounts);
-                
-                // 编程语言统计
-                Map<String, Integer> languageCounts = new HashMap<>();
-                for (ee.carlrobert.codegpt.metrics.ProductivityMetrics metrics : completedMetrics) {
-                    String language = metrics.getProgrammingLanguage();
-                    if (language != null) {
-                        languageCounts.put(language, languageCounts.getOrDefault(language, 0) + 1);
-                    }
-                }
-                summary.put("languageCounts", languageCounts);
-                
-                // 模型使用统计
-                Map<String, Integer> modelCounts = new HashMap<>();
-                for (ee.carlrobert.codegpt.metrics.ProductivityMetrics metrics : completedMetrics) {
-                    String modelName = metrics.getModelName();
-                    if (modelName != null) {
-                        modelCounts.put(modelName, modelCounts.getOrDefault(modelName, 0) + 1);
-                    }
-                }
-                summary.put("modelCounts", modelCounts);
-                
-                // 时间趋势数据（最近7天）
-                List<Map<String, Object>> dailyStats = new ArrayList<>();
-                for (int i = 6; i >= 0; i--) {
-                    String date = java.time.LocalDate.now().minusDays(i).toString();
-                    Map<String, Object> dayStat = new HashMap<>();
-                    dayStat.put("date", date);
-                    
-                    // 计算当天的统计数据
-                    long dayStart = java.time.LocalDate.now().minusDays(i).atStartOfDay()
-                        .atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    long dayEnd = dayStart + 24 * 60 * 60 * 1000;
-                    
-                    int dayRequests = 0;
-                    int dayLinesGenerated = 0;
-                    double dayTimeSaved = 0.0;
-                    
-                    for (ee.carlrobert.codegpt.metrics.ProductivityMetrics metrics : completedMetrics) {
-                        if (metrics.getStartTime() >= dayStart && metrics.getStartTime() < dayEnd) {
-                            dayRequests++;
-                            dayLinesGenerated += metrics.getLinesGenerated();
-                            dayTimeSaved += metrics.getResponseTime() / 1000.0 / 3600.0;
-                        }
-                    }
-                    
-                    dayStat.put("requests", dayRequests);
-                    dayStat.put("linesGenerated", dayLinesGenerated);
-                    dayStat.put("timeSaved", dayTimeSaved);
-                    dailyStats.add(dayStat);
-                }
-                summary.put("dailyStats", dailyStats);
-                
-                LOG.info("返回真实摘要数据，总请求数: " + totalRequests);
-            } catch (Exception e) {
-                LOG.warn("获取真实摘要数据失败，返回默认值: " + e.getMessage());
-                // 返回默认值
-                summary.put("totalRequests", 0);
-                summary.put("successfulRequests", 0);
-                summary.put("averageProcessingTime", 0.0);
-                summary.put("averageAcceptanceRate", 0.0);
-                summary.put("totalLinesGenerated", 0);
-                summary.put("totalTimeSaved", 0.0);
-                summary.put("averageEfficiencyGain", 0.0);
-                summary.put("actionTypeCounts", new HashMap<>());
-                summary.put("languageCounts", new HashMap<>());
-                summary.put("modelCounts", new HashMap<>());
-                summary.put("dailyStats", new ArrayList<>());
-            }
-            
-            ctx.json(summary);
+            // 与实时推送使用同一份摘要（聚合表基准 + 未落库的内存指标），开销为 O(天数)
+            reseedIfStale();
+            ctx.json(liveBroadcaster.summary());
         } catch (Exception e) {
             LOG.error("获取指标摘要失败", e);
             ctx.status(500).json(Map.of("error", e.getMessage()));
@@ -303,38 +351,52 @@ public final class MetricsWebServer {
         }
     }
     
-    /**
-     * 从数据库加载指标数据
-     */
-    private List<ee.carlrobert.codegpt.metrics.ProductivityMetrics> loadMetricsFromDatabase(
-            ee.carlrobert.codegpt.metrics.MetricsDatabaseManager dbManager) {
-        
-        List<ee.carlrobert.codegpt.metrics.ProductivityMetrics> metricsList = new ArrayList<>();
-        
+    private void getHotPathMetrics(Context ctx) {
         try {
-            // 检查数据库管理器是否有效
-            if (dbManager == null) {
-                LOG.warn("数据库管理器为空，无法加载数据");
-                return metricsList;
+            String accept = ctx.header(Header.ACCEPT);
+            ctx.contentType(accept != null && accept.contains("application/openmetrics-text")
+                ? OpenMetricsWriter.CONTENT_TYPE
+                : OpenMetricsWriter.TEXT_CONTENT_TYPE);
+            ctx.header(Header.CACHE_CONTROL, "no-store");
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8), RESPONSE_BUFFER_SIZE)) {
+                OpenMetricsWriter.write(writer);
             }
-            
-            LOG.info("尝试从数据库加载指标数据...");
-            
-            // 尝试从数据库加载数据
-            // 由于MetricsDatabaseManager目前只支持保存功能，我们暂时返回空列表
-            // 这样可以避免编译错误，同时为后续功能扩展预留接口
-            
-            // 注意：这里返回空列表是临时的解决方案
-            // 当需要从数据库读取数据时，可以：
-            // 1. 在MetricsDatabaseManager中添加loadAllMetrics()方法
-            // 2. 或者直接在这里实现数据库查询逻辑
-            
-            LOG.info("数据库加载完成，返回空列表（数据库查询功能待实现）");
-            
         } catch (Exception e) {
-            LOG.warn("从数据库加载指标数据失败: " + e.getMessage(), e);
+            LOG.error("输出热路径指标失败", e);
+            ctx.status(500).json(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+    
+    private void getPoolStats(Context ctx) {
+        try {
+            ctx.json(MetricsDatabaseManager.getInstance().getPoolStats());
+        } catch (Exception e) {
+            LOG.error("获取数据库连接池状态失败", e);
+            ctx.status(500).json(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * 使用紧凑 Gson 作为 Javalin 的 JSON 序列化器
+     */
+    private static final class GsonJsonMapper implements JsonMapper {
+        private final Gson gson;
+
+        GsonJsonMapper(Gson gson) {
+            this.gson = gson;
+        }
+
+        @NotNull
+        @Override
+        public String toJsonString(@NotNull Object obj, @NotNull Type type) {
+            return gson.toJson(obj, type);
+        }
+
+        @NotNull
+        @Override
+        public <T> T fromJsonString(@NotNull String json, @NotNull Type targetType) {
+            return gson.fromJson(json, targetType);
         }
-        
-        return metricsList;
     }
-}
\ No newline at end of file
+}
@@ -148,6 +148,7 @@ abstract class ToolWindowCompletionResponseEventListener implements
     if (messageBuffer.isEmpty()) {
       if (stopped) {
         updateTimer.stop();
+        responseContainer.completeStreaming();
       }
       return;
     }
@@ -58,7 +58,9 @@ import ee.carlrobert.codegpt.toolwindow.ui.WebpageList;
 import ee.carlrobert.codegpt.ui.ThoughtProcessPanel;
 import ee.carlrobert.codegpt.ui.UIUtil;
 import ee.carlrobert.codegpt.util.EditorUtil;
+import ee.carlrobert.codegpt.util.IncrementalMarkdownRenderer;
 import java.awt.BorderLayout;
+import java.io.IOException;
 import java.util.Objects;
 import java.util.stream.Stream;
 import javax.swing.DefaultListModel;
@@ -66,13 +68,18 @@ import javax.swing.JEditorPane;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextPane;
+import javax.swing.Timer;
 import javax.swing.event.HyperlinkListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
 import kotlin.jvm.Synchronized;
 import org.jetbrains.annotations.NotNull;
 
 public class ChatMessageResponseBody extends JPanel {
 
   private static final Logger LOG = Logger.getInstance(ChatMessageResponseBody.class);
+  private static final int TEXT_UPDATE_INTERVAL_MS = 16;
+  private static final String OPEN_BLOCK_ID = "open-markdown-block";
 
   private final Project project;
   private final Disposable parentDisposable;
@@ -84,10 +91,15 @@ public class ChatMessageResponseBody extends JPanel {
   private final JPanel loadingLabel = createLoadingPanel();
   private final JPanel contentPanel =
       new JPanel(new VerticalFlowLayout(VerticalFlowLayout.TOP, 0, 4, true, false));
+  private final IncrementalMarkdownRenderer markdownRenderer = new IncrementalMarkdownRenderer();
+  private final Timer textUpdateTimer =
+      new Timer(TEXT_UPDATE_INTERVAL_MS, e -> flushPendingText());
 
   private ResponseEditorPanel currentlyProcessedEditorPanel;
   private JEditorPane currentlyProcessedTextPane;
   private JPanel webpageListPanel;
+  private String pendingMarkdown;
+  private String streamedMarkdown;
 
   private JPanel createLoadingPanel() {
     return new BorderLayoutPanel()
@@ -113,6 +125,7 @@ public class ChatMessageResponseBody extends JPanel {
     this.parentDisposable = parentDisposable;
     this.streamOutputParser = new SseMessageParser();
     this.readOnly = readOnly;
+    textUpdateTimer.setRepeats(false);
 
     setLayout(new BorderLayout());
     setOpaque(false);
@@ -152,6 +165,14 @@ public class ChatMessageResponseBody extends JPanel {
     loadingLabel.setVisible(false);
   }
 
+  /**
+   * Replaces the incrementally rendered text with the conversion of the whole text once the
+   * response has been streamed.
+   */
+  public void completeStreaming() {
+    completeText();
+  }
+
   public void updateMessage(String partialMessage) {
     if (partialMessage.isEmpty()) {
       return;
@@ -221,6 +242,10 @@ public class ChatMessageResponseBody extends JPanel {
   }
 
   public void clear() {
+    textUpdateTimer.stop();
+    pendingMarkdown = null;
+    streamedMarkdown = null;
+    markdownRenderer.reset();
     contentPanel.removeAll();
     streamOutputParser.clear();
     loadingLabel.setVisible(false);
@@ -251,6 +276,10 @@ public class ChatMessageResponseBody extends JPanel {
         contentPanel.add(currentlyProcessedTextPane);
       }
 
+      // The error replaces the streamed text, so it must not be rendered over it later
+      textUpdateTimer.stop();
+      pendingMarkdown = null;
+      streamedMarkdown = null;
       currentlyProcessedTextPane.setVisible(true);
       currentlyProcessedTextPane.setText(formattedMessage);
 
@@ -353,15 +382,70 @@ public class ChatMessageResponseBody extends JPanel {
       return;
     }
 
-    var html = convertMdToHtml(markdownText);
     if (currentlyProcessedTextPane == null) {
       prepareProcessingText(caretVisible);
     }
-    currentlyProcessedTextPane.setText(html);
+    if (!caretVisible) {
+      currentlyProcessedTextPane.setText(convertMdToHtml(markdownText));
+      return;
+    }
+
+    // Streamed text is rendered at most once per frame, however often it arrives
+    pendingMarkdown = markdownText;
+    if (!textUpdateTimer.isRunning()) {
+      textUpdateTimer.start();
+    }
+  }
+
+  private void flushPendingText() {
+    textUpdateTimer.stop();
+    var markdownText = pendingMarkdown;
+    pendingMarkdown = null;
+    if (markdownText == null || currentlyProcessedTextPane == null) {
+      return;
+    }
+    streamedMarkdown = markdownText;
+    applyMarkdownUpdate(currentlyProcessedTextPane, markdownRenderer.render(markdownText));
+  }
+
+  private void applyMarkdownUpdate(
+      JEditorPane textPane, IncrementalMarkdownRenderer.Update update) {
+    // An empty block would collapse, which makes the pane jump while streaming
+    var openHtml = update.getOpenHtml().isEmpty() ? "&#8205;" : update.getOpenHtml();
+    if (!update.getRebuild() && textPane.getDocument() instanceof HTMLDocument document) {
+      var openBlock = document.getElement(OPEN_BLOCK_ID);
+      if (openBlock != null) {
+        try {
+          if (!update.getFinishedHtml().isEmpty()) {
+            document.insertBeforeStart(openBlock, update.getFinishedHtml());
+          }
+          document.setInnerHTML(openBlock, openHtml);
+          return;
+        } catch (BadLocationException | IOException e) {
+          LOG.warn("Unable to update the response incrementally", e);
+        }
+      }
+    }
+
+    textPane.setText(format(
+        "<html><body>%s<div id=\"%s\">%s</div></body></html>",
+        markdownRenderer.getRenderedHtml(),
+        OPEN_BLOCK_ID,
+        openHtml));
+  }
+
+  private void completeText() {
+    flushPendingText();
+    if (streamedMarkdown != null && currentlyProcessedTextPane != null) {
+      currentlyProcessedTextPane.setText(convertMdToHtml(streamedMarkdown));
+    }
+    streamedMarkdown = null;
+    markdownRenderer.reset();
   }
 
   @Synchronized
   private void prepareProcessingText(boolean caretVisible) {
+    completeText();
     currentlyProcessedEditorPanel = null;
     currentlyProcessedTextPane = createTextPane("", caretVisible);
     contentPanel.add(currentlyProcessedTextPane);
@@ -371,6 +455,7 @@ public class ChatMessageResponseBody extends JPanel {
 
   @Synchronized
   private void prepareProcessingCode(Segment item) {
+    completeText();
     hideCaret();
     currentlyProcessedTextPane = null;
     currentlyProcessedEditorPanel =
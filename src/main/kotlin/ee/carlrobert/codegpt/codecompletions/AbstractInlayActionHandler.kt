@@ -7,6 +7,7 @@ import com.intellij.codeInsight.inline.completion.InlineCompletionRequest
 import com.intellij.codeInsight.inline.completion.session.InlineCompletionSession
 import com.intellij.openapi.actionSystem.DataContext
 import com.intellij.openapi.application.runWriteAction
+import com.intellij.openapi.components.service
 import com.intellij.openapi.editor.Caret
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.editor.actionSystem.EditorWriteActionHandler
@@ -25,6 +26,10 @@ abstract class AbstractInlayActionHandler : EditorWriteActionHandler() {
             InlineCompletion.getHandlerOrNull(editor)?.apply {
                 val startOffset = editor.caretModel.offset
                 val textToInsert = session.getTextToInsert()
+                val suggestion = session.context.textToInsert()
+                val text = editor.document.immutableCharSequence
+                val prefix = text.subSequence(0, startOffset).toString()
+                val suffix = text.subSequence(startOffset, text.length).toString()
 
                 withIgnoringDocumentChanges {
                     val suggestionTextRange =
@@ -36,6 +41,10 @@ abstract class AbstractInlayActionHandler : EditorWriteActionHandler() {
                         editor.caretModel.moveToOffset(startOffset + textToInsert.length)
                     }
                 }
+
+                // Prefetch the completion for the state after the whole suggestion is accepted
+                editor.project?.service<SpeculativeCompletionService>()
+                    ?.speculate(editor, prefix, suffix, suggestion)
             }
         }
     }
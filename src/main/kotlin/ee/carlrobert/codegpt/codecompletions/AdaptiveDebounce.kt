@@ -0,0 +1,121 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.components.Service
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.abs
+
+/**
+ * Chooses the inline completion debounce from how the user types and how fast the provider answers.
+ *
+ * The delay starts from the learned gap between keystrokes within a typing burst, so a request is
+ * sent soon after the user pauses rather than after a fixed 300 ms. It grows with the provider's
+ * median latency, because a request that gets cancelled by the next keystroke wastes more on a slow
+ * backend, and with the recent share of wasted requests. Both the latency median and the waste share
+ * only look at recent requests, so the delay follows a provider that speeds up or slows down.
+ */
+@Service
+class AdaptiveDebounce {
+
+    companion object {
+        const val DEFAULT_DELAY_MS = 300L
+        const val MIN_DELAY_MS = 100L
+        const val MAX_DELAY_MS = 800L
+
+        // Longer gaps are pauses between bursts rather than typing speed
+        const val MAX_KEYSTROKE_INTERVAL_MS = 1_000L
+        const val MIN_KEYSTROKE_SAMPLES = 8
+
+        // Median latency at which the delay is doubled
+        private const val LATENCY_SCALE_MS = 2_000.0
+        private const val KEYSTROKE_ALPHA = 0.2
+        private const val WASTE_ALPHA = 0.1
+        // Latency samples per provider that the median is taken over
+        const val LATENCY_WINDOW = 32
+    }
+
+    private val providerLatencies = ConcurrentHashMap<ServiceType, ProviderLatency>()
+
+    // The fields below are guarded by this
+    private var lastKeystrokeAt = -1L
+    private var keystrokeSamples = 0
+    private var intervalMean = 0.0
+    private var intervalDeviation = 0.0
+    private var wastedRatio = 0.0
+
+    @Synchronized
+    fun onKeystroke(nowMillis: Long = System.currentTimeMillis()) {
+        val previous = lastKeystrokeAt
+        lastKeystrokeAt = nowMillis
+        val interval = nowMillis - previous
+        if (previous < 0 || interval < 0 || interval > MAX_KEYSTROKE_INTERVAL_MS) {
+            return
+        }
+        if (keystrokeSamples == 0) {
+            intervalMean = interval.toDouble()
+        } else {
+            intervalDeviation += KEYSTROKE_ALPHA * (abs(interval - intervalMean) - intervalDeviation)
+            intervalMean += KEYSTROKE_ALPHA * (interval - intervalMean)
+        }
+        keystrokeSamples++
+    }
+
+    /**
+     * Records the end-to-end latency of a completion request that was not cancelled.
+     */
+    fun recordLatency(serviceType: ServiceType, nanos: Long) {
+        providerLatencies.computeIfAbsent(serviceType) { ProviderLatency() }.record(nanos)
+    }
+
+    /**
+     * Records whether a sent request was wasted, i.e. cancelled before its result could be shown.
+     */
+    @Synchronized
+    fun recordOutcome(wasted: Boolean) {
+        wastedRatio += WASTE_ALPHA * ((if (wasted) 1.0 else 0.0) - wastedRatio)
+    }
+
+    fun getMedianLatencyMillis(serviceType: ServiceType): Double {
+        return providerLatencies[serviceType]?.medianMillis ?: 0.0
+    }
+
+    @Synchronized
+    fun getDelayMillis(serviceType: ServiceType): Long {
+        if (keystrokeSamples < MIN_KEYSTROKE_SAMPLES) {
+            return DEFAULT_DELAY_MS
+        }
+        // Roughly the 90th percentile of gaps within a burst
+        val burstGap = intervalMean + 2 * intervalDeviation
+        val latencyFactor = 1 + getMedianLatencyMillis(serviceType) / LATENCY_SCALE_MS
+        val delay = burstGap * latencyFactor * (1 + wastedRatio)
+        return delay.toLong().coerceIn(MIN_DELAY_MS, MAX_DELAY_MS)
+    }
+
+    private class ProviderLatency {
+        // Ring of the most recent samples, guarded by this
+        private val samples = LongArray(LATENCY_WINDOW)
+        private var count = 0
+        private var next = 0
+
+        @Volatile
+        var medianMillis = 0.0
+            private set
+
+        @Synchronized
+        fun record(nanos: Long) {
+            samples[next] = nanos
+            next = (next + 1) % samples.size
+            if (count < samples.size) {
+                count++
+            }
+            val sorted = samples.copyOf(count).apply { sort() }
+            val middle = count / 2
+            val median = if (count % 2 == 1) {
+                sorted[middle].toDouble()
+            } else {
+                (sorted[middle - 1] + sorted[middle]) / 2.0
+            }
+            medianMillis = median / 1_000_000.0
+        }
+    }
+}
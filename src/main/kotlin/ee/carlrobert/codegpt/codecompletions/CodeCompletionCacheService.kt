@@ -5,73 +5,190 @@ import com.google.common.cache.CacheBuilder
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.editor.Editor
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import kotlin.math.max
+import kotlin.math.min
 
+/**
+ * Caches completions by a rolling hash of a bounded window around the caret, so a lookup costs
+ * O(window) no matter how large the file is.
+ *
+ * Entries also form a forward-typing index: when the user types characters that match the start of
+ * a cached completion, the lookup slides the prefix window back over the typed characters and serves
+ * the rest of the completion without another request.
+ */
 @Service(Service.Level.PROJECT)
-class CodeCompletionCacheService() {
-    private val cacheCounter = ConcurrentHashMap<String, Int>()
-    private val cache: Cache<String, String> = CacheBuilder.newBuilder()
-        .maximumSize(10)
-        .recordStats()
-        .build()
+class CodeCompletionCacheService {
 
-    fun get(key: String): String? {
-        val value = cache.getIfPresent(key)
-        if (value != null) {
-            cache.invalidate(key)
-            cache.put(key, value)
+    companion object {
+        const val PREFIX_WINDOW = 512
+        const val SUFFIX_WINDOW = 128
+        const val MAX_TYPED_AHEAD = 256
+        const val MAX_ENTRIES = 512L
+        const val TTL_MINUTES = 10L
+
+        // The same suggestion is served at most this many times for an unchanged caret position
+        private const val MAX_HITS = 3
+        private const val BASE = 1_000_003L
+        private val POWERS = LongArray(PREFIX_WINDOW).also {
+            it[0] = 1
+            for (i in 1 until it.size) {
+                it[i] = it[i - 1] * BASE
+            }
         }
-        return value
     }
 
+    private val cache: Cache<Long, Entry> = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .expireAfterAccess(TTL_MINUTES, TimeUnit.MINUTES)
+        .recordStats()
+        .build()
+
     fun clear() {
         cache.invalidateAll()
     }
 
-    fun delete(key: String) {
-        cache.invalidate(key)
+    fun size(): Long = cache.size()
+
+    fun getCache(editor: Editor): String? {
+        return runReadAction {
+            getCache(editor.document.immutableCharSequence, editor.caretModel.offset)
+        }
+    }
+
+    fun getCache(prefix: String, suffix: String): String? {
+        return getCache(prefix, prefix.length, suffix, 0)
     }
 
-    fun set(key: String, value: String) {
-        cache.put(key, value)
+    fun getCache(text: CharSequence, offset: Int): String? {
+        return getCache(text, offset, text, offset)
+    }
+
+    fun setCache(prefix: String, suffix: String, completion: String) {
+        setCache(prefix, prefix.length, suffix, 0, completion)
     }
 
-    fun normalize(src: String): String {
-        return src.replace("\n", "").replace("\\s+".toRegex(), "").replace("\\s".toRegex(), "")
+    fun setCache(text: CharSequence, offset: Int, completion: String) {
+        setCache(text, offset, text, offset, completion)
     }
 
-    fun getKey(prefix: String, suffix: String): String {
-        return if (suffix.isNotEmpty()) {
-            normalize("$prefix #### $suffix")
-        } else {
-            normalize(prefix)
+    private fun setCache(
+        before: CharSequence,
+        prefixEnd: Int,
+        after: CharSequence,
+        suffixStart: Int,
+        completion: String
+    ) {
+        if (completion.isEmpty()) {
+            return
         }
+        val window = PrefixWindow(before, prefixEnd)
+        cache.put(key(window.hash, window.length, suffixHash(after, suffixStart)), Entry(completion))
     }
 
-    fun getCache(editor: Editor): String? {
-        val caretOffset = runReadAction { editor.caretModel.offset }
-        val prefix = editor.document.text.substring(0, caretOffset)
-        val suffix = editor.document.text.substring(caretOffset)
-        return getCache(prefix, suffix)
+    private fun getCache(
+        before: CharSequence,
+        prefixEnd: Int,
+        after: CharSequence,
+        suffixStart: Int
+    ): String? {
+        val suffixHash = suffixHash(after, suffixStart)
+        val window = PrefixWindow(before, prefixEnd)
+        val maxTyped = min(MAX_TYPED_AHEAD, prefixEnd)
+        var typed = 0
+        while (true) {
+            val cacheKey = key(window.hash, window.length, suffixHash)
+            val entry = cache.getIfPresent(cacheKey)
+            if (entry != null && entry.matchesTyped(before, prefixEnd, typed)) {
+                val remaining = entry.serve(typed)
+                if (remaining == null) {
+                    cache.invalidate(cacheKey)
+                }
+                return remaining
+            }
+            if (typed == maxTyped || window.length == 0) {
+                return null
+            }
+            window.slideBack()
+            typed++
+        }
     }
 
-    fun getCache(prefix: String, suffix: String): String? {
-        val key = getKey(prefix, suffix)
-        if (cacheCounter.containsKey(key)) {
-            cacheCounter[key] = cacheCounter[key]!! + 1
-        } else {
-            cacheCounter[key] = 1
+    private fun suffixHash(text: CharSequence, start: Int): Long {
+        val end = min(text.length, start + SUFFIX_WINDOW)
+        var hash = 0L
+        for (i in start until end) {
+            hash = hash * BASE + text[i].code
         }
-        if (cacheCounter[key]!! > 3) {
-            cache.invalidate(key)
-            cacheCounter.remove(key)
+        return hash * 31 + (end - start)
+    }
+
+    private fun key(prefixHash: Long, prefixLength: Int, suffixHash: Long): Long {
+        return (prefixHash * 31 + prefixLength) * BASE xor suffixHash
+    }
+
+    /**
+     * Polynomial hash of `text[start, end)` where the first character has weight 1,
+     * so the window can slide one character back in O(1).
+     */
+    private class PrefixWindow(private val text: CharSequence, private var end: Int) {
+        private var start = max(0, end - PREFIX_WINDOW)
+        var hash = 0L
+            private set
+        val length: Int
+            get() = end - start
+
+        init {
+            for (i in start until end) {
+                hash += text[i].code * POWERS[i - start]
+            }
         }
 
-        return get(key)
+        fun slideBack() {
+            hash -= text[end - 1].code * POWERS[length - 1]
+            end--
+            if (start > 0) {
+                start--
+                hash = hash * BASE + text[start].code
+            }
+        }
     }
 
-    fun setCache(prefix: String, suffix: String, completion: String) {
-        val key = getKey(prefix, suffix)
-        set(key, completion)
+    private class Entry(private val completion: String) {
+        private var servedAt = -1
+        private var hits = 0
+
+        /**
+         * Whether the `typed` characters before the caret are the start of this completion.
+         */
+        fun matchesTyped(text: CharSequence, caret: Int, typed: Int): Boolean {
+            if (typed >= completion.length) {
+                return typed == completion.length
+            }
+            for (i in 0 until typed) {
+                if (text[caret - typed + i] != completion[i]) {
+                    return false
+                }
+            }
+            return true
+        }
+
+        /**
+         * Returns the part of the completion that is not typed yet, or `null` when the entry is used up.
+         */
+        @Synchronized
+        fun serve(typed: Int): String? {
+            if (typed >= completion.length) {
+                return null
+            }
+            if (servedAt != typed) {
+                servedAt = typed
+                hits = 0
+            }
+            if (++hits > MAX_HITS) {
+                return null
+            }
+            return completion.substring(typed)
+        }
     }
-}
\ No newline at end of file
+}
@@ -10,26 +10,29 @@ import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.util.TextRange
 import ee.carlrobert.codegpt.CodeGPTKeys
+import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.codecompletions.edit.GrpcClientService
 import ee.carlrobert.codegpt.metrics.SafeMetricsCollector
+import ee.carlrobert.codegpt.metrics.perf.HotPathMetrics
 import ee.carlrobert.codegpt.settings.GeneralSettings
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.service.codegpt.CodeGPTServiceSettings
-import ee.carlrobert.codegpt.treesitter.CodeCompletionParserFactory
 import ee.carlrobert.codegpt.ui.OverlayUtil.showNotification
 import ee.carlrobert.llm.client.openai.completion.ErrorDetails
 import ee.carlrobert.llm.completion.CompletionEventListener
 import ee.carlrobert.service.PartialCodeCompletionResponse
 import kotlinx.coroutines.channels.ProducerScope
 import okhttp3.sse.EventSource
+import java.util.concurrent.CancellationException
 import java.util.concurrent.atomic.AtomicBoolean
 
 class CodeCompletionEventListener(
     private val editor: Editor,
-    private val channel: ProducerScope<InlineCompletionElement>
+    private val channel: ProducerScope<InlineCompletionElement>,
+    private val requestStartNanos: Long = System.nanoTime()
 ) : CompletionEventListener<String> {
 
     companion object {
@@ -41,11 +44,24 @@ class CodeCompletionEventListener(
     private var firstLine: String? = null
     private val firstLineSent = AtomicBoolean(false)
     private val cursorOffset = runReadAction { editor.caretModel.offset }
+    // Read before the text, so that a change in between makes the cached syntax tree unusable
+    private val modificationStamp = editor.document.modificationStamp
     private val prefix = editor.document.getText(TextRange(0, cursorOffset))
     private val suffix =
         editor.document.getText(TextRange(cursorOffset, editor.document.textLength))
     private val cache = editor.project?.service<CodeCompletionCacheService>()
     private val startTime = System.currentTimeMillis()
+    private val startNanos = System.nanoTime()
+    private val serviceType =
+        service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION)
+
+    /**
+     * Marks the request as cancelled by its caller. Must be called before the underlying call is
+     * cancelled, so that the failure reported for it is treated as a cancellation.
+     */
+    fun markCancelled() {
+        cancelled.set(true)
+    }
 
     override fun onOpen() {
         setLoading(true)
@@ -106,6 +122,7 @@ class CodeCompletionEventListener(
             }
             firstLineSent.set(true)
             firstLine = newLine
+            HotPathMetrics.COMPLETION_FIRST_LINE.recordSince(startNanos)
         }
     }
 
@@ -131,6 +148,7 @@ class CodeCompletionEventListener(
                 val parsedContent = parseOutput(firstLine + remainingContent)
                 if (parsedContent.isNotEmpty()) {
                     cache?.setCache(prefix, suffix, parsedContent)
+                    speculate(parsedContent)
 
                     CodeGPTKeys.REMAINING_CODE_COMPLETION.set(
                         editor,
@@ -152,6 +170,7 @@ class CodeCompletionEventListener(
                 val parsedContent = parseOutput(formattedLine)
                 if (parsedContent.isNotEmpty()) {
                     cache?.setCache(prefix, suffix, parsedContent)
+                    speculate(parsedContent)
                     runInEdt {
                         channel.trySend(InlineCompletionGrayTextElement(parsedContent))
                     }
@@ -167,12 +186,19 @@ class CodeCompletionEventListener(
 
     override fun onCancelled(messageBuilder: StringBuilder) {
         cancelled.set(true)
+        recordWasted(messageBuilder)
         // 记录取消的代码补全
         recordCompletionMetrics(messageBuilder.toString(), false)
         handleCompleted()
     }
 
     override fun onError(error: ErrorDetails, ex: Throwable) {
+        val wasCancelled = cancelled.get() || ex is CancellationException
+        if (wasCancelled) {
+            recordWasted(messageBuilder)
+        } else {
+            HotPathMetrics.COMPLETION_ERRORS.increment()
+        }
         val isCodeGPTService =
             service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION) == ServiceType.PROXYAI
         if (isCodeGPTService && "RATE_LIMIT_EXCEEDED" == error.code) {
@@ -181,7 +207,7 @@ class CodeCompletionEventListener(
                 .codeCompletionsEnabled = false
         }
 
-        if (ex.message == null || (ex.message != null && ex.message != "Canceled")) {
+        if (!wasCancelled) {
             showNotification(error.message, NotificationType.ERROR)
             logger.error(error.message, ex)
         }
@@ -191,6 +217,14 @@ class CodeCompletionEventListener(
 
     private fun handleCompleted() {
         setLoading(false)
+        // Cancelled requests are counted by recordWasted and must not pull the latency down
+        if (!cancelled.get()) {
+            HotPathMetrics.COMPLETION_SUGGESTION.recordSince(requestStartNanos)
+            service<AdaptiveDebounce>().apply {
+                recordLatency(serviceType, System.nanoTime() - requestStartNanos)
+                recordOutcome(false)
+            }
+        }
 
         if (messageBuilder.isEmpty()) {
             editor.project?.service<GrpcClientService>()?.getNextEdit(
@@ -200,6 +234,19 @@ class CodeCompletionEventListener(
         }
     }
 
+    private fun recordWasted(output: CharSequence) {
+        HotPathMetrics.COMPLETION_CANCELLED.increment()
+        HotPathMetrics.COMPLETION_WASTED_TOKENS.add(
+            service<EncodingManager>().countTokens(output.toString()).toLong()
+        )
+        service<AdaptiveDebounce>().recordOutcome(true)
+    }
+
+    private fun speculate(suggestion: String) {
+        editor.project?.service<SpeculativeCompletionService>()
+            ?.speculate(editor, prefix, suffix, suggestion)
+    }
+
     private fun setLoading(loading: Boolean) {
         editor.project?.let {
             CompletionProgressNotifier.update(it, loading)
@@ -211,10 +258,15 @@ class CodeCompletionEventListener(
             return input
         }
 
-        return CodeCompletionParserFactory
-            .getParserForFileExtension(editor.virtualFile.extension)
-            .parse(prefix, suffix, input)
-            .trimEnd()
+        return service<CodeCompletionParsingService>()
+            .parse(
+                editor.virtualFile?.extension,
+                prefix,
+                suffix,
+                input,
+                editor.document,
+                modificationStamp
+            )
     }
 
     /**
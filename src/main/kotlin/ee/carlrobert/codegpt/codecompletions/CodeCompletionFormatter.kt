@@ -2,12 +2,31 @@ package ee.carlrobert.codegpt.codecompletions
 
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Document
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.util.TextRange
 import org.apache.commons.text.similarity.LevenshteinDistance
 import kotlin.math.min
 
-class CodeCompletionFormatter(private val editor: Editor) {
+/**
+ * Fits a raw completion to the text around the caret: balances brackets and drops suffixes and
+ * quotes that are already present after the caret.
+ *
+ * The primary constructor takes the [document], the caret offset and the file type name directly,
+ * so the formatter can be used without an [Editor], e.g. in the JMH benchmarks. The [Editor]
+ * constructor reads the same values from the editor.
+ */
+class CodeCompletionFormatter(
+    private val document: Document,
+    private val cursorPosition: Int,
+    private val languageId: String?
+) {
+
+    constructor(editor: Editor) : this(
+        editor.document,
+        runReadAction { editor.caretModel.offset },
+        editor.virtualFile?.fileType?.name
+    )
 
     companion object {
         private val logger = thisLogger()
@@ -22,9 +41,6 @@ class CodeCompletionFormatter(private val editor: Editor) {
         )
     }
 
-    private val languageId = editor.virtualFile?.fileType?.name
-    private val cursorPosition = runReadAction { editor.caretModel.offset }
-    private val document = editor.document
     private val lineNumber = document.getLineNumber(cursorPosition)
     private val lineStartOffset = document.getLineStartOffset(lineNumber)
     private val lineEndOffset = document.getLineEndOffset(lineNumber)
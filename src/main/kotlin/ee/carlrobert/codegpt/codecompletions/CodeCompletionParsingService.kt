@@ -0,0 +1,55 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.editor.Document
+import ee.carlrobert.codegpt.metrics.perf.HotPathMetrics
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParserFactory
+import ee.carlrobert.codegpt.treesitter.SyntaxTreeCache
+
+/**
+ * Post-processes completions with the pooled tree-sitter parsers of [CodeCompletionParserFactory]
+ * and drops the pools, along with their native parsers, when the plugin is unloaded.
+ */
+@Service
+class CodeCompletionParsingService : Disposable {
+
+    /**
+     * Returns the longest part of [completion] that parses between [prefix] and [suffix], or
+     * [completion] itself if the file type is not supported.
+     *
+     * If [document] has not changed since [prefix] and [suffix] were read from it at
+     * [modificationStamp], parsing starts from its cached syntax tree in [SyntaxTreeCache] instead
+     * of from scratch.
+     */
+    fun parse(
+        extension: String?,
+        prefix: String,
+        suffix: String,
+        completion: String,
+        document: Document? = null,
+        modificationStamp: Long = -1
+    ): String {
+        if (!CodeCompletionParserFactory.isSupported(extension)) {
+            return completion
+        }
+
+        val startNanos = System.nanoTime()
+        try {
+            val parsed = if (document != null) {
+                service<SyntaxTreeCache>()
+                    .parse(document, modificationStamp, extension, prefix, suffix, completion)
+            } else {
+                CodeCompletionParserFactory.parse(extension, prefix, suffix, completion)
+            }
+            return parsed.trimEnd()
+        } finally {
+            HotPathMetrics.TREE_SITTER_PARSE.recordSince(startNanos)
+        }
+    }
+
+    override fun dispose() {
+        CodeCompletionParserFactory.dispose()
+    }
+}
@@ -16,7 +16,6 @@ import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.ServiceType
-import ee.carlrobert.codegpt.treesitter.CodeCompletionParserFactory
 import kotlin.math.min
 
 object CompletionUtil {
@@ -29,6 +28,7 @@ object CompletionUtil {
             val project = editor.project ?: return this
             val document = request.document
             val caretOffset = editor.caretModel.offset
+            val modificationStamp = document.modificationStamp
             val textBeforeCompletion = document.text.substring(0, caretOffset)
             val textAfterCompletion = document.text.substring(caretOffset)
 
@@ -63,12 +63,14 @@ object CompletionUtil {
                 service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION) != ServiceType.PROXYAI
                         && service<ConfigurationSettings>().state.codeCompletionSettings.treeSitterProcessingEnabled
             return if (postProcessingEnabled) {
-                val parser =
-                    CodeCompletionParserFactory.getParserForFileExtension(originalFile.extension)
-                        ?: return formattedCompletion
-                parser
-                    .parse(textBeforeCompletion, textAfterCompletion, formattedCompletion)
-                    .trimEnd()
+                service<CodeCompletionParsingService>().parse(
+                    originalFile.extension,
+                    textBeforeCompletion,
+                    textAfterCompletion,
+                    formattedCompletion,
+                    document,
+                    modificationStamp
+                )
             } else {
                 formattedCompletion
             }
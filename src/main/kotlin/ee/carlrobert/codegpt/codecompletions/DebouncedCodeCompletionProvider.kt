@@ -9,6 +9,7 @@ import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.CodeGPTKeys.REMAINING_CODE_COMPLETION
 import ee.carlrobert.codegpt.codecompletions.edit.GrpcClientService
 import ee.carlrobert.codegpt.metrics.SafeMetricsCollector
+import ee.carlrobert.codegpt.metrics.perf.HotPathMetrics
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.ServiceType
@@ -21,6 +22,7 @@ import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.channelFlow
 import kotlinx.coroutines.flow.emptyFlow
 import okhttp3.sse.EventSource
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicReference
 import kotlin.time.Duration
 import kotlin.time.DurationUnit
@@ -52,33 +54,41 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
             editor.project ?: return InlineCompletionSingleSuggestion.build(elements = emptyFlow())
 
         if (LookupManager.getActiveLookup(request.editor) != null) {
+            HotPathMetrics.COMPLETION_REQUESTS.increment("lookup")
             return InlineCompletionSingleSuggestion.build(elements = emptyFlow())
         }
 
         return InlineCompletionSingleSuggestion.build(elements = channelFlow {
+            val startNanos = System.nanoTime()
+            var networkListener: CodeCompletionEventListener? = null
             try {
                 val remainingCodeCompletion = REMAINING_CODE_COMPLETION.get(editor)
                 if (remainingCodeCompletion != null && request.event is InlineCompletionEvent.DirectCall) {
                     REMAINING_CODE_COMPLETION.set(editor, null)
+                    HotPathMetrics.COMPLETION_REQUESTS.increment("remaining")
                     trySend(InlineCompletionGrayTextElement(remainingCodeCompletion.partialCompletion))
+                    HotPathMetrics.COMPLETION_SUGGESTION.recordSince(startNanos)
                     return@channelFlow
                 }
 
                 val cacheValue = tryFindCache(request)
                 if (cacheValue != null) {
                     REMAINING_CODE_COMPLETION.set(editor, null)
+                    HotPathMetrics.COMPLETION_REQUESTS.increment("cache")
                     trySend(InlineCompletionGrayTextElement(cacheValue))
+                    HotPathMetrics.COMPLETION_SUGGESTION.recordSince(startNanos)
                     return@channelFlow
                 }
 
                 CompletionProgressNotifier.update(project, true)
 
-                var eventListener = CodeCompletionEventListener(request.editor, this)
+                var eventListener = CodeCompletionEventListener(request.editor, this, startNanos)
 
                 if (service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION) == ServiceType.PROXYAI) {
                     try {
                         project.service<GrpcClientService>()
                             .getCodeCompletionAsync(eventListener, request, this)
+                        HotPathMetrics.COMPLETION_REQUESTS.increment("grpc")
                         
                         // 记录代码补全请求指标
                         project?.let { SafeMetricsCollector.recordCodeCompletionRequest(it) }
@@ -90,15 +100,24 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
                     }
                 }
 
+                // The editor has moved away from any state speculated on earlier
+                project.service<SpeculativeCompletionService>().cancel(editor)
                 val infillRequest = InfillRequestUtil.buildInfillRequest(request)
+                networkListener = CodeCompletionEventListener(request.editor, this, startNanos)
                 val call = project.service<CodeCompletionService>().getCodeCompletionAsync(
                     infillRequest,
-                    CodeCompletionEventListener(request.editor, this)
+                    networkListener
                 )
+                HotPathMetrics.COMPLETION_REQUESTS.increment("network")
 
                 currentCallRef.set(call)
             } finally {
-                awaitClose { currentCallRef.getAndSet(null)?.cancel() }
+                awaitClose {
+                    // Mark before cancelling, so that the failure the cancellation causes is not
+                    // counted as an error
+                    networkListener?.markCancelled()
+                    currentCallRef.getAndSet(null)?.cancel()
+                }
             }
         })
     }
@@ -110,7 +129,15 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
     }
 
     override suspend fun getDebounceDelay(request: InlineCompletionRequest): Duration {
-        return 300.toDuration(DurationUnit.MILLISECONDS)
+        val debounce = service<AdaptiveDebounce>()
+        if (request.event is InlineCompletionEvent.DocumentChange) {
+            debounce.onKeystroke()
+        }
+        val delayMillis = debounce.getDelayMillis(
+            service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION)
+        )
+        HotPathMetrics.COMPLETION_DEBOUNCE.recordNanos(TimeUnit.MILLISECONDS.toNanos(delayMillis))
+        return delayMillis.toDuration(DurationUnit.MILLISECONDS)
     }
 
     override fun isEnabled(event: InlineCompletionEvent): Boolean {
@@ -0,0 +1,130 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.editor.EditorFactory
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vcs.ProjectLevelVcsManager
+import com.intellij.openapi.vcs.changes.ChangeListListener
+import com.intellij.util.concurrency.AppExecutorUtil
+import ee.carlrobert.codegpt.util.GitUtil
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Keeps the latest git diff context for completion requests.
+ *
+ * [GitUtil.getCurrentChanges] builds patches for every local change, so its cost grows with the number
+ * of uncommitted files. Requests are served the last snapshot immediately; change-list events and
+ * edits of this project's files under version control only mark it stale, and a stale snapshot is
+ * rebuilt in the background at most once per [REBUILD_INTERVAL_MS].
+ */
+@Service(Service.Level.PROJECT)
+class GitDiffContextService internal constructor(
+    private val project: Project,
+    private val buildChanges: (Project) -> String?,
+    private val rebuildIntervalMs: Long,
+) : Disposable {
+
+    constructor(project: Project) : this(project, GitUtil::getCurrentChanges, REBUILD_INTERVAL_MS)
+
+    companion object {
+        private val logger = thisLogger()
+
+        const val REBUILD_INTERVAL_MS = 2_000L
+    }
+
+    @Volatile
+    private var snapshot: String? = null
+
+    @Volatile
+    private var stale = true
+
+    @Volatile
+    private var lastRebuiltAt = 0L
+
+    private val rebuildScheduled = AtomicBoolean(false)
+    private var rebuildTask: ScheduledFuture<*>? = null
+
+    init {
+        project.messageBus.connect(this)
+            .subscribe(ChangeListListener.TOPIC, object : ChangeListListener {
+                override fun changeListUpdateDone() {
+                    invalidate()
+                }
+            })
+        EditorFactory.getInstance().eventMulticaster.addDocumentListener(object : DocumentListener {
+            override fun documentChanged(event: DocumentEvent) {
+                // Every keystroke in every open project ends up here, so the cheap check goes first
+                if (!stale && isUnderVcs(event.document)) {
+                    stale = true
+                }
+            }
+        }, this)
+    }
+
+    /**
+     * Returns the last diff snapshot without blocking and schedules a rebuild if it is stale.
+     * The first call after startup returns `null` while the initial snapshot is being built.
+     */
+    fun getCurrentChanges(): String? {
+        if (stale) {
+            scheduleRebuild()
+        }
+        return snapshot
+    }
+
+    fun invalidate() {
+        stale = true
+    }
+
+    private fun isUnderVcs(document: Document): Boolean {
+        if (project.isDisposed) {
+            return false
+        }
+        val file = FileDocumentManager.getInstance().getFile(document) ?: return false
+        return ProjectLevelVcsManager.getInstance(project).getVcsFor(file) != null
+    }
+
+    private fun scheduleRebuild() {
+        if (project.isDisposed || !rebuildScheduled.compareAndSet(false, true)) {
+            return
+        }
+        val delay = (lastRebuiltAt + rebuildIntervalMs - System.currentTimeMillis()).coerceAtLeast(0)
+        synchronized(this) {
+            rebuildTask = AppExecutorUtil.getAppScheduledExecutorService()
+                .schedule(::rebuild, delay, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun rebuild() {
+        try {
+            // Changes made while the diff is being built mark the snapshot stale again
+            stale = false
+            if (!project.isDisposed) {
+                snapshot = buildChanges(project)
+            }
+        } catch (e: ProcessCanceledException) {
+            stale = true
+        } catch (e: Exception) {
+            logger.warn("Failed to rebuild git diff context", e)
+        } finally {
+            lastRebuiltAt = System.currentTimeMillis()
+            rebuildScheduled.set(false)
+        }
+    }
+
+    override fun dispose() {
+        synchronized(this) {
+            rebuildTask?.cancel(false)
+            rebuildTask = null
+        }
+    }
+}
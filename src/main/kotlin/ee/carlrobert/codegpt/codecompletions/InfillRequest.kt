@@ -2,7 +2,6 @@ package ee.carlrobert.codegpt.codecompletions
 
 import com.intellij.openapi.components.service
 import com.intellij.openapi.editor.Document
-import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiElement
 import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.codecompletions.psi.filePath
@@ -50,12 +49,12 @@ class InfillRequest private constructor(
             document: Document,
             caretOffset: Int,
         ) {
-            prefix =
-                document.getText(TextRange(0, caretOffset))
-                    .truncateText(MAX_PROMPT_TOKENS, false)
-            suffix =
-                document.getText(TextRange(caretOffset, document.textLength))
-                    .truncateText(MAX_PROMPT_TOKENS)
+            val text = document.immutableCharSequence
+            val encodingManager = service<EncodingManager>()
+            prefix = encodingManager.truncateText(text, 0, caretOffset, MAX_PROMPT_TOKENS, false)
+            suffix = encodingManager.truncateText(
+                text, caretOffset, text.length, MAX_PROMPT_TOKENS, true
+            )
             this.caretOffset = caretOffset
             this.stopTokens = getStopTokens()
         }
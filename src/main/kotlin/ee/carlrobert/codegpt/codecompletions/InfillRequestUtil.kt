@@ -7,14 +7,23 @@ import com.intellij.refactoring.suggested.startOffset
 import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.codecompletions.psi.CompletionContextService
 import ee.carlrobert.codegpt.codecompletions.psi.readText
+import ee.carlrobert.codegpt.metrics.perf.HotPathMetrics
 import ee.carlrobert.codegpt.psistructure.PsiStructureProvider
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
-import ee.carlrobert.codegpt.util.GitUtil
 
 
 object InfillRequestUtil {
 
     suspend fun buildInfillRequest(request: InlineCompletionRequest): InfillRequest {
+        val startNanos = System.nanoTime()
+        try {
+            return createInfillRequest(request)
+        } finally {
+            HotPathMetrics.INFILL_REQUEST_BUILD.recordSince(startNanos)
+        }
+    }
+
+    private suspend fun createInfillRequest(request: InlineCompletionRequest): InfillRequest {
         val caretOffset = readAction { request.editor.caretModel.offset }
         val infillRequestBuilder = InfillRequest.Builder(request.document, caretOffset)
             .fileDetails(
@@ -26,7 +35,7 @@ object InfillRequestUtil {
 
         val project = request.editor.project ?: return infillRequestBuilder.build()
         if (service<ConfigurationSettings>().state.codeCompletionSettings.gitDiffEnabled) {
-            val additionalContext = GitUtil.getCurrentChanges(project)
+            val additionalContext = project.service<GitDiffContextService>().getCurrentChanges()
             if (!additionalContext.isNullOrEmpty()) {
                 infillRequestBuilder.additionalContext(additionalContext)
             }
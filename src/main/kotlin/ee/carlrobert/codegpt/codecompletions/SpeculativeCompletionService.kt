@@ -0,0 +1,238 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.editor.event.CaretEvent
+import com.intellij.openapi.editor.event.CaretListener
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.util.Key
+import ee.carlrobert.codegpt.EncodingManager
+import ee.carlrobert.codegpt.metrics.perf.HotPathMetrics
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.ModelSelectionService
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import ee.carlrobert.llm.client.openai.completion.ErrorDetails
+import ee.carlrobert.llm.completion.CompletionEventListener
+import okhttp3.sse.EventSource
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Requests the completion for the state an editor will be in once its displayed suggestion is
+ * accepted, and stores the result in [CodeCompletionCacheService], so the next suggestion is usually
+ * served from the cache without waiting for the debounce and the round trip.
+ *
+ * Each editor has at most one speculation in flight and a newer one cancels it, as does a regular
+ * request for the editor or a caret move or edit that leaves the way to the speculated state. At
+ * most [MAX_CONCURRENT_SPECULATIONS] run at a time per provider.
+ */
+@Service(Service.Level.PROJECT)
+class SpeculativeCompletionService internal constructor(
+    private val project: Project,
+    private val startRequest: (InfillRequest, CompletionEventListener<String>) -> EventSource,
+) {
+
+    constructor(project: Project) : this(project, { infillRequest, eventListener ->
+        project.service<CodeCompletionService>().getCodeCompletionAsync(infillRequest, eventListener)
+    })
+
+    companion object {
+        private val logger = thisLogger()
+        private val SPECULATION_KEY = Key.create<Speculation>("codegpt.speculativeCompletion")
+
+        const val MAX_CONCURRENT_SPECULATIONS = 2
+    }
+
+    private val inFlight = ConcurrentHashMap<ServiceType, AtomicInteger>()
+
+    /**
+     * Speculates on the state after [suggestion] is inserted between [prefix] and [suffix].
+     */
+    fun speculate(editor: Editor, prefix: String, suffix: String, suggestion: String) {
+        if (suggestion.isBlank()
+            || !service<ConfigurationSettings>().state.codeCompletionSettings.speculativeCompletionsEnabled
+        ) {
+            return
+        }
+        // ProxyAI completions go through gRPC and are not served from the completion cache
+        val serviceType =
+            ModelSelectionService.getInstance().getServiceForFeature(FeatureType.CODE_COMPLETION)
+        if (serviceType == ServiceType.PROXYAI
+            || !project.service<CodeCompletionService>().isCodeCompletionsEnabled(serviceType)
+        ) {
+            return
+        }
+
+        val targetPrefix = prefix + suggestion
+        if (editor.getUserData(SPECULATION_KEY)?.targets(targetPrefix, suffix) == true) {
+            return
+        }
+        cancel(editor)
+
+        val counter = inFlight.computeIfAbsent(serviceType) { AtomicInteger() }
+        if (counter.incrementAndGet() > MAX_CONCURRENT_SPECULATIONS) {
+            counter.decrementAndGet()
+            HotPathMetrics.COMPLETION_SPECULATIONS.increment("throttled")
+            return
+        }
+
+        val speculation = Speculation(editor, prefix.length, targetPrefix, suffix, counter)
+        editor.putUserData(SPECULATION_KEY, speculation)
+        speculation.watchEditor()
+        HotPathMetrics.COMPLETION_SPECULATIONS.increment("started")
+        ApplicationManager.getApplication().executeOnPooledThread {
+            try {
+                speculation.start(buildInfillRequest(targetPrefix, suffix))
+            } catch (e: Exception) {
+                logger.warn("Failed to start speculative completion", e)
+                speculation.finish()
+            }
+        }
+    }
+
+    /**
+     * Cancels the editor's speculation, if any, because the editor moved away from its target state.
+     */
+    fun cancel(editor: Editor) {
+        editor.getUserData(SPECULATION_KEY)?.cancel()
+    }
+
+    private fun buildInfillRequest(prefix: String, suffix: String): InfillRequest {
+        val encodingManager = service<EncodingManager>()
+        val builder = InfillRequest.Builder(
+            encodingManager.truncateText(prefix, 0, prefix.length, MAX_PROMPT_TOKENS, false),
+            encodingManager.truncateText(suffix, 0, suffix.length, MAX_PROMPT_TOKENS, true),
+            prefix.length
+        )
+        if (service<ConfigurationSettings>().state.codeCompletionSettings.gitDiffEnabled) {
+            val additionalContext = project.service<GitDiffContextService>().getCurrentChanges()
+            if (!additionalContext.isNullOrEmpty()) {
+                builder.additionalContext(additionalContext)
+            }
+        }
+        return builder.build()
+    }
+
+    private fun postProcess(editor: Editor, prefix: String, suffix: String, completion: String): String {
+        if (!service<ConfigurationSettings>().state.codeCompletionSettings.treeSitterProcessingEnabled) {
+            return completion
+        }
+
+        return service<CodeCompletionParsingService>()
+            .parse(editor.virtualFile?.extension, prefix, suffix, completion)
+    }
+
+    private inner class Speculation(
+        private val editor: Editor,
+        private val startOffset: Int,
+        private val prefix: String,
+        private val suffix: String,
+        private val counter: AtomicInteger
+    ) : CompletionEventListener<String> {
+
+        private val finished = AtomicBoolean(false)
+        private val editorListeners = Disposer.newDisposable("codegpt.speculativeCompletion")
+
+        @Volatile
+        private var cancelled = false
+
+        @Volatile
+        private var eventSource: EventSource? = null
+
+        fun targets(prefix: String, suffix: String): Boolean {
+            return !cancelled && this.prefix == prefix && this.suffix == suffix
+        }
+
+        /**
+         * Cancels the speculation once the caret or the text leaves the way from the suggestion's
+         * start to the speculated state, e.g. accepting the suggestion word by word keeps it.
+         */
+        fun watchEditor() {
+            editor.caretModel.addCaretListener(object : CaretListener {
+                override fun caretPositionChanged(event: CaretEvent) {
+                    val offset = editor.caretModel.offset
+                    if (offset < startOffset || offset > prefix.length) {
+                        cancel()
+                    }
+                }
+            }, editorListeners)
+            editor.document.addDocumentListener(object : DocumentListener {
+                override fun documentChanged(event: DocumentEvent) {
+                    val towardsTarget = event.oldLength == 0
+                            && event.offset >= startOffset
+                            && prefix.regionMatches(
+                        event.offset, event.newFragment.toString(), 0, event.newLength
+                    )
+                    if (!towardsTarget) {
+                        cancel()
+                    }
+                }
+            }, editorListeners)
+        }
+
+        fun start(infillRequest: InfillRequest) {
+            if (cancelled) {
+                finish()
+                return
+            }
+            val call = startRequest(infillRequest, this)
+            eventSource = call
+            // The speculation may have been cancelled while the request was being built
+            if (cancelled) {
+                call.cancel()
+            }
+        }
+
+        fun cancel() {
+            if (finished.get()) {
+                return
+            }
+            cancelled = true
+            eventSource?.cancel()
+        }
+
+        override fun onComplete(result: StringBuilder) {
+            if (!cancelled && result.isNotBlank()) {
+                val completion = postProcess(editor, prefix, suffix, result.toString())
+                if (completion.isNotEmpty()) {
+                    project.service<CodeCompletionCacheService>().setCache(prefix, suffix, completion)
+                    HotPathMetrics.COMPLETION_SPECULATIONS.increment("stored")
+                }
+            }
+            finish()
+        }
+
+        override fun onCancelled(messageBuilder: StringBuilder) {
+            HotPathMetrics.COMPLETION_SPECULATIONS.increment("cancelled")
+            HotPathMetrics.COMPLETION_WASTED_TOKENS.add(
+                service<EncodingManager>().countTokens(messageBuilder.toString()).toLong()
+            )
+            finish()
+        }
+
+        override fun onError(error: ErrorDetails, ex: Throwable) {
+            if (cancelled) {
+                HotPathMetrics.COMPLETION_SPECULATIONS.increment("cancelled")
+            } else {
+                HotPathMetrics.COMPLETION_SPECULATIONS.increment("failed")
+                logger.debug("Speculative completion failed: ${error.message}", ex)
+            }
+            finish()
+        }
+
+        fun finish() {
+            if (finished.compareAndSet(false, true)) {
+                counter.decrementAndGet()
+                Disposer.dispose(editorListeners)
+            }
+        }
+    }
+}
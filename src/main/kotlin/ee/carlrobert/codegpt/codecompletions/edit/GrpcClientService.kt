@@ -12,6 +12,7 @@ import com.intellij.openapi.project.Project
 import com.intellij.util.net.ssl.CertificateManager
 import com.jetbrains.rd.util.UUID
 import ee.carlrobert.codegpt.codecompletions.CodeCompletionEventListener
+import ee.carlrobert.codegpt.codecompletions.GitDiffContextService
 import ee.carlrobert.codegpt.credentials.CredentialsStore
 import ee.carlrobert.codegpt.credentials.CredentialsStore.CredentialKey.CodeGptApiKey
 import ee.carlrobert.codegpt.settings.service.ServiceType
@@ -19,7 +20,6 @@ import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.codegpt.CodeGPTServiceSettings
 import ee.carlrobert.codegpt.telemetry.core.configuration.TelemetryConfiguration
-import ee.carlrobert.codegpt.util.GitUtil
 import ee.carlrobert.service.*
 import io.grpc.ManagedChannel
 import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts
@@ -141,7 +141,7 @@ class GrpcClientService(private val project: Project) : Disposable {
             )
             .setFilePath(editor.virtualFile.path)
             .setFileContent(editor.document.text)
-            .setGitDiff(GitUtil.getCurrentChanges(project) ?: "")
+            .setGitDiff(project.service<GitDiffContextService>().getCurrentChanges() ?: "")
             .setCursorPosition(runReadAction { editor.caretModel.offset })
             .setEnableTelemetry(TelemetryConfiguration.getInstance().isCompletionTelemetryEnabled)
             .build()
@@ -151,7 +151,7 @@ class GrpcClientService(private val project: Project) : Disposable {
         NextEditRequest.newBuilder()
             .setFileName(editor.virtualFile.name)
             .setFileContent(fileContent)
-            .setGitDiff(GitUtil.getCurrentChanges(project) ?: "")
+            .setGitDiff(project.service<GitDiffContextService>().getCurrentChanges() ?: "")
             .setCursorPosition(caretOffset)
             .setEnableTelemetry(TelemetryConfiguration.getInstance().isCompletionTelemetryEnabled)
             .build()
@@ -19,6 +19,10 @@ class CodeCompletionConfigurationForm {
         CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.gitDiff.title"),
         service<ConfigurationSettings>().state.codeCompletionSettings.gitDiffEnabled
     )
+    private val speculativeCompletionsCheckBox = JBCheckBox(
+        CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.speculative.title"),
+        service<ConfigurationSettings>().state.codeCompletionSettings.speculativeCompletionsEnabled
+    )
     private val collectDependencyStructureBox = JBCheckBox(
         CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.collectDependencyStructure.title"),
         service<ConfigurationSettings>().state.codeCompletionSettings.collectDependencyStructure
@@ -38,6 +42,10 @@ class CodeCompletionConfigurationForm {
                 cell(gitDiffCheckBox)
                     .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.gitDiff.description"))
             }
+            row {
+                cell(speculativeCompletionsCheckBox)
+                    .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.speculative.description"))
+            }
             row {
                 cell(collectDependencyStructureBox)
                     .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.collectDependencyStructure.description"))
@@ -55,6 +63,7 @@ class CodeCompletionConfigurationForm {
     fun resetForm(prevState: CodeCompletionSettingsState) {
         treeSitterProcessingCheckBox.isSelected = prevState.treeSitterProcessingEnabled
         gitDiffCheckBox.isSelected = prevState.gitDiffEnabled
+        speculativeCompletionsCheckBox.isSelected = prevState.speculativeCompletionsEnabled
         collectDependencyStructureBox.isSelected = prevState.collectDependencyStructure
         psiStructureAnalyzeDepthField.number = prevState.psiStructureAnalyzeDepth
     }
@@ -63,6 +72,7 @@ class CodeCompletionConfigurationForm {
         return CodeCompletionSettingsState().apply {
             this.treeSitterProcessingEnabled = treeSitterProcessingCheckBox.isSelected
             this.gitDiffEnabled = gitDiffCheckBox.isSelected
+            this.speculativeCompletionsEnabled = speculativeCompletionsCheckBox.isSelected
             this.collectDependencyStructure = collectDependencyStructureBox.isSelected
             this.psiStructureAnalyzeDepth = psiStructureAnalyzeDepthField.number
         }
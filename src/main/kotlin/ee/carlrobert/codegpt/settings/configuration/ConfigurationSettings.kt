@@ -49,6 +49,7 @@ class ChatCompletionSettingsState : BaseState() {
 class CodeCompletionSettingsState : BaseState() {
     var treeSitterProcessingEnabled by property(true)
     var gitDiffEnabled by property(true)
+    var speculativeCompletionsEnabled by property(true)
     var collectDependencyStructure by property(true)
     var contextAwareEnabled by property(false)
     var psiStructureAnalyzeDepth by property(2)
@@ -0,0 +1,101 @@
+package ee.carlrobert.codegpt.util
+
+import com.vladsch.flexmark.ast.BlockQuote
+import com.vladsch.flexmark.ast.ListBlock
+import com.vladsch.flexmark.util.ast.Node
+
+/**
+ * Renders markdown that grows as a response is streamed, without converting the whole text on
+ * every update.
+ *
+ * A top-level block that is followed by a block it cannot absorb can no longer change, so its HTML
+ * is produced once and handed out as finished. A list or block quote stays open while the text
+ * after it could still continue it, e.g. the next item of a loose list. Each update parses only the
+ * text from the first unfinished block on and renders the open blocks as the open HTML, which
+ * replaces the open HTML of the previous update.
+ *
+ * Markdown can still change earlier blocks, e.g. through a link reference defined later, so the
+ * completed text should be converted as a whole once streaming ends.
+ */
+class IncrementalMarkdownRenderer {
+
+    /**
+     * HTML to append after the previously finished HTML, and the HTML of the block that is still
+     * open. If [rebuild] is set, [finishedHtml] contains all finished HTML and replaces any
+     * previous output.
+     */
+    data class Update(val finishedHtml: String, val openHtml: String, val rebuild: Boolean)
+
+    private val finishedHtml = StringBuilder()
+    private var previousMarkdown = ""
+    // Length of the markdown prefix whose blocks are finished
+    private var finishedLength = 0
+    private var rebuild = true
+
+    /**
+     * All HTML that has been finished so far.
+     */
+    val renderedHtml: String
+        get() = finishedHtml.toString()
+
+    fun reset() {
+        finishedHtml.setLength(0)
+        previousMarkdown = ""
+        finishedLength = 0
+        rebuild = true
+    }
+
+    fun render(markdown: String): Update {
+        if (markdown.length < finishedLength
+            || !markdown.regionMatches(0, previousMarkdown, 0, finishedLength)
+        ) {
+            reset()
+        }
+        previousMarkdown = markdown
+
+        val tail = markdown.substring(finishedLength)
+        val blocks = MarkdownUtil.parseMarkdown(tail).children.toList()
+        var openIndex = (blocks.size - 1).coerceAtLeast(0)
+        while (openIndex > 0
+            && mayContinue(blocks[openIndex - 1], tail.substring(lineStart(tail, blocks[openIndex])))
+        ) {
+            openIndex--
+        }
+
+        val newlyFinished = StringBuilder()
+        blocks.take(openIndex).forEach { newlyFinished.append(MarkdownUtil.renderHtml(it)) }
+        finishedHtml.append(newlyFinished)
+        if (openIndex > 0) {
+            finishedLength += lineStart(tail, blocks[openIndex])
+        }
+
+        val openHtml = blocks.drop(openIndex).joinToString("") { MarkdownUtil.renderHtml(it) }
+        val update = if (rebuild) {
+            Update(finishedHtml.toString(), openHtml, true)
+        } else {
+            Update(newlyFinished.toString(), openHtml, false)
+        }
+        rebuild = false
+        return update
+    }
+
+    // Keeps the whole first line of a block, including its indentation
+    private fun lineStart(tail: String, block: Node): Int =
+        tail.lastIndexOf('\n', block.startOffset - 1) + 1
+
+    /**
+     * Whether [text], which follows [block], could still turn out to continue it once more text
+     * arrives. Only lists and block quotes continue across a blank line; anything that starts like
+     * an item marker, a quote marker or an indented line might do so.
+     */
+    private fun mayContinue(block: Node, text: String): Boolean {
+        if (block !is ListBlock && block !is BlockQuote) {
+            return false
+        }
+        val first = text.firstOrNull() ?: return true
+        return when (block) {
+            is ListBlock -> first.isWhitespace() || first.isDigit() || first in "-*+"
+            else -> first.isWhitespace() || first == '>'
+        }
+    }
+}
@@ -2,11 +2,24 @@ package ee.carlrobert.codegpt.util
 
 import com.vladsch.flexmark.html.HtmlRenderer
 import com.vladsch.flexmark.parser.Parser
+import com.vladsch.flexmark.util.ast.Document
+import com.vladsch.flexmark.util.ast.Node
 import com.vladsch.flexmark.util.data.MutableDataSet
 import ee.carlrobert.codegpt.toolwindow.chat.ResponseNodeRenderer
 import java.util.regex.Pattern
 
 object MarkdownUtil {
+
+  private val options = MutableDataSet().apply {
+    set(HtmlRenderer.SOFT_BREAK, "<br/>")
+  }
+
+  // Both are immutable and thread-safe, so they are built once instead of for every conversion
+  private val parser = Parser.builder(options).build()
+  private val renderer = HtmlRenderer.builder(options)
+    .nodeRendererFactory(ResponseNodeRenderer.Factory())
+    .build()
+
   /**
    * Splits a given string into a list of strings where each element is either a code block
    * surrounded by triple backticks or a non-code block text.
@@ -35,12 +48,10 @@ object MarkdownUtil {
 
   @JvmStatic
   fun convertMdToHtml(message: String): String {
-    val options = MutableDataSet()
-    options.set(HtmlRenderer.SOFT_BREAK, "<br/>")
-    val document = Parser.builder(options).build().parse(message)
-    return HtmlRenderer.builder(options)
-      .nodeRendererFactory(ResponseNodeRenderer.Factory())
-      .build()
-      .render(document)
+    return renderHtml(parseMarkdown(message))
   }
+
+  fun parseMarkdown(message: String): Document = parser.parse(message)
+
+  fun renderHtml(node: Node): String = renderer.render(node)
 }
@@ -0,0 +1,80 @@
+package ee.carlrobert.codegpt
+
+import com.intellij.openapi.components.service
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import org.assertj.core.api.Assertions.assertThat
+
+class EncodingManagerTest : BasePlatformTestCase() {
+
+    private val code = (1..200).joinToString("\n") {
+        "    val value$it = listOf($it, ${it * 7}).map { item -> item.toString() }"
+    }
+
+    fun testTruncateRangeLikeWholeTextFromStart() {
+        val encodingManager = service<EncodingManager>()
+
+        for (maxTokens in listOf(1, 10, 100, 1000)) {
+            assertThat(encodingManager.truncateText(code, 0, code.length, maxTokens, true))
+                .describedAs("maxTokens=$maxTokens")
+                .isEqualTo(encodingManager.truncateText(code, maxTokens, true))
+        }
+    }
+
+    fun testTruncateRangeLikeWholeTextFromEnd() {
+        val encodingManager = service<EncodingManager>()
+
+        for (maxTokens in listOf(1, 10, 100, 1000)) {
+            assertThat(encodingManager.truncateText(code, 0, code.length, maxTokens, false))
+                .describedAs("maxTokens=$maxTokens")
+                .isEqualTo(encodingManager.truncateText(code, maxTokens, false))
+        }
+    }
+
+    fun testTruncateEmptyRange() {
+        val encodingManager = service<EncodingManager>()
+
+        assertThat(encodingManager.truncateText(code, 42, 42, 10, true)).isEmpty()
+        assertThat(encodingManager.truncateText(code, 42, 42, 10, false)).isEmpty()
+    }
+
+    fun testGrowWindowWhenLinesHaveFewTokens() {
+        val encodingManager = service<EncodingManager>()
+        val text = (1..100).joinToString("\n") { "internationalization" }
+
+        for (fromStart in listOf(true, false)) {
+            assertThat(encodingManager.truncateText(text, 0, text.length, 30, fromStart))
+                .describedAs("fromStart=$fromStart")
+                .isEqualTo(encodingManager.truncateText(text, 30, fromStart))
+        }
+    }
+
+    fun testNeverSplitSurrogatePairAtCut() {
+        val encodingManager = service<EncodingManager>()
+
+        for (padding in 0..8) {
+            val text = "x".repeat(padding) + "a😀".repeat(100)
+            for (fromStart in listOf(true, false)) {
+                val truncated = encodingManager.truncateText(text, 0, text.length, 7, fromStart)
+
+                assertThat(truncated.codePoints().noneMatch { it in Char.MIN_SURROGATE.code..Char.MAX_SURROGATE.code })
+                    .describedAs("padding=$padding, fromStart=$fromStart: $truncated")
+                    .isTrue()
+            }
+        }
+    }
+
+    fun testStripSpecialMarkersAcrossCut() {
+        val encodingManager = service<EncodingManager>()
+
+        for (padding in 0..40) {
+            val text = "word ".repeat(4) + "x".repeat(padding) + "<|endoftext|>" + "word ".repeat(4)
+            for (fromStart in listOf(true, false)) {
+                val truncated = encodingManager.truncateText(text, 0, text.length, 8, fromStart)
+
+                assertThat(truncated)
+                    .describedAs("padding=$padding, fromStart=$fromStart")
+                    .doesNotContain("<", "|", ">")
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class AdaptiveDebounceTest {
+
+    @Test
+    fun shouldUseDefaultDelayUntilEnoughKeystrokesAreSeen() {
+        val debounce = AdaptiveDebounce()
+        type(debounce, intervalMillis = 50, count = 3)
+
+        assertThat(debounce.getDelayMillis(ServiceType.OPENAI)).isEqualTo(AdaptiveDebounce.DEFAULT_DELAY_MS)
+    }
+
+    @Test
+    fun shouldFollowTypingSpeed() {
+        val fast = AdaptiveDebounce()
+        val slow = AdaptiveDebounce()
+        type(fast, intervalMillis = 60, count = 20)
+        type(slow, intervalMillis = 250, count = 20)
+
+        assertThat(fast.getDelayMillis(ServiceType.OPENAI)).isEqualTo(AdaptiveDebounce.MIN_DELAY_MS)
+        assertThat(slow.getDelayMillis(ServiceType.OPENAI)).isEqualTo(250)
+    }
+
+    @Test
+    fun shouldIgnorePausesBetweenBursts() {
+        val debounce = AdaptiveDebounce()
+        type(debounce, intervalMillis = 200, count = 10, startMillis = 0)
+        type(debounce, intervalMillis = 200, count = 10, startMillis = 60_000)
+
+        assertThat(debounce.getDelayMillis(ServiceType.OPENAI)).isEqualTo(200)
+    }
+
+    @Test
+    fun shouldWaitLongerForSlowProvidersAndWastedRequests() {
+        val debounce = AdaptiveDebounce()
+        type(debounce, intervalMillis = 200, count = 20)
+        repeat(10) {
+            debounce.recordLatency(ServiceType.OLLAMA, TimeUnit.MILLISECONDS.toNanos(1_000))
+        }
+
+        val ollamaDelay = debounce.getDelayMillis(ServiceType.OLLAMA)
+        assertThat(ollamaDelay).isGreaterThan(debounce.getDelayMillis(ServiceType.OPENAI))
+
+        repeat(10) { debounce.recordOutcome(true) }
+        assertThat(debounce.getDelayMillis(ServiceType.OLLAMA))
+            .isGreaterThan(ollamaDelay)
+            .isLessThanOrEqualTo(AdaptiveDebounce.MAX_DELAY_MS)
+    }
+
+    @Test
+    fun shouldTakeMedianLatencyFromRecentRequestsOnly() {
+        val debounce = AdaptiveDebounce()
+        repeat(500) {
+            debounce.recordLatency(ServiceType.OLLAMA, TimeUnit.MILLISECONDS.toNanos(2_000))
+        }
+        assertThat(debounce.getMedianLatencyMillis(ServiceType.OLLAMA)).isEqualTo(2_000.0)
+
+        repeat(AdaptiveDebounce.LATENCY_WINDOW / 2 + 1) {
+            debounce.recordLatency(ServiceType.OLLAMA, TimeUnit.MILLISECONDS.toNanos(100))
+        }
+
+        assertThat(debounce.getMedianLatencyMillis(ServiceType.OLLAMA)).isEqualTo(100.0)
+    }
+
+    private fun type(debounce: AdaptiveDebounce, intervalMillis: Long, count: Int, startMillis: Long = 0) {
+        for (i in 0..count) {
+            debounce.onKeystroke(startMillis + i * intervalMillis)
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CodeCompletionCacheServiceTest {
+
+    private val prefix = "class Main {\n    ".repeat(100) + "pub"
+    private val suffix = "\n}\n".repeat(100)
+
+    @Test
+    fun shouldServeCachedCompletionAtSameCaret() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "lic void main()")
+
+        assertThat(cache.getCache(prefix + suffix, prefix.length)).isEqualTo("lic void main()")
+    }
+
+    @Test
+    fun shouldServeRemainingCompletionWhenTypingForward() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "lic void main()")
+
+        assertThat(cache.getCache(prefix + "lic", suffix)).isEqualTo(" void main()")
+        assertThat(cache.getCache(prefix + "lic void main(", suffix)).isEqualTo(")")
+        assertThat(cache.getCache(prefix + "lic void main()", suffix)).isNull()
+    }
+
+    @Test
+    fun shouldMissWhenTypedTextDivergesOrSuffixChanges() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "lic void main()")
+
+        assertThat(cache.getCache(prefix + "lix", suffix)).isNull()
+        assertThat(cache.getCache(prefix, "\n}\n")).isNull()
+        assertThat(cache.getCache("other$prefix", suffix)).isEqualTo("lic void main()")
+    }
+
+    @Test
+    fun shouldStopServingAfterRepeatedHitsAtSameCaret() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "lic void main()")
+
+        repeat(3) {
+            assertThat(cache.getCache(prefix, suffix)).isEqualTo("lic void main()")
+        }
+        assertThat(cache.getCache(prefix, suffix)).isNull()
+        assertThat(cache.getCache(prefix + "l", suffix)).isNull()
+    }
+
+    @Test
+    fun shouldEvictLeastRecentlyUsedEntriesBeyondCapacity() {
+        val cache = CodeCompletionCacheService()
+        for (i in 0 until CodeCompletionCacheService.MAX_ENTRIES + 100) {
+            cache.setCache("val value$i = ", "", "$i")
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(CodeCompletionCacheService.MAX_ENTRIES)
+        assertThat(cache.getCache("val value${CodeCompletionCacheService.MAX_ENTRIES + 99} = ", ""))
+            .isEqualTo("${CodeCompletionCacheService.MAX_ENTRIES + 99}")
+    }
+}
@@ -0,0 +1,86 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.util.Disposer
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import org.assertj.core.api.Assertions.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class GitDiffContextServiceTest : BasePlatformTestCase() {
+
+    private val builds = AtomicInteger()
+
+    @Volatile
+    private var changes = "diff --git a/Main.java b/Main.java"
+
+    // Holds a rebuild until the test has checked what is served in the meantime
+    @Volatile
+    private var rebuildGate = CountDownLatch(0)
+
+    private lateinit var service: GitDiffContextService
+
+    override fun setUp() {
+        super.setUp()
+        service = GitDiffContextService(project, {
+            builds.incrementAndGet()
+            rebuildGate.await(5, TimeUnit.SECONDS)
+            changes
+        }, 0)
+    }
+
+    override fun tearDown() {
+        try {
+            Disposer.dispose(service)
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    fun testFirstCallReturnsNullWhileInitialSnapshotIsBuilt() {
+        rebuildGate = CountDownLatch(1)
+
+        assertThat(service.getCurrentChanges()).isNull()
+        rebuildGate.countDown()
+        awaitSnapshot(changes)
+        assertThat(builds.get()).isEqualTo(1)
+    }
+
+    fun testStaleSnapshotIsServedUntilRebuilt() {
+        service.getCurrentChanges()
+        awaitSnapshot(changes)
+        val first = changes
+        changes = "diff --git a/Other.java b/Other.java"
+        rebuildGate = CountDownLatch(1)
+
+        service.invalidate()
+
+        assertThat(service.getCurrentChanges()).isEqualTo(first)
+        rebuildGate.countDown()
+        awaitSnapshot(changes)
+        assertThat(builds.get()).isEqualTo(2)
+    }
+
+    fun testEditsOutsideVersionControlKeepSnapshotFresh() {
+        myFixture.configureByText("Main.java", "class Main {}")
+        service.getCurrentChanges()
+        awaitSnapshot(changes)
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            myFixture.editor.document.insertString(0, "public ")
+        }
+        service.getCurrentChanges()
+        Thread.sleep(200)
+
+        assertThat(builds.get()).isEqualTo(1)
+    }
+
+    private fun awaitSnapshot(expected: String) {
+        val deadline = System.currentTimeMillis() + 5_000
+        while (service.getCurrentChanges() != expected) {
+            check(System.currentTimeMillis() < deadline) { "Snapshot was not rebuilt" }
+            Thread.sleep(10)
+        }
+    }
+}
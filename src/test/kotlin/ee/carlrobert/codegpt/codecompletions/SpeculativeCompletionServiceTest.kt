@@ -0,0 +1,166 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.components.service
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.editor.EditorFactory
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.llm.client.openai.completion.ErrorDetails
+import ee.carlrobert.llm.completion.CompletionEventListener
+import okhttp3.Request
+import okhttp3.sse.EventSource
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class SpeculativeCompletionServiceTest : IntegrationTest() {
+
+    private val prefix = "class Main {\n    public "
+    private val suffix = "\n}\n"
+    private val requests = LinkedBlockingQueue<FakeEventSource>()
+    private val editors = mutableListOf<Editor>()
+    private lateinit var service: SpeculativeCompletionService
+    private var previousTreeSitterProcessing = true
+    private var previousSpeculativeCompletions = true
+
+    override fun setUp() {
+        super.setUp()
+        useOpenAIService(role = FeatureType.CODE_COMPLETION)
+        val settings = service<ConfigurationSettings>().state.codeCompletionSettings
+        previousTreeSitterProcessing = settings.treeSitterProcessingEnabled
+        previousSpeculativeCompletions = settings.speculativeCompletionsEnabled
+        settings.treeSitterProcessingEnabled = false
+        settings.speculativeCompletionsEnabled = true
+        project.service<CodeCompletionCacheService>().clear()
+        service = SpeculativeCompletionService(project) { _, eventListener ->
+            FakeEventSource(eventListener).also { requests.add(it) }
+        }
+    }
+
+    override fun tearDown() {
+        try {
+            editors.forEach { EditorFactory.getInstance().releaseEditor(it) }
+            val settings = service<ConfigurationSettings>().state.codeCompletionSettings
+            settings.treeSitterProcessingEnabled = previousTreeSitterProcessing
+            settings.speculativeCompletionsEnabled = previousSpeculativeCompletions
+        } finally {
+            super.tearDown()
+        }
+    }
+
+    fun testNewerSpeculationReplacesPreviousOneForSameEditor() {
+        val editor = createEditor()
+
+        service.speculate(editor, prefix, suffix, "void run()")
+        service.speculate(editor, prefix, suffix, "void run()")
+        val first = awaitRequest()
+        assertThat(pollRequest()).isNull()
+
+        service.speculate(editor, prefix, suffix, "int count()")
+        val second = awaitRequest()
+
+        assertThat(first.cancelled).isTrue()
+        assertThat(second.cancelled).isFalse()
+    }
+
+    fun testAtMostTwoSpeculationsRunPerProvider() {
+        service.speculate(createEditor(), prefix, suffix, "void run()")
+        service.speculate(createEditor(), prefix, suffix, "void run()")
+        val first = awaitRequest()
+        awaitRequest()
+
+        service.speculate(createEditor(), prefix, suffix, "void run()")
+        assertThat(pollRequest()).isNull()
+
+        first.complete("{}")
+        service.speculate(createEditor(), prefix, suffix, "void run()")
+        assertThat(awaitRequest()).isNotNull()
+    }
+
+    fun testCaretMoveAwayFromTargetCancelsSpeculation() {
+        val editor = createEditor()
+        service.speculate(editor, prefix, suffix, "void run()")
+        val request = awaitRequest()
+
+        editor.caretModel.moveToOffset(0)
+
+        assertThat(request.cancelled).isTrue()
+    }
+
+    fun testTypingTowardsTargetKeepsSpeculation() {
+        val editor = createEditor()
+        service.speculate(editor, prefix, suffix, "void run()")
+        val request = awaitRequest()
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            editor.document.insertString(prefix.length, "void")
+            editor.caretModel.moveToOffset(prefix.length + 4)
+        }
+
+        assertThat(request.cancelled).isFalse()
+    }
+
+    fun testDocumentChangeAwayFromTargetCancelsSpeculation() {
+        val editor = createEditor()
+        service.speculate(editor, prefix, suffix, "void run()")
+        val request = awaitRequest()
+
+        WriteCommandAction.runWriteCommandAction(project) {
+            editor.document.insertString(prefix.length, "int")
+        }
+
+        assertThat(request.cancelled).isTrue()
+    }
+
+    fun testNoSpeculationWhenDisabled() {
+        service<ConfigurationSettings>().state.codeCompletionSettings.speculativeCompletionsEnabled =
+            false
+
+        service.speculate(createEditor(), prefix, suffix, "void run()")
+
+        assertThat(pollRequest()).isNull()
+    }
+
+    fun testSpeculatedCompletionIsServedFromCache() {
+        service.speculate(createEditor(), prefix, suffix, "void run() ")
+
+        awaitRequest().complete("{}")
+
+        assertThat(project.service<CodeCompletionCacheService>().getCache(prefix + "void run() ", suffix))
+            .isEqualTo("{}")
+    }
+
+    private fun createEditor(): Editor {
+        val factory = EditorFactory.getInstance()
+        val editor = factory.createEditor(factory.createDocument(prefix + suffix), project)
+        editor.caretModel.moveToOffset(prefix.length)
+        editors.add(editor)
+        return editor
+    }
+
+    private fun awaitRequest(): FakeEventSource =
+        requests.poll(5, TimeUnit.SECONDS) ?: error("Speculative request was not started")
+
+    private fun pollRequest(): FakeEventSource? = requests.poll(200, TimeUnit.MILLISECONDS)
+
+    private class FakeEventSource(
+        private val eventListener: CompletionEventListener<String>
+    ) : EventSource {
+
+        @Volatile
+        var cancelled = false
+
+        fun complete(completion: String) {
+            eventListener.onComplete(StringBuilder(completion))
+        }
+
+        override fun request(): Request = Request.Builder().url("http://localhost").build()
+
+        override fun cancel() {
+            cancelled = true
+            eventListener.onError(ErrorDetails("Canceled"), RuntimeException("Canceled"))
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ee.carlrobert.codegpt.metrics
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase
+import org.assertj.core.api.Assertions.assertThat
+
+class MetricsCollectorTest : BasePlatformTestCase() {
+
+    fun testLateUserRatingReachesReportAndColumns() {
+        val collector = MetricsCollector(project)
+        val metrics = complete(collector)
+        val versionBeforeRating = collector.version
+
+        collector.updateUserRating(metrics, 4)
+
+        val report = sessionAccumulator(collector)
+        assertThat(report.userRating.count).isEqualTo(1)
+        assertThat(report.userRating.average).isEqualTo(4.0)
+        assertThat(collector.completedMetricsColumns.userRating(0)).isEqualTo(4)
+        assertThat(collector.version).isGreaterThan(versionBeforeRating)
+    }
+
+    fun testLateUserRatingOfArchivedRowReachesAccumulator() {
+        val collector = MetricsCollector(project)
+        val first = complete(collector)
+        while (collector.reportSource.archived().count == 0L) {
+            complete(collector)
+        }
+
+        collector.updateUserRating(first, 5)
+
+        val source = collector.reportSource
+        assertThat(source.archived().userRating.count).isEqualTo(1)
+        assertThat(sessionAccumulator(collector).count)
+            .isEqualTo(source.archived().count + source.columns().size())
+    }
+
+    fun testRatingAfterClearDoesNotReachReport() {
+        val collector = MetricsCollector(project)
+        val metrics = complete(collector)
+        collector.clearCompletedMetrics()
+
+        collector.updateUserRating(metrics, 4)
+
+        assertThat(sessionAccumulator(collector).count).isZero()
+        assertThat(sessionAccumulator(collector).userRating.count).isZero()
+    }
+
+    private fun complete(collector: MetricsCollector): ProductivityMetrics {
+        val metrics = collector.startMetrics("action", "CODE_COMPLETION")
+        collector.completeMetrics(metrics, true, null)
+        return metrics
+    }
+
+    private fun sessionAccumulator(collector: MetricsCollector) =
+        ProductivityReportGenerator.accumulate(listOf(collector.reportSource), null)
+}
@@ -0,0 +1,64 @@
+package ee.carlrobert.codegpt.metrics
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.Test
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class ProductivityAccumulatorTest {
+
+    @Test
+    fun shouldMergePartialResultsIntoSameReportAsSinglePass() {
+        val day1 = (1..6).map { metrics(LocalDateTime.of(2024, 5, 1, 9, it), successful = it % 2 == 0, responseTime = it * 100L) }
+        val day2 = (1..4).map { metrics(LocalDateTime.of(2024, 5, 2, 9, it), successful = true, responseTime = it * 1_000L) }
+
+        val merged = ProductivityAccumulator.of(day1).apply { merge(ProductivityAccumulator.of(day2)) }
+        val singlePass = ProductivityAccumulator.of(day1 + day2)
+
+        val mergedReport = ProductivityAnalyzer(merged).generateComprehensiveReport()
+        val singlePassReport = ProductivityAnalyzer(singlePass).generateComprehensiveReport()
+        assertThat(mergedReport.totalMetrics).isEqualTo(10)
+        assertThat(mergedReport.overallScore).isEqualTo(singlePassReport.overallScore)
+        assertThat(mergedReport.basicStats.maxResponseTime).isEqualTo(4_000.0)
+        assertThat(mergedReport.trendAnalysis.dailyTrends.map { it.date }).containsExactly("2024-05-01", "2024-05-02")
+    }
+
+    @Test
+    fun shouldSplitLearningCurveAtMidpointAcrossDays() {
+        val early = (1..4).map { metrics(LocalDateTime.of(2024, 5, 1, 10, it), successful = false, responseTime = 100) }
+        val late = (1..4).map { metrics(LocalDateTime.of(2024, 5, 3, 10, it), successful = true, responseTime = 100) }
+
+        val report = ProductivityAnalyzer(early + late).generateComprehensiveReport()
+
+        assertThat(report.learningCurveAnalysis.getMetricValue("skill_improvement")).isEqualTo(1.0)
+        assertThat(report.learningCurveAnalysis.getMetricValue("tool_adoption_rate")).isEqualTo(1.0)
+    }
+
+    @Test
+    fun shouldApplyLateUserRatingLikeRatingKnownAtCompletion() {
+        val items = (1..4).map { metrics(LocalDateTime.of(2024, 5, 1, 11, it), successful = true, responseTime = 200) }
+        val accumulator = ProductivityAccumulator.of(items)
+
+        items[0].userRating = 5
+        accumulator.updateUserRating(items[0], 0, 5)
+        items[1].userRating = 2
+        accumulator.updateUserRating(items[1], 0, 4)
+        accumulator.updateUserRating(items[1], 4, 2)
+
+        val expected = ProductivityAccumulator.of(items)
+        assertThat(accumulator.userRating.count).isEqualTo(expected.userRating.count)
+        assertThat(accumulator.userRating.average).isEqualTo(expected.userRating.average)
+        assertThat(accumulator.days.firstEntry().value.averageEfficiencyScore)
+            .isCloseTo(expected.days.firstEntry().value.averageEfficiencyScore, within(1e-9))
+    }
+
+    private fun metrics(start: LocalDateTime, successful: Boolean, responseTime: Long) =
+        ProductivityMetrics("action", "CODE_COMPLETION").apply {
+            startTime = start.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            isSuccessful = successful
+            this.responseTime = responseTime
+            linesGenerated = 10
+            acceptanceRate = 0.5
+        }
+}
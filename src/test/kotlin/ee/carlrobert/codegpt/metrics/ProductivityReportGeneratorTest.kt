@@ -0,0 +1,55 @@
+package ee.carlrobert.codegpt.metrics
+
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class ProductivityReportGeneratorTest {
+
+    @Test
+    fun shouldMergePartitionsAcrossProjectsIntoSinglePassResult() {
+        val first = (0 until 3_000).map { metrics(LocalDateTime.of(2024, 5, 1 + it % 3, 9, 0), responseTime = it + 1L) }
+        val second = (0 until 500).map { metrics(LocalDateTime.of(2024, 5, 4, 9, 0), responseTime = 10_000) }
+
+        val parallel = ProductivityReportGenerator.accumulate(
+            listOf(source(first), source(second)), null)
+        val singlePass = ProductivityAccumulator.of(first + second)
+
+        assertThat(parallel.count).isEqualTo(3_500)
+        assertThat(parallel.responseTime.sum).isEqualTo(singlePass.responseTime.sum)
+        assertThat(parallel.responseTime.max).isEqualTo(10_000.0)
+        assertThat(parallel.days.keys).containsExactlyElementsOf(singlePass.days.keys)
+    }
+
+    @Test
+    fun shouldIncludeRowsDroppedFromColumnStore() {
+        val metrics = (0 until 5_000).map { metrics(LocalDateTime.of(2024, 5, 1 + it % 5, 12, 0), responseTime = 100) }
+        val archived = ProductivityAccumulator()
+        val store = MetricsColumnStore(2) { dropped ->
+            for (row in 0 until dropped.size()) {
+                archived.add(dropped, row)
+            }
+        }
+        metrics.forEach { store.append(it) }
+
+        val report = ProductivityReportGenerator.generate(
+            listOf(ProductivityReportGenerator.Source(archived, store.columns())), null)
+
+        assertThat(archived.count).isPositive()
+        assertThat(report.totalMetrics).isEqualTo(5_000)
+        assertThat(report.trendAnalysis.dailyTrends).hasSize(5)
+    }
+
+    private fun source(metrics: List<ProductivityMetrics>) =
+        ProductivityReportGenerator.Source(ProductivityAccumulator(), MetricsColumnStore.of(metrics).columns())
+
+    private fun metrics(start: LocalDateTime, responseTime: Long) =
+        ProductivityMetrics("action", "CODE_COMPLETION").apply {
+            startTime = start.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            isSuccessful = true
+            this.responseTime = responseTime
+            linesGenerated = 5
+        }
+}
@@ -0,0 +1,41 @@
+package ee.carlrobert.codegpt.metrics.config
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class MetricsDatabaseConfigTest {
+
+    @Test
+    fun shouldKeepMySqlForLegacyStateWithCustomConnection() {
+        val config = MetricsDatabaseConfig()
+
+        config.loadState(MetricsDatabaseConfig.State().apply {
+            dbUrl = "jdbc:mysql://metrics.internal:3306/proxyai_metrics"
+            dbPassword = "secret"
+        })
+
+        assertThat(config.storeMode).isEqualTo(MetricsDatabaseConfig.StoreMode.MYSQL)
+        assertThat(config.state?.storeMode).isEqualTo("MYSQL")
+    }
+
+    @Test
+    fun shouldUseEmbeddedStoreForLegacyStateWithDefaultConnection() {
+        val config = MetricsDatabaseConfig()
+
+        config.loadState(MetricsDatabaseConfig.State().apply { retentionDays = 30 })
+
+        assertThat(config.storeMode).isEqualTo(MetricsDatabaseConfig.StoreMode.EMBEDDED)
+    }
+
+    @Test
+    fun shouldKeepExplicitStoreMode() {
+        val config = MetricsDatabaseConfig()
+
+        config.loadState(MetricsDatabaseConfig.State().apply {
+            storeMode = "EMBEDDED"
+            dbUser = "metrics"
+        })
+
+        assertThat(config.storeMode).isEqualTo(MetricsDatabaseConfig.StoreMode.EMBEDDED)
+    }
+}
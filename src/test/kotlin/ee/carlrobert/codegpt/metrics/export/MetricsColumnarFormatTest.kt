@@ -0,0 +1,75 @@
+package ee.carlrobert.codegpt.metrics.export
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+class MetricsColumnarFormatTest {
+
+    @Test
+    fun shouldRoundTripRowsThroughColumnarFile() {
+        val columns = columns(20_000)
+
+        val file = write(columns)
+        val reader = MetricsColumnarReader(ByteArrayInputStream(file))
+
+        var rows = 0
+        while (reader.next()) {
+            assertThat(reader.startTime()).isEqualTo(columns.startTime(rows))
+            assertThat(reader.actionType()).isEqualTo(columns.actionType(rows))
+            assertThat(reader.programmingLanguage()).isEqualTo(columns.programmingLanguage(rows))
+            assertThat(reader.linesGenerated()).isEqualTo(columns.linesGenerated(rows))
+            assertThat(reader.acceptanceRate()).isEqualTo(columns.acceptanceRate(rows))
+            assertThat(reader.successful()).isEqualTo(columns.successful(rows))
+            rows++
+        }
+        assertThat(rows).isEqualTo(20_000)
+    }
+
+    @Test
+    fun shouldSkipRowGroupsOutsideTimeRange() {
+        val columns = columns(3 * MetricsColumnarFormat.ROW_GROUP_SIZE)
+        val from = columns.startTime(2 * MetricsColumnarFormat.ROW_GROUP_SIZE)
+
+        val reader = MetricsColumnarReader(ByteArrayInputStream(write(columns)), from, Long.MAX_VALUE)
+        var rows = 0
+        while (reader.next()) {
+            rows++
+        }
+
+        assertThat(rows).isEqualTo(MetricsColumnarFormat.ROW_GROUP_SIZE)
+        assertThat(reader.skippedRowGroups).isEqualTo(2)
+        assertThat(reader.getMax(MetricsExportField.LINES_GENERATED)).isEqualTo(39.0)
+    }
+
+    @Test
+    fun shouldBeSmallerThanCsv() {
+        val columns = columns(10_000)
+        val csv = java.io.StringWriter()
+        MetricsStreamWriter.writeCsv(MetricsCursor.ofColumns(columns, Long.MIN_VALUE, Long.MAX_VALUE), { true }, csv)
+
+        assertThat(write(columns).size).isLessThan(csv.toString().length / 4)
+    }
+
+    private fun write(columns: MetricsColumnStore.Columns): ByteArray {
+        val out = ByteArrayOutputStream()
+        MetricsColumnarWriter(out).use {
+            it.writeAll(MetricsCursor.ofColumns(columns, Long.MIN_VALUE, Long.MAX_VALUE)) { true }
+        }
+        return out.toByteArray()
+    }
+
+    private fun columns(count: Int) = MetricsColumnStore.of((0 until count).map {
+        ProductivityMetrics("action", if (it % 3 == 0) "CHAT" else "CODE_COMPLETION").apply {
+            startTime = 1_714_550_400_000L + it * 60_000L
+            programmingLanguage = if (it % 5 == 0) null else "kotlin"
+            linesGenerated = it % 40
+            responseTime = 100L + it % 900
+            acceptanceRate = (it % 10) / 10.0
+            isSuccessful = it % 2 == 0
+        }
+    }).columns()
+}
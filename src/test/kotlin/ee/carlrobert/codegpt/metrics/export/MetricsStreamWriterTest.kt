@@ -0,0 +1,65 @@
+package ee.carlrobert.codegpt.metrics.export
+
+import com.google.gson.JsonParser
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.StringWriter
+
+class MetricsStreamWriterTest {
+
+    private val columns = MetricsColumnStore.of(
+        listOf(
+            metrics("CODE_COMPLETION", "java,kotlin", startTime = 1_000, lines = 3),
+            metrics("CHAT_CODE_GENERATION", "kotlin", startTime = 2_000, lines = 7),
+            metrics("CODE_COMPLETION", "go", startTime = 9_000, lines = 1),
+        )
+    ).columns()
+
+    @Test
+    fun shouldStreamFilteredCsvRowsWithEscapedValues() {
+        val out = StringWriter()
+
+        val rows = MetricsStreamWriter.writeCsv(
+            MetricsCursor.ofColumns(columns, 0, 5_000), { it == "CODE_COMPLETION" }, out)
+
+        val lines = out.toString().trim().lines()
+        assertThat(rows).isEqualTo(1)
+        assertThat(lines).hasSize(2)
+        assertThat(lines[0]).startsWith("Time,Action Type,Model,Language")
+        assertThat(lines[1]).contains(",CODE_COMPLETION,,\"java,kotlin\",")
+    }
+
+    @Test
+    fun shouldWriteJsonMetricsAndSummary() {
+        val out = StringWriter()
+
+        val rows = MetricsStreamWriter.writeJson(
+            MetricsCursor.ofColumns(columns, Long.MIN_VALUE, Long.MAX_VALUE), { true }, 7, out)
+
+        val json = JsonParser.parseString(out.toString()).asJsonObject
+        assertThat(rows).isEqualTo(3)
+        assertThat(json.getAsJsonArray("metrics")).hasSize(3)
+        assertThat(json.getAsJsonArray("metrics")[1].asJsonObject["linesGenerated"].asInt).isEqualTo(7)
+        assertThat(json.getAsJsonObject("summary")["totalLinesGenerated"].asLong).isEqualTo(11)
+    }
+
+    @Test
+    fun shouldEscapeHtmlTableCells() {
+        val out = StringWriter()
+        val store = MetricsColumnStore.of(listOf(metrics("CHAT", "<script>", startTime = 1, lines = 1)))
+
+        MetricsStreamWriter.writeHtml(
+            MetricsCursor.ofColumns(store.columns(), Long.MIN_VALUE, Long.MAX_VALUE), { true }, 7, false, out)
+
+        assertThat(out.toString()).contains("<td>&lt;script&gt;</td>").doesNotContain("<td><script>")
+    }
+
+    private fun metrics(actionType: String, language: String, startTime: Long, lines: Int) =
+        ProductivityMetrics("action", actionType).apply {
+            programmingLanguage = language
+            this.startTime = startTime
+            linesGenerated = lines
+        }
+}
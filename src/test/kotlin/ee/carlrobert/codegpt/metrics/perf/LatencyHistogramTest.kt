@@ -0,0 +1,51 @@
+package ee.carlrobert.codegpt.metrics.perf
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class LatencyHistogramTest {
+
+    @Test
+    fun shouldMapValuesToContiguousBucketsWithBoundedError() {
+        var previous = -1
+        for (micros in longArrayOf(0, 1, 15, 16, 17, 31, 32, 100, 1_000, 123_456, 10_000_000)) {
+            val index = LatencyHistogram.bucketIndex(micros)
+            assertThat(index).isGreaterThan(previous)
+            assertThat(micros).isBetween(LatencyHistogram.lowerBound(index), LatencyHistogram.upperBound(index) - 1)
+            val width = LatencyHistogram.upperBound(index) - LatencyHistogram.lowerBound(index)
+            assertThat(width.toDouble()).isLessThanOrEqualTo(maxOf(1.0, micros / 16.0 + 1))
+            previous = index
+        }
+        for (index in 1 until LatencyHistogram.BUCKET_COUNT) {
+            assertThat(LatencyHistogram.lowerBound(index)).isEqualTo(LatencyHistogram.upperBound(index - 1))
+        }
+    }
+
+    @Test
+    fun shouldReportCountsSumAndPercentiles() {
+        val histogram = LatencyHistogram("test_seconds", "test")
+        for (millis in 1..100L) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis))
+        }
+
+        val snapshot = histogram.snapshot()
+
+        assertThat(snapshot.count).isEqualTo(100)
+        assertThat(snapshot.sumSeconds).isCloseTo(5.05, within(1e-9))
+        assertThat(snapshot.getPercentileMillis(50.0)).isCloseTo(50.0, within(50.0 / 16))
+        assertThat(snapshot.getPercentileMillis(99.0)).isCloseTo(99.0, within(99.0 / 16))
+        assertThat(snapshot.countBelow(1L shl 16)).isEqualTo(65)
+    }
+
+    @Test
+    fun shouldClampValuesBeyondRangeIntoLastBucket() {
+        val histogram = LatencyHistogram("test_seconds", "test")
+        histogram.recordNanos(Long.MAX_VALUE)
+        histogram.recordNanos(-1)
+
+        assertThat(histogram.snapshot().count).isEqualTo(1)
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1)
+    }
+}
@@ -0,0 +1,38 @@
+package ee.carlrobert.codegpt.metrics.perf
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.StringWriter
+import java.util.concurrent.TimeUnit
+
+class OpenMetricsWriterTest {
+
+    @Test
+    fun shouldWriteCumulativeHistogramBucketsAndCounters() {
+        val histogram = LatencyHistogram("test_latency_seconds", "Test latency")
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(100))
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(3))
+        histogram.recordNanos(TimeUnit.SECONDS.toNanos(60))
+        val counter = PerfCounter("test_requests", "Test requests", "source")
+        counter.increment("cache")
+        counter.add("network", 2)
+
+        val output = StringWriter().also {
+            OpenMetricsWriter.write(it, listOf(histogram), listOf(counter))
+        }.toString().lines()
+
+        assertThat(output).contains(
+            "# TYPE test_latency_seconds histogram",
+            "# HELP test_latency_seconds Test latency",
+            "test_latency_seconds_bucket{le=\"0.000128\"} 1",
+            "test_latency_seconds_bucket{le=\"0.002048\"} 1",
+            "test_latency_seconds_bucket{le=\"0.004096\"} 2",
+            "test_latency_seconds_bucket{le=\"33.554432\"} 2",
+            "test_latency_seconds_bucket{le=\"+Inf\"} 3",
+            "test_latency_seconds_count 3",
+            "# TYPE test_requests counter",
+            "test_requests_total{source=\"cache\"} 1",
+            "test_requests_total{source=\"network\"} 2")
+        assertThat(output.last { it.isNotEmpty() }).isEqualTo("# EOF")
+    }
+}
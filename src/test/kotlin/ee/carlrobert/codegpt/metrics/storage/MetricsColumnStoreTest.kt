@@ -0,0 +1,95 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class MetricsColumnStoreTest {
+
+    @Test
+    fun shouldStoreMetricsAsDictionaryEncodedColumns() {
+        val store = MetricsColumnStore()
+        store.append(metrics("CODE_COMPLETION", "gpt-4o", "kotlin", lines = 12, responseTime = 250))
+        store.append(metrics("CODE_COMPLETION", "gpt-4o", null, lines = 3, responseTime = 90))
+
+        val columns = store.columns()
+
+        assertThat(columns.size()).isEqualTo(2)
+        assertThat(columns.actionTypeCode(0)).isEqualTo(columns.actionTypeCode(1))
+        assertThat(columns.actionType(1)).isEqualTo("CODE_COMPLETION")
+        assertThat(columns.programmingLanguage(0)).isEqualTo("kotlin")
+        assertThat(columns.languageCode(1)).isEqualTo(MetricsDictionary.NULL_CODE)
+        assertThat(columns.linesGenerated(0)).isEqualTo(12)
+        assertThat(columns.responseTime(1)).isEqualTo(90)
+        assertThat(columns.toMetrics(0).modelName).isEqualTo("gpt-4o")
+    }
+
+    @Test
+    fun shouldDropOldestChunkWhenChunkLimitIsReached() {
+        val store = MetricsColumnStore(2)
+
+        repeat(MetricsColumnStore.CHUNK_SIZE * 2 + 5) {
+            store.append(metrics("CHAT", null, null, lines = it, responseTime = 1))
+        }
+
+        val columns = store.columns()
+        assertThat(store.size()).isEqualTo(MetricsColumnStore.CHUNK_SIZE + 5)
+        assertThat(columns.size()).isEqualTo(MetricsColumnStore.CHUNK_SIZE + 5)
+        assertThat(columns.linesGenerated(0)).isEqualTo(MetricsColumnStore.CHUNK_SIZE)
+    }
+
+    @Test
+    fun shouldKeepAtLeastRequestedRowsWhenSizedForRows() {
+        val rows = MetricsColumnStore.CHUNK_SIZE * 4
+        val store = MetricsColumnStore.forRows(rows)
+
+        repeat(rows * 3) {
+            store.append(metrics("CHAT", null, null, lines = it, responseTime = 1))
+            assertThat(store.size()).isGreaterThanOrEqualTo(minOf(it + 1, rows))
+            assertThat(store.size()).isLessThanOrEqualTo(rows + MetricsColumnStore.CHUNK_SIZE)
+        }
+    }
+
+    @Test
+    fun shouldUpdateUserRatingOfRetainedRow() {
+        val store = MetricsColumnStore(2)
+        val first = store.append(metrics("CHAT", null, null, lines = 1, responseTime = 1))
+        repeat(MetricsColumnStore.CHUNK_SIZE) {
+            store.append(metrics("CHAT", null, null, lines = 1, responseTime = 1))
+        }
+        val last = store.append(metrics("CHAT", null, null, lines = 1, responseTime = 1))
+        val before = store.columns()
+
+        assertThat(store.updateUserRating(first, 4)).isTrue()
+        assertThat(store.updateUserRating(last, 5)).isTrue()
+
+        assertThat(before.userRating(0)).isEqualTo(4)
+        assertThat(store.columns().userRating(store.size() - 1)).isEqualTo(5)
+        assertThat(store.columns().toMetrics(store.size() - 1).userRating).isEqualTo(5)
+
+        repeat(MetricsColumnStore.CHUNK_SIZE) {
+            store.append(metrics("CHAT", null, null, lines = 1, responseTime = 1))
+        }
+        assertThat(store.updateUserRating(first, 3)).isFalse()
+        store.clear()
+        assertThat(store.updateUserRating(last, 3)).isFalse()
+    }
+
+    @Test
+    fun shouldExposePojoGettersOverEncodedValues() {
+        val metrics = metrics("CHAT", "claude", "java", lines = 1, responseTime = 1)
+
+        assertThat(metrics.actionType).isEqualTo("CHAT")
+        assertThat(metrics.actionTypeCode).isEqualTo(MetricsDictionary.ACTION_TYPES.encode("CHAT"))
+        assertThat(metrics.createdAt).isNotNull()
+        assertThat(metrics.id).isEqualTo(metrics.id)
+    }
+
+    private fun metrics(actionType: String, model: String?, language: String?, lines: Int, responseTime: Long) =
+        ProductivityMetrics("action", actionType).apply {
+            modelName = model
+            programmingLanguage = language
+            linesGenerated = lines
+            this.responseTime = responseTime
+        }
+}
@@ -0,0 +1,68 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Test
+import java.sql.SQLException
+import java.util.UUID
+
+class MetricsConnectionPoolTest {
+
+    private val pool = MetricsConnectionPool(
+        "jdbc:h2:mem:metrics-${UUID.randomUUID()};MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "sa",
+        "",
+        1,
+        1_000
+    )
+
+    @After
+    fun tearDown() {
+        pool.close(0)
+    }
+
+    @Test
+    fun shouldRejectCachedStatementAfterConnectionIsReturned() {
+        val conn = pool.connection
+        val statement = conn.prepareStatement("SELECT 1")
+        conn.close()
+
+        assertThat(statement.isClosed).isTrue()
+        assertThatThrownBy { statement.executeQuery() }.isInstanceOf(SQLException::class.java)
+
+        // The next borrower gets the same physical connection and statement without interference
+        pool.connection.use { next ->
+            next.prepareStatement("SELECT 1").use { reused ->
+                reused.executeQuery().use { rs ->
+                    assertThat(rs.next()).isTrue()
+                }
+            }
+        }
+        assertThat(pool.statementCacheHits).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldCloseResultSetWhenCachedStatementIsClosed() {
+        pool.connection.use { conn ->
+            val statement = conn.prepareStatement("SELECT CAST(? AS INT)")
+            statement.setInt(1, 42)
+            val rs = statement.executeQuery()
+
+            statement.close()
+
+            assertThat(rs.isClosed).isTrue()
+            assertThatThrownBy { statement.executeQuery() }.isInstanceOf(SQLException::class.java)
+
+            conn.prepareStatement("SELECT CAST(? AS INT)").use { reused ->
+                // Parameters of the previous use are cleared
+                assertThatThrownBy { reused.executeQuery() }.isInstanceOf(SQLException::class.java)
+                reused.setInt(1, 7)
+                reused.executeQuery().use { next ->
+                    assertThat(next.next()).isTrue()
+                    assertThat(next.getInt(1)).isEqualTo(7)
+                }
+            }
+        }
+    }
+}
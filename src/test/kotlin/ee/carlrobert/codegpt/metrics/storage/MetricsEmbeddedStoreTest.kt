@@ -0,0 +1,82 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.util.UUID
+
+class MetricsEmbeddedStoreTest {
+
+    private val pool = MetricsConnectionPool(
+        "jdbc:h2:mem:metrics-${UUID.randomUUID()};MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "sa",
+        "",
+        2,
+        1_000
+    )
+
+    @After
+    fun tearDown() {
+        pool.close(0)
+    }
+
+    @Test
+    fun shouldAccumulateRollupsWithMySqlUpsertOnEmbeddedDatabase() {
+        pool.connection.use { conn ->
+            conn.createStatement().use { stmt ->
+                MetricsRollupStore.Granularity.entries.forEach {
+                    stmt.execute(MetricsRollupStore.createTableSql(it))
+                }
+            }
+
+            MetricsRollupStore.apply(conn, listOf(metrics(lines = 3, responseTime = 100)))
+            MetricsRollupStore.apply(conn, listOf(metrics(lines = 5, responseTime = 400)))
+
+            conn.createStatement().use { stmt ->
+                stmt.executeQuery(
+                    "SELECT event_count, lines_generated, response_time_sum, response_time_max FROM metrics_rollup_day"
+                ).use { rs ->
+                    assertThat(rs.next()).isTrue()
+                    assertThat(rs.getLong(1)).isEqualTo(2)
+                    assertThat(rs.getLong(2)).isEqualTo(8)
+                    assertThat(rs.getLong(3)).isEqualTo(500)
+                    assertThat(rs.getLong(4)).isEqualTo(400)
+                    assertThat(rs.next()).isFalse()
+                }
+            }
+        }
+    }
+
+    @Test
+    fun shouldClearAllRollupGranularities() {
+        pool.connection.use { conn ->
+            conn.createStatement().use { stmt ->
+                MetricsRollupStore.Granularity.entries.forEach {
+                    stmt.execute(MetricsRollupStore.createTableSql(it))
+                }
+            }
+            MetricsRollupStore.apply(conn, listOf(metrics(lines = 3, responseTime = 100)))
+
+            MetricsRollupStore.clear(conn)
+
+            conn.createStatement().use { stmt ->
+                MetricsRollupStore.Granularity.entries.forEach {
+                    stmt.executeQuery("SELECT COUNT(*) FROM ${it.tableName}").use { rs ->
+                        rs.next()
+                        assertThat(rs.getLong(1)).describedAs(it.tableName).isZero()
+                    }
+                }
+            }
+        }
+    }
+
+    private fun metrics(lines: Int, responseTime: Long) =
+        ProductivityMetrics("action", "CODE_COMPLETION").apply {
+            startTime = System.currentTimeMillis()
+            programmingLanguage = "kotlin"
+            linesGenerated = lines
+            this.responseTime = responseTime
+            isSuccessful = true
+        }
+}
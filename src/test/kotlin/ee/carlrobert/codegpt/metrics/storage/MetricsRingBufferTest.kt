@@ -0,0 +1,77 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class MetricsRingBufferTest {
+
+    @Test
+    fun shouldOverwriteOldestAndHandEvictedEntriesToHandler() {
+        val evicted = mutableListOf<Int>()
+        val buffer = MetricsRingBuffer<Int>(4) { evicted.add(it) }
+
+        (1..6).forEach(buffer::add)
+
+        assertThat(buffer.snapshot()).containsExactly(3, 4, 5, 6)
+        assertThat(evicted).containsExactly(1, 2)
+        assertThat(buffer.evictedCount).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldRoundCapacityUpToPowerOfTwo() {
+        assertThat(MetricsRingBuffer<String>(100, null).capacity()).isEqualTo(128)
+    }
+
+    @Test
+    fun shouldHideClearedEntriesWithoutEvictingThem() {
+        val evicted = mutableListOf<Int>()
+        val buffer = MetricsRingBuffer<Int>(2) { evicted.add(it) }
+        buffer.add(1)
+        buffer.add(2)
+
+        buffer.clear()
+        buffer.add(3)
+
+        assertThat(buffer.snapshot()).containsExactly(3)
+        assertThat(evicted).isEmpty()
+    }
+
+    @Test
+    fun shouldKeepSnapshotStableWhenNewEntriesArrive() {
+        val buffer = MetricsRingBuffer<Int>(8, null)
+        (1..3).forEach(buffer::add)
+
+        val snapshot = buffer.snapshot()
+        buffer.add(4)
+
+        assertThat(snapshot).containsExactly(1, 2, 3)
+        assertThat(snapshot.size()).isEqualTo(3)
+    }
+
+    @Test
+    fun shouldNotLoseEntriesWithConcurrentProducers() {
+        val evicted = ConcurrentLinkedQueue<Int>()
+        val buffer = MetricsRingBuffer<Int>(1_024) { evicted.add(it) }
+        val executor = Executors.newFixedThreadPool(4)
+        val start = CountDownLatch(1)
+
+        repeat(4) { producer ->
+            executor.execute {
+                start.await()
+                repeat(1_000) { buffer.add(producer * 1_000 + it) }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+
+        val retained = buffer.snapshot().toList()
+        assertThat(retained).hasSize(1_024)
+        assertThat(retained.size + evicted.size).isEqualTo(4_000)
+        assertThat((retained + evicted).toSet()).hasSize(4_000)
+    }
+}
@@ -0,0 +1,86 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.time.LocalDateTime
+import java.time.ZoneId
+import java.util.UUID
+
+class MetricsRollupStoreTest {
+
+    @Test
+    fun shouldAggregateMetricsPerBucketAndDimensions() {
+        val base = LocalDateTime.of(2024, 5, 1, 10, 15, 30)
+        val batch = listOf(
+            metrics(base, "CODE_COMPLETION", "java", lines = 10, accepted = 8, responseTime = 100),
+            metrics(base.plusSeconds(20), "CODE_COMPLETION", "java", lines = 4, accepted = 0, responseTime = 300),
+            metrics(base.plusMinutes(5), "CODE_COMPLETION", "java", lines = 2, accepted = 2, responseTime = 50),
+            metrics(base, "CHAT", null, lines = 0, accepted = 0, responseTime = 900),
+        )
+
+        val minute = MetricsRollupStore.aggregate(MetricsRollupStore.Granularity.MINUTE, batch)
+        val hour = MetricsRollupStore.aggregate(MetricsRollupStore.Granularity.HOUR, batch)
+
+        assertThat(minute).hasSize(3)
+        assertThat(hour).hasSize(2)
+        val completionHour = hour.entries.single { it.key.actionType() == "CODE_COMPLETION" }
+        assertThat(completionHour.key.bucketStart()).isEqualTo(epochMillis(base.withMinute(0).withSecond(0)))
+        assertThat(completionHour.value.eventCount).isEqualTo(3)
+        assertThat(completionHour.value.linesGenerated).isEqualTo(16)
+        assertThat(completionHour.value.linesAccepted).isEqualTo(10)
+        assertThat(completionHour.value.responseTimeSum).isEqualTo(450)
+        assertThat(completionHour.value.responseTimeMax).isEqualTo(300)
+        val chatHour = hour.keys.single { it.actionType() == "CHAT" }
+        assertThat(chatHour.language()).isEmpty()
+    }
+
+    @Test
+    fun shouldReadDayRowsWithMissingDimensionsAsNull() {
+        val pool = MetricsConnectionPool(
+            "jdbc:h2:mem:metrics-${UUID.randomUUID()};MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+            "sa",
+            "",
+            2,
+            1_000
+        )
+        try {
+            val base = LocalDateTime.of(2024, 5, 1, 10, 15, 30)
+            pool.connection.use { conn ->
+                conn.createStatement().use { stmt ->
+                    MetricsRollupStore.Granularity.values().forEach { stmt.execute(MetricsRollupStore.createTableSql(it)) }
+                }
+                MetricsRollupStore.apply(conn, listOf(
+                    metrics(base, "CHAT", null, lines = 3, accepted = 1, responseTime = 200),
+                    metrics(base.plusHours(1), "CHAT", null, lines = 5, accepted = 4, responseTime = 100)))
+            }
+
+            val rows = mutableListOf<MetricsRollupStore.DayRow>()
+            pool.connection.use { MetricsRollupStore.readDays(it, rows::add) }
+
+            assertThat(rows).containsExactly(MetricsRollupStore.DayRow(
+                epochMillis(base.toLocalDate().atStartOfDay()), "CHAT", null, null, 2, 2, 8, 5, 300))
+        } finally {
+            pool.close(0)
+        }
+    }
+
+    private fun metrics(
+        start: LocalDateTime,
+        actionType: String,
+        language: String?,
+        lines: Int,
+        accepted: Int,
+        responseTime: Long
+    ) = ProductivityMetrics("action", actionType).apply {
+        startTime = epochMillis(start)
+        programmingLanguage = language
+        linesGenerated = lines
+        linesAccepted = accepted
+        this.responseTime = responseTime
+        isSuccessful = true
+    }
+
+    private fun epochMillis(dateTime: LocalDateTime) =
+        dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+}
@@ -0,0 +1,55 @@
+package ee.carlrobert.codegpt.metrics.storage
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class MetricsWriteBehindQueueTest {
+
+    @Test
+    fun shouldWriteQueuedMetricsInBatches() {
+        val batches = CopyOnWriteArrayList<List<ProductivityMetrics>>()
+        val queue = MetricsWriteBehindQueue(100, 10) { batches.add(it.toList()) }
+
+        repeat(25) { queue.enqueue(ProductivityMetrics("action-$it", "CODE_COMPLETION")) }
+        queue.dispose()
+
+        assertThat(batches.sumOf { it.size }).isEqualTo(25)
+        assertThat(batches).allSatisfy { assertThat(it.size).isLessThanOrEqualTo(10) }
+        assertThat(queue.writtenCount).isEqualTo(25)
+    }
+
+    @Test
+    fun shouldDropOldestWhenQueueIsFull() {
+        val writerBlocked = CountDownLatch(1)
+        val written = CopyOnWriteArrayList<String>()
+        val queue = MetricsWriteBehindQueue(2, 1) { batch ->
+            writerBlocked.await(5, TimeUnit.SECONDS)
+            batch.forEach { written.add(it.actionId) }
+        }
+        queue.enqueue(ProductivityMetrics("in-flight", "TYPING"))
+        Thread.sleep(100)
+
+        repeat(5) { queue.enqueue(ProductivityMetrics("action-$it", "TYPING")) }
+        writerBlocked.countDown()
+        queue.dispose()
+
+        assertThat(queue.droppedCount).isEqualTo(3)
+        assertThat(written).containsExactly("in-flight", "action-3", "action-4")
+    }
+
+    @Test
+    fun shouldFlushRemainingMetricsOnDispose() {
+        val written = CopyOnWriteArrayList<ProductivityMetrics>()
+        val queue = MetricsWriteBehindQueue(1_000, 500) { written.addAll(it) }
+
+        repeat(300) { queue.enqueue(ProductivityMetrics("action-$it", "CHAT")) }
+        queue.dispose()
+
+        assertThat(written).hasSize(300)
+        assertThat(queue.pendingCount).isZero()
+    }
+}
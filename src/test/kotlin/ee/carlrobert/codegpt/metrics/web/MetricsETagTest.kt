@@ -0,0 +1,28 @@
+package ee.carlrobert.codegpt.metrics.web
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class MetricsETagTest {
+
+    private val etag = MetricsETag.of(1_700_000_000_000, 12, 3, 20_000)
+
+    @Test
+    fun shouldChangeWhenAnyVersionChanges() {
+        assertThat(MetricsETag.of(1_700_000_000_000, 12, 3, 20_000)).isEqualTo(etag)
+        assertThat(MetricsETag.of(1_700_000_000_000, 13, 3, 20_000)).isNotEqualTo(etag)
+        assertThat(MetricsETag.of(1_700_000_000_000, 12, 4, 20_000)).isNotEqualTo(etag)
+        assertThat(MetricsETag.of(1_700_000_000_000, 12, 3, 20_001)).isNotEqualTo(etag)
+        assertThat(MetricsETag.of(1_700_000_000_001, 12, 3, 20_000)).isNotEqualTo(etag)
+    }
+
+    @Test
+    fun shouldMatchIfNoneMatchUsingWeakComparison() {
+        assertThat(MetricsETag.matches(etag, etag)).isTrue()
+        assertThat(MetricsETag.matches(etag.removePrefix("W/"), etag)).isTrue()
+        assertThat(MetricsETag.matches("\"other\", $etag", etag)).isTrue()
+        assertThat(MetricsETag.matches("*", etag)).isTrue()
+        assertThat(MetricsETag.matches("\"other\"", etag)).isFalse()
+        assertThat(MetricsETag.matches(null, etag)).isFalse()
+    }
+}
@@ -0,0 +1,73 @@
+package ee.carlrobert.codegpt.metrics.web
+
+import com.google.gson.Gson
+import com.google.gson.JsonParser
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class MetricsLiveBroadcasterTest {
+
+    @Test
+    fun shouldCoalesceCompletedMetricsIntoSingleFrame() {
+        val broadcaster = MetricsLiveBroadcaster(Gson())
+        repeat(3) { broadcaster.onCompleted(metrics("CHAT", linesGenerated = 2)) }
+
+        val frame = JsonParser.parseString(broadcaster.takeFrame()).asJsonObject
+
+        assertThat(frame["seq"].asLong).isEqualTo(1)
+        assertThat(frame.getAsJsonArray("events")).hasSize(3)
+        assertThat(frame.getAsJsonObject("summary")["totalRequests"].asLong).isEqualTo(3)
+        assertThat(frame.getAsJsonObject("summary")["totalLinesGenerated"].asLong).isEqualTo(6)
+        assertThat(broadcaster.takeFrame()).isNull()
+    }
+
+    @Test
+    fun shouldCapEventsPerFrameButKeepSummaryExact() {
+        val broadcaster = MetricsLiveBroadcaster(Gson(), 2)
+        repeat(5) { broadcaster.onCompleted(metrics("CODE_COMPLETION")) }
+
+        val frame = JsonParser.parseString(broadcaster.takeFrame()).asJsonObject
+
+        assertThat(frame.getAsJsonArray("events")).hasSize(2)
+        assertThat(frame["dropped"].asInt).isEqualTo(3)
+        assertThat(frame.getAsJsonObject("summary")["totalRequests"].asLong).isEqualTo(5)
+        assertThat(frame.getAsJsonObject("summary").getAsJsonObject("actionTypeCounts")["CODE_COMPLETION"].asInt)
+            .isEqualTo(5)
+    }
+
+    @Test
+    fun shouldSeedSummaryFromExistingColumns() {
+        val broadcaster = MetricsLiveBroadcaster(Gson())
+        broadcaster.seed(MetricsColumnStore.of(listOf(metrics("CHAT"), metrics("CHAT"))).columns())
+        broadcaster.takeFrame()
+        broadcaster.onCompleted(metrics("CHAT"))
+
+        val snapshot = JsonParser.parseString(broadcaster.snapshot()).asJsonObject
+
+        assertThat(snapshot.getAsJsonObject("summary")["totalRequests"].asLong).isEqualTo(3)
+        assertThat(snapshot.getAsJsonObject("summary").getAsJsonObject("actionTypeCounts")["CHAT"].asInt)
+            .isEqualTo(3)
+    }
+
+    @Test
+    fun shouldPushEmptySummaryAfterClear() {
+        val broadcaster = MetricsLiveBroadcaster(Gson())
+        repeat(3) { broadcaster.onCompleted(metrics("CHAT", linesGenerated = 2)) }
+        broadcaster.takeFrame()
+
+        broadcaster.onCleared()
+        val frame = JsonParser.parseString(broadcaster.takeFrame()).asJsonObject
+
+        assertThat(frame.getAsJsonArray("events")).isEmpty()
+        assertThat(frame.getAsJsonObject("summary")["totalRequests"].asLong).isZero()
+        assertThat(frame.getAsJsonObject("summary")["totalLinesGenerated"].asLong).isZero()
+    }
+
+    private fun metrics(actionType: String, linesGenerated: Int = 0) =
+        ProductivityMetrics("action", actionType).apply {
+            this.linesGenerated = linesGenerated
+            modelName = "gpt-4o"
+        }
+}
@@ -0,0 +1,89 @@
+package ee.carlrobert.codegpt.metrics.web
+
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import ee.carlrobert.codegpt.metrics.storage.MetricsRollupStore
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.time.LocalDate
+import java.time.ZoneOffset
+
+class MetricsLiveSummaryTest {
+
+    private val today = LocalDate.of(2025, 3, 10)
+
+    @Test
+    fun shouldMaintainTotalsAndDailyBuckets() {
+        val summary = MetricsLiveSummary(ZoneOffset.UTC)
+        summary.add(metrics(today, responseTime = 2_000, linesGenerated = 4, successful = true))
+        summary.add(metrics(today, responseTime = 4_000, linesGenerated = 6, successful = false))
+        summary.add(metrics(today.minusDays(2), responseTime = 3_000, linesGenerated = 1, successful = true))
+
+        val result = summary.toMap(today)
+
+        assertThat(result["totalRequests"]).isEqualTo(3L)
+        assertThat(result["successfulRequests"]).isEqualTo(2L)
+        assertThat(result["averageProcessingTime"] as Double).isEqualTo(3.0)
+        assertThat(result["totalLinesGenerated"]).isEqualTo(11L)
+        assertThat(result["actionTypeCounts"]).isEqualTo(mapOf("CHAT" to 3L))
+        val dailyStats = result["dailyStats"] as List<*>
+        assertThat(dailyStats).hasSize(MetricsLiveSummary.DAILY_STATS_DAYS)
+        assertThat(dailyStats.map { (it as Map<*, *>)["requests"] })
+            .containsExactly(0L, 0L, 0L, 0L, 1L, 0L, 2L)
+        assertThat((dailyStats.last() as Map<*, *>)["date"]).isEqualTo("2025-03-10")
+        assertThat((dailyStats.last() as Map<*, *>)["linesGenerated"]).isEqualTo(10L)
+    }
+
+    @Test
+    fun shouldOnlyBucketDaysWithinRetention() {
+        val summary = MetricsLiveSummary(ZoneOffset.UTC)
+        val oldestRetained = today.minusDays(MetricsLiveSummary.RETAINED_DAYS - 1L)
+        val expired = oldestRetained.minusDays(1)
+        summary.add(metrics(today))
+        summary.add(metrics(oldestRetained))
+        summary.add(metrics(expired))
+
+        assertThat(summary.toMap(today)["totalRequests"]).isEqualTo(3L)
+        assertThat(lastDayRequests(summary.toMap(oldestRetained))).isEqualTo(1L)
+        assertThat(lastDayRequests(summary.toMap(expired))).isEqualTo(0L)
+    }
+
+    @Test
+    fun shouldMatchPerEventSummaryWhenSeededFromRollupRows() {
+        val persisted = listOf(
+            metrics(today, linesGenerated = 4, linesAccepted = 1),
+            metrics(today, linesGenerated = 2, linesAccepted = 2, successful = false),
+            metrics(today.minusDays(1), linesGenerated = 6, linesAccepted = 6))
+        val resident = listOf(metrics(today, linesGenerated = 8, linesAccepted = 1))
+        val perEvent = MetricsLiveSummary(ZoneOffset.UTC).apply { (persisted + resident).forEach(::add) }
+
+        val seeded = MetricsLiveSummary(ZoneOffset.UTC)
+        persisted.groupBy { it.startTime }.forEach { (startTime, day) ->
+            seeded.addRollup(MetricsRollupStore.DayRow(
+                startTime - startTime % 86_400_000, "CHAT", null, null,
+                day.size.toLong(), day.count { it.isSuccessful }.toLong(),
+                day.sumOf { it.linesGenerated }.toLong(), day.sumOf { it.linesAccepted }.toLong(),
+                day.sumOf { it.responseTime }))
+        }
+        resident.forEach(seeded::add)
+
+        assertThat(seeded.toMap(today)).isEqualTo(perEvent.toMap(today))
+        assertThat(perEvent.toMap(today)["averageAcceptanceRate"]).isEqualTo(10.0 / 20)
+    }
+
+    private fun lastDayRequests(summary: Map<String, Any>) =
+        ((summary["dailyStats"] as List<*>).last() as Map<*, *>)["requests"]
+
+    private fun metrics(
+        day: LocalDate,
+        responseTime: Long = 1_000,
+        linesGenerated: Int = 0,
+        successful: Boolean = true,
+        linesAccepted: Int = 0
+    ) = ProductivityMetrics("action", "CHAT").apply {
+        startTime = day.atTime(12, 0).toInstant(ZoneOffset.UTC).toEpochMilli()
+        this.responseTime = responseTime
+        this.linesGenerated = linesGenerated
+        this.linesAccepted = linesAccepted
+        this.isSuccessful = successful
+    }
+}
@@ -0,0 +1,173 @@
+package ee.carlrobert.codegpt.metrics.web
+
+import com.google.gson.JsonParser
+import ee.carlrobert.codegpt.metrics.ProductivityMetrics
+import ee.carlrobert.codegpt.metrics.storage.MetricsColumnStore
+import ee.carlrobert.codegpt.metrics.storage.MetricsConnectionPool
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import java.io.StringWriter
+import java.util.UUID
+
+class MetricsPageWriterTest {
+
+    private val columns = MetricsColumnStore.of((0 until 10).map {
+        ProductivityMetrics("action", if (it % 2 == 0) "CHAT" else "CODE_COMPLETION").apply {
+            startTime = 1_000L + it
+            modelName = "gpt-4o"
+            linesGenerated = it
+        }
+    }).columns()
+
+    @Test
+    fun shouldPageThroughFilteredRowsWithCursor() {
+        val pages = mutableListOf<List<Int>>()
+        var cursor: String? = null
+        do {
+            val params = mutableMapOf(
+                "action_type" to listOf("CODE_COMPLETION"),
+                "limit" to listOf("2"),
+                "fields" to listOf("startTime,linesGenerated"))
+            cursor?.let { params["cursor"] = listOf(it) }
+
+            val page = JsonParser.parseString(write(params)).asJsonObject
+            pages.add(page.getAsJsonArray("items").map { it.asJsonObject["linesGenerated"].asInt })
+            assertThat(page.getAsJsonArray("items").first().asJsonObject.keySet())
+                .containsExactly("startTime", "linesGenerated")
+            cursor = page["nextCursor"].takeUnless { it.isJsonNull }?.asString
+        } while (cursor != null)
+
+        assertThat(pages).containsExactly(listOf(1, 3), listOf(5, 7), listOf(9))
+    }
+
+    @Test
+    fun shouldStreamNdjsonWithTrailingCursorLine() {
+        val lines = write(mapOf("format" to listOf("ndjson"), "limit" to listOf("3"), "fields" to listOf("actionType")))
+            .trim().lines()
+
+        assertThat(lines).containsExactly(
+            """{"actionType":"CHAT"}""",
+            """{"actionType":"CODE_COMPLETION"}""",
+            """{"actionType":"CHAT"}""",
+            """{"count":3,"nextCursor":"m3"}""")
+    }
+
+    @Test
+    fun shouldMatchNothingForUnknownModel() {
+        val page = JsonParser.parseString(write(mapOf("model" to listOf("unknown-model")))).asJsonObject
+
+        assertThat(page["count"].asInt).isZero()
+    }
+
+    @Test
+    fun shouldPageThroughDatabaseRowsSharingStartTimes() {
+        // 每两条记录共享同一个开始时间
+        val pool = database((0 until 7).map { 1_000L + it / 2 to it })
+        try {
+            assertThat(readDatabasePages(pool, emptyList()))
+                .containsExactly(listOf(0, 1, 2), listOf(3, 4, 5), listOf(6))
+        } finally {
+            pool.close(0)
+        }
+    }
+
+    @Test
+    fun shouldMergeResidentMetricsIntoDatabasePages() {
+        val pool = database(listOf(1_000L to 0, 1_002L to 2, 1_004L to 4))
+        val resident = listOf(1_005L to 5, 1_001L to 1, 1_003L to 3).map { (startTime, lines) ->
+            ProductivityMetrics("action", "CHAT").apply {
+                this.startTime = startTime
+                linesGenerated = lines
+            }
+        }
+        try {
+            assertThat(readDatabasePages(pool, resident))
+                .containsExactly(listOf(0, 1, 2), listOf(3, 4, 5))
+        } finally {
+            pool.close(0)
+        }
+    }
+
+    @Test
+    fun shouldReadPersistedResidentMetricsOnlyFromMemory() {
+        val pool = database(listOf(1_000L to 0, 1_001L to 1, 1_002L to 2, 1_003L to 3))
+        val resident = listOf(1_001L to 11, 1_003L to 13, 1_004L to 4).mapIndexed { index, (startTime, lines) ->
+            ProductivityMetrics("action", "CHAT").apply {
+                id = if (index < 2) "id-${index * 2 + 1}" else "resident"
+                this.startTime = startTime
+                linesGenerated = lines
+            }
+        }
+        try {
+            assertThat(readDatabasePages(pool, resident))
+                .containsExactly(listOf(0, 11, 2), listOf(13, 4))
+        } finally {
+            pool.close(0)
+        }
+    }
+
+    @Test
+    fun shouldRejectUnknownFields() {
+        assertThatThrownBy { MetricsPageRequest.parse(mapOf("fields" to listOf("password")), null) }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+
+    private fun database(rows: List<Pair<Long, Int>>): MetricsConnectionPool {
+        val pool = MetricsConnectionPool(
+            "jdbc:h2:mem:metrics-${UUID.randomUUID()};MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+            "sa",
+            "",
+            2,
+            1_000
+        )
+        pool.connection.use { conn ->
+            conn.createStatement().use { stmt ->
+                stmt.execute(
+                    """
+                    CREATE TABLE productivity_metrics (
+                        id VARCHAR(255) PRIMARY KEY, start_time BIGINT, action_type VARCHAR(100),
+                        model_name VARCHAR(100), programming_language VARCHAR(100), response_time BIGINT,
+                        processing_time BIGINT, input_token_count INT, output_token_count INT,
+                        total_token_count INT, token_cost DOUBLE, lines_generated INT, lines_accepted INT,
+                        lines_rejected INT, acceptance_rate DOUBLE, successful BOOLEAN, retry_count INT,
+                        user_rating INT
+                    )
+                    """.trimIndent()
+                )
+                rows.forEachIndexed { index, (startTime, lines) ->
+                    stmt.execute(
+                        "INSERT INTO productivity_metrics (id, start_time, action_type, lines_generated) " +
+                            "VALUES ('id-$index', $startTime, 'CHAT', $lines)"
+                    )
+                }
+            }
+        }
+        return pool
+    }
+
+    private fun readDatabasePages(
+        pool: MetricsConnectionPool,
+        resident: List<ProductivityMetrics>
+    ): List<List<Int>> {
+        val pages = mutableListOf<List<Int>>()
+        var cursor: String? = null
+        do {
+            val params = mutableMapOf("limit" to listOf("3"), "fields" to listOf("linesGenerated"))
+            cursor?.let { params["cursor"] = listOf(it) }
+            val out = StringWriter()
+            MetricsPageWriter(MetricsPageRequest.parse(params, null), out).writeFromDatabase(pool, true, resident)
+
+            val page = JsonParser.parseString(out.toString()).asJsonObject
+            pages.add(page.getAsJsonArray("items").map { it.asJsonObject["linesGenerated"].asInt })
+            cursor = page["nextCursor"].takeUnless { it.isJsonNull }?.asString
+        } while (cursor != null)
+        return pages
+    }
+
+    private fun write(params: Map<String, List<String>>): String {
+        val out = StringWriter()
+        MetricsPageWriter(MetricsPageRequest.parse(params, null), out).writeFromColumns(columns)
+        return out.toString()
+    }
+}
@@ -0,0 +1,103 @@
+package ee.carlrobert.codegpt.util
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class IncrementalMarkdownRendererTest {
+
+    @Test
+    fun shouldRenderStreamedMarkdownLikeFullConversion() {
+        val markdown = """
+            ## Summary
+
+            The cache keeps the **most recently used** entries and evicts the oldest one
+            once the capacity is reached.
+
+            1. Lookups move the entry to the front.
+            2. Inserts evict the *tail* when the cache is full.
+
+            - `get` runs in constant time
+            - `put` runs in constant time
+
+            > Entries are not thread-safe, so guard the cache with a lock.
+
+            See [the docs](https://example.com) for details.
+            """.trimIndent()
+        val renderer = IncrementalMarkdownRenderer()
+        var finishedHtml = ""
+
+        for (end in 1..markdown.length step 7) {
+            val prefix = markdown.substring(0, end)
+            val update = renderer.render(prefix)
+            finishedHtml = if (update.rebuild) {
+                update.finishedHtml
+            } else {
+                finishedHtml + update.finishedHtml
+            }
+
+            assertThat(finishedHtml + update.openHtml)
+                .describedAs(prefix)
+                .isEqualToIgnoringWhitespace(MarkdownUtil.convertMdToHtml(prefix))
+            assertThat(renderer.renderedHtml).isEqualTo(finishedHtml)
+        }
+    }
+
+    @Test
+    fun shouldKeepLooseListOpenUntilItEnds() {
+        val markdown = """
+            1. Lookups move the entry to the front.
+
+            2. Inserts evict the tail when the cache is full.
+
+               The evicted entry is returned to the caller.
+
+            3. Clearing drops every entry.
+
+            Done.
+            """.trimIndent()
+        val renderer = IncrementalMarkdownRenderer()
+        var finishedHtml = ""
+
+        for (end in 1..markdown.length) {
+            val prefix = markdown.substring(0, end)
+            val update = renderer.render(prefix)
+            finishedHtml = if (update.rebuild) {
+                update.finishedHtml
+            } else {
+                finishedHtml + update.finishedHtml
+            }
+
+            assertThat(finishedHtml + update.openHtml)
+                .describedAs(prefix)
+                .isEqualToIgnoringWhitespace(MarkdownUtil.convertMdToHtml(prefix))
+        }
+        assertThat(finishedHtml).contains("<ol>").doesNotContain("start=")
+    }
+
+    @Test
+    fun shouldOnlyReturnNewlyFinishedBlocks() {
+        val renderer = IncrementalMarkdownRenderer()
+
+        val first = renderer.render("First paragraph\n\nSecond")
+        val second = renderer.render("First paragraph\n\nSecond paragraph\n\nThird")
+
+        assertThat(first.rebuild).isTrue()
+        assertThat(first.finishedHtml).isEqualToIgnoringWhitespace("<p>First paragraph</p>")
+        assertThat(first.openHtml).isEqualToIgnoringWhitespace("<p>Second</p>")
+        assertThat(second.rebuild).isFalse()
+        assertThat(second.finishedHtml).isEqualToIgnoringWhitespace("<p>Second paragraph</p>")
+        assertThat(second.openHtml).isEqualToIgnoringWhitespace("<p>Third</p>")
+    }
+
+    @Test
+    fun shouldRebuildWhenTextDoesNotExtendPreviousText() {
+        val renderer = IncrementalMarkdownRenderer()
+        renderer.render("First paragraph\n\nSecond")
+
+        val update = renderer.render("Other paragraph\n\nSecond")
+
+        assertThat(update.rebuild).isTrue()
+        assertThat(update.finishedHtml).isEqualToIgnoringWhitespace("<p>Other paragraph</p>")
+        assertThat(renderer.renderedHtml).isEqualTo(update.finishedHtml)
+    }
+}
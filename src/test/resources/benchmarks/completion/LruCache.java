@@ -0,0 +1,117 @@
+package com.example.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A fixed-size cache that evicts the least recently used entry once it is full.
+ */
+public class LruCache<K, V> {
+
+  private final int capacity;
+  private final Map<K, Node<K, V>> nodes = new HashMap<>();
+  private final Node<K, V> head = new Node<>(null, null);
+  private final Node<K, V> tail = new Node<>(null, null);
+  private long hits;
+  private long misses;
+
+  public LruCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    head.next = tail;
+    tail.previous = head;
+  }
+
+  public synchronized V get(K key) {
+    var node = nodes.get(key);
+    if (node == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    moveToFront(node);
+    return node.value;
+  }
+
+  public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    var cached = get(key);
+    if (cached != null) {
+      return cached;
+    }
+    var value = Objects.requireNonNull(loader.apply(key), "loader returned null");
+    put(key, value);
+    return value;
+  }
+
+  public synchronized void put(K key, V value) {
+    var node = nodes.get(key);
+    if (node != null) {
+      node.value = value;
+      moveToFront(node);
+      return;
+    }
+    if (nodes.size() == capacity) {
+      var eldest = tail.previous;
+      unlink(eldest);
+      nodes.remove(eldest.key);
+    }
+    node = new Node<>(key, value);
+    nodes.put(key, node);
+    linkFirst(node);
+  }
+
+  public synchronized boolean remove(K key) {
+    var node = nodes.remove(key);
+    if (node == null) {
+      return false;
+    }
+    unlink(node);
+    return true;
+  }
+
+  public synchronized double hitRate() {
+    long requests = hits + misses;
+    if (requests == 0) {
+      return 0;
+    }
+    <caret>
+  }
+
+  public synchronized int size() {
+    return nodes.size();
+  }
+
+  private void moveToFront(Node<K, V> node) {
+    unlink(node);
+    linkFirst(node);
+  }
+
+  private void linkFirst(Node<K, V> node) {
+    node.next = head.next;
+    node.previous = head;
+    head.next.previous = node;
+    head.next = node;
+  }
+
+  private void unlink(Node<K, V> node) {
+    node.previous.next = node.next;
+    node.next.previous = node.previous;
+  }
+
+  private static final class Node<K, V> {
+
+    private final K key;
+    private V value;
+    private Node<K, V> previous;
+    private Node<K, V> next;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
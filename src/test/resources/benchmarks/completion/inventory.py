@@ -0,0 +1,100 @@
+"""Inventory bookkeeping for a small warehouse service."""
+
+from __future__ import annotations
+
+import dataclasses
+import datetime as dt
+import logging
+from collections import defaultdict
+from typing import Dict, Iterable, List, Optional
+
+logger = logging.getLogger(__name__)
+
+
+class InsufficientStockError(Exception):
+    def __init__(self, sku: str, requested: int, available: int):
+        super().__init__(f"{sku}: requested {requested}, available {available}")
+        self.sku = sku
+        self.requested = requested
+        self.available = available
+
+
+@dataclasses.dataclass(frozen=True)
+class Movement:
+    sku: str
+    quantity: int
+    reason: str
+    at: dt.datetime = dataclasses.field(default_factory=dt.datetime.utcnow)
+
+
+@dataclasses.dataclass
+class Item:
+    sku: str
+    name: str
+    unit_price: float
+    reorder_level: int = 10
+    tags: List[str] = dataclasses.field(default_factory=list)
+
+
+class Inventory:
+    def __init__(self, items: Iterable[Item] = ()):
+        self._items: Dict[str, Item] = {item.sku: item for item in items}
+        self._stock: Dict[str, int] = defaultdict(int)
+        self._movements: List[Movement] = []
+
+    def add_item(self, item: Item) -> None:
+        if item.sku in self._items:
+            raise ValueError(f"Duplicate SKU {item.sku}")
+        self._items[item.sku] = item
+
+    def receive(self, sku: str, quantity: int) -> None:
+        self._require(sku)
+        if quantity <= 0:
+            raise ValueError("quantity must be positive")
+        self._stock[sku] += quantity
+        self._movements.append(Movement(sku, quantity, "receive"))
+        logger.debug("Received %d of %s", quantity, sku)
+
+    def ship(self, sku: str, quantity: int) -> None:
+        self._require(sku)
+        available = self._stock[sku]
+        if quantity > available:
+            raise InsufficientStockError(sku, quantity, available)
+        self._stock[sku] -= quantity
+        self._movements.append(Movement(sku, -quantity, "ship"))
+
+    def stock_value(self) -> float:
+        return sum(self._items[sku].unit_price * count for sku, count in self._stock.items())
+
+    def items_to_reorder(self) -> List[Item]:
+        result = []
+        for sku, item in self._items.items():
+            if self._stock[sku] <= item.reorder_level:
+                <caret>
+        return result
+
+    def history(self, sku: Optional[str] = None) -> List[Movement]:
+        if sku is None:
+            return list(self._movements)
+        return [movement for movement in self._movements if movement.sku == sku]
+
+    def _require(self, sku: str) -> Item:
+        try:
+            return self._items[sku]
+        except KeyError:
+            raise KeyError(f"Unknown SKU {sku}") from None
+
+
+def load_inventory(rows: Iterable[dict]) -> Inventory:
+    inventory = Inventory()
+    for row in rows:
+        item = Item(
+            sku=row["sku"],
+            name=row.get("name", row["sku"]),
+            unit_price=float(row.get("price", 0)),
+            reorder_level=int(row.get("reorder_level", 10)),
+        )
+        inventory.add_item(item)
+        if row.get("stock"):
+            inventory.receive(item.sku, int(row["stock"]))
+    return inventory
@@ -0,0 +1,77 @@
+import { EventEmitter } from "events";
+
+export type Method = "GET" | "POST" | "PUT" | "DELETE";
+
+export interface Request {
+  method: Method;
+  path: string;
+  params: Record<string, string>;
+  query: URLSearchParams;
+  body?: unknown;
+}
+
+export interface Response {
+  status: number;
+  headers: Record<string, string>;
+  body?: unknown;
+}
+
+export type Handler = (request: Request) => Promise<Response> | Response;
+
+interface Route {
+  method: Method;
+  segments: string[];
+  handler: Handler;
+}
+
+export class Router extends EventEmitter {
+  private readonly routes: Route[] = [];
+
+  add(method: Method, pattern: string, handler: Handler): this {
+    this.routes.push({ method, segments: split(pattern), handler });
+    return this;
+  }
+
+  get(pattern: string, handler: Handler): this {
+    return this.add("GET", pattern, handler);
+  }
+
+  post(pattern: string, handler: Handler): this {
+    return this.add("POST", pattern, handler);
+  }
+
+  async handle(method: Method, url: string, body?: unknown): Promise<Response> {
+    const [path, search = ""] = url.split("?", 2);
+    const segments = split(path);
+    for (const route of this.routes) {
+      if (route.method !== method) {
+        continue;
+      }
+      const params = match(route.segments, segments);
+      if (params) {
+        this.emit("match", method, path);
+        <caret>
+      }
+    }
+    return { status: 404, headers: {}, body: { error: `No route for ${method} ${path}` } };
+  }
+}
+
+function split(path: string): string[] {
+  return path.split("/").filter((segment) => segment.length > 0);
+}
+
+function match(pattern: string[], path: string[]): Record<string, string> | null {
+  if (pattern.length !== path.length) {
+    return null;
+  }
+  const params: Record<string, string> = {};
+  for (let i = 0; i < pattern.length; i++) {
+    if (pattern[i].startsWith(":")) {
+      params[pattern[i].slice(1)] = decodeURIComponent(path[i]);
+    } else if (pattern[i] !== path[i]) {
+      return null;
+    }
+  }
+  return params;
+}
@@ -0,0 +1,94 @@
+package worker
+
+import (
+	"context"
+	"errors"
+	"fmt"
+	"sync"
+	"time"
+)
+
+// Job is a unit of work processed by the pool.
+type Job struct {
+	ID       int
+	Payload  []byte
+	Attempts int
+}
+
+// Result reports the outcome of a job.
+type Result struct {
+	JobID    int
+	Duration time.Duration
+	Err      error
+}
+
+// Pool runs jobs on a fixed number of goroutines and retries failed jobs.
+type Pool struct {
+	workers    int
+	maxRetries int
+	process    func(context.Context, Job) error
+	results    chan Result
+	wg         sync.WaitGroup
+}
+
+var ErrClosed = errors.New("worker: pool closed")
+
+func NewPool(workers, maxRetries int, process func(context.Context, Job) error) *Pool {
+	if workers <= 0 {
+		panic(fmt.Sprintf("worker: invalid worker count %d", workers))
+	}
+	return &Pool{
+		workers:    workers,
+		maxRetries: maxRetries,
+		process:    process,
+		results:    make(chan Result, workers),
+	}
+}
+
+func (p *Pool) Results() <-chan Result {
+	return p.results
+}
+
+func (p *Pool) Run(ctx context.Context, jobs <-chan Job) {
+	for i := 0; i < p.workers; i++ {
+		p.wg.Add(1)
+		go p.work(ctx, jobs)
+	}
+	go func() {
+		p.wg.Wait()
+		close(p.results)
+	}()
+}
+
+func (p *Pool) work(ctx context.Context, jobs <-chan Job) {
+	defer p.wg.Done()
+	for {
+		select {
+		case <-ctx.Done():
+			return
+		case job, ok := <-jobs:
+			if !ok {
+				return
+			}
+			start := time.Now()
+			err := p.runWithRetry(ctx, job)
+			p.results <- Result{JobID: job.ID, Duration: time.Since(start), Err: err}
+		}
+	}
+}
+
+func (p *Pool) runWithRetry(ctx context.Context, job Job) error {
+	var err error
+	for job.Attempts = 0; job.Attempts <= p.maxRetries; job.Attempts++ {
+		if err = p.process(ctx, job); err == nil {
+			return nil
+		}
+		backoff := time.Duration(1<<job.Attempts) * 10 * time.Millisecond
+		select {
+		case <-ctx.Done():
+			<caret>
+		case <-time.After(backoff):
+		}
+	}
+	return fmt.Errorf("job %d failed after %d attempts: %w", job.ID, job.Attempts, err)
+}